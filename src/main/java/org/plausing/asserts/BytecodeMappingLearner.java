@@ -0,0 +1,574 @@
+package org.plausing.asserts;
+
+import org.apache.log4j.Logger;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Proposes a field mapping by reading the bytecode of the mapper, without calling it.
+ * <p>
+ * The learner reads the class file of the mapper and looks for the implementation of apply: the apply method of a
+ * mapper class, the implementation method of a serializable lambda, or the implementation method of the only lambda or
+ * method reference of the declaring class that is created as a Function from SOURCE to TARGET. It follows the reads of
+ * source fields (GETFIELD or getter calls) to the next write of a target field (PUTFIELD or setter call). Getters and
+ * setters are followed into their bodies, so the field they actually read or write counts, not the one their name
+ * suggests. A target field that is written after reading exactly one source field is proposed as the mapping of this
+ * source field.
+ * <p>
+ * Everything the learner can't resolve is left to the dynamic learning: target fields written after reading none or
+ * several source fields, source fields read for such a target field or written to several target fields, setters that
+ * write no or several fields, and all fields of mappers whose bytecode can't be found. The proposal isn't trusted; the
+ * mapper is invoked once to confirm it, and the fields that aren't confirmed are learned dynamically.
+ */
+final class BytecodeMappingLearner {
+
+    private static Logger LOG = Logger.getLogger(BytecodeMappingLearner.class);
+
+    private static final int GETFIELD = 0xb4;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int INVOKEDYNAMIC = 0xba;
+
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    private BytecodeMappingLearner() {
+    }
+
+    /**
+     * Proposes the mapping of the source fields.
+     *
+     * @param mapper       the mapper
+     * @param sourceClass  class of the source
+     * @param targetClass  class of the target
+     * @param sourceFields fields of the source
+     * @param targetFields fields of the target
+     * @return the proposed mapping; empty if the bytecode can't be analyzed.
+     */
+    static Map<Field, Field> proposeMapping(Function<?, ?> mapper, Class<?> sourceClass, Class<?> targetClass, List<Field> sourceFields, List<Field> targetFields) {
+        Implementation implementation;
+        try {
+            implementation = findImplementation(mapper, sourceClass, targetClass);
+        } catch (IOException | RuntimeException e) {
+            LOG.info("Can't read the bytecode of the mapper " + mapper.getClass().getName(), e);
+            return Collections.emptyMap();
+        }
+        if (implementation == null) {
+            LOG.info("Can't find the implementation of the mapper " + mapper.getClass().getName());
+            return Collections.emptyMap();
+        }
+        try {
+            return analyze(implementation.classFile, implementation.code, sourceClass, targetClass, sourceFields, targetFields);
+        } catch (RuntimeException e) {
+            LOG.info("Can't analyze the bytecode of the mapper " + mapper.getClass().getName(), e);
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Follows the field reads and writes of the code.
+     */
+    private static Map<Field, Field> analyze(ClassFile classFile, byte[] code, Class<?> sourceClass, Class<?> targetClass, List<Field> sourceFields, List<Field> targetFields) {
+        Map<String, Field> sourceFieldsByName = fieldsByName(sourceFields);
+        Map<String, Field> targetFieldsByName = fieldsByName(targetFields);
+
+        Map<Field, Set<Field>> targetsBySource = new LinkedHashMap<Field, Set<Field>>();
+        Map<Field, Set<Field>> sourcesByTarget = new HashMap<Field, Set<Field>>();
+        Set<Field> unresolvedSources = new HashSet<Field>();
+        Set<Field> unresolvedTargets = new HashSet<Field>();
+
+        Map<String, ClassFile> classFiles = new HashMap<String, ClassFile>();
+        Set<Field> reads = new LinkedHashSet<Field>();
+        for (int pc = 0; pc < code.length; pc += instructionLength(code, pc)) {
+            int opcode = code[pc] & 0xff;
+            if (opcode != GETFIELD && opcode != PUTFIELD && opcode != INVOKEVIRTUAL && opcode != INVOKEINTERFACE) continue;
+
+            String[] member = classFile.memberRef(u2(code, pc + 1));
+            String owner = member[0].replace('/', '.');
+            String name = member[1];
+            String descriptor = member[2];
+
+            Field target = null;
+            if (opcode == GETFIELD && isInHierarchy(owner, sourceClass)) {
+                addIfNotNull(reads, sourceFieldsByName.get(name));
+            } else if (opcode == PUTFIELD && isInHierarchy(owner, targetClass)) {
+                target = targetFieldsByName.get(name);
+            } else if (opcode != GETFIELD && opcode != PUTFIELD) {
+                if (isInHierarchy(owner, sourceClass) && descriptor.startsWith("()") && propertyName(name, "get", "is") != null) {
+                    Set<Field> read = fieldsAccessedBy(sourceClass, owner, name, descriptor, GETFIELD, sourceFieldsByName, classFiles);
+                    if (read != null) reads.addAll(read);
+                    else addIfNotNull(reads, sourceFieldsByName.get(propertyName(name, "get", "is")));
+                }
+                if (isInHierarchy(owner, targetClass) && descriptor.endsWith(")V") && propertyName(name, "set") != null) {
+                    Set<Field> written = fieldsAccessedBy(targetClass, owner, name, descriptor, PUTFIELD, targetFieldsByName, classFiles);
+                    if (written == null) {
+                        target = targetFieldsByName.get(propertyName(name, "set"));
+                    } else if (written.size() == 1) {
+                        target = written.iterator().next();
+                    } else {
+                        // the setter writes no or several fields
+                        unresolvedSources.addAll(reads);
+                        unresolvedTargets.addAll(written);
+                        reads.clear();
+                    }
+                }
+            }
+            if (target == null) continue;
+
+            if (reads.size() == 1) {
+                Field source = reads.iterator().next();
+                targetsBySource.computeIfAbsent(source, k -> new HashSet<Field>()).add(target);
+                sourcesByTarget.computeIfAbsent(target, k -> new HashSet<Field>()).add(source);
+            } else {
+                unresolvedSources.addAll(reads);
+                unresolvedTargets.add(target);
+            }
+            reads.clear();
+        }
+
+        Map<Field, Field> proposal = new LinkedHashMap<Field, Field>();
+        targetsBySource.forEach((source, targets) -> {
+            if (targets.size() != 1 || unresolvedSources.contains(source)) return;
+            Field target = targets.iterator().next();
+            if (sourcesByTarget.get(target).size() != 1 || unresolvedTargets.contains(target)) return;
+            proposal.put(source, target);
+        });
+        return proposal;
+    }
+
+    /**
+     * Follows a getter or setter into its body and returns the fields of the class that it reads or writes.
+     *
+     * @param type         the class of the fields
+     * @param owner        the class of the method reference
+     * @param name         name of the method
+     * @param descriptor   descriptor of the method
+     * @param fieldOpcode  GETFIELD for the reads, PUTFIELD for the writes
+     * @param fieldsByName the fields of the class by name
+     * @param classFiles   the class files read so far by class name
+     * @return the fields, or null if the body of the method can't be found.
+     */
+    private static Set<Field> fieldsAccessedBy(Class<?> type, String owner, String name, String descriptor, int fieldOpcode,
+                                               Map<String, Field> fieldsByName, Map<String, ClassFile> classFiles) {
+        Class<?> declaringClass = type;
+        while (declaringClass != null && !declaringClass.getName().equals(owner)) {
+            declaringClass = declaringClass.getSuperclass();
+        }
+        for (Class<?> c = declaringClass; c != null; c = c.getSuperclass()) {
+            ClassFile classFile;
+            try {
+                if (!classFiles.containsKey(c.getName())) {
+                    classFiles.put(c.getName(), ClassFile.read(c.getClassLoader(), c.getName()));
+                }
+                classFile = classFiles.get(c.getName());
+            } catch (IOException e) {
+                return null;
+            }
+            if (classFile == null) return null;
+            byte[] code = classFile.findCode(method -> method.name.equals(name) && method.descriptor.equals(descriptor));
+            if (code == null) continue;
+
+            Set<Field> fields = new LinkedHashSet<Field>();
+            for (int pc = 0; pc < code.length; pc += instructionLength(code, pc)) {
+                if ((code[pc] & 0xff) != fieldOpcode) continue;
+                String[] field = classFile.memberRef(u2(code, pc + 1));
+                if (isInHierarchy(field[0].replace('/', '.'), type)) {
+                    addIfNotNull(fields, fieldsByName.get(field[1]));
+                }
+            }
+            return fields;
+        }
+        return null;
+    }
+
+    /*---------------------------------------------------------------------------------------------------------------
+      Finding the implementation
+      ---------------------------------------------------------------------------------------------------------------*/
+
+    /**
+     * Finds the method that implements apply.
+     *
+     * @return the implementation, or null if it can't be found.
+     */
+    private static Implementation findImplementation(Function<?, ?> mapper, Class<?> sourceClass, Class<?> targetClass) throws IOException {
+        Class<?> mapperClass = mapper.getClass();
+        String typedDescriptorEnd = "L" + internalName(sourceClass) + ";)L" + internalName(targetClass) + ";";
+        String className = mapperClass.getName();
+        int lambdaMarker = className.indexOf("$$Lambda");
+
+        if (lambdaMarker < 0) {
+            // a mapper class: the typed apply, or the only apply
+            ClassFile classFile = ClassFile.read(mapperClass.getClassLoader(), className);
+            if (classFile == null) return null;
+            byte[] code = classFile.findCode(method -> method.name.equals("apply") && method.descriptor.endsWith(typedDescriptorEnd));
+            if (code == null) code = classFile.findCode(method -> method.name.equals("apply"));
+            return code == null ? null : new Implementation(classFile, code);
+        }
+
+        // a serializable lambda names its implementation
+        SerializedLambda serializedLambda = serializedLambda(mapper);
+        if (serializedLambda != null) {
+            ClassFile classFile = ClassFile.read(mapperClass.getClassLoader(), serializedLambda.getImplClass().replace('/', '.'));
+            if (classFile == null) return null;
+            byte[] code = classFile.findCode(method -> method.name.equals(serializedLambda.getImplMethodName())
+                    && method.descriptor.equals(serializedLambda.getImplMethodSignature()));
+            return code == null ? null : new Implementation(classFile, code);
+        }
+
+        // otherwise the declaring class must create a single lambda or method reference as a Function from SOURCE to TARGET
+        String declaringClassName = className.substring(0, lambdaMarker);
+        ClassFile classFile = ClassFile.read(mapperClass.getClassLoader(), declaringClassName);
+        if (classFile == null) return null;
+        Set<List<String>> implementationMethods = classFile.functionImplementations("(" + typedDescriptorEnd);
+        if (implementationMethods.size() != 1) return null;
+        List<String> implementationMethod = implementationMethods.iterator().next();
+        String implementationClassName = implementationMethod.get(0).replace('/', '.');
+        ClassFile implementationClass = implementationClassName.equals(declaringClassName) ? classFile
+                : ClassFile.read(mapperClass.getClassLoader(), implementationClassName);
+        if (implementationClass == null) return null;
+        byte[] code = implementationClass.findCode(method -> method.name.equals(implementationMethod.get(1))
+                && method.descriptor.equals(implementationMethod.get(2)));
+        return code == null ? null : new Implementation(implementationClass, code);
+    }
+
+    /**
+     * Returns the description of a serializable lambda.
+     *
+     * @return the description, or null if the lambda isn't serializable.
+     */
+    private static SerializedLambda serializedLambda(Object lambda) {
+        try {
+            Method writeReplace = lambda.getClass().getDeclaredMethod("writeReplace");
+            writeReplace.setAccessible(true);
+            Object replacement = writeReplace.invoke(lambda);
+            return replacement instanceof SerializedLambda ? (SerializedLambda) replacement : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Code of the method that implements apply, and its class file. */
+    private static final class Implementation {
+        final ClassFile classFile;
+        final byte[] code;
+
+        Implementation(ClassFile classFile, byte[] code) {
+            this.classFile = classFile;
+            this.code = code;
+        }
+    }
+
+    /*---------------------------------------------------------------------------------------------------------------
+      Helpers
+      ---------------------------------------------------------------------------------------------------------------*/
+
+    private static Map<String, Field> fieldsByName(List<Field> fields) {
+        Map<String, Field> fieldsByName = new HashMap<String, Field>();
+        for (Field field : fields) {
+            fieldsByName.putIfAbsent(field.getName(), field);
+        }
+        return fieldsByName;
+    }
+
+    private static <T> void addIfNotNull(Set<T> set, T element) {
+        if (element != null) set.add(element);
+    }
+
+    private static boolean isInHierarchy(String className, Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            if (c.getName().equals(className)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the property of an accessor, e.g. "name" for getName.
+     *
+     * @return the property, or null if the method name doesn't start with one of the prefixes.
+     */
+    private static String propertyName(String methodName, String... prefixes) {
+        for (String prefix : prefixes) {
+            if (methodName.length() > prefix.length() && methodName.startsWith(prefix) && Character.isUpperCase(methodName.charAt(prefix.length()))) {
+                return Character.toLowerCase(methodName.charAt(prefix.length())) + methodName.substring(prefix.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.getName().replace('.', '/');
+    }
+
+    private static int u2(byte[] code, int index) {
+        return ((code[index] & 0xff) << 8) | (code[index + 1] & 0xff);
+    }
+
+    private static int s4(byte[] code, int index) {
+        return ((code[index] & 0xff) << 24) | ((code[index + 1] & 0xff) << 16) | ((code[index + 2] & 0xff) << 8) | (code[index + 3] & 0xff);
+    }
+
+    /**
+     * Returns the length of the instruction at pc, see the JVM specification, chapter 6.
+     */
+    static int instructionLength(byte[] code, int pc) {
+        int opcode = code[pc] & 0xff;
+        if (opcode <= 0x0f) return 1;
+        if (opcode == 0x10 || opcode == 0x12) return 2;
+        if (opcode == 0x11 || opcode == 0x13 || opcode == 0x14) return 3;
+        if (opcode >= 0x15 && opcode <= 0x19) return 2;
+        if (opcode >= 0x1a && opcode <= 0x35) return 1;
+        if (opcode >= 0x36 && opcode <= 0x3a) return 2;
+        if (opcode >= 0x3b && opcode <= 0x83) return 1;
+        if (opcode == 0x84) return 3;
+        if (opcode >= 0x85 && opcode <= 0x98) return 1;
+        if (opcode >= 0x99 && opcode <= 0xa8) return 3;
+        if (opcode == 0xa9) return 2;
+        if (opcode == 0xaa) {
+            int padding = (4 - (pc + 1) % 4) % 4;
+            int low = s4(code, pc + 1 + padding + 4);
+            int high = s4(code, pc + 1 + padding + 8);
+            return 1 + padding + 12 + (high - low + 1) * 4;
+        }
+        if (opcode == 0xab) {
+            int padding = (4 - (pc + 1) % 4) % 4;
+            int pairs = s4(code, pc + 1 + padding + 4);
+            return 1 + padding + 8 + pairs * 8;
+        }
+        if (opcode >= 0xac && opcode <= 0xb1) return 1;
+        if (opcode >= 0xb2 && opcode <= 0xb8) return 3;
+        if (opcode == 0xb9 || opcode == 0xba) return 5;
+        if (opcode == 0xbb || opcode == 0xbd || opcode == 0xc0 || opcode == 0xc1) return 3;
+        if (opcode == 0xbc) return 2;
+        if (opcode == 0xbe || opcode == 0xbf || opcode == 0xc2 || opcode == 0xc3) return 1;
+        if (opcode == 0xc4) return (code[pc + 1] & 0xff) == 0x84 ? 6 : 4;
+        if (opcode == 0xc5) return 4;
+        if (opcode == 0xc6 || opcode == 0xc7) return 3;
+        if (opcode == 0xc8 || opcode == 0xc9) return 5;
+        throw new IllegalArgumentException("Unknown opcode " + opcode + " at " + pc);
+    }
+
+    /**
+     * The parts of a class file that the learner needs: the constant pool and the code of the methods.
+     */
+    private static final class ClassFile {
+
+        private final int[] tags;
+        private final int[] firstReferences;
+        private final int[] secondReferences;
+        private final String[] utf8;
+        private final List<MethodInfo> methods = new ArrayList<MethodInfo>();
+
+        /** Entries of the BootstrapMethods attribute: the method handle of the bootstrap method and its arguments. */
+        private final List<int[]> bootstrapMethods = new ArrayList<int[]>();
+
+        private ClassFile(int constantPoolCount) {
+            tags = new int[constantPoolCount];
+            firstReferences = new int[constantPoolCount];
+            secondReferences = new int[constantPoolCount];
+            utf8 = new String[constantPoolCount];
+        }
+
+        /**
+         * Reads the class file of a class.
+         *
+         * @return the class file, or null if it can't be found.
+         */
+        static ClassFile read(ClassLoader classLoader, String className) throws IOException {
+            String resource = className.replace('.', '/') + ".class";
+            InputStream stream = classLoader == null ? ClassLoader.getSystemResourceAsStream(resource) : classLoader.getResourceAsStream(resource);
+            if (stream == null) return null;
+            try (DataInputStream in = new DataInputStream(stream)) {
+                if (in.readInt() != 0xCAFEBABE) throw new IOException("Not a class file: " + resource);
+                in.readUnsignedShort();
+                in.readUnsignedShort();
+
+                ClassFile classFile = new ClassFile(in.readUnsignedShort());
+                for (int index = 1; index < classFile.tags.length; index++) {
+                    int tag = in.readUnsignedByte();
+                    classFile.tags[index] = tag;
+                    switch (tag) {
+                        case 1:
+                            classFile.utf8[index] = in.readUTF();
+                            break;
+                        case 3:
+                        case 4:
+                            in.readInt();
+                            break;
+                        case 5:
+                        case 6:
+                            in.readLong();
+                            index++;
+                            break;
+                        case 7:
+                        case 8:
+                        case 16:
+                        case 19:
+                        case 20:
+                            classFile.firstReferences[index] = in.readUnsignedShort();
+                            break;
+                        case 9:
+                        case 10:
+                        case 11:
+                        case 12:
+                        case 17:
+                        case 18:
+                            classFile.firstReferences[index] = in.readUnsignedShort();
+                            classFile.secondReferences[index] = in.readUnsignedShort();
+                            break;
+                        case 15:
+                            in.readUnsignedByte();
+                            classFile.firstReferences[index] = in.readUnsignedShort();
+                            break;
+                        default:
+                            throw new IOException("Unknown constant pool tag " + tag + " in " + resource);
+                    }
+                }
+
+                in.readUnsignedShort();
+                in.readUnsignedShort();
+                in.readUnsignedShort();
+                skipFully(in, in.readUnsignedShort() * 2);
+                int fieldCount = in.readUnsignedShort();
+                for (int index = 0; index < fieldCount; index++) {
+                    in.readUnsignedShort();
+                    in.readUnsignedShort();
+                    in.readUnsignedShort();
+                    skipAttributes(in);
+                }
+                int methodCount = in.readUnsignedShort();
+                for (int index = 0; index < methodCount; index++) {
+                    in.readUnsignedShort();
+                    MethodInfo method = new MethodInfo(classFile.utf8[in.readUnsignedShort()], classFile.utf8[in.readUnsignedShort()]);
+                    int attributeCount = in.readUnsignedShort();
+                    for (int attribute = 0; attribute < attributeCount; attribute++) {
+                        String attributeName = classFile.utf8[in.readUnsignedShort()];
+                        int length = in.readInt();
+                        if ("Code".equals(attributeName)) {
+                            in.readUnsignedShort();
+                            in.readUnsignedShort();
+                            method.code = new byte[in.readInt()];
+                            in.readFully(method.code);
+                            skipFully(in, length - 8 - method.code.length);
+                        } else {
+                            skipFully(in, length);
+                        }
+                    }
+                    classFile.methods.add(method);
+                }
+                int attributeCount = in.readUnsignedShort();
+                for (int attribute = 0; attribute < attributeCount; attribute++) {
+                    String attributeName = classFile.utf8[in.readUnsignedShort()];
+                    int length = in.readInt();
+                    if (!"BootstrapMethods".equals(attributeName)) {
+                        skipFully(in, length);
+                        continue;
+                    }
+                    int bootstrapMethodCount = in.readUnsignedShort();
+                    for (int index = 0; index < bootstrapMethodCount; index++) {
+                        int[] bootstrapMethod = new int[1];
+                        bootstrapMethod[0] = in.readUnsignedShort();
+                        bootstrapMethod = Arrays.copyOf(bootstrapMethod, 1 + in.readUnsignedShort());
+                        for (int argument = 1; argument < bootstrapMethod.length; argument++) {
+                            bootstrapMethod[argument] = in.readUnsignedShort();
+                        }
+                        classFile.bootstrapMethods.add(bootstrapMethod);
+                    }
+                }
+                return classFile;
+            }
+        }
+
+        /**
+         * Returns the code of the only method that matches the filter.
+         *
+         * @return the code, or null if no method or several methods match.
+         */
+        byte[] findCode(java.util.function.Predicate<MethodInfo> filter) {
+            MethodInfo found = null;
+            for (MethodInfo method : methods) {
+                if (method.code == null || !filter.test(method)) continue;
+                if (found != null) return null;
+                found = method;
+            }
+            return found == null ? null : found.code;
+        }
+
+        /**
+         * Finds the lambdas and method references of the class that are created as a Function with the given
+         * instantiated descriptor, e.g. (LSource;)LTarget;, by the invokedynamic instructions of all methods.
+         *
+         * @return the owner, name and descriptor of every implementation method.
+         */
+        Set<List<String>> functionImplementations(String instantiatedDescriptor) {
+            Set<List<String>> implementations = new LinkedHashSet<List<String>>();
+            for (MethodInfo method : methods) {
+                byte[] code = method.code;
+                if (code == null) continue;
+                for (int pc = 0; pc < code.length; pc += instructionLength(code, pc)) {
+                    if ((code[pc] & 0xff) != INVOKEDYNAMIC) continue;
+                    int callSite = u2(code, pc + 1);
+                    int nameAndType = secondReferences[callSite];
+                    if (!"apply".equals(utf8[firstReferences[nameAndType]])
+                            || !utf8[secondReferences[nameAndType]].endsWith(")Ljava/util/function/Function;")) continue;
+
+                    // LambdaMetafactory arguments: the erased method type, the implementation and the instantiated method type
+                    int[] bootstrapMethod = bootstrapMethods.get(firstReferences[callSite]);
+                    if (bootstrapMethod.length < 4 || tags[bootstrapMethod[2]] != CONSTANT_METHOD_HANDLE
+                            || tags[bootstrapMethod[3]] != CONSTANT_METHOD_TYPE
+                            || !"java/lang/invoke/LambdaMetafactory".equals(memberRef(firstReferences[bootstrapMethod[0]])[0])) continue;
+                    if (instantiatedDescriptor.equals(utf8[firstReferences[bootstrapMethod[3]]])) {
+                        implementations.add(Arrays.asList(memberRef(firstReferences[bootstrapMethod[2]])));
+                    }
+                }
+            }
+            return implementations;
+        }
+
+        /**
+         * Resolves a field or method reference.
+         *
+         * @return the internal name of the owner, the name and the descriptor.
+         */
+        String[] memberRef(int index) {
+            String owner = utf8[firstReferences[firstReferences[index]]];
+            int nameAndType = secondReferences[index];
+            return new String[]{owner, utf8[firstReferences[nameAndType]], utf8[secondReferences[nameAndType]]};
+        }
+
+        private static void skipAttributes(DataInputStream in) throws IOException {
+            int attributeCount = in.readUnsignedShort();
+            for (int attribute = 0; attribute < attributeCount; attribute++) {
+                in.readUnsignedShort();
+                skipFully(in, in.readInt());
+            }
+        }
+
+        private static void skipFully(DataInputStream in, int bytes) throws IOException {
+            int skipped = 0;
+            while (skipped < bytes) {
+                int step = in.skipBytes(bytes - skipped);
+                if (step <= 0) throw new IOException("Unexpected end of class file");
+                skipped += step;
+            }
+        }
+    }
+
+    private static final class MethodInfo {
+        final String name;
+        final String descriptor;
+        byte[] code;
+
+        MethodInfo(String name, String descriptor) {
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.plausing.asserts;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The registered mappers as a graph of types, see {@link MapperAssert#withMapper(Mappers.Mapper)}.
+ * <p>
+ * A pair of types without a registered mapper is converted by the shortest chain of registered mappers, e.g. Integer to
+ * BigDecimal with the mappers Integer to Long and Long to BigDecimal. A mapper applies to the subtypes of its source
+ * type, and its result may be a subtype of the wanted target type. A mapper registered for the exact pair is always
+ * used first, and it is the only mapper for a source type that is assignable to the target type.
+ * <p>
+ * The chains are resolved once per pair and cached with the composed converter.
+ */
+final class ConverterGraph {
+
+    private final Map<TypePair, Function<Object, Object>> mappers = new LinkedHashMap<TypePair, Function<Object, Object>>();
+
+    private final Map<TypePair, Optional<Chain>> chains = new ConcurrentHashMap<TypePair, Optional<Chain>>();
+
+    /**
+     * @param mappers the registered mappers, functions by their pair of types. The graph keeps a copy.
+     */
+    ConverterGraph(Map<TypePair, ?> mappers) {
+        mappers.forEach((typePair, mapper) -> this.mappers.put(typePair, untyped((Function<?, ?>) mapper)));
+    }
+
+    /**
+     * Returns the converter for a pair of types.
+     *
+     * @param sourceType the source type
+     * @param targetType the target type
+     * @return the registered mapper, the composition of a chain of registered mappers, or null if there is none.
+     */
+    Function<Object, Object> converterFor(Class<?> sourceType, Class<?> targetType) {
+        Chain chain = chainFor(sourceType, targetType);
+        return chain == null ? null : chain.converter;
+    }
+
+    /**
+     * Returns the shortest chain of registered mappers for a pair of types.
+     *
+     * @param sourceType the source type
+     * @param targetType the target type
+     * @return the type pairs of the mappers in the order of their application, or null if there is no chain.
+     */
+    List<TypePair> chainOf(Class<?> sourceType, Class<?> targetType) {
+        Chain chain = chainFor(sourceType, targetType);
+        return chain == null ? null : chain.pairs;
+    }
+
+    /**
+     * @param typePair a pair of types
+     * @return the registered mapper of the pair.
+     */
+    Function<Object, Object> mapperOf(TypePair typePair) {
+        return mappers.get(typePair);
+    }
+
+    private Chain chainFor(Class<?> sourceType, Class<?> targetType) {
+        if (mappers.isEmpty()) return null;
+        return chains.computeIfAbsent(new TypePair(sourceType, targetType), pair -> Optional.ofNullable(resolve(sourceType, targetType))).orElse(null);
+    }
+
+    /**
+     * Searches the shortest chain breadth first.
+     */
+    private Chain resolve(Class<?> sourceType, Class<?> targetType) {
+        TypePair exactPair = new TypePair(sourceType, targetType);
+        if (mappers.containsKey(exactPair)) {
+            return new Chain(Collections.singletonList(exactPair));
+        }
+        // values that can be assigned are only converted by a mapper for the exact pair
+        if (targetType.isAssignableFrom(sourceType)) {
+            return null;
+        }
+
+        // the mapper that has produced a type first, and the type a mapper has been applied to
+        Map<Class<?>, TypePair> reachedBy = new HashMap<Class<?>, TypePair>();
+        Map<TypePair, Class<?>> appliedTo = new HashMap<TypePair, Class<?>>();
+        Deque<Class<?>> types = new ArrayDeque<Class<?>>();
+        types.add(sourceType);
+        reachedBy.put(sourceType, null);
+        while (!types.isEmpty()) {
+            Class<?> type = types.poll();
+            for (TypePair pair : mappers.keySet()) {
+                if (!((Class<?>) pair.sourceType).isAssignableFrom(type) || reachedBy.containsKey(pair.targetType)) continue;
+                reachedBy.put(pair.targetType, pair);
+                appliedTo.put(pair, type);
+                if (targetType.isAssignableFrom(pair.targetType)) {
+                    LinkedList<TypePair> pairs = new LinkedList<TypePair>();
+                    for (TypePair link = pair; link != null; link = reachedBy.get(appliedTo.get(link))) {
+                        pairs.addFirst(link);
+                    }
+                    return new Chain(pairs);
+                }
+                types.add(pair.targetType);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A registered mapper is only applied to values of its source type, so its type arguments can be dropped.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> untyped(Function<?, ?> mapper) {
+        return (Function<Object, Object>) mapper;
+    }
+
+    /**
+     * A chain of registered mappers and its composed converter.
+     */
+    private final class Chain {
+
+        private final List<TypePair> pairs;
+
+        private final Function<Object, Object> converter;
+
+        Chain(List<TypePair> pairs) {
+            this.pairs = Collections.unmodifiableList(new ArrayList<TypePair>(pairs));
+            Function<Object, Object> converter = mappers.get(pairs.get(0));
+            for (TypePair pair : pairs.subList(1, pairs.size())) {
+                converter = converter.andThen(mappers.get(pair));
+            }
+            this.converter = converter;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.plausing.asserts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of {@link MapperAssert#isEquivalentTo(java.util.function.Function)}: the differences between the mapper
+ * under test and the reference mapper, and the measurements of both mappers.
+ */
+public class EquivalenceReport {
+
+    /** Number of compared inputs. */
+    public final int comparedInputs;
+
+    /** Descriptions of all differences. */
+    public final List<String> differences;
+
+    /** Measurement of the mapper under test. */
+    public final MapperMeasurement mapperUnderTest;
+
+    /** Measurement of the reference mapper. */
+    public final MapperMeasurement referenceMapper;
+
+    EquivalenceReport(int comparedInputs, List<String> differences, MapperMeasurement mapperUnderTest, MapperMeasurement referenceMapper) {
+        this.comparedInputs = comparedInputs;
+        this.differences = Collections.unmodifiableList(new ArrayList<String>(differences));
+        this.mapperUnderTest = mapperUnderTest;
+        this.referenceMapper = referenceMapper;
+    }
+
+    /**
+     * @return how many times faster the mapper under test is than the reference mapper.
+     */
+    public double getSpeedup() {
+        return mapperUnderTest.nanos == 0 ? Double.POSITIVE_INFINITY : (double) referenceMapper.nanos / mapperUnderTest.nanos;
+    }
+
+    /**
+     * @return the allocation of the mapper under test relative to the reference mapper, or NaN if it can't be measured.
+     */
+    public double getAllocationRatio() {
+        if (mapperUnderTest.allocatedBytes < 0 || referenceMapper.allocatedBytes <= 0) return Double.NaN;
+        return (double) mapperUnderTest.allocatedBytes / referenceMapper.allocatedBytes;
+    }
+
+    public boolean isEquivalent() {
+        return differences.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("Compared %d inputs, %d differences.%n", comparedInputs, differences.size()));
+        for (String difference : differences) {
+            result.append("  ").append(difference).append(String.format("%n"));
+        }
+        result.append(String.format("Mapper under test: %s%n", mapperUnderTest));
+        result.append(String.format("Reference mapper:  %s%n", referenceMapper));
+        result.append(String.format("Speedup: %.2fx, allocation ratio: %.2f", getSpeedup(), getAllocationRatio()));
+        return result.toString();
+    }
+}
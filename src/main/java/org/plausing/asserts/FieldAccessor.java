@@ -0,0 +1,84 @@
+package org.plausing.asserts;
+
+/**
+ * Indexed access to the fields of a source or target class.
+ * <p>
+ * The fields are the fields returned by {@link ReflectionUtil#getFields(Class)}, in the same order.
+ * Accessors are either generated at compile time (see {@link PlausibleAccessor}) or based on reflection.
+ *
+ * @param <T> the class
+ */
+public interface FieldAccessor<T> {
+
+    /**
+     * @return the number of fields.
+     */
+    int fieldCount();
+
+    /**
+     * @param index index of the field
+     * @return name of the field
+     */
+    String fieldName(int index);
+
+    /**
+     * @param index index of the field
+     * @return declared type of the field
+     */
+    Class<?> fieldType(int index);
+
+    /**
+     * Reads a field. Primitive values are boxed.
+     *
+     * @param object the object
+     * @param index  index of the field
+     * @return the value of the field
+     */
+    Object get(T object, int index);
+
+    /**
+     * Writes a field. Primitive values are unboxed.
+     *
+     * @param object the object
+     * @param index  index of the field
+     * @param value  the new value
+     */
+    void set(T object, int index, Object value);
+
+    default int getInt(T object, int index) {
+        return (Integer) get(object, index);
+    }
+
+    default void setInt(T object, int index, int value) {
+        set(object, index, value);
+    }
+
+    default long getLong(T object, int index) {
+        return (Long) get(object, index);
+    }
+
+    default void setLong(T object, int index, long value) {
+        set(object, index, value);
+    }
+
+    default double getDouble(T object, int index) {
+        return (Double) get(object, index);
+    }
+
+    default void setDouble(T object, int index, double value) {
+        set(object, index, value);
+    }
+
+    /**
+     * Finds a field by name.
+     *
+     * @param fieldName name of the field
+     * @return the index of the first field with this name, or -1.
+     */
+    default int indexOf(String fieldName) {
+        for (int index = 0; index < fieldCount(); index++) {
+            if (fieldName(index).equals(fieldName)) return index;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,222 @@
+package org.plausing.asserts;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Annotation processor that generates a {@link FieldAccessor} for every class annotated with {@link PlausibleAccessor}.
+ * <p>
+ * The generated accessor reads and writes the fields with plain field access. Its fields are the fields of
+ * {@link ReflectionUtil#getFields(Class)}: the non-static fields of the class and its superclasses, without entity constants.
+ */
+@SupportedAnnotationTypes("org.plausing.asserts.PlausibleAccessor")
+public class FieldAccessorProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(PlausibleAccessor.class))) {
+            List<VariableElement> fields = getFields(type);
+            if (fields != null) {
+                generateAccessor(type, fields);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the fields of the type and its superclasses.
+     *
+     * @param type the annotated type
+     * @return the fields, or null if the type can't get a generated accessor.
+     */
+    private List<VariableElement> getFields(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS || isPrivate(type) || type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))) {
+            error(type, "@PlausibleAccessor can only be used on top level or static nested classes that aren't private");
+            return null;
+        }
+
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+        TypeElement current = type;
+        while (current != null) {
+            for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+                if (field.getModifiers().contains(Modifier.STATIC)) continue;
+                if (ReflectionUtil.isExcludedFieldName(field.getSimpleName().toString())) continue;
+                boolean samePackage = processingEnv.getElementUtils().getPackageOf(current).equals(processingEnv.getElementUtils().getPackageOf(type));
+                if (isPrivate(field) || (!samePackage && !field.getModifiers().contains(Modifier.PUBLIC))) {
+                    error(field, "Field " + field.getSimpleName() + " can't be accessed by the generated accessor of " + type.getQualifiedName());
+                    return null;
+                }
+                fields.add(field);
+            }
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return fields;
+    }
+
+    private boolean isPrivate(Element element) {
+        return element.getModifiers().contains(Modifier.PRIVATE);
+    }
+
+    private void generateAccessor(TypeElement type, List<VariableElement> fields) {
+        Types types = processingEnv.getTypeUtils();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String accessorName = FieldAccessors.generatedAccessorName(binaryName);
+        int packageEnd = accessorName.lastIndexOf('.');
+        String packageName = packageEnd < 0 ? null : accessorName.substring(0, packageEnd);
+        String simpleName = accessorName.substring(packageEnd + 1);
+        String typeName = types.erasure(type.asType()).toString();
+
+        if (processingEnv.getElementUtils().getTypeElement(accessorName.replace('$', '.')) != null) {
+            // the accessor of an earlier build is part of the compiled sources.
+            return;
+        }
+
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(accessorName, type);
+            try (PrintWriter out = new PrintWriter(sourceFile.openWriter())) {
+                if (packageName != null) {
+                    out.println("package " + packageName + ";");
+                    out.println();
+                }
+                out.println("/**");
+                out.println(" * Field accessor for {@link " + typeName + "}.");
+                out.println(" * Generated by " + FieldAccessorProcessor.class.getName() + ".");
+                out.println(" */");
+                out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+                out.println("public final class " + simpleName + " implements org.plausing.asserts.FieldAccessor<" + typeName + "> {");
+                out.println();
+
+                out.print("    private static final String[] NAMES = {");
+                for (int index = 0; index < fields.size(); index++) {
+                    out.print((index == 0 ? "" : ", ") + "\"" + fields.get(index).getSimpleName() + "\"");
+                }
+                out.println("};");
+                out.print("    private static final Class<?>[] TYPES = {");
+                for (int index = 0; index < fields.size(); index++) {
+                    out.print((index == 0 ? "" : ", ") + types.erasure(fields.get(index).asType()) + ".class");
+                }
+                out.println("};");
+                out.println();
+
+                out.println("    @Override public int fieldCount() { return " + fields.size() + "; }");
+                out.println("    @Override public String fieldName(int index) { return NAMES[index]; }");
+                out.println("    @Override public Class<?> fieldType(int index) { return TYPES[index]; }");
+                out.println();
+
+                out.println("    @Override public Object get(" + typeName + " object, int index) {");
+                out.println("        switch (index) {");
+                for (int index = 0; index < fields.size(); index++) {
+                    out.println("            case " + index + ": return " + fieldReference(type, fields.get(index)) + ";");
+                }
+                out.println("            default: throw new IndexOutOfBoundsException(String.valueOf(index));");
+                out.println("        }");
+                out.println("    }");
+                out.println();
+
+                out.println("    @Override public void set(" + typeName + " object, int index, Object value) {");
+                out.println("        switch (index) {");
+                for (int index = 0; index < fields.size(); index++) {
+                    VariableElement field = fields.get(index);
+                    if (field.getModifiers().contains(Modifier.FINAL)) {
+                        out.println("            case " + index + ": throw new IllegalArgumentException(\"Field " + field.getSimpleName() + " is final\");");
+                    } else {
+                        out.println("            case " + index + ": " + fieldReference(type, field) + " = (" + boxedTypeName(field.asType()) + ") value; return;");
+                    }
+                }
+                out.println("            default: throw new IndexOutOfBoundsException(String.valueOf(index));");
+                out.println("        }");
+                out.println("    }");
+
+                generatePrimitiveAccessors(out, type, fields, typeName, TypeKind.INT, "Int", "int");
+                generatePrimitiveAccessors(out, type, fields, typeName, TypeKind.LONG, "Long", "long");
+                generatePrimitiveAccessors(out, type, fields, typeName, TypeKind.DOUBLE, "Double", "double");
+
+                out.println("}");
+            }
+        } catch (IOException e) {
+            error(type, "Can't write field accessor " + accessorName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Generates the typed getter and setter for the fields of one primitive type, without boxing.
+     */
+    private void generatePrimitiveAccessors(PrintWriter out, TypeElement type, List<VariableElement> fields, String typeName, TypeKind kind, String suffix, String primitiveName) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int index = 0; index < fields.size(); index++) {
+            if (fields.get(index).asType().getKind() == kind) indexes.add(index);
+        }
+        if (indexes.isEmpty()) return;
+
+        out.println();
+        out.println("    @Override public " + primitiveName + " get" + suffix + "(" + typeName + " object, int index) {");
+        out.println("        switch (index) {");
+        for (int index : indexes) {
+            out.println("            case " + index + ": return " + fieldReference(type, fields.get(index)) + ";");
+        }
+        out.println("            default: return (" + boxedTypeName(primitiveType(kind)) + ") get(object, index);");
+        out.println("        }");
+        out.println("    }");
+        out.println();
+        out.println("    @Override public void set" + suffix + "(" + typeName + " object, int index, " + primitiveName + " value) {");
+        out.println("        switch (index) {");
+        for (int index : indexes) {
+            if (!fields.get(index).getModifiers().contains(Modifier.FINAL)) {
+                out.println("            case " + index + ": " + fieldReference(type, fields.get(index)) + " = value; return;");
+            }
+        }
+        out.println("            default: set(object, index, value);");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    /**
+     * Returns the expression to access a field. Fields of superclasses are accessed with a cast, so that
+     * hidden fields are resolved the same way as by reflection.
+     */
+    private String fieldReference(TypeElement type, VariableElement field) {
+        TypeElement declaringType = (TypeElement) field.getEnclosingElement();
+        if (declaringType.equals(type)) {
+            return "object." + field.getSimpleName();
+        }
+        return "((" + processingEnv.getTypeUtils().erasure(declaringType.asType()) + ") object)." + field.getSimpleName();
+    }
+
+    private TypeMirror primitiveType(TypeKind kind) {
+        return processingEnv.getTypeUtils().getPrimitiveType(kind);
+    }
+
+    private String boxedTypeName(TypeMirror type) {
+        Types types = processingEnv.getTypeUtils();
+        if (type.getKind().isPrimitive()) {
+            return types.boxedClass(types.getPrimitiveType(type.getKind())).getQualifiedName().toString();
+        }
+        return types.erasure(type).toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
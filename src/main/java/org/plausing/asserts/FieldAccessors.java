@@ -0,0 +1,110 @@
+package org.plausing.asserts;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+/**
+ * Lookup of {@link FieldAccessor}s.
+ * <p>
+ * A generated accessor is used when there is one (see {@link PlausibleAccessor}), otherwise the fields are accessed
+ * by reflection. The accessor is looked up once per class.
+ */
+public class FieldAccessors {
+
+    /** Suffix of the generated accessor classes. */
+    static final String GENERATED_ACCESSOR_SUFFIX = "_PlausingAccessor";
+
+    private static final ClassValue<FieldAccessor<?>> ACCESSORS = new ClassValue<FieldAccessor<?>>() {
+        @Override
+        protected FieldAccessor<?> computeValue(Class<?> type) {
+            return createAccessor(type);
+        }
+    };
+
+    /**
+     * Returns the accessor for a class.
+     *
+     * @param type the class
+     * @param <T>  the class
+     * @return the generated accessor, or an accessor that uses reflection.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> FieldAccessor<T> forClass(Class<T> type) {
+        return (FieldAccessor<T>) ACCESSORS.get(type);
+    }
+
+    /**
+     * Returns the name of the generated accessor class for a class, e.g. com.example.Outer_Inner_PlausingAccessor
+     * for com.example.Outer$Inner.
+     *
+     * @param binaryName binary name of the class
+     * @return the binary name of the accessor class
+     */
+    static String generatedAccessorName(String binaryName) {
+        int packageEnd = binaryName.lastIndexOf('.');
+        String packagePrefix = binaryName.substring(0, packageEnd + 1);
+        String simpleBinaryName = binaryName.substring(packageEnd + 1);
+        return packagePrefix + simpleBinaryName.replace('$', '_') + GENERATED_ACCESSOR_SUFFIX;
+    }
+
+    private static FieldAccessor<?> createAccessor(Class<?> type) {
+        try {
+            Class<?> generatedClass = Class.forName(generatedAccessorName(type.getName()), true, type.getClassLoader());
+            return (FieldAccessor<?>) generatedClass.newInstance();
+        } catch (ClassNotFoundException | NoClassDefFoundError e) {
+            return new ReflectiveFieldAccessor<Object>(ReflectionUtil.getFields(type));
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Can't instantiate generated field accessor for " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Accessor that uses reflection.
+     *
+     * @param <T> the class
+     */
+    static class ReflectiveFieldAccessor<T> implements FieldAccessor<T> {
+
+        private final Field[] fields;
+
+        ReflectiveFieldAccessor(List<Field> fields) {
+            this.fields = fields.toArray(new Field[fields.size()]);
+            for (Field field : this.fields) {
+                field.setAccessible(true);
+            }
+        }
+
+        @Override
+        public int fieldCount() {
+            return fields.length;
+        }
+
+        @Override
+        public String fieldName(int index) {
+            return fields[index].getName();
+        }
+
+        @Override
+        public Class<?> fieldType(int index) {
+            return fields[index].getType();
+        }
+
+        @Override
+        public Object get(T object, int index) {
+            try {
+                return fields[index].get(object);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Can't read field " + fields[index].getName(), e);
+            }
+        }
+
+        @Override
+        public void set(T object, int index, Object value) {
+            try {
+                fields[index].set(object, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Can't write field " + fields[index].getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.plausing.asserts;
+
+/**
+ * A single check of {@link MapperAssert#fieldMappingChecks}: either the check that all target fields are mapped,
+ * or the check of the test values of one learned field pair.
+ */
+public final class FieldMappingCheck {
+
+    /** Name of the source field, or null for the check of the target fields. */
+    private final String sourceFieldName;
+
+    /** Name of the target field, or null for the check of the target fields. */
+    private final String targetFieldName;
+
+    private final Runnable check;
+
+    FieldMappingCheck(String sourceFieldName, String targetFieldName, Runnable check) {
+        this.sourceFieldName = sourceFieldName;
+        this.targetFieldName = targetFieldName;
+        this.check = check;
+    }
+
+    public String getSourceFieldName() {
+        return sourceFieldName;
+    }
+
+    public String getTargetFieldName() {
+        return targetFieldName;
+    }
+
+    /**
+     * @return "source --> target" for a field pair, "target fields are mapped" for the check of the target fields.
+     */
+    public String getDisplayName() {
+        return sourceFieldName == null ? "target fields are mapped" : sourceFieldName + " --> " + targetFieldName;
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @throws AssertionError if the check fails.
+     */
+    public void check() {
+        check.run();
+    }
+
+    @Override
+    public String toString() {
+        return getDisplayName();
+    }
+}
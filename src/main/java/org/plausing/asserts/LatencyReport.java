@@ -0,0 +1,140 @@
+package org.plausing.asserts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Result of the latency outlier detection, see {@link MapperAssert#whenDetectingLatencyOutliers(double)}:
+ * the overall median latency of the mapper and the test values whose median latency exceeds it by the outlier factor.
+ */
+public class LatencyReport {
+
+    /** Number of measured invocations. */
+    public final long invocations;
+
+    /** Median latency of all measured invocations in nanoseconds. */
+    public final long medianNanos;
+
+    /** Factor above the median latency that makes a test value an outlier. */
+    public final double outlierFactor;
+
+    /** The outliers, slowest first. */
+    public final List<Outlier> outliers;
+
+    LatencyReport(long invocations, long medianNanos, double outlierFactor, List<Outlier> outliers) {
+        this.invocations = invocations;
+        this.medianNanos = medianNanos;
+        this.outlierFactor = outlierFactor;
+        this.outliers = Collections.unmodifiableList(new ArrayList<Outlier>(outliers));
+    }
+
+    public boolean hasOutliers() {
+        return !outliers.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("Measured %d invocations, median %.1f us, %d outliers above %.1fx", invocations,
+                medianNanos / 1000.0, outliers.size(), outlierFactor));
+        for (Outlier outlier : outliers) {
+            result.append(String.format("%n  ")).append(outlier);
+        }
+        return result.toString();
+    }
+
+    /**
+     * A test value of a source field whose median latency exceeds the overall median by the outlier factor.
+     */
+    public static class Outlier {
+
+        /** Name of the source field. */
+        public final String sourceFieldName;
+
+        /** Description of the test value. */
+        public final String value;
+
+        /** Median latency of the test value in nanoseconds. */
+        public final long medianNanos;
+
+        /** Median latency of the test value relative to the overall median. */
+        public final double factor;
+
+        Outlier(String sourceFieldName, String value, long medianNanos, double factor) {
+            this.sourceFieldName = sourceFieldName;
+            this.value = value;
+            this.medianNanos = medianNanos;
+            this.factor = factor;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s=%s: median %.1f us, %.1fx", sourceFieldName, value, medianNanos / 1000.0, factor);
+        }
+    }
+
+    /**
+     * Collects latency samples by source field and index of the test value, so that test values with the same
+     * description, e.g. two large arrays, don't replace each other. Can be used by many threads.
+     */
+    static final class Recorder {
+
+        private final Map<List<Object>, Samples> samplesByInput = new ConcurrentHashMap<List<Object>, Samples>();
+
+        /** The latencies of a test value and its description. */
+        private static final class Samples {
+            final String value;
+            final long[] nanos;
+
+            Samples(String value, long[] nanos) {
+                this.value = value;
+                this.nanos = nanos;
+            }
+        }
+
+        /**
+         * Records the samples of a test value.
+         *
+         * @param sourceFieldName name of the source field
+         * @param valueIndex      index of the test value among the values of the source field
+         * @param value           description of the test value
+         * @param nanos           the measured latencies in nanoseconds
+         */
+        void record(String sourceFieldName, int valueIndex, String value, long[] nanos) {
+            samplesByInput.put(Arrays.<Object>asList(sourceFieldName, valueIndex), new Samples(value, nanos.clone()));
+        }
+
+        /**
+         * Compares the median latency of every test value with the overall median.
+         *
+         * @param outlierFactor factor above the median latency that makes a test value an outlier
+         * @return the report
+         */
+        LatencyReport report(double outlierFactor) {
+            long[] allSamples = samplesByInput.values().stream().flatMapToLong(samples -> Arrays.stream(samples.nanos)).toArray();
+            long median = median(allSamples);
+            List<Outlier> outliers = new ArrayList<Outlier>();
+            samplesByInput.forEach((input, samples) -> {
+                long inputMedian = median(samples.nanos);
+                double factor = (double) inputMedian / Math.max(median, 1);
+                if (factor > outlierFactor) {
+                    outliers.add(new Outlier((String) input.get(0), samples.value, inputMedian, factor));
+                }
+            });
+            outliers.sort(Comparator.comparingDouble((Outlier outlier) -> outlier.factor).reversed());
+            return new LatencyReport(allSamples.length, median, outlierFactor, outliers);
+        }
+
+        private static long median(long[] samples) {
+            if (samples.length == 0) return 0;
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            return sorted[sorted.length / 2];
+        }
+    }
+}
@@ -4,13 +4,28 @@ import junit.framework.AssertionFailedError;
 import org.apache.log4j.Logger;
 import org.assertj.core.api.AbstractAssert;
 import org.assertj.core.api.Assertions;
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
+import org.junit.AssumptionViolatedException;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
+import java.nio.file.Path;
 import java.sql.SQLException;
-import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -39,23 +54,87 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
     /** Logger. */
     private static Logger LOG = Logger.getLogger(MapperAssert.class);
 
+    /** Maximum number of sources per invocation of a batch mapper. */
+    private static final int BATCH_SIZE = 1000;
+
+    /** Number of timed invocations per test value when latency outliers are detected. */
+    private static final int LATENCY_SAMPLES = 5;
+
+    /** Threads for mapper invocations with a timeout. Threads of overrunning invocations are abandoned. */
+    private static final ExecutorService INVOCATION_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "plausing-mapper-invocation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /** The mapperUnderTest function under Test */
     private final Function<SOURCE, TARGET> mapperUnderTest;
 
     /** A function that generates a new instance of the source class. */
     private Supplier<SOURCE> sourceSupplier;
 
+    /** A source instance that is used as a reference */
+    private SOURCE sourceReference;
+
     /** A target instance that is used as a reference */
     private TARGET targetReference;
 
-    /** Test data container */
+    /** Fields of SOURCE */
+    private ArrayList<Field> sourceFields;
+
+    /** Fields of TARGET */
+    private ArrayList<Field> targetFields;
+
+    /** Test data container. Shared and frozen until the assertion changes its configuration. */
     private MapperAssertTestData testData;
 
-    /** Fields that should not be mapped by the mapperUnderTest */
-    private Set<String> excludedTargetFields;
+    /** Field access for the SOURCE class, generated or based on reflection. */
+    private FieldAccessor<SOURCE> sourceAccessor;
+
+    /** Field access for the TARGET class, generated or based on reflection. */
+    private FieldAccessor<TARGET> targetAccessor;
+
+    /** Index of every source and target field in its accessor. */
+    private Map<Field, Integer> fieldIndexes;
+
+    /** Target fields by their index in the target accessor. */
+    private Field[] targetFieldsByIndex;
+
+    /** Names of the fields that the mapper writes to a target of a new source, if writes are tracked. */
+    private Set<String> referenceWrittenFieldNames;
+
+    /** Copies of the default primitive array test values by type, so that the mapper can't change the shared arrays. */
+    private final Map<Class, List> primitiveArrayTestValues = new ConcurrentHashMap<Class, List>();
+
+    /** Mapping learned by the last call of hasPlausibleMappingFor. */
+    private Map<Field, Field> learnedMapping;
+
+    /** File to record the trace of hasPlausibleMappingFor, or null. */
+    private Path traceFile;
+
+    /** Writer of the trace while hasPlausibleMappingFor is running. */
+    private MapperTrace.Writer<SOURCE, TARGET> traceWriter;
+
+    /** Report of the last call of isEquivalentTo. */
+    private EquivalenceReport equivalenceReport;
+
+    /** Latency samples of the running verification, or null if latency outliers aren't detected. */
+    private volatile LatencyReport.Recorder latencyRecorder;
+
+    /** Report of the last latency outlier detection. */
+    private LatencyReport latencyReport;
+
+    /** The batch mapper under test, or null if the mapper under test maps single objects. */
+    private Function<List<SOURCE>, List<TARGET>> batchMapper;
 
-    /** A lookup table of the elements being contained in collection fields. */
-    private Map<String, Class> collectionElementTypes = new HashMap<String, Class>();
+    /** Targets mapped in batches by source field and test value, or null. */
+    private Map<List<Object>, TARGET> batchTargets;
+
+    /** The asynchronous mapper under test, or null if the mapper under test returns its targets directly. */
+    private Function<SOURCE, CompletableFuture<TARGET>> asyncMapper;
+
+    /** Completed targets of the asynchronous mapper by source field and test value, or null. */
+    private Map<List<Object>, CompletableFuture<TARGET>> asyncTargets;
 
 
     /**
@@ -67,30 +146,67 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
     protected MapperAssert(Function<SOURCE, TARGET> mapperUnderTest, Class<?> selfType) {
         super(mapperUnderTest, selfType);
         this.mapperUnderTest = mapperUnderTest;
-        this.testData = new MapperAssertTestData();
-        this.excludedTargetFields = new  HashSet<String>();
+        this.testData = MapperAssertTestData.DEFAULTS;
         this.targetReference = null;
-
-        // Default test values.
-        Date testDate = Date.from(LocalDate.of(1977, 4, 1).atStartOfDay().atZone(ZoneId.systemDefault()).toInstant());
-        java.sql.Date testSqlDate = new java.sql.Date(testDate.getTime());
-        String aTestString = "A test string.";
-
-        whenUsingTestAndTrainingValuesForType(String.class, Arrays.asList(aTestString, null), aTestString);
-        whenUsingTestAndTrainingValuesForType(int.class, Arrays.asList(Integer.MIN_VALUE, Integer.MAX_VALUE, 1, -1, 0), 1);
-        whenUsingTestAndTrainingValuesForType(Integer.class, Arrays.asList(Integer.MIN_VALUE, Integer.MAX_VALUE, 1, -1, 0, null), 1);
-        whenUsingTestAndTrainingValuesForType(long.class, Arrays.asList(Long.MIN_VALUE, Long.MAX_VALUE, 1L, -1L, 0L), 1L);
-        whenUsingTestAndTrainingValuesForType(Long.class, Arrays.asList(Long.MIN_VALUE, Long.MAX_VALUE, 1L, -1L, 0L, null), 1L);
-        whenUsingTestAndTrainingValuesForType(double.class, Arrays.asList(Double.MIN_VALUE, Double.MAX_VALUE, 1.0, -1.0, 0.0), 1.0);
-        whenUsingTestAndTrainingValuesForType(Double.class, Arrays.asList(Double.MIN_VALUE, Double.MAX_VALUE, 1.0, -1.0, 0.0, null), 1.0);
-        whenUsingTestAndTrainingValuesForType(java.util.Date.class, Arrays.asList(testDate, null), testDate);
-        whenUsingTestAndTrainingValuesForType(java.sql.Date.class, Arrays.asList(testSqlDate, null), testSqlDate);
     }
 
     /*---------------------------------------------------------------------------------------------------------------
       Assertions
       ---------------------------------------------------------------------------------------------------------------*/
 
+    /**
+     * Creates an assertion for a batch mapper that maps a list of sources to the list of their targets.
+     * Use {@link PlausingAssertions#assertThatBatchMapper(Function)} to get a new instance.
+     *
+     * @param batchMapper the batch mapper to be tested
+     * @param <SOURCE>    source type of the batch mapper
+     * @param <TARGET>    target type of the batch mapper
+     * @return the assertion
+     */
+    static <SOURCE, TARGET> MapperAssert<SOURCE, TARGET> forBatchMapper(Function<List<SOURCE>, List<TARGET>> batchMapper) {
+        MapperAssert<SOURCE, TARGET> mapperAssert = new MapperAssert<SOURCE, TARGET>(source -> {
+            List<TARGET> targets = batchMapper.apply(Collections.singletonList(source));
+            if (targets == null || targets.size() != 1) {
+                throw new AssertionFailedError(String.format("Batch mapper returned %s targets for 1 source", targets == null ? null : targets.size()));
+            }
+            return targets.get(0);
+        }, MapperAssert.class);
+        mapperAssert.batchMapper = batchMapper;
+        return mapperAssert;
+    }
+
+    /**
+     * Creates an assertion for an asynchronous mapper that returns a future of the target.
+     * Use {@link PlausingAssertions#assertThatAsyncMapper(Function)} to get a new instance.
+     *
+     * @param asyncMapper the asynchronous mapper to be tested
+     * @param <SOURCE>    source type of the asynchronous mapper
+     * @param <TARGET>    target type of the asynchronous mapper
+     * @return the assertion
+     */
+    static <SOURCE, TARGET> MapperAssert<SOURCE, TARGET> forAsyncMapper(Function<SOURCE, CompletableFuture<TARGET>> asyncMapper) {
+        MapperAssert<SOURCE, TARGET> mapperAssert = new MapperAssert<SOURCE, TARGET>(source -> awaitTarget(asyncMapper.apply(source)), MapperAssert.class);
+        mapperAssert.asyncMapper = asyncMapper;
+        return mapperAssert;
+    }
+
+    /**
+     * Waits for the target of an asynchronous mapper. An exceptional completion is rethrown with its cause, as if the
+     * mapper had thrown it.
+     */
+    private static <TARGET> TARGET awaitTarget(CompletableFuture<TARGET> target) {
+        if (target == null) {
+            throw new AssertionFailedError("Asynchronous mapper returned null instead of a future");
+        }
+        try {
+            return target.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
     /**
      * Asserts that the mapper maps SOURCE to TARGET in a plausible way.
      *
@@ -98,8 +214,652 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @return this.
      */
     public MapperAssert<SOURCE, TARGET> hasPlausibleMappingFor(Supplier<SOURCE> sourceSupplier) {
+        if (traceFile == null) {
+            return assertPlausibleMapping(sourceSupplier);
+        }
+        try (MapperTrace.Writer<SOURCE, TARGET> writer = new MapperTrace.Writer<SOURCE, TARGET>(traceFile)) {
+            traceWriter = writer;
+            assertPlausibleMapping(sourceSupplier);
+            LOG.info(String.format("Recorded %d records in trace %s", writer.getRecords(), traceFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't write trace " + traceFile, e);
+        } finally {
+            traceWriter = null;
+        }
+        return myself;
+    }
+
+    private MapperAssert<SOURCE, TARGET> assertPlausibleMapping(Supplier<SOURCE> sourceSupplier) {
+        Set<Field> changedTargetFields = learnMappingFor(sourceSupplier);
+
+        // Wir pruefen, dass alle Target-Felder gemappt wurden.
+        assertAllTargetFieldsAreMapped(targetFields, changedTargetFields);
+
+        // Vierter Schritt: Wir pruefen, ob die Werte, die in einer Spalte enthalten sind,
+        // exakt gleich gemappt werden.
+        if (testData.getLatencyOutlierFactor() > 0) {
+            latencyRecorder = new LatencyReport.Recorder();
+        }
+        try {
+            assertThatAllTestValuesAreMappedToTheirExpectedValues(sourceFields, learnedMapping);
+            if (latencyRecorder != null) {
+                latencyReport = latencyRecorder.report(testData.getLatencyOutlierFactor());
+                if (latencyReport.hasOutliers()) {
+                    LOG.warn(latencyReport);
+                } else {
+                    LOG.info(latencyReport);
+                }
+            }
+        } catch (IllegalAccessException | InstantiationException | NoSuchFieldException | SQLException e) {
+            throw new AssertionFailedError(e.getMessage());
+        } finally {
+            latencyRecorder = null;
+        }
+
+        return myself;
+    }
+
+    /**
+     * Asserts that the mapper maps every source of a recorded trace to the recorded target.
+     * The trace is replayed without the oracle, in parallel, see {@link MapperTrace}.
+     *
+     * @param traceFile      the trace, recorded with {@link #whenRecordingTrace(Path)}
+     * @param sourceSupplier Function that creates a new instance of SOURCE on demand. The recorded values are set on it.
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> matchesTrace(Path traceFile, Supplier<SOURCE> sourceSupplier) {
+        MapperTrace.ReplayResult result;
+        try {
+            result = MapperTrace.replay(traceFile, mapperUnderTest, sourceSupplier);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read trace " + traceFile, e);
+        }
+        LOG.info(result);
+        if (!result.isEquivalent()) {
+            fail("Mapper doesn't match the trace " + traceFile + ". " + result);
+        }
+        return myself;
+    }
+
+    /**
+     * Learns the mapping and returns the checks of {@link #hasPlausibleMappingFor(Supplier)} as separate checks:
+     * one check that all target fields are mapped, and one check per learned field pair.
+     * <p>
+     * The checks are independent of each other, so a test framework can report, rerun and parallelize them one by one.
+     * With JUnit 5, they can be returned as dynamic tests:
+     * <pre>
+     * &#64;TestFactory
+     * Stream&lt;DynamicTest&gt; fieldMappings() {
+     *     return assertThat(mapper).fieldMappingChecks(Source::new).stream()
+     *             .map(check -&gt; DynamicTest.dynamicTest(check.getDisplayName(), check::check));
+     * }
+     * </pre>
+     * Running the checks in parallel requires a mapper and a source supplier that can be used by many threads.
+     *
+     * @param sourceSupplier Function that creates a new instance of SOURCE on demand.
+     * @return the checks, in the order of the source fields.
+     */
+    public List<FieldMappingCheck> fieldMappingChecks(Supplier<SOURCE> sourceSupplier) {
+        Set<Field> changedTargetFields = learnMappingFor(sourceSupplier);
+        Map<Field, Field> mapping = learnedMapping;
+
+        List<FieldMappingCheck> checks = new ArrayList<FieldMappingCheck>();
+        checks.add(new FieldMappingCheck(null, null, () -> assertAllTargetFieldsAreMapped(targetFields, changedTargetFields)));
+        for (Field sourceField : sourceFields) {
+            Field targetField = mapping.get(sourceField);
+            if (targetField == null) continue;
+            checks.add(new FieldMappingCheck(sourceField.getName(), targetField.getName(), () -> {
+                try {
+                    assertThatFieldMappingIsPlausible(sourceField, targetField);
+                } catch (IllegalAccessException | NoSuchFieldException | SQLException e) {
+                    throw new AssertionFailedError(e.getMessage());
+                }
+            }));
+        }
+        return checks;
+    }
+
+    /**
+     * Asserts that the mapper maps SOURCE to TARGET in a plausible way, and that the inverse mapper maps every target
+     * back to its source.
+     * <p>
+     * The mapping is learned once, for the mapper. The inverse mapper isn't learned: it is expected to map every target
+     * field back to the source field it has been mapped from. It is applied to the target of every verified test value,
+     * and every mapped source field of the result has to be equal to the source field of the original source.
+     * Fields with an override are mapped in one direction only, so they are not compared.
+     *
+     * @param inverseMapper  the mapper from TARGET back to SOURCE
+     * @param sourceSupplier Function that creates a new instance of SOURCE on demand.
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> hasPlausibleRoundTripWith(Function<TARGET, SOURCE> inverseMapper, Supplier<SOURCE> sourceSupplier) {
+        Set<Field> changedTargetFields = learnMappingFor(sourceSupplier);
+        assertAllTargetFieldsAreMapped(targetFields, changedTargetFields);
+
+        // the mapped source fields that have to survive the round trip
+        List<Field> roundTripFields = new ArrayList<Field>();
+        for (Field sourceField : sourceFields) {
+            Field targetField = learnedMapping.get(sourceField);
+            if (targetField != null && getOverrideForFieldPair(sourceField, targetField) == null) {
+                roundTripFields.add(sourceField);
+            }
+        }
+
+        try {
+            SOURCE source = sourceSupplier.get();
+            assertRoundTrip(inverseMapper, source, applyMapper(source, null, null), roundTripFields, "the source reference");
+            for (Field sourceField : sourceFields) {
+                Field targetField = learnedMapping.get(sourceField);
+                if (targetField == null) continue;
+                LOG.info(String.format("Testing round trip: %s --> %s --> %s ... ", sourceField.getName(), targetField.getName(), sourceField.getName()));
+
+                boolean nonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
+                OverrideMapping override = getOverrideForFieldPair(sourceField, targetField);
+                for (Object testValue : (List<?>) getTestValuesForField(sourceField)) {
+                    if (testValue == null && nonNullField) continue;
+                    source = sourceSupplier.get();
+                    sourceAccessor.set(source, fieldIndexes.get(sourceField), testValue);
+                    TARGET target = applyMapper(source, sourceField, testValue);
+                    assertThatTargetFieldHasExpectedValue(sourceField, targetField, override, testValue, target);
+                    assertRoundTrip(inverseMapper, source, target, roundTripFields,
+                            "field " + sourceField.getName() + " with value " + describeValue(testValue));
+                }
+            }
+        } catch (SQLException e) {
+            throw new AssertionFailedError(e.getMessage());
+        }
+        return myself;
+    }
+
+    /**
+     * Applies the inverse mapper to a target and asserts that the mapped source fields are equal to those of the source.
+     *
+     * @param inverseMapper   the mapper from TARGET back to SOURCE
+     * @param source          the source the target has been mapped from
+     * @param target          the target
+     * @param roundTripFields the source fields to compare
+     * @param input           description of the source
+     */
+    private void assertRoundTrip(Function<TARGET, SOURCE> inverseMapper, SOURCE source, TARGET target, List<Field> roundTripFields, String input) {
+        SOURCE roundTrip;
+        try {
+            roundTrip = inverseMapper.apply(target);
+        } catch (Throwable e) {
+            AssertionFailedError assertionFailedError = new AssertionFailedError("Exception in the inverse mapper for " + input);
+            assertionFailedError.initCause(e);
+            throw assertionFailedError;
+        }
+        if (roundTrip == null) {
+            fail("Inverse mapper returned null for " + input);
+        }
+        for (Field sourceField : roundTripFields) {
+            int index = fieldIndexes.get(sourceField);
+            assertMappedValue(String.format("Error in round trip %s --> %s --> %s for %s", sourceField.getName(),
+                    learnedMapping.get(sourceField).getName(), sourceField.getName(), input),
+                    sourceAccessor.get(roundTrip, index), sourceAccessor.get(source, index));
+        }
+    }
+
+    /**
+     * Creates the references and learns the mapping of the source fields.
+     *
+     * @param sourceSupplier Function that creates a new instance of SOURCE on demand.
+     * @return the target fields that are changed by the mapper.
+     */
+    private Set<Field> learnMappingFor(Supplier<SOURCE> sourceSupplier) {
+        prepareReferences(sourceSupplier);
+        if (!testData.isWriteTracking()) {
+            return learnMappingFromTestValues();
+        }
+        if (!WriteTracker.isInstalled()) {
+            fail("Tracking writes needs the write tracking agent, e.g. -javaagent:plausing-assert.jar=com.example.mappers");
+        }
+        Class<?> targetClass = targetReference.getClass();
+        WriteTracker.start(targetClass);
+        try {
+            referenceWrittenFieldNames = WriteTracker.takeWrites(applyMapper(sourceSupplier.get(), null, null));
+            return learnMappingFromTestValues();
+        } finally {
+            WriteTracker.stop(targetClass);
+        }
+    }
+
+    /**
+     * Learns the mapping of the source fields with the prepared references.
+     *
+     * @return the target fields that are changed by the mapper.
+     */
+    private Set<Field> learnMappingFromTestValues() {
+        if (batchMapper != null) {
+            mapTestValuesInBatches();
+        }
+        if (asyncMapper != null) {
+            mapTestValuesConcurrently();
+        }
+
+        // Wir lernen das Mapping und testen dabei, ob ein Feld auf mehrere Felder abgebildet wird.
+        Set<Field> changedTargetFields = new HashSet<Field>();
+        Map<Field, Field> mapping = new HashMap<Field, Field>();
+        List<Field> sourceFieldsToLearn = sourceFields;
+        if (testData.isBytecodeLearning()) {
+            sourceFieldsToLearn = learnMappingFromBytecode(sourceFieldsToLearn, changedTargetFields, mapping);
+        }
+        if (testData.isSentinelLearning()) {
+            sourceFieldsToLearn = learnMappingWithSentinels(sourceReference, sourceFieldsToLearn, changedTargetFields, mapping);
+        }
+        learnMapping(sourceReference, targetReference, sourceFieldsToLearn, changedTargetFields, mapping);
+        learnedMapping = mapping;
+        return changedTargetFields;
+    }
 
+    /**
+     * Generates the Java source of a mapper with the mapping learned by {@link #hasPlausibleMappingFor(Supplier)}.
+     * <p>
+     * The generated mapper converts every field the way the {@link MappingOracle} expects it, with plain field access
+     * and without reflection. It can be used as a fast mapper or as a baseline for a hand-written one. Overrides and
+     * registered mappers are passed to its constructor.
+     *
+     * @param qualifiedClassName qualified name of the generated class
+     * @return the source of the generated class
+     * @throws IllegalStateException if no mapping has been learned, or if it can't be written as source.
+     */
+    public String generateMapperSource(String qualifiedClassName) {
+        if (learnedMapping == null) {
+            throw new IllegalStateException("No learned mapping. Call hasPlausibleMappingFor first.");
+        }
+        return new MapperSourceGenerator(sourceReference.getClass(), targetReference.getClass(), qualifiedClassName, testData)
+                .generate(sourceFields, learnedMapping);
+    }
 
+    /**
+     * Asserts that the mapper behaves exactly like a reference mapper, using the source supplier of a previous call of
+     * {@link #hasPlausibleMappingFor(Supplier)}.
+     *
+     * @param referenceMapper the reference mapper
+     * @return this.
+     * @see #isEquivalentTo(Function, Supplier)
+     */
+    public MapperAssert<SOURCE, TARGET> isEquivalentTo(Function<SOURCE, TARGET> referenceMapper) {
+        if (sourceSupplier == null) {
+            throw new IllegalStateException("No source supplier. Call hasPlausibleMappingFor first or use isEquivalentTo(referenceMapper, sourceSupplier).");
+        }
+        return isEquivalentTo(referenceMapper, sourceSupplier);
+    }
+
+    /**
+     * Asserts that the mapper behaves exactly like a reference mapper.
+     * <p>
+     * Both mappers are applied to the source reference and to a source for every test value of every source field.
+     * Every target field of the results is compared, and every difference is reported. Exceptions are equivalent if both
+     * mappers throw an exception of the same class. Every mapper gets its own sources with the same values. Afterwards,
+     * both mappers are measured in alternating rounds, see {@link MapperMeasurement#measureAlternating}; the relative
+     * throughput and allocation are logged and available with {@link #getEquivalenceReport()}.
+     *
+     * @param referenceMapper the reference mapper
+     * @param sourceSupplier  Function that creates a new instance of SOURCE on demand.
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> isEquivalentTo(Function<SOURCE, TARGET> referenceMapper, Supplier<SOURCE> sourceSupplier) {
+        prepareReferences(sourceSupplier);
+
+        // generate the value space: the source reference plus every test value of every field, with a separate
+        // source for each mapper, so that a mapper that changes its source can't affect the other one
+        List<String> descriptions = new ArrayList<String>();
+        List<SOURCE> sources = new ArrayList<SOURCE>();
+        List<SOURCE> referenceSources = new ArrayList<SOURCE>();
+        descriptions.add("source reference");
+        sources.add(sourceSupplier.get());
+        referenceSources.add(sourceSupplier.get());
+        for (Field sourceField : sourceFields) {
+            boolean nonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
+            for (Object testValue : (List<?>) getTestValuesForField(sourceField)) {
+                if (testValue == null && nonNullField) continue;
+                SOURCE source = sourceSupplier.get();
+                sourceAccessor.set(source, fieldIndexes.get(sourceField), testValue);
+                SOURCE referenceSource = sourceSupplier.get();
+                sourceAccessor.set(referenceSource, fieldIndexes.get(sourceField), testValue);
+                descriptions.add(sourceField.getName() + "=" + describeValue(testValue));
+                sources.add(source);
+                referenceSources.add(referenceSource);
+            }
+        }
+
+        // compare the results
+        Map<String, List<String>> differencesByTargetField = new LinkedHashMap<String, List<String>>();
+        for (int index = 0; index < sources.size(); index++) {
+            compareMappers(referenceMapper, referenceSources.get(index), sources.get(index), descriptions.get(index), differencesByTargetField);
+        }
+        List<String> differences = new ArrayList<String>();
+        differencesByTargetField.forEach((targetFieldName, inputs) ->
+                differences.add(String.format("%s differs for %d inputs, e.g. %s", targetFieldName, inputs.size(), inputs.get(0))));
+
+        // measure both mappers in alternating rounds on their own sources
+        List<MapperMeasurement> measurements = MapperMeasurement.measureAlternating(mapperUnderTest, sources, referenceMapper, referenceSources, 3, 6);
+        MapperMeasurement mapperUnderTestMeasurement = measurements.get(0);
+        MapperMeasurement referenceMeasurement = measurements.get(1);
+        equivalenceReport = new EquivalenceReport(sources.size(), differences, mapperUnderTestMeasurement, referenceMeasurement);
+        LOG.info(equivalenceReport);
+
+        if (!equivalenceReport.isEquivalent()) {
+            fail("Mapper isn't equivalent to the reference mapper. " + equivalenceReport);
+        }
+        return myself;
+    }
+
+    /**
+     * Returns the report of the last call of {@link #isEquivalentTo(Function, Supplier)}.
+     *
+     * @return the report, or null.
+     */
+    public EquivalenceReport getEquivalenceReport() {
+        return equivalenceReport;
+    }
+
+    /**
+     * Asserts that the mapper doesn't retain its sources, using the source supplier of a previous call of
+     * {@link #hasPlausibleMappingFor(Supplier)}.
+     *
+     * @return this.
+     * @see #doesNotRetainSource(Supplier)
+     */
+    public MapperAssert<SOURCE, TARGET> doesNotRetainSource() {
+        if (sourceSupplier == null) {
+            throw new IllegalStateException("No source supplier. Call hasPlausibleMappingFor first or use doesNotRetainSource(sourceSupplier).");
+        }
+        return doesNotRetainSource(sourceSupplier);
+    }
+
+    /**
+     * Asserts that the mapper doesn't retain its sources, neither through the targets nor through static state.
+     * <p>
+     * The mapper is applied to a new source and to a source for every test value of every source field. The targets
+     * are kept, the sources are only referenced weakly. After a garbage collection, every source has to be collected.
+     * The assertion fails for a retained source with a reference path: from the target, from the mapper, or from a
+     * static field of the classes of the mapper, SOURCE and TARGET. If a source without such a path hasn't been
+     * collected, e.g. because System.gc() is disabled, a full collection is forced by allocating memory. A source that
+     * is still retained without a known path makes the result inconclusive, which is reported as a violated assumption.
+     * <p>
+     * The source supplier must create a new instance for every call.
+     *
+     * @param sourceSupplier Function that creates a new instance of SOURCE on demand.
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> doesNotRetainSource(Supplier<SOURCE> sourceSupplier) {
+        prepareReferences(sourceSupplier);
+
+        List<String> descriptions = new ArrayList<String>();
+        List<WeakReference<SOURCE>> sources = new ArrayList<WeakReference<SOURCE>>();
+        List<TARGET> targets = new ArrayList<TARGET>();
+        descriptions.add("a new source");
+        mapWeakSource(null, null, sources, targets);
+        for (Field sourceField : sourceFields) {
+            boolean nonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
+            for (Object testValue : (List<?>) getTestValuesForField(sourceField)) {
+                if (testValue == null && nonNullField) continue;
+                descriptions.add("field " + sourceField.getName() + " with value " + describeValue(testValue));
+                mapWeakSource(sourceField, testValue, sources, targets);
+            }
+        }
+
+        collectGarbage(sources);
+        failIfSourceIsRetained(sources, targets, descriptions);
+        if (!isCleared(sources)) {
+            // System.gc() may be disabled or slow, a full collection is forced by memory pressure
+            collectGarbageUnderMemoryPressure();
+            failIfSourceIsRetained(sources, targets, descriptions);
+        }
+        for (int index = 0; index < sources.size(); index++) {
+            if (sources.get(index).get() != null) {
+                throw new AssumptionViolatedException(String.format("Retention of the source of %s is inconclusive: "
+                        + "it hasn't been collected, but no reference path to it has been found", descriptions.get(index)));
+            }
+        }
+        LOG.info(String.format("All %d sources have been collected", sources.size()));
+        return myself;
+    }
+
+    /**
+     * Asserts that every target retains at most a number of bytes, using the source supplier of a previous call of
+     * {@link #hasPlausibleMappingFor(Supplier)}.
+     *
+     * @param bytes the maximum retained size of a target
+     * @return this.
+     * @see #targetRetainedSizeAtMost(long, Supplier)
+     */
+    public MapperAssert<SOURCE, TARGET> targetRetainedSizeAtMost(long bytes) {
+        if (sourceSupplier == null) {
+            throw new IllegalStateException("No source supplier. Call hasPlausibleMappingFor first or use targetRetainedSizeAtMost(bytes, sourceSupplier).");
+        }
+        return targetRetainedSizeAtMost(bytes, sourceSupplier);
+    }
+
+    /**
+     * Asserts that every target retains at most a number of bytes.
+     * <p>
+     * The mapper is applied to a new source and to a source for every test value of every source field. The retained size
+     * of every target is its deep size, estimated from the field layout, see {@link RetainedSize}. Objects that the target
+     * shares with its source count too, because the target keeps them alive, but they are reported as shared. For the
+     * largest target, the sizes of its fields are reported, largest first, so a duplicated string or a needless wrapper
+     * shows up by its field name.
+     *
+     * @param bytes          the maximum retained size of a target
+     * @param sourceSupplier Function that creates a new instance of SOURCE on demand.
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> targetRetainedSizeAtMost(long bytes, Supplier<SOURCE> sourceSupplier) {
+        prepareReferences(sourceSupplier);
+
+        String largestInput = null;
+        Map<String, RetainedSize.FieldSize> largestSizes = null;
+        long largestSize = -1;
+        List<Object[]> inputs = new ArrayList<Object[]>();
+        inputs.add(new Object[]{null, null});
+        for (Field sourceField : sourceFields) {
+            boolean nonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
+            for (Object testValue : (List<?>) getTestValuesForField(sourceField)) {
+                if (testValue == null && nonNullField) continue;
+                inputs.add(new Object[]{sourceField, testValue});
+            }
+        }
+        for (Object[] input : inputs) {
+            Field sourceField = (Field) input[0];
+            SOURCE source = sourceSupplier.get();
+            if (sourceField != null) {
+                sourceAccessor.set(source, fieldIndexes.get(sourceField), input[1]);
+            }
+            TARGET target = applyMapper(source, sourceField, input[1]);
+            if (target == null) continue;
+
+            Map<String, RetainedSize.FieldSize> sizes = new RetainedSize(source).sizesByField(target);
+            long size = sizes.values().stream().mapToLong(fieldSize -> fieldSize.bytes).sum();
+            if (size > largestSize) {
+                largestSize = size;
+                largestSizes = sizes;
+                largestInput = sourceField == null ? "a new source" : "field " + sourceField.getName() + " with value " + describeValue(input[1]);
+            }
+        }
+
+        String contributors = largestSizes == null ? "" : largestSizes.entrySet().stream()
+                .filter(size -> size.getValue().bytes > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<String, RetainedSize.FieldSize> size) -> size.getValue().bytes).reversed())
+                .map(size -> size.getKey() + " " + size.getValue())
+                .collect(joining(", "));
+        if (largestSize > bytes) {
+            fail(String.format("Target of %s retains %d bytes, more than %d: %s", largestInput, largestSize, bytes, contributors));
+        }
+        LOG.info(String.format("Largest target retains %d bytes for %s: %s", largestSize, largestInput, contributors));
+        return myself;
+    }
+
+    /**
+     * Maps a new source with the value of a source field and keeps the target, but only a weak reference to the source.
+     *
+     * @param sourceField the source field, or null for a new source
+     * @param value       the value of the source field
+     * @param sources     the weak references to the sources
+     * @param targets     the targets
+     */
+    private void mapWeakSource(Field sourceField, Object value, List<WeakReference<SOURCE>> sources, List<TARGET> targets) {
+        SOURCE source = sourceSupplier.get();
+        if (sourceField != null) {
+            sourceAccessor.set(source, fieldIndexes.get(sourceField), value);
+        }
+        targets.add(applyMapper(source, sourceField, value));
+        sources.add(new WeakReference<SOURCE>(source));
+    }
+
+    /**
+     * Fails with the reference path of the first retained source that has one.
+     */
+    private void failIfSourceIsRetained(List<WeakReference<SOURCE>> sources, List<TARGET> targets, List<String> descriptions) {
+        for (int index = 0; index < sources.size(); index++) {
+            SOURCE retained = sources.get(index).get();
+            if (retained == null) continue;
+            String path = findRetentionPath(targets.get(index), retained);
+            if (path != null) {
+                fail(String.format("Mapper retains the source of %s through %s", descriptions.get(index), path));
+            }
+        }
+    }
+
+    private static boolean isCleared(List<? extends WeakReference<?>> references) {
+        return references.stream().allMatch(reference -> reference.get() == null);
+    }
+
+    /**
+     * Allocates memory until a soft reference is cleared. Soft references are only cleared by a full collection before
+     * the heap runs out, which also clears all weak references to unreachable objects.
+     */
+    private static void collectGarbageUnderMemoryPressure() {
+        SoftReference<Object> sentinel = new SoftReference<Object>(new Object());
+        List<long[]> allocations = new ArrayList<long[]>();
+        try {
+            while (sentinel.get() != null) {
+                allocations.add(new long[1 << 17]);
+            }
+        } catch (OutOfMemoryError e) {
+            // the soft reference has been cleared before
+        } finally {
+            allocations.clear();
+        }
+    }
+
+    /**
+     * Runs the garbage collector until all references have been cleared, at most ten times.
+     */
+    private static void collectGarbage(List<? extends WeakReference<?>> references) {
+        for (int attempt = 0; attempt < 10; attempt++) {
+            if (isCleared(references)) return;
+            System.gc();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Finds the reference path to a retained source: from its target, from the mapper, or from static fields.
+     *
+     * @return the path, or null if it can't be found.
+     */
+    private String findRetentionPath(TARGET target, SOURCE retained) {
+        String path = target == null ? null : RetentionPaths.find(target, "target", retained);
+        if (path == null) path = RetentionPaths.find(mapperUnderTest, "mapper", retained);
+
+        List<Class<?>> classes = new ArrayList<Class<?>>(Arrays.<Class<?>>asList(mapperUnderTest.getClass(), retained.getClass()));
+        if (target != null) classes.add(target.getClass());
+        String mapperClassName = mapperUnderTest.getClass().getName();
+        if (mapperClassName.contains("$$Lambda")) {
+            // the static state of a lambda lives in the class that declares it
+            try {
+                classes.add(Class.forName(mapperClassName.substring(0, mapperClassName.indexOf("$$Lambda")), false,
+                        mapperUnderTest.getClass().getClassLoader()));
+            } catch (ClassNotFoundException e) {
+                LOG.debug("No declaring class for " + mapperClassName);
+            }
+        }
+        for (Iterator<Class<?>> iterator = classes.iterator(); path == null && iterator.hasNext(); ) {
+            path = RetentionPaths.findFromStaticFields(iterator.next(), retained);
+        }
+        return path;
+    }
+
+    /**
+     * Applies both mappers to their sources and collects the differences of the results by target field.
+     *
+     * @param referenceMapper          the reference mapper
+     * @param referenceSource          the source of the reference mapper
+     * @param source                   the source of the mapper under test, with the same values
+     * @param description              description of the source
+     * @param differencesByTargetField differences found so far
+     */
+    private void compareMappers(Function<SOURCE, TARGET> referenceMapper, SOURCE referenceSource, SOURCE source, String description, Map<String, List<String>> differencesByTargetField) {
+        TARGET expected = null;
+        TARGET actual = null;
+        Throwable expectedException = null;
+        Throwable actualException = null;
+        try {
+            expected = referenceMapper.apply(referenceSource);
+        } catch (Throwable e) {
+            expectedException = e;
+        }
+        try {
+            actual = mapperUnderTest.apply(source);
+        } catch (Throwable e) {
+            actualException = e;
+        }
+
+        if (expectedException != null || actualException != null) {
+            Class<?> expectedExceptionClass = expectedException == null ? null : expectedException.getClass();
+            Class<?> actualExceptionClass = actualException == null ? null : actualException.getClass();
+            if (expectedExceptionClass != actualExceptionClass) {
+                differencesByTargetField.computeIfAbsent("(exception)", k -> new ArrayList<String>())
+                        .add(String.format("%s: expected %s but was %s", description,
+                                expectedException == null ? "no exception" : expectedException, actualException == null ? "no exception" : actualException));
+            }
+            return;
+        }
+        if (expected == null || actual == null || expected.getClass() != actual.getClass()) {
+            if (!(expected == null && actual == null)) {
+                differencesByTargetField.computeIfAbsent("(target)", k -> new ArrayList<String>())
+                        .add(String.format("%s: expected <%s> but was <%s>", description, describeValue(expected), describeValue(actual)));
+            }
+            return;
+        }
+
+        FieldAccessor<TARGET> accessor = FieldAccessors.forClass((Class<TARGET>) actual.getClass());
+        for (int index = 0; index < accessor.fieldCount(); index++) {
+            Object expectedValue = accessor.get(expected, index);
+            Object actualValue = accessor.get(actual, index);
+            if (!ReflectionUtil.valuesEqual(expectedValue, actualValue)) {
+                differencesByTargetField.computeIfAbsent(accessor.fieldName(index), k -> new ArrayList<String>())
+                        .add(String.format("%s: expected <%s> but was <%s>", description, describeValue(expectedValue), describeValue(actualValue)));
+            }
+        }
+    }
+
+    /**
+     * Describes a value for a report. Arrays are described by their type and length.
+     *
+     * @param value the value
+     * @return the description
+     */
+    private static String describeValue(Object value) {
+        if (value != null && value.getClass().isArray()) {
+            return value.getClass().getComponentType().getSimpleName() + "[" + java.lang.reflect.Array.getLength(value) + "]";
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Creates the source and target references, collects the fields of SOURCE and TARGET and binds the field accessors.
+     *
+     * @param sourceSupplier Function that creates a new instance of SOURCE on demand.
+     */
+    private void prepareReferences(Supplier<SOURCE> sourceSupplier) {
         this.sourceSupplier = sourceSupplier;
 
         String message = "Testing Mapper " + sourceSupplier.get().getClass().getCanonicalName() + " --> ";
@@ -107,14 +867,13 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
         // Get an instance for SOURCE and map it
         // This assumes that the SOURCE can be constructed and that
         // the mapping succeeds.
-        SOURCE sourceReference;
         try {
             sourceReference = sourceSupplier.get();
         } catch (Throwable e) {
             throw new AssertionFailedError("Unable to get instance of source");
         }
         try {
-            targetReference = mapperUnderTest.apply(sourceReference);
+            targetReference = applyMapper(sourceReference, null, null);
         } catch (Throwable e) {
             AssertionFailedError assertionFailedError = new AssertionFailedError("Exception while creating target reference");
             assertionFailedError.initCause(e);
@@ -124,29 +883,12 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
 
         LOG.info(message + targetReference.getClass().getCanonicalName());
 
-        ArrayList<Field> sourceFields = getFields(sourceReference);
-        ArrayList<Field> targetFields = getFields(targetReference);
+        sourceFields = getFields(sourceReference);
+        targetFields = getFields(targetReference);
+        bindFieldAccessors(sourceReference, sourceFields, targetFields);
 
         // Wir nehmen fuer Enums alle zulaessigen Werte als Test-Werte
         addEnumTestValues(sourceFields);
-
-        // Wir lernen das Mapping und testen dabei, ob ein Feld auf mehrere Felder abgebildet wird.
-        Set<Field> changedTargetFields = new HashSet<Field>();
-        Map<Field, Field> mapping = new HashMap<Field, Field>();
-        learnMapping(sourceReference, targetReference, sourceFields, changedTargetFields, mapping);
-
-        // Wir pruefen, dass alle Target-Felder gemappt wurden.
-        assertAllTargetFieldsAreMapped(targetFields, changedTargetFields);
-
-        // Vierter Schritt: Wir pruefen, ob die Werte, die in einer Spalte enthalten sind,
-        // exakt gleich gemappt werden.
-        try {
-            assertThatAllTestValuesAreMappedToTheirExpectedValues(sourceFields, mapping);
-        } catch (IllegalAccessException | InstantiationException | NoSuchFieldException | SQLException e) {
-            throw new AssertionFailedError(e.getMessage());
-        }
-
-        return myself;
     }
 
     /**
@@ -164,6 +906,138 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
       Configuration
       ---------------------------------------------------------------------------------------------------------------*/
 
+    /**
+     * Records every pair of source and target that the mapper produces in {@link #hasPlausibleMappingFor(Supplier)}
+     * in a trace, to be replayed against later versions of the mapper with {@link #matchesTrace(Path, Supplier)}.
+     *
+     * @param traceFile the trace file, replaced if it exists
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> whenRecordingTrace(Path traceFile) {
+        this.traceFile = traceFile;
+        return myself;
+    }
+
+    /**
+     * Proposes the mapping from the bytecode of the mapper before the mapper is invoked to learn it. Source fields that are
+     * read and written to a target field in straight-line code are mapped with a single invocation that confirms the
+     * proposal. All other source fields, and the proposed ones that aren't confirmed, are learned by invoking the mapper.
+     * <p>
+     * A source field that is written to a second target field in a method called by the mapper isn't detected as mapped
+     * to several target fields.
+     *
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> whenLearningFromBytecode() {
+        writableTestData().setBytecodeLearning(true);
+        return myself;
+    }
+
+    /**
+     * Detects test values with a slow path in the mapper. During the verification, every test value is mapped a few more
+     * times and its latencies are recorded. Test values whose median latency exceeds the median latency of all
+     * invocations by more than the factor are outliers. They are logged as a warning and reported by
+     * {@link #getLatencyReport()}; they don't fail the assertion.
+     *
+     * @param outlierFactor factor above the median latency, e.g. 10
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> whenDetectingLatencyOutliers(double outlierFactor) {
+        if (outlierFactor <= 1) {
+            throw new IllegalArgumentException("Outlier factor must be greater than 1: " + outlierFactor);
+        }
+        writableTestData().setLatencyOutlierFactor(outlierFactor);
+        return myself;
+    }
+
+    /**
+     * Returns the latency report of the last call of {@link #hasPlausibleMappingFor(Supplier)} with
+     * {@link #whenDetectingLatencyOutliers(double)}.
+     *
+     * @return the report, or null.
+     */
+    public LatencyReport getLatencyReport() {
+        return latencyReport;
+    }
+
+    /**
+     * Limits the duration of every invocation of the mapper. An invocation that overruns is interrupted and abandoned,
+     * and the assertion fails with the source field, the value and a stack sample of the mapper thread.
+     * <p>
+     * The mapper is invoked in a separate thread when a timeout is set.
+     *
+     * @param timeout maximum duration of an invocation
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> withInvocationTimeout(Duration timeout) {
+        writableTestData().setInvocationTimeout(timeout);
+        return myself;
+    }
+
+    /**
+     * Learns the mapping from the fields that the mapper actually writes, recorded by the {@link WriteTrackingAgent}.
+     * Only the written target fields are compared with the target reference, so target fields that the mapper doesn't
+     * touch can't be mistaken for mapped fields, e.g. fields that a constructor without parameters initializes with a
+     * value that differs in every new target.
+     * <p>
+     * The JVM has to be started with the agent, and the agent has to instrument the classes of the mapper and the target.
+     * Writes that the agent can't see, e.g. by reflection or in a class that isn't instrumented, aren't learned.
+     *
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> whenTrackingWrites() {
+        writableTestData().setWriteTracking(true);
+        return myself;
+    }
+
+    /**
+     * Limits the number of concurrent invocations of an asynchronous mapper, see
+     * {@link PlausingAssertions#assertThatAsyncMapper(Function)}. All test values are mapped at once, so the limit
+     * protects the services that the mapper calls.
+     *
+     * @param maxInFlightInvocations maximum number of invocations whose future isn't complete yet
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> withMaxInFlightInvocations(int maxInFlightInvocations) {
+        checkMaxInFlightInvocations(maxInFlightInvocations);
+        writableTestData().setMaxInFlightInvocations(maxInFlightInvocations);
+        return myself;
+    }
+
+    static void checkMaxInFlightInvocations(int maxInFlightInvocations) {
+        if (maxInFlightInvocations < 1) {
+            throw new IllegalArgumentException("Maximum number of invocations in flight must be at least 1: " + maxInFlightInvocations);
+        }
+    }
+
+    /**
+     * Uses values sampled from a corpus of production values as test values instead of the catalog of test values.
+     * A field gets the values of its name in the corpus, or else the values of its type; test values that are
+     * set for the field explicitly take precedence. See {@link TestValueCorpus} for the file format and the sampling.
+     * <p>
+     * The corpus is read once, when the first test values are needed, and shared by the copies of the configuration,
+     * e.g. by all assertions that use a {@link MapperAssertTemplate}.
+     *
+     * @param corpusFile   the corpus
+     * @param valuesPerKey maximum number of values sampled per field name or type
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> withTestValueCorpus(Path corpusFile, int valuesPerKey) {
+        writableTestData().setTestValueCorpus(new TestValueCorpus(corpusFile, valuesPerKey, TestValueCorpus.DEFAULT_SEED));
+        return myself;
+    }
+
+    /**
+     * Uses the configuration of a template. Later configuration calls change a copy, the template stays untouched.
+     *
+     * @param template the template
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> usingTemplate(MapperAssertTemplate template) {
+        this.testData = template.getTestData();
+        return myself;
+    }
+
     /**
      * Excludes fields in the target object from being tested.
      *
@@ -171,7 +1045,7 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @return reference to the MapperAssert.
      */
     public MapperAssert<SOURCE, TARGET> whenIgnoringTargetFields(String... ignoredTargetFields) {
-        this.excludedTargetFields = new HashSet<String>(Arrays.asList(ignoredTargetFields));
+        writableTestData().IGNORED_TARGET_FIELDS.addAll(Arrays.asList(ignoredTargetFields));
         return myself;
     }
 
@@ -183,7 +1057,7 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @return
      */
     public MapperAssert<SOURCE, TARGET> whenSettingCollectionElementType(String fieldName, Class type) {
-        this.collectionElementTypes.put(fieldName, type);
+        writableTestData().COLLECTION_ELEMENT_TYPES.put(fieldName, type);
         return myself;
     }
 
@@ -211,8 +1085,9 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @return this.
      */
     private <T> MapperAssert<SOURCE, TARGET> withTestAndTrainingValuesForField(String fieldName, List<T> testValues, T trainingValue) {
-        testData.TEST_VALUES_BY_FIELDNAME.put(fieldName, testValues);
-        testData.LEARN_VALUES_BY_FIELDNAME.put(fieldName, trainingValue);
+        MapperAssertTestData writableTestData = writableTestData();
+        writableTestData.TEST_VALUES_BY_FIELDNAME.put(fieldName, testValues);
+        writableTestData.LEARN_VALUES_BY_FIELDNAME.put(fieldName, trainingValue);
         return myself;
     }
 
@@ -227,174 +1102,647 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @return this.
      */
     public <T> MapperAssert<SOURCE, TARGET> whenUsingTestAndTrainingValuesForType(Class<T> type, List<T> testValues, T trainingValue) {
-        testData.TEST_VALUES_BY_TYPE.put(type, testValues);
-        testData.LEARN_VALUES_BY_TYPE.put(type, trainingValue);
+        writableTestData().putTestAndTrainingValuesForType(type, testValues, trainingValue);
+        return myself;
+    }
+
+    /**
+     * Sets the list of testValues and trainingValue from the instances of the enum enumClass.
+     *
+     * @param enumClass the enum.
+     * @param <T>       the enum.
+     * @return this.
+     */
+    public <T extends Enum> MapperAssert<SOURCE, TARGET> withTestAndTrainingValuesForEnumType(Class<T> enumClass) {
+        return whenUsingTestAndTrainingValuesForType(enumClass, toValuesList(enumClass), enumClass.getEnumConstants()[0]);
+    }
+
+
+    /**
+     * Declares the expected mapping of the values of a source property to a target property.
+     * The declared mapping replaces the guess of the {@link MappingOracle} for this pair of fields.
+     *
+     * @param sourcePropertyName name of the source field
+     * @param targetPropertyName name of the target field
+     * @param propertyMapping    expected mapping of a single source value
+     * @param <SOURCE_PROPERTY>  type of the source field
+     * @param <TARGET_PROPERTY>  type of the target field
+     * @return this.
+     */
+    public <SOURCE_PROPERTY, TARGET_PROPERTY> MapperAssert<SOURCE, TARGET> withPropertyMapping(String sourcePropertyName, String targetPropertyName, Function<SOURCE_PROPERTY, TARGET_PROPERTY> propertyMapping) {
+        return whenUsingMapper(new OverrideMapping<SOURCE_PROPERTY, TARGET_PROPERTY>(sourcePropertyName, targetPropertyName, propertyMapping));
+    }
+
+    /**
+     * Declares the expected mapping of the values of a source property to a target property.
+     * The property types are checked against the types of the learned fields before the mapping is used.
+     *
+     * @param sourcePropertyName name of the source field
+     * @param sourcePropertyType type of the source field
+     * @param targetPropertyName name of the target field
+     * @param targetPropertyType type of the target field
+     * @param propertyMapping    expected mapping of a single source value
+     * @param <SOURCE_PROPERTY>  type of the source field
+     * @param <TARGET_PROPERTY>  type of the target field
+     * @return this.
+     */
+    public <SOURCE_PROPERTY, TARGET_PROPERTY> MapperAssert<SOURCE, TARGET> withPropertyMapping(String sourcePropertyName, Class<SOURCE_PROPERTY> sourcePropertyType,
+                                                                                              String targetPropertyName, Class<TARGET_PROPERTY> targetPropertyType,
+                                                                                              Function<SOURCE_PROPERTY, TARGET_PROPERTY> propertyMapping) {
+        return whenUsingMapper(new OverrideMapping<SOURCE_PROPERTY, TARGET_PROPERTY>(sourcePropertyName, sourcePropertyType, targetPropertyName, targetPropertyType, propertyMapping));
+    }
+
+    /*----------------------------------------------------------------------------------------------------------------
+        HELPER METHODS
+      ---------------------------------------------------------------------------------------------------------------*/
+
+
+    /**
+     * Adds enum test values for all types that don't have test values yet.
+     *
+     * @param sourceFields
+     */
+    protected void addEnumTestValues(ArrayList<Field> sourceFields) {
+        for (Field sourceField : sourceFields) {
+            if (!testData.TEST_VALUES_BY_TYPE.containsKey(sourceField.getType())) {
+                if (Enum.class.isAssignableFrom(sourceField.getType())) {
+                    withTestAndTrainingValuesForEnumType((Class<Enum>) sourceField.getType());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Looks up the field accessors of SOURCE and TARGET and indexes the fields.
+     *
+     * @param sourceReference the source reference
+     * @param sourceFields    fields of SOURCE
+     * @param targetFields    fields of TARGET
+     */
+    @SuppressWarnings("unchecked")
+    private void bindFieldAccessors(SOURCE sourceReference, List<Field> sourceFields, List<Field> targetFields) {
+        sourceAccessor = FieldAccessors.forClass((Class<SOURCE>) sourceReference.getClass());
+        targetAccessor = FieldAccessors.forClass((Class<TARGET>) targetReference.getClass());
+        fieldIndexes = new HashMap<Field, Integer>();
+        for (Field sourceField : sourceFields) {
+            fieldIndexes.put(sourceField, sourceAccessor.indexOf(sourceField.getName()));
+        }
+        targetFieldsByIndex = new Field[targetAccessor.fieldCount()];
+        for (Field targetField : targetFields) {
+            int index = targetAccessor.indexOf(targetField.getName());
+            fieldIndexes.put(targetField, index);
+            if (index >= 0 && targetFieldsByIndex[index] == null) {
+                targetFieldsByIndex[index] = targetField;
+            }
+        }
+    }
+
+    /**
+     * Asserts that all fields in TARGET have been set by the mapper
+     * except the fields that have been excluded by whenIgnoringTargetFields()
+     *
+     * @param targetFields        fields of TARGET
+     * @param changedTargetFields fields that have been changed in the test.
+     */
+    protected void assertAllTargetFieldsAreMapped(ArrayList<Field> targetFields, Set<Field> changedTargetFields) {
+        String unchangedTargetFieldNames =
+                targetFields.stream()
+                        .filter(targetField -> !changedTargetFields.contains(targetField)
+                                && !testData.IGNORED_TARGET_FIELDS.contains(targetField.getName()))
+                        .map(Field::getName)
+                        .collect(joining(", "));
+
+        if (!"".equals(unchangedTargetFieldNames)) {
+            fail("Unchanged target fields: " + unchangedTargetFieldNames);
+        }
+    }
+
+    /**
+     * Asserts that all fields map to corresponding fields in the target class with the expected values.
+     *
+     * @param sourceFields         list of all fields of the source class
+     * @param sourceToTargetFields map
+     * @throws IllegalAccessException
+     * @throws InstantiationException
+     * @throws NoSuchFieldException
+     * @throws java.sql.SQLException
+     */
+    private MapperAssert<SOURCE, TARGET> assertThatAllTestValuesAreMappedToTheirExpectedValues(
+            List<Field> sourceFields, Map<Field, Field> sourceToTargetFields)
+            throws IllegalAccessException, InstantiationException, NoSuchFieldException, SQLException {
+
+        for (Field sourceField : sourceFields) {
+
+            Field targetField = sourceToTargetFields.get(sourceField);
+            if (targetField == null) continue;
+
+            assertThatFieldMappingIsPlausible(sourceField, targetField);
+        }
+
+        return myself;
+    }
+
+    /**
+     * Asserts that all test values of the source field are mapped to the target field with their expected values.
+     *
+     * @param sourceField the source field
+     * @param targetField the learned target field
+     * @throws IllegalAccessException
+     * @throws NoSuchFieldException
+     * @throws java.sql.SQLException
+     */
+    private void assertThatFieldMappingIsPlausible(Field sourceField, Field targetField) throws IllegalAccessException, NoSuchFieldException, SQLException {
+        LOG.info(String.format("Testing field mapping: %s --> %s ... ", sourceField, targetField));
+
+        boolean nonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
+        OverrideMapping override = getOverrideForFieldPair(sourceField, targetField);
+
+        if (isExhaustive(sourceField)) {
+            assertThatAllValuesAreMappedToTheirExpectedValues(sourceField, targetField, override, nonNullField);
+            return;
+        }
+
+        List<?> testValues = getTestValuesForField(sourceField);
+        for (int valueIndex = 0; valueIndex < testValues.size(); valueIndex++) {
+            Object v = testValues.get(valueIndex);
+            boolean nullValueOrNonNullableField = v == null && nonNullField;
+            if (nullValueOrNonNullableField) continue;
+            LOG.info(String.format("Testing value: %s ... ", v));
+            assertThatFieldIsMappedToExpectedValue(sourceField, targetField, override, valueIndex, v);
+        }
+    }
+
+    /**
+     * Asserts that every value of the domain of the source field is mapped to the target field correctly.
+     * The values are streamed and checked in parallel. The smallest failing value is reported.
+     *
+     * @param sourceField  the source field
+     * @param targetField  the target field
+     * @param override     the declared override for the field pair, or null
+     * @param nonNullField true, if null isn't tested
+     */
+    private void assertThatAllValuesAreMappedToTheirExpectedValues(Field sourceField, Field targetField, OverrideMapping override, boolean nonNullField) {
+        Class<?> type = sourceField.getType();
+        checkExhaustible(type);
+        LOG.info(String.format("Testing all %d values of field %s ... ", ValueDomain.size(type), sourceField.getName()));
+
+        Optional<AssertionError> firstFailure = ValueDomain.indexes(type, ValueDomain.isNullable(type) && !nonNullField)
+                .parallel()
+                .mapToObj(valueIndex -> {
+                    try {
+                        assertThatFieldIsMappedToExpectedValue(sourceField, targetField, override, valueIndex, ValueDomain.valueAt(type, valueIndex));
+                        return null;
+                    } catch (AssertionError e) {
+                        return e;
+                    } catch (IllegalAccessException | NoSuchFieldException | SQLException e) {
+                        return new AssertionFailedError(e.getMessage());
+                    }
+                })
+                .filter(Objects::nonNull)
+                .findFirst();
+        if (firstFailure.isPresent()) {
+            throw firstFailure.get();
+        }
+    }
+
+    /**
+     * @param field a source field
+     * @return true, if all values of the field are tested.
+     */
+    private boolean isExhaustive(Field field) {
+        return testData.EXHAUSTIVE_FIELDS.contains(field.getName()) || testData.EXHAUSTIVE_TYPES.contains(field.getType());
+    }
+
+    /**
+     * @param type a type
+     * @throws IllegalArgumentException if the values of the type can't be tested exhaustively.
+     */
+    static void checkExhaustible(Class<?> type) {
+        if (!ValueDomain.isExhaustible(type)) {
+            throw new IllegalArgumentException("Can't test all values of type " + type.getCanonicalName()
+                    + ". Only byte, short, char, boolean, their wrappers and enums can be tested exhaustively.");
+        }
+    }
+
+    /**
+     * Asserts that the tested value of the source field is  mapped to the target field correctly.
+     *
+     * @param sourceField the source field
+     * @param targetField the target field
+     * @param override    the declared override for the field pair, or null
+     * @param valueIndex  index of the tested value among the values of the source field
+     * @param testedValue source value being tested
+     * @return the MapperAssert
+     * @throws SQLException
+     * @throws IllegalAccessException
+     * @throws NoSuchFieldException
+     */
+    @SuppressWarnings("unchecked")
+    private <SOURCE_FIELD_TYPE, TARGET_FIELD_TYPE> MapperAssert<SOURCE, TARGET> assertThatFieldIsMappedToExpectedValue(Field sourceField, Field targetField, OverrideMapping override, int valueIndex, SOURCE_FIELD_TYPE testedValue) throws SQLException, IllegalAccessException, NoSuchFieldException {
+
+        // get a new source reference and change the tested field's value
+        SOURCE source = sourceSupplier.get();
+        sourceAccessor.set(source, fieldIndexes.get(sourceField), testedValue);
+
+        // apply the mapper to the source field
+        TARGET target = applyMapper(source, sourceField, testedValue);
+        assertThatTargetFieldHasExpectedValue(sourceField, targetField, override, testedValue, target);
+
+        LatencyReport.Recorder recorder = latencyRecorder;
+        if (recorder != null) {
+            recordLatency(recorder, sourceField, valueIndex, testedValue, source);
+        }
         return myself;
     }
 
     /**
-     * Sets the list of testValues and trainingValue from the instances of the enum enumClass.
+     * Applies the mapper to a source a few more times and records the latencies for the test value.
+     * Exceptions of the mapper are ignored; the verified invocation has already passed. The invocations are bounded by
+     * the invocation timeout, if there is one.
+     */
+    private void recordLatency(LatencyReport.Recorder recorder, Field sourceField, int valueIndex, Object testedValue, SOURCE source) {
+        long[] nanos = new long[LATENCY_SAMPLES];
+        for (int sample = 0; sample < LATENCY_SAMPLES; sample++) {
+            long start = System.nanoTime();
+            try {
+                if (testData.getInvocationTimeout() == null) {
+                    mapperUnderTest.apply(source);
+                } else {
+                    applyMapperWithTimeout(source, sourceField, testedValue);
+                }
+            } catch (RuntimeException e) {
+                // the latency of the exception is recorded
+            }
+            nanos[sample] = System.nanoTime() - start;
+        }
+        recorder.record(sourceField.getName(), valueIndex, describeValue(testedValue), nanos);
+    }
+
+    /**
+     * Asserts that the target field of a mapped target has the value that the tested value is expected to map to.
+     *
+     * @param sourceField the source field
+     * @param targetField the target field
+     * @param override    the declared override for the field pair, or null
+     * @param testedValue source value being tested
+     * @param target      the target that has been mapped from a source with the tested value
+     */
+    @SuppressWarnings("unchecked")
+    private <SOURCE_FIELD_TYPE, TARGET_FIELD_TYPE> void assertThatTargetFieldHasExpectedValue(Field sourceField, Field targetField, OverrideMapping override, SOURCE_FIELD_TYPE testedValue, TARGET target) throws SQLException {
+        TARGET_FIELD_TYPE actualMappedValue = (TARGET_FIELD_TYPE) targetAccessor.get(target, fieldIndexes.get(targetField));
+
+        // if there is an override, test with the override
+        if (override != null) {
+            assertMappedValue(String.format("Error in mapping (with override) %s --> %s", sourceField.getName(), targetField.getName()),
+                    actualMappedValue, override.map(testedValue));
+            return;
+        }
+
+        // guess correct mapping
+        Class<Object> sourceElementType = getCollectionElementType(sourceField, sourceReference.getClass());
+        Class<Object> targetElementType = getCollectionElementType(targetField, targetReference.getClass());
+        boolean isNonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
+        TARGET_FIELD_TYPE expectedMappedValue = MappingOracle.guessTargetValue(testedValue, (Class<SOURCE_FIELD_TYPE>) sourceField.getType(), (Class<TARGET_FIELD_TYPE>) targetField.getType(), sourceElementType, targetElementType, testData.converters(), isNonNullField);
+
+        // else, test with the guessed value
+        assertMappedValue(String.format("Error in mapping %s --> %s", sourceField.getName(), targetField.getName()),
+                actualMappedValue, expectedMappedValue);
+    }
+
+    /**
+     * Applies the mapper under test, within the invocation timeout if there is one, and records the result
+     * when a trace is recorded.
      *
-     * @param enumClass the enum.
-     * @param <T>       the enum.
-     * @return this.
+     * @param source      the source
+     * @param sourceField the source field that has been set, or null for the source reference and the sentinels
+     * @param value       the value of the source field, or the sentinel values
+     * @return the target
      */
-    public <T extends Enum> MapperAssert<SOURCE, TARGET> withTestAndTrainingValuesForEnumType(Class<T> enumClass) {
-        return whenUsingTestAndTrainingValuesForType(enumClass, toValuesList(enumClass), enumClass.getEnumConstants()[0]);
+    private TARGET applyMapper(SOURCE source, Field sourceField, Object value) {
+        Map<List<Object>, TARGET> mappedInBatches = batchTargets;
+        Map<List<Object>, CompletableFuture<TARGET>> mappedConcurrently = asyncTargets;
+        TARGET target = mappedInBatches != null && sourceField != null ? mappedInBatches.get(Arrays.asList(sourceField, value)) : null;
+        CompletableFuture<TARGET> asyncTarget = mappedConcurrently != null && sourceField != null ? mappedConcurrently.get(Arrays.asList(sourceField, value)) : null;
+        if (target == null && asyncTarget != null) {
+            target = awaitTarget(asyncTarget);
+        } else if (target == null) {
+            target = testData.getInvocationTimeout() == null ? mapperUnderTest.apply(source) : applyMapperWithTimeout(source, sourceField, value);
+        }
+        MapperTrace.Writer<SOURCE, TARGET> writer = traceWriter;
+        if (writer != null && target != null) {
+            writer.record(source, target);
+        }
+        return target;
     }
 
+    /**
+     * Maps a source for every test value of every source field with the batch mapper, in a few large invocations.
+     * The learning and the verification use these targets instead of invoking the mapper for single sources.
+     * <p>
+     * The sources are mapped twice, the second time in a shuffled order and in batches of half the size, so that every
+     * batch of the second run has other members than the batches of the first run. Every target has to be the same in
+     * both runs, so that it depends neither on its position in the batch nor on the other sources of the batch.
+     * If the batch mapper throws an exception, the sources of the batch are mapped one by one. The assertion fails if
+     * each of them can be mapped on its own, otherwise every source is mapped on its own later, so that the exception
+     * is reported for its field and test value. A null target is reported as a mapping error of its field and test value.
+     */
+    private void mapTestValuesInBatches() {
+        batchTargets = null;
+        List<List<Object>> inputs = getTestInputs();
+
+        List<Integer> order = new ArrayList<Integer>();
+        List<Integer> shuffledOrder = new ArrayList<Integer>();
+        for (int index = 0; index < inputs.size(); index++) {
+            order.add(index);
+            shuffledOrder.add(index);
+        }
+        Collections.shuffle(shuffledOrder, new Random(inputs.size()));
+        int batchSize = Math.min(BATCH_SIZE, inputs.size());
+        int shuffledBatchSize = Math.max(1, (batchSize + 1) / 2);
 
-    public <SOURCE_PROPERTY, TARGET_PROPERTY> MapperAssert<SOURCE, TARGET> withPropertyMapping(String sourcePropertyName, String targetPropertyName, Function<SOURCE_PROPERTY, TARGET_PROPERTY> propertyMapping) {
-        throw new NotImplementedException();
-    }
+        List<TARGET> targets;
+        List<TARGET> shuffledTargets;
+        try {
+            targets = applyBatchMapper(inputs, order, batchSize);
+            shuffledTargets = applyBatchMapper(inputs, shuffledOrder, shuffledBatchSize);
+        } catch (RuntimeException e) {
+            LOG.info("Batch mapper failed, mapping the sources one by one", e);
+            return;
+        }
 
-    /*----------------------------------------------------------------------------------------------------------------
-        HELPER METHODS
-      ---------------------------------------------------------------------------------------------------------------*/
+        int[] shuffledPositions = new int[inputs.size()];
+        for (int position = 0; position < shuffledOrder.size(); position++) {
+            shuffledPositions[shuffledOrder.get(position)] = position;
+        }
+        for (int index = 0; index < inputs.size(); index++) {
+            String sourceFieldName = ((Field) inputs.get(index).get(0)).getName();
+            if (targets.get(index) == null || shuffledTargets.get(index) == null) {
+                fail(String.format("Mapping error: batch mapper returned null for field %s with value %s",
+                        sourceFieldName, describeValue(inputs.get(index).get(1))));
+            }
+            for (int targetIndex = 0; targetIndex < targetAccessor.fieldCount(); targetIndex++) {
+                Object value = targetAccessor.get(targets.get(index), targetIndex);
+                Object shuffledValue = targetAccessor.get(shuffledTargets.get(index), targetIndex);
+                if (!ReflectionUtil.valuesEqual(value, shuffledValue)) {
+                    fail(String.format("Batch mapper maps field %s with value %s depending on its position or the other sources in the batch: "
+                                    + "target field %s is <%s> at position %d of a batch of %d but <%s> at position %d of a batch of %d",
+                            sourceFieldName, describeValue(inputs.get(index).get(1)), targetAccessor.fieldName(targetIndex),
+                            describeValue(value), index % batchSize, batchSize,
+                            describeValue(shuffledValue), shuffledPositions[index] % shuffledBatchSize, shuffledBatchSize));
+                }
+            }
+        }
 
+        Map<List<Object>, TARGET> mappedInBatches = new HashMap<List<Object>, TARGET>();
+        for (int index = 0; index < inputs.size(); index++) {
+            mappedInBatches.put(inputs.get(index), targets.get(index));
+        }
+        batchTargets = mappedInBatches;
+        LOG.info(String.format("Mapped %d sources twice in batches of at most %d and %d", inputs.size(), batchSize, shuffledBatchSize));
+    }
 
     /**
-     * Adds enum test values for all types that don't have test values yet.
+     * Returns the source field and test value of every source that the learning and the verification map.
      *
-     * @param sourceFields
+     * @return the pairs of source field and test value
      */
-    protected void addEnumTestValues(ArrayList<Field> sourceFields) {
+    private List<List<Object>> getTestInputs() {
+        List<List<Object>> inputs = new ArrayList<List<Object>>();
         for (Field sourceField : sourceFields) {
-            if (!testData.TEST_VALUES_BY_TYPE.containsKey(sourceField.getType())) {
-                if (Enum.class.isAssignableFrom(sourceField.getType())) {
-                    withTestAndTrainingValuesForEnumType((Class<Enum>) sourceField.getType());
-                }
+            boolean nonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
+            for (Object testValue : (List<?>) getTestValuesForField(sourceField)) {
+                if (testValue == null && nonNullField) continue;
+                inputs.add(Arrays.asList(sourceField, testValue));
             }
         }
+        return inputs;
     }
 
+    /**
+     * Invokes the asynchronous mapper for every test value of every source field at once, with at most
+     * {@link #withMaxInFlightInvocations(int)} invocations in flight, and waits until all of them are complete.
+     * The learning and the verification use the completed targets by their source field and test value.
+     * <p>
+     * An exception of an invocation is kept like an exceptional completion, and both are rethrown when the target of
+     * the test value is used, so that they are reported for their field and test value. With an
+     * {@link #withInvocationTimeout(Duration) invocation timeout}, the assertion fails if no invocation completes in time.
+     */
+    private void mapTestValuesConcurrently() {
+        asyncTargets = null;
+        List<List<Object>> inputs = getTestInputs();
+        Semaphore inFlight = new Semaphore(testData.getMaxInFlightInvocations());
+        Map<List<Object>, CompletableFuture<TARGET>> targets = new LinkedHashMap<List<Object>, CompletableFuture<TARGET>>();
+        for (List<Object> input : inputs) {
+            SOURCE source = sourceSupplier.get();
+            sourceAccessor.set(source, fieldIndexes.get((Field) input.get(0)), input.get(1));
+            acquireInFlight(inFlight, 1, targets);
+            CompletableFuture<TARGET> target;
+            try {
+                target = asyncMapper.apply(source);
+            } catch (RuntimeException e) {
+                target = new CompletableFuture<TARGET>();
+                target.completeExceptionally(e);
+            }
+            if (target == null) {
+                // reported when the test value is mapped again
+                inFlight.release();
+                continue;
+            }
+            target.whenComplete((result, exception) -> inFlight.release());
+            targets.put(input, target);
+        }
+        acquireInFlight(inFlight, testData.getMaxInFlightInvocations(), targets);
+        asyncTargets = targets;
+        LOG.info(String.format("Mapped %d sources with at most %d invocations in flight", inputs.size(), testData.getMaxInFlightInvocations()));
+    }
 
     /**
-     * Asserts that all fields in TARGET have been set by the mapper
-     * except the fields that have been excluded by whenIgnoringTargetFields()
+     * Waits until invocations of the asynchronous mapper have completed and released their permits. With an invocation
+     * timeout, the assertion fails with the oldest invocation that is still in flight if the permits aren't released in
+     * time, because every invocation in flight has been running at least that long.
      *
-     * @param targetFields        fields of TARGET
-     * @param changedTargetFields fields that have been changed in the test.
+     * @param inFlight the permits of the invocations in flight
+     * @param permits  the number of permits to acquire
+     * @param targets  the targets of the invocations, in the order of the invocations
      */
-    protected void assertAllTargetFieldsAreMapped(ArrayList<Field> targetFields, Set<Field> changedTargetFields) {
-        String unchangedTargetFieldNames =
-                targetFields.stream()
-                        .filter(targetField -> !changedTargetFields.contains(targetField)
-                                && !excludedTargetFields.contains(targetField.getName()))
-                        .map(Field::getName)
-                        .collect(joining(", "));
-
-        if (!"".equals(unchangedTargetFieldNames)) {
-            fail("Unchanged target fields: " + unchangedTargetFieldNames);
+    private void acquireInFlight(Semaphore inFlight, int permits, Map<List<Object>, CompletableFuture<TARGET>> targets) {
+        Duration timeout = testData.getInvocationTimeout();
+        if (timeout == null) {
+            inFlight.acquireUninterruptibly(permits);
+            return;
+        }
+        try {
+            if (inFlight.tryAcquire(permits, timeout.toNanos(), TimeUnit.NANOSECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionFailedError("Interrupted while waiting for the asynchronous mapper");
+        }
+        for (Map.Entry<List<Object>, CompletableFuture<TARGET>> target : targets.entrySet()) {
+            if (target.getValue().isDone()) continue;
+            target.getValue().cancel(true);
+            throw new AssertionFailedError(String.format("Asynchronous mapper didn't complete within %s for field %s with value %s",
+                    timeout, ((Field) target.getKey().get(0)).getName(), describeValue(target.getKey().get(1))));
         }
+        throw new AssertionFailedError(String.format("Asynchronous mapper didn't complete within %s", timeout));
     }
 
     /**
-     * Asserts that all fields map to corresponding fields in the target class with the expected values.
+     * Maps the sources of the inputs with the batch mapper in the given order.
      *
-     * @param sourceFields         list of all fields of the source class
-     * @param sourceToTargetFields map
-     * @throws IllegalAccessException
-     * @throws InstantiationException
-     * @throws NoSuchFieldException
-     * @throws java.sql.SQLException
+     * @param inputs    the source fields and test values
+     * @param order     the order of the inputs in the batches
+     * @param batchSize the maximum number of sources of a batch
+     * @return the targets in the order of the inputs
      */
-    private MapperAssert<SOURCE, TARGET> assertThatAllTestValuesAreMappedToTheirExpectedValues(
-            List<Field> sourceFields, Map<Field, Field> sourceToTargetFields)
-            throws IllegalAccessException, InstantiationException, NoSuchFieldException, SQLException {
-
-        for (Field sourceField : sourceFields) {
-
-            Field targetField = sourceToTargetFields.get(sourceField);
-            if (targetField == null) continue;
-
-            LOG.info(String.format("Testing field mapping: %s --> %s ... ", sourceField, targetField));
-
-            boolean nonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
-
-            for (Object v : getTestValuesForField(sourceField)) {
-                boolean nullValueOrNonNullableField = v == null && nonNullField;
-                if (nullValueOrNonNullableField) continue;
-                LOG.info(String.format("Testing value: %s ... ", v));
-                assertThatFieldIsMappedToExpectedValue(sourceField, targetField, v);
+    @SuppressWarnings("unchecked")
+    private List<TARGET> applyBatchMapper(List<List<Object>> inputs, List<Integer> order, int batchSize) {
+        Object[] targets = new Object[inputs.size()];
+        for (int start = 0; start < order.size(); start += batchSize) {
+            List<Integer> batchOrder = order.subList(start, Math.min(start + batchSize, order.size()));
+            List<SOURCE> sources = new ArrayList<SOURCE>();
+            for (int index : batchOrder) {
+                SOURCE source = sourceSupplier.get();
+                sourceAccessor.set(source, fieldIndexes.get((Field) inputs.get(index).get(0)), inputs.get(index).get(1));
+                sources.add(source);
+            }
+            List<TARGET> batchTargets;
+            try {
+                batchTargets = batchMapper.apply(sources);
+            } catch (RuntimeException e) {
+                failIfBatchMapsSourcesOnTheirOwn(inputs, batchOrder, sources, e);
+                throw e;
+            }
+            if (batchTargets == null || batchTargets.size() != sources.size()) {
+                fail(String.format("Batch mapper returned %s targets for %d sources", batchTargets == null ? null : batchTargets.size(), sources.size()));
+            }
+            for (int position = 0; position < batchOrder.size(); position++) {
+                targets[batchOrder.get(position)] = batchTargets.get(position);
             }
         }
-
-        return myself;
+        return (List<TARGET>) Arrays.asList(targets);
     }
 
     /**
-     * Asserts that the tested value of the source field is  mapped to the target field correctly.
+     * Maps the sources of a batch that has thrown an exception one by one. If every source can be mapped on its own,
+     * the exception depends on the other sources of the batch and the assertion fails. Otherwise the exception is
+     * reported for the field and test value of the source that can't be mapped.
      *
-     * @param sourceField the source field
-     * @param targetField the target field
-     * @param testedValue source value being tested
-     * @return the MapperAssert
-     * @throws SQLException
-     * @throws IllegalAccessException
-     * @throws NoSuchFieldException
+     * @param inputs     the source fields and test values
+     * @param batchOrder the indexes of the inputs of the batch
+     * @param sources    the sources of the batch
+     * @param exception  the exception of the batch
      */
-    @SuppressWarnings("unchecked")
-    private <SOURCE_FIELD_TYPE, TARGET_FIELD_TYPE> MapperAssert<SOURCE, TARGET> assertThatFieldIsMappedToExpectedValue(Field sourceField, Field targetField, SOURCE_FIELD_TYPE testedValue) throws SQLException, IllegalAccessException, NoSuchFieldException {
-
-        // get a new source reference and change the tested field's value
-        SOURCE source = sourceSupplier.get();
-        ReflectionUtil.setFieldValue(source, sourceField, testedValue);
-
-        // apply the mapper to the source field and get the actualMappedValue value
-        TARGET target = mapperUnderTest.apply(source);
-        TARGET_FIELD_TYPE actualMappedValue = (TARGET_FIELD_TYPE) ReflectionUtil.getFieldValue(targetField, target);
-
-        // guess correct mapping
-        Class<Object> sourceElementType = collectionElementTypes.get(sourceField.getName());
-        Class<Object> targetElementType = collectionElementTypes.get(targetField.getName());
-        boolean isNonNullField = testData.NON_NULL_FIELDS.contains(sourceField.getName());
-        TARGET_FIELD_TYPE expectedMappedValue = MappingOracle.guessTargetValue(testedValue, (Class<SOURCE_FIELD_TYPE>) sourceField.getType(), (Class<TARGET_FIELD_TYPE>) targetField.getType(), sourceElementType, targetElementType, testData.mappers, isNonNullField);
-        // look for declared override for the mapping
-        Optional<Object> override = getOverrideForExpectedFieldValue(sourceField.getName(), targetField.getName(), testedValue);
+    private void failIfBatchMapsSourcesOnTheirOwn(List<List<Object>> inputs, List<Integer> batchOrder, List<SOURCE> sources, RuntimeException exception) {
+        if (sources.size() < 2) return;
+        for (SOURCE source : sources) {
+            try {
+                batchMapper.apply(Collections.singletonList(source));
+            } catch (RuntimeException e) {
+                return;
+            }
+        }
+        List<String> descriptions = new ArrayList<String>();
+        for (int index : batchOrder) {
+            descriptions.add(((Field) inputs.get(index).get(0)).getName() + "=" + describeValue(inputs.get(index).get(1)));
+        }
+        AssertionFailedError assertionFailedError = new AssertionFailedError(String.format(
+                "Batch mapper throws %s for a batch of %d sources, but maps each of them on its own: %s",
+                exception, sources.size(), descriptions));
+        assertionFailedError.initCause(exception);
+        throw assertionFailedError;
+    }
 
-        // if there is an override, test with the override
-        if (override!=null) {
-            Assertions.assertThat(actualMappedValue)
-                    .as(String.format("Error in mapping (with override) %s --> %s", sourceField.getName(), targetField.getName()))
-                    .isEqualTo(override.orElse(null));
-            return myself;
+    /**
+     * Applies the mapper under test in a watchdog thread. If the invocation doesn't return in time, the thread is
+     * interrupted and abandoned, and the assertion fails with a stack sample of the thread.
+     */
+    private TARGET applyMapperWithTimeout(SOURCE source, Field sourceField, Object value) {
+        AtomicReference<Thread> mapperThread = new AtomicReference<Thread>();
+        Future<TARGET> invocation = INVOCATION_EXECUTOR.submit(() -> {
+            mapperThread.set(Thread.currentThread());
+            return mapperUnderTest.apply(source);
+        });
+        Duration timeout = testData.getInvocationTimeout();
+        try {
+            return invocation.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            invocation.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AssertionFailedError("Interrupted while waiting for the mapper");
+        } catch (TimeoutException e) {
+            Thread thread = mapperThread.get();
+            StackTraceElement[] stackSample = thread == null ? new StackTraceElement[0] : thread.getStackTrace();
+            invocation.cancel(true);
+
+            String input = sourceField != null ? "field " + sourceField.getName() + " with value " + describeValue(value)
+                    : value != null ? "the sentinel values " + value : "the source reference";
+            Throwable stuckThread = new Throwable("Stack sample of the mapper thread");
+            stuckThread.setStackTrace(stackSample);
+            AssertionFailedError assertionFailedError = new AssertionFailedError(String.format("Mapper didn't return within %s for %s%s",
+                    timeout, input, Arrays.stream(stackSample).map(element -> "\n\tat " + element).collect(joining())));
+            assertionFailedError.initCause(stuckThread);
+            throw assertionFailedError;
         }
+    }
 
-        // else, test with the guessed value
-        Assertions.assertThat(actualMappedValue)
-                .as(String.format("Error in mapping %s --> %s", sourceField.getName(), targetField.getName()))
-                .isEqualTo(expectedMappedValue);
-        return myself;
+    /**
+     * Asserts that the mapped value equals the expected value. Arrays are compared element by element
+     * without boxing, and only the position of the first difference is reported.
+     *
+     * @param description   description of the mapping
+     * @param actualValue   the mapped value
+     * @param expectedValue the expected value
+     */
+    private void assertMappedValue(String description, Object actualValue, Object expectedValue) {
+        boolean isArrayComparison = actualValue != null && expectedValue != null
+                && actualValue.getClass().isArray() && actualValue.getClass() == expectedValue.getClass();
+        if (!isArrayComparison) {
+            Assertions.assertThat(actualValue)
+                    .as(description)
+                    .isEqualTo(expectedValue);
+            return;
+        }
+        if (!ReflectionUtil.valuesEqual(actualValue, expectedValue)) {
+            fail(String.format("[%s] arrays differ at index %d, expected length %d but was length %d", description,
+                    ReflectionUtil.arrayMismatch(expectedValue, actualValue),
+                    java.lang.reflect.Array.getLength(expectedValue), java.lang.reflect.Array.getLength(actualValue)));
+        }
     }
 
 
     /**
-     * .
+     * Looks up the declared override for a learned pair of fields and checks its declared types.
      *
-     * @param name
-     * @param targetFieldName
-     * @param sourceValue
-     * @return
+     * @param sourceField the source field
+     * @param targetField the target field
+     * @return the override or null if there is none.
      */
-    @SuppressWarnings("unchecked")
-    private <SOURCE_VALUE> Optional<SOURCE_VALUE> getOverrideForExpectedFieldValue(String name, String targetFieldName, SOURCE_VALUE sourceValue) {
-        for (OverrideMapping override : testData.overrideMappingValues) {
-            if (override.sourceFieldName.equals(name)
-                    && override.targetFieldName.equals(targetFieldName)) {
-                return Optional.ofNullable((SOURCE_VALUE) override.map(sourceValue));
-            }
+    private OverrideMapping getOverrideForFieldPair(Field sourceField, Field targetField) {
+        Map<String, OverrideMapping> overridesByTargetField = testData.overrideMappingValues.get(sourceField.getName());
+        if (overridesByTargetField == null) return null;
+        OverrideMapping override = overridesByTargetField.get(targetField.getName());
+        if (override == null) return null;
+        try {
+            override.checkTypes(sourceField, targetField);
+        } catch (IllegalArgumentException e) {
+            fail(e.getMessage());
         }
-        return null;
+        return override;
     }
 
 
     private <T extends Enum> List<T> toValuesList(Class<T> enumClass) {
-        List<T> result = Arrays.stream(enumClass.getEnumConstants()) // Enum-Werte als Array
-                .filter(e -> !(testData.ENUM_NAMES_TO_IGNORE.contains(e.name()))) // Die Namen sind nicht in der zu ignorierenden Liste
+        List<T> allValues = MapperAssertTestData.enumTestValues(enumClass);
+        if (testData.ENUM_NAMES_TO_IGNORE.isEmpty()) return allValues;
+        return allValues.stream()
+                .filter(e -> e == null || !(testData.ENUM_NAMES_TO_IGNORE.contains(e.name()))) // Die Namen sind nicht in der zu ignorierenden Liste
                 .collect(Collectors.toList());// In Liste konvertieren
-        result.add(null); // Null als Wert zur Liste hinzufuegen
-        return result;
     }
 
     /**
@@ -405,12 +1753,11 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @return Liste der String-Werte
      */
     private <T extends Enum> List<String> toStringValuesList(Class<T> enumClass) {
-        List<String> result = Arrays.stream(enumClass.getEnumConstants()) // Enum-Werte als Array
-                .filter(e -> !(testData.ENUM_NAMES_TO_IGNORE.contains(e.name()))) // Die Namen sind nicht in der zu ignorierenden Liste
-                .map(Enum::name)
+        List<String> allNames = MapperAssertTestData.enumNameTestValues(enumClass);
+        if (testData.ENUM_NAMES_TO_IGNORE.isEmpty()) return allNames;
+        return allNames.stream()
+                .filter(name -> name == null || !(testData.ENUM_NAMES_TO_IGNORE.contains(name))) // Die Namen sind nicht in der zu ignorierenden Liste
                 .collect(Collectors.toList());// In Liste konvertieren
-        result.add(null); // Null als Wert zur Liste hinzufuegen
-        return result;
     }
 
     /**
@@ -423,7 +1770,7 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @return
      */
     public <SOURCE_TYPE, TARGET_TYPE> MapperAssert<SOURCE, TARGET> withValueListMapper(final Class<SOURCE_TYPE> sourceClass, final Class<TARGET_TYPE> targetClass, final List<SOURCE_TYPE> sourceValues, final List<TARGET_TYPE> targetValues) {
-        testData.mappers.put(new TypePair(sourceClass, targetClass),
+        writableTestData().putMapper(new TypePair(sourceClass, targetClass),
                 sourceValue -> {
                     // Test the list for matches
                     for (int co = 0; co < sourceValues.size(); co++) {
@@ -448,7 +1795,7 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @return
      */
     public <SOURCE_TYPE, TARGET_TYPE> MapperAssert<SOURCE, TARGET> withMapper(Mappers.Mapper mapper) {
-        testData.mappers.put(mapper.typePair, mapper.mappingFunction);
+        writableTestData().putMapper(mapper.typePair, mapper.mappingFunction);
         return myself;
     }
 
@@ -463,7 +1810,7 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
      * @param <SOURCE>
      * @param <TARGET>
      */
-    private <SOURCE, TARGET> void learnMapping(SOURCE sourceReference, TARGET targetReference, ArrayList<Field> sourceFields, Set<Field> changedTargetFields, Map<Field, Field> mapping) {
+    private <SOURCE, TARGET> void learnMapping(SOURCE sourceReference, TARGET targetReference, List<Field> sourceFields, Set<Field> changedTargetFields, Map<Field, Field> mapping) {
         for (Field sourceField : sourceFields) {
 
             Set<Field> changedTargetFieldsByField = applyMapperToTestValues(sourceField, getTestValuesForField(sourceField));
@@ -487,6 +1834,191 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
         }
     }
 
+    /**
+     * Takes the mapping proposed by the bytecode of the mapper, confirmed with a single mapper invocation.
+     * <p>
+     * Every proposed source field is set to a distinct sentinel value at the same time, see
+     * {@link #chooseSentinel(Field, Object, int)}. A proposed pair is taken if the target field holds the sentinel of the
+     * source field mapped by the {@link MappingOracle}. Source fields that aren't confirmed, e.g. because the bytecode
+     * attributed the write of a constant to the last read source field, are left for the dynamic learning.
+     *
+     * @param sourceFields        fields of SOURCE
+     * @param changedTargetFields target fields that have been changed by the mapper
+     * @param mapping             the learned mapping
+     * @return the source fields whose mapping hasn't been proposed or confirmed.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Field> learnMappingFromBytecode(List<Field> sourceFields, Set<Field> changedTargetFields, Map<Field, Field> mapping) {
+        Map<Field, Field> proposal = BytecodeMappingLearner.proposeMapping(mapperUnderTest, sourceReference.getClass(), targetReference.getClass(), sourceFields, targetFields);
+        Map<Field, Object> sentinels = new LinkedHashMap<Field, Object>();
+        for (Field sourceField : sourceFields) {
+            Field targetField = proposal.get(sourceField);
+            if (targetField == null || changedTargetFields.contains(targetField)) continue;
+            Object sentinel = chooseSentinel(sourceField, sourceAccessor.get(sourceReference, fieldIndexes.get(sourceField)), sentinels.size());
+            if (sentinel != null) {
+                sentinels.put(sourceField, sentinel);
+            }
+        }
+
+        TARGET target = null;
+        if (!sentinels.isEmpty()) {
+            try {
+                SOURCE source = sourceSupplier.get();
+                for (Map.Entry<Field, Object> sentinel : sentinels.entrySet()) {
+                    sourceAccessor.set(source, fieldIndexes.get(sentinel.getKey()), sentinel.getValue());
+                }
+                target = applyMapper(source, null, sentinels.values());
+            } catch (Throwable e) {
+                LOG.info("Confirming the mapping from bytecode failed, learning every field on its own.", e);
+            }
+        }
+        Set<Field> changed = target == null ? Collections.<Field>emptySet() : getChangedFields(target);
+
+        List<Field> remainingSourceFields = new ArrayList<Field>();
+        for (Field sourceField : sourceFields) {
+            Field targetField = proposal.get(sourceField);
+            boolean confirmed = false;
+            if (sentinels.containsKey(sourceField) && changed.contains(targetField)) {
+                try {
+                    Object expectedValue = MappingOracle.guessTargetValue(sentinels.get(sourceField), (Class<Object>) sourceField.getType(),
+                            (Class<Object>) targetField.getType(), null, null, testData.converters(), true);
+                    confirmed = ReflectionUtil.valuesEqual(expectedValue, targetAccessor.get(target, fieldIndexes.get(targetField)));
+                } catch (Exception e) {
+                    // the oracle can't map the sentinel, learn the field dynamically
+                }
+            }
+            if (!confirmed) {
+                if (targetField != null) {
+                    LOG.info(String.format("Mapping from bytecode not confirmed: %s --> %s", sourceField.getName(), targetField.getName()));
+                }
+                remainingSourceFields.add(sourceField);
+                continue;
+            }
+            LOG.info(String.format("Learned mapping from bytecode: %s --> %s", sourceField.getName(), targetField.getName()));
+            mapping.put(sourceField, targetField);
+            changedTargetFields.add(targetField);
+        }
+        return remainingSourceFields;
+    }
+
+    /**
+     * Learns the mapping of many source fields with a single mapper invocation.
+     * <p>
+     * Every source field is set to a distinct sentinel value at the same time. A changed target field is attributed to
+     * the source field whose sentinel value is mapped to the target field's value by the {@link MappingOracle}.
+     * Source fields with overrides or collection types, and source fields that can't be attributed to exactly one
+     * target field, are left for {@link #learnMapping}.
+     *
+     * @param sourceReference     the source reference
+     * @param sourceFields        fields of SOURCE
+     * @param changedTargetFields target fields that have been changed by the mapper
+     * @param mapping             the learned mapping
+     * @return the source fields whose mapping hasn't been learned.
+     */
+    private List<Field> learnMappingWithSentinels(SOURCE sourceReference, List<Field> sourceFields, Set<Field> changedTargetFields, Map<Field, Field> mapping) {
+        // choose a sentinel for every source field
+        Map<Field, Object> sentinels = new LinkedHashMap<Field, Object>();
+        for (Field sourceField : sourceFields) {
+            Object referenceValue = sourceAccessor.get(sourceReference, fieldIndexes.get(sourceField));
+            Object sentinel = chooseSentinel(sourceField, referenceValue, sentinels.size());
+            if (sentinel != null) {
+                sentinels.put(sourceField, sentinel);
+            }
+        }
+
+        // set all sentinels at once and apply the mapper
+        TARGET target;
+        try {
+            SOURCE source = sourceSupplier.get();
+            for (Map.Entry<Field, Object> sentinel : sentinels.entrySet()) {
+                sourceAccessor.set(source, fieldIndexes.get(sentinel.getKey()), sentinel.getValue());
+            }
+            target = applyMapper(source, null, sentinels.values());
+        } catch (Throwable e) {
+            LOG.info("Learning with sentinels failed, learning every field on its own.", e);
+            return sourceFields;
+        }
+
+        // index the changed target fields by type and value
+        Map<Class, Map<Object, List<Field>>> changedTargetFieldsByTypeAndValue = new HashMap<Class, Map<Object, List<Field>>>();
+        for (Field targetField : getChangedFields(target)) {
+            Object value = targetAccessor.get(target, fieldIndexes.get(targetField));
+            changedTargetFieldsByTypeAndValue
+                    .computeIfAbsent(targetField.getType(), k -> new HashMap<Object, List<Field>>())
+                    .computeIfAbsent(value, k -> new ArrayList<Field>())
+                    .add(targetField);
+        }
+
+        // find the target fields that hold the mapped sentinel of a source field
+        Map<Field, List<Field>> matchingTargetFields = new HashMap<Field, List<Field>>();
+        Map<Field, Integer> matchingSourceFieldCount = new HashMap<Field, Integer>();
+        for (Map.Entry<Field, Object> sentinel : sentinels.entrySet()) {
+            Field sourceField = sentinel.getKey();
+            List<Field> matches = new ArrayList<Field>();
+            for (Map.Entry<Class, Map<Object, List<Field>>> targetFieldsOfType : changedTargetFieldsByTypeAndValue.entrySet()) {
+                Object expectedValue;
+                try {
+                    expectedValue = MappingOracle.guessTargetValue(sentinel.getValue(), (Class<Object>) sourceField.getType(), (Class<Object>) targetFieldsOfType.getKey(),
+                            null, null, testData.converters(), true);
+                } catch (Exception e) {
+                    continue;
+                }
+                matches.addAll(targetFieldsOfType.getValue().getOrDefault(expectedValue, Collections.<Field>emptyList()));
+            }
+            matchingTargetFields.put(sourceField, matches);
+            for (Field match : matches) {
+                matchingSourceFieldCount.merge(match, 1, Integer::sum);
+            }
+        }
+
+        // keep the unambiguous pairs
+        List<Field> unresolvedSourceFields = new ArrayList<Field>();
+        for (Field sourceField : sourceFields) {
+            List<Field> matches = matchingTargetFields.get(sourceField);
+            if (matches != null && matches.size() == 1 && matchingSourceFieldCount.get(matches.get(0)) == 1) {
+                Field targetField = matches.get(0);
+                LOG.info(String.format("Learned mapping with sentinel: %s --> %s", sourceField.getName(), targetField.getName()));
+                mapping.put(sourceField, targetField);
+                changedTargetFields.add(targetField);
+            } else {
+                unresolvedSourceFields.add(sourceField);
+            }
+        }
+        return unresolvedSourceFields;
+    }
+
+    /**
+     * Chooses a sentinel value for a source field. Fields that use the default test values get a generated value that
+     * is unique within the assertion, other fields get a test value that differs from the reference value.
+     *
+     * @param sourceField    the source field
+     * @param referenceValue value of the field in the source reference
+     * @param sentinelNumber number of the sentinel
+     * @return the sentinel, or null if the field should be learned on its own.
+     */
+    private Object chooseSentinel(Field sourceField, Object referenceValue, int sentinelNumber) {
+        Class<?> type = sourceField.getType();
+        if (Collection.class.isAssignableFrom(type) || testData.overrideMappingValues.containsKey(sourceField.getName())) {
+            return null;
+        }
+
+        List testValues;
+        try {
+            testValues = getTestValuesForField(sourceField);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        if (testValues == MapperAssertTestData.DEFAULTS.TEST_VALUES_BY_TYPE.get(type)) {
+            Object sentinel = MapperAssertTestData.sentinelValue(type, sentinelNumber);
+            if (sentinel != null && !ReflectionUtil.valuesEqual(sentinel, referenceValue)) return sentinel;
+        }
+        for (Object testValue : testValues) {
+            if (testValue != null && !ReflectionUtil.valuesEqual(testValue, referenceValue)) return testValue;
+        }
+        return null;
+    }
+
     private <A, B> Set<Field> applyMapperToTestValues(Field field, List<?> testValues) {
         boolean isNonNullableField = testData.NON_NULL_FIELDS.contains(field.getName());
         return testValues.stream()
@@ -508,15 +2040,47 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
         TARGET target;
 
         try {
-            ReflectionUtil.setFieldValue(source, field, testValue);
-            target = mapperUnderTest.apply(source);
+            sourceAccessor.set(source, fieldIndexes.get(field), testValue);
+            target = applyMapper(source, field, testValue);
+        } catch (AssertionFailedError e) {
+            throw e;
         } catch (Throwable e) {
             AssertionFailedError assertionFailedError = new AssertionFailedError("Exception while training the mapping using field " + field.getName() + " with value " + testValue);
             assertionFailedError.initCause(e);
             throw assertionFailedError;
         }
 
-        Set<Field> changed = ReflectionUtil.getChangedFields(target, targetReference);
+        Set<Field> changed = getChangedFields(target);
+        return changed;
+    }
+
+    /**
+     * Collects the target fields whose value differs from the target reference. When writes are tracked, the changed
+     * fields are the fields that the mapper has written to the target: a field that the mapper doesn't write to the target
+     * reference is changed even if it is written with the value of the reference, e.g. its default value. Only the
+     * fields that are written to both are compared, because a mapper that writes every field can't be learned from its
+     * writes alone.
+     *
+     * @param target the target
+     * @return the changed fields
+     */
+    private Set<Field> getChangedFields(TARGET target) {
+        if (!testData.isWriteTracking()) {
+            return ReflectionUtil.getChangedFields(targetAccessor, targetFieldsByIndex, target, targetReference);
+        }
+        Set<String> writtenFieldNames = WriteTracker.takeWrites(target);
+        Set<Field> changed = new HashSet<Field>();
+        Field[] comparedFieldsByIndex = new Field[targetFieldsByIndex.length];
+        for (int index = 0; index < targetFieldsByIndex.length; index++) {
+            Field field = targetFieldsByIndex[index];
+            if (field == null || !writtenFieldNames.contains(field.getName())) continue;
+            if (referenceWrittenFieldNames.contains(field.getName())) {
+                comparedFieldsByIndex[index] = field;
+            } else {
+                changed.add(field);
+            }
+        }
+        changed.addAll(ReflectionUtil.getChangedFields(targetAccessor, comparedFieldsByIndex, target, targetReference));
         return changed;
     }
 
@@ -524,8 +2088,10 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
     /**
      * Gets the list of test values for a field using the following strategies:
      * 1. Try to get test values by field name
-     * 2. Try to get test values by type
-     * 3. Try to generate test values from a spawning type
+     * 2. Try to get production values from the corpus, see {@link #withTestValueCorpus(Path, int)}. Values of the field
+     * name that can't be converted to the type of the field belong to a field of another type; they are skipped.
+     * 3. Try to get test values by type
+     * 4. Try to generate test values from a spawning type
      *
      * @param field
      * @return
@@ -536,12 +2102,28 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
         List testValues = testData.TEST_VALUES_BY_FIELDNAME.get(field.getName());
         if (testValues != null) return testValues;
 
-        // Second, try to get test values by type
+        // Second, try to get production values from the corpus, by field name or by type
         Class<?> type = field.getType();
+        if (testData.getTestValueCorpus() != null) {
+            try {
+                testValues = testData.getTestValueCorpus().getValues(field.getName(), type);
+            } catch (IllegalArgumentException e) {
+                LOG.info(String.format("Skipping the corpus values of field %s: %s", field.getName(), e.getMessage()));
+            }
+            if (testValues == null) testValues = testData.getTestValueCorpus().getValues(type.getName(), type);
+            if (testValues != null) return testValues;
+        }
+
+        // Third, try to get test values by type
         testValues = testData.TEST_VALUES_BY_TYPE.get(type);
+        if (testValues instanceof MapperAssertTestData.PrimitiveArrayTestValues) {
+            // copies of the shared arrays, the same instances for every use in this assertion
+            List arrayValues = testValues;
+            return primitiveArrayTestValues.computeIfAbsent(type, key -> Collections.unmodifiableList(new ArrayList<Object>(arrayValues)));
+        }
         if (testValues != null) return testValues;
 
-        // Third, try to generate test values from a generating type
+        // Fourth, try to generate test values from a generating type
         for (Class generatingType : testData.TEST_VALUES_BY_TYPE.keySet()) {
             try {
                 testValues = generateTestValuesFromGeneratingType(type, generatingType);
@@ -553,48 +2135,79 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
 
         // Test Collection Classes
         if (Collection.class.isAssignableFrom(type)) {
-            try {
-                Collection<Object> sourceReference = (Collection) field.get(sourceSupplier.get());
-
-                // get source element type from declaration or from a element that
-                // can be found in the source sourceReference.
-                Class sourceCollectionElementType = collectionElementTypes.get(field.getName());
-                if (sourceCollectionElementType == null) {
-                    sourceCollectionElementType = inferElementTypeFromCollectionElements(field, sourceReference);
+            // get source element type from the configuration, the declaration or from an element that
+            // can be found in the source reference.
+            Class sourceCollectionElementType = getCollectionElementType(field, sourceClassOf(field));
+            if (sourceCollectionElementType == null) {
+                Object reference = sourceReference != null ? sourceReference : sourceSupplier.get();
+                try {
+                    sourceCollectionElementType = inferElementTypeFromCollectionElements(field, (Collection) field.get(reference));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalArgumentException("Can't read collection " + field.getName(), e);
                 }
-                List<Object> testValuesForContainedType = testData.TEST_VALUES_BY_TYPE.get(sourceCollectionElementType);
-
-                // test collections with one value each
-                List<Collection> result = testValuesForContainedType.stream()
-                        .map(tv -> {
-                            Collection<Object> newInstance = instantiateType(sourceReference);
-                            newInstance.add(tv);
-                            return newInstance;
-                        })
-                        .collect(Collectors.toList());
-
-                // test an empty collection
-                result.add(instantiateType(sourceReference));
-
-                // test a collection with all of the test values
-                Collection<Object> newInstance = instantiateType(sourceReference);
-                newInstance.addAll(testValuesForContainedType);
-                result.add(newInstance);
-
-                return result;
-
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
             }
+            List<Object> testValuesForContainedType = testData.TEST_VALUES_BY_TYPE.get(sourceCollectionElementType);
+            Class<?> collectionType = TypeModel.collectionImplementation(type);
+
+            // test collections with one value each
+            List<Collection> result = testValuesForContainedType.stream()
+                    .map(tv -> {
+                        Collection<Object> newInstance = newCollection(collectionType);
+                        newInstance.add(tv);
+                        return newInstance;
+                    })
+                    .collect(Collectors.toList());
+
+            // test an empty collection
+            result.add(newCollection(collectionType));
+
+            // test a collection with all of the test values
+            Collection<Object> newInstance = newCollection(collectionType);
+            newInstance.addAll(testValuesForContainedType);
+            result.add(newInstance);
+
+            return result;
         }
 
 
+        // exhaustively tested fields are learned with a few boundary values of their domain
+        if (isExhaustive(field)) {
+            checkExhaustible(type);
+            return ValueDomain.sample(type, ValueDomain.isNullable(type));
+        }
+
         if (testValues == null)
             throw new IllegalArgumentException("Keine Testdaten fuer Typ " + type.getCanonicalName());
 
         return testValues;
     }
 
+    /**
+     * Returns the element type of a collection field, either declared with {@link #whenSettingCollectionElementType}
+     * or resolved from the generic type of the field.
+     *
+     * @param field the collection field
+     * @param owner class of the object that holds the field
+     * @return the element type, or null if it isn't known.
+     */
+    private Class<Object> getCollectionElementType(Field field, Class<?> owner) {
+        Class<Object> elementType = testData.COLLECTION_ELEMENT_TYPES.get(field.getName());
+        return elementType != null ? elementType : (Class<Object>) TypeModel.elementTypeOf(owner, field);
+    }
+
+    private Class<?> sourceClassOf(Field field) {
+        return sourceReference != null ? sourceReference.getClass() : field.getDeclaringClass();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> newCollection(Class<?> collectionType) {
+        try {
+            return (Collection<Object>) collectionType.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Can't instantiate collection type " + collectionType.getCanonicalName(), e);
+        }
+    }
+
     private Class<?> inferElementTypeFromCollectionElements(Field field, Collection<Object> collection) {
         // find any object in the collection
         Class<?> elementTypeName = collection.stream()
@@ -630,14 +2243,68 @@ public class MapperAssert<SOURCE, TARGET> extends AbstractAssert<MapperAssert<SO
 
     }
 
+    /**
+     * Returns the test data of this assertion. A frozen (shared) test data container is copied before the first change.
+     *
+     * @return test data that may be changed.
+     */
+    private MapperAssertTestData writableTestData() {
+        if (testData.isFrozen()) {
+            testData = testData.copy();
+        }
+        return testData;
+    }
+
+    /**
+     * Learns the mapping with a single mapper invocation for all source fields that can be told apart by a sentinel value.
+     * The remaining source fields are learned field by field.
+     * <p>
+     * The sentinel invocation only checks that a source field maps to at most one target field for the sentinel value,
+     * not for every test value.
+     *
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> whenLearningWithSentinels() {
+        writableTestData().setSentinelLearning(true);
+        return myself;
+    }
+
+    /**
+     * Tests every value of a source field instead of the test values of its type. The values are generated lazily
+     * and verified in parallel, so the mapper and the source supplier must be usable by many threads.
+     * The mapping is learned with a few boundary values.
+     *
+     * @param fieldName name of a source field of type byte, short, char, boolean, their wrappers or an enum
+     * @return this.
+     */
+    public MapperAssert<SOURCE, TARGET> whenTestingAllValuesOfField(String fieldName) {
+        writableTestData().EXHAUSTIVE_FIELDS.add(fieldName);
+        return myself;
+    }
+
+    /**
+     * Tests every value of all source fields of a type, see {@link #whenTestingAllValuesOfField(String)}.
+     *
+     * @param type byte, short, char, boolean, their wrappers or an enum
+     * @return this.
+     * @throws IllegalArgumentException if the values of the type can't be tested exhaustively.
+     */
+    public MapperAssert<SOURCE, TARGET> whenTestingAllValuesOfType(Class<?> type) {
+        checkExhaustible(type);
+        writableTestData().EXHAUSTIVE_TYPES.add(type);
+        return myself;
+    }
+
     public MapperAssert<SOURCE, TARGET>   whenExcludingNullValuesInField(String fieldName) {
-        this.testData.NON_NULL_FIELDS.add(fieldName);
+        writableTestData().NON_NULL_FIELDS.add(fieldName);
         return myself;
     }
 
 
     public MapperAssert<SOURCE, TARGET> whenUsingMapper(OverrideMapping overrideMapping) {
-        testData.overrideMappingValues.add(overrideMapping);
+        writableTestData().overrideMappingValues
+                .computeIfAbsent(overrideMapping.sourceFieldName, k -> new HashMap<String, OverrideMapping>())
+                .put(overrideMapping.targetFieldName, overrideMapping);
         return myself;
     }
 }
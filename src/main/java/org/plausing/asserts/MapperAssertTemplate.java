@@ -0,0 +1,281 @@
+package org.plausing.asserts;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A named, immutable configuration for {@link MapperAssert}s.
+ * <p>
+ * A template holds ignored target fields, collection element types, test values, mappers, overrides and
+ * non-null fields. Every configuration method returns a new template, so a template can be shared
+ * between many assertions and test threads. An assertion that uses a template only copies the configuration
+ * when it is changed by the assertion itself.
+ * <p>
+ * Example:
+ * <pre>
+ * static final MapperAssertTemplate ENTITIES = MapperAssertTemplate.named("entities")
+ *         .whenIgnoringTargetFields("id", "version")
+ *         .withMapper(Mappers.IntegerToLongMapper);
+ *
+ * assertThat(mapper, ENTITIES).hasPlausibleMappingFor(Entity::new);
+ * </pre>
+ */
+public final class MapperAssertTemplate {
+
+    /** Name of the template. */
+    private final String name;
+
+    /** The frozen configuration. */
+    private final MapperAssertTestData testData;
+
+    private MapperAssertTemplate(String name, MapperAssertTestData testData) {
+        this.name = name;
+        this.testData = testData.freeze();
+    }
+
+    /**
+     * Creates a new template based on the default test values.
+     *
+     * @param name name of the template
+     * @return the template
+     */
+    public static MapperAssertTemplate named(String name) {
+        return new MapperAssertTemplate(name, MapperAssertTestData.DEFAULTS);
+    }
+
+    /**
+     * Creates a new template with the configuration of this template.
+     *
+     * @param name name of the new template
+     * @return the new template
+     */
+    public MapperAssertTemplate derive(String name) {
+        return new MapperAssertTemplate(name, testData);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the frozen configuration of this template.
+     */
+    MapperAssertTestData getTestData() {
+        return testData;
+    }
+
+    /**
+     * Excludes fields in the target object from being tested.
+     *
+     * @param ignoredTargetFields fields in the target class that should not tested.
+     * @return the new template
+     */
+    public MapperAssertTemplate whenIgnoringTargetFields(String... ignoredTargetFields) {
+        return with(data -> data.IGNORED_TARGET_FIELDS.addAll(Arrays.asList(ignoredTargetFields)));
+    }
+
+    /**
+     * Sets the type of the collection elements of field fieldName to class type.
+     *
+     * @param fieldName name of the collection field
+     * @param type      type of the elements
+     * @return the new template
+     */
+    public MapperAssertTemplate whenSettingCollectionElementType(String fieldName, Class type) {
+        return with(data -> data.COLLECTION_ELEMENT_TYPES.put(fieldName, type));
+    }
+
+    /**
+     * Sets a list of test values and a training value for all fields with type aClass.
+     *
+     * @param type          the type
+     * @param testValues    list of test values
+     * @param trainingValue training value
+     * @param <T>           Type of testValues and trainingValue
+     * @return the new template
+     */
+    public <T> MapperAssertTemplate whenUsingTestAndTrainingValuesForType(Class<T> type, List<T> testValues, T trainingValue) {
+        return with(data -> data.putTestAndTrainingValuesForType(type, testValues, trainingValue));
+    }
+
+    /**
+     * Adds a mapper for single values.
+     *
+     * @param mapper the mapper
+     * @return the new template
+     */
+    public MapperAssertTemplate withMapper(Mappers.Mapper mapper) {
+        return with(data -> data.putMapper(mapper.typePair, mapper.mappingFunction));
+    }
+
+    /**
+     * Declares the expected mapping of the values of a source property to a target property.
+     *
+     * @param sourcePropertyName name of the source field
+     * @param targetPropertyName name of the target field
+     * @param propertyMapping    expected mapping of a single source value
+     * @param <SOURCE_PROPERTY>  type of the source field
+     * @param <TARGET_PROPERTY>  type of the target field
+     * @return the new template
+     */
+    public <SOURCE_PROPERTY, TARGET_PROPERTY> MapperAssertTemplate withPropertyMapping(String sourcePropertyName, String targetPropertyName, Function<SOURCE_PROPERTY, TARGET_PROPERTY> propertyMapping) {
+        return whenUsingMapper(new OverrideMapping<SOURCE_PROPERTY, TARGET_PROPERTY>(sourcePropertyName, targetPropertyName, propertyMapping));
+    }
+
+    /**
+     * Declares the expected mapping of the values of a source property to a target property with type checks.
+     *
+     * @param sourcePropertyName name of the source field
+     * @param sourcePropertyType type of the source field
+     * @param targetPropertyName name of the target field
+     * @param targetPropertyType type of the target field
+     * @param propertyMapping    expected mapping of a single source value
+     * @param <SOURCE_PROPERTY>  type of the source field
+     * @param <TARGET_PROPERTY>  type of the target field
+     * @return the new template
+     */
+    public <SOURCE_PROPERTY, TARGET_PROPERTY> MapperAssertTemplate withPropertyMapping(String sourcePropertyName, Class<SOURCE_PROPERTY> sourcePropertyType,
+                                                                                       String targetPropertyName, Class<TARGET_PROPERTY> targetPropertyType,
+                                                                                       Function<SOURCE_PROPERTY, TARGET_PROPERTY> propertyMapping) {
+        return whenUsingMapper(new OverrideMapping<SOURCE_PROPERTY, TARGET_PROPERTY>(sourcePropertyName, sourcePropertyType, targetPropertyName, targetPropertyType, propertyMapping));
+    }
+
+    /**
+     * Adds an override mapping.
+     *
+     * @param overrideMapping the override
+     * @return the new template
+     */
+    public MapperAssertTemplate whenUsingMapper(OverrideMapping overrideMapping) {
+        return with(data -> data.overrideMappingValues
+                .computeIfAbsent(overrideMapping.sourceFieldName, k -> new HashMap<String, OverrideMapping>())
+                .put(overrideMapping.targetFieldName, overrideMapping));
+    }
+
+    /**
+     * Excludes null from the test values of a source field.
+     *
+     * @param fieldName name of the source field
+     * @return the new template
+     */
+    public MapperAssertTemplate whenExcludingNullValuesInField(String fieldName) {
+        return with(data -> data.NON_NULL_FIELDS.add(fieldName));
+    }
+
+    /**
+     * Tests all values of a field, see {@link MapperAssert#whenTestingAllValuesOfField(String)}.
+     *
+     * @param fieldName name of the source field
+     * @return the new template
+     */
+    public MapperAssertTemplate whenTestingAllValuesOfField(String fieldName) {
+        return with(data -> data.EXHAUSTIVE_FIELDS.add(fieldName));
+    }
+
+    /**
+     * Tests all values of the fields of a type, see {@link MapperAssert#whenTestingAllValuesOfType(Class)}.
+     *
+     * @param type byte, short, char, boolean, their wrappers or an enum
+     * @return the new template
+     */
+    public MapperAssertTemplate whenTestingAllValuesOfType(Class<?> type) {
+        MapperAssert.checkExhaustible(type);
+        return with(data -> data.EXHAUSTIVE_TYPES.add(type));
+    }
+
+    /**
+     * Learns the mapping with sentinel values first, see {@link MapperAssert#whenLearningWithSentinels()}.
+     *
+     * @return the new template
+     */
+    public MapperAssertTemplate whenLearningWithSentinels() {
+        return with(data -> data.setSentinelLearning(true));
+    }
+
+    /**
+     * Proposes the mapping from the bytecode of the mapper first, see {@link MapperAssert#whenLearningFromBytecode()}.
+     *
+     * @return the new template
+     */
+    public MapperAssertTemplate whenLearningFromBytecode() {
+        return with(data -> data.setBytecodeLearning(true));
+    }
+
+    /**
+     * Learns the mapping from the recorded field writes, see {@link MapperAssert#whenTrackingWrites()}.
+     *
+     * @return the new template
+     */
+    public MapperAssertTemplate whenTrackingWrites() {
+        return with(data -> data.setWriteTracking(true));
+    }
+
+    /**
+     * Detects test values with a slow path in the mapper, see {@link MapperAssert#whenDetectingLatencyOutliers(double)}.
+     *
+     * @param outlierFactor factor above the median latency
+     * @return the new template
+     */
+    public MapperAssertTemplate whenDetectingLatencyOutliers(double outlierFactor) {
+        if (outlierFactor <= 1) {
+            throw new IllegalArgumentException("Outlier factor must be greater than 1: " + outlierFactor);
+        }
+        return with(data -> data.setLatencyOutlierFactor(outlierFactor));
+    }
+
+    /**
+     * Limits the duration of every mapper invocation, see {@link MapperAssert#withInvocationTimeout(Duration)}.
+     *
+     * @param timeout maximum duration of an invocation
+     * @return the new template
+     */
+    public MapperAssertTemplate withInvocationTimeout(Duration timeout) {
+        return with(data -> data.setInvocationTimeout(timeout));
+    }
+
+    /**
+     * Limits the concurrent invocations of an asynchronous mapper, see {@link MapperAssert#withMaxInFlightInvocations(int)}.
+     *
+     * @param maxInFlightInvocations maximum number of invocations whose future isn't complete yet
+     * @return the new template
+     */
+    public MapperAssertTemplate withMaxInFlightInvocations(int maxInFlightInvocations) {
+        MapperAssert.checkMaxInFlightInvocations(maxInFlightInvocations);
+        return with(data -> data.setMaxInFlightInvocations(maxInFlightInvocations));
+    }
+
+    /**
+     * Uses values sampled from a corpus of production values as test values, see
+     * {@link MapperAssert#withTestValueCorpus(Path, int)}. The corpus is read once for all assertions of the template.
+     *
+     * @param corpusFile   the corpus
+     * @param valuesPerKey maximum number of values sampled per field name or type
+     * @return the new template
+     */
+    public MapperAssertTemplate withTestValueCorpus(Path corpusFile, int valuesPerKey) {
+        TestValueCorpus corpus = new TestValueCorpus(corpusFile, valuesPerKey, TestValueCorpus.DEFAULT_SEED);
+        return with(data -> data.setTestValueCorpus(corpus));
+    }
+
+    /**
+     * Creates a new template with a modified copy of the configuration.
+     *
+     * @param modification modification of the copy
+     * @return the new template
+     */
+    private MapperAssertTemplate with(Consumer<MapperAssertTestData> modification) {
+        MapperAssertTestData copy = testData.copy();
+        modification.accept(copy);
+        return new MapperAssertTemplate(name, copy);
+    }
+
+    @Override
+    public String toString() {
+        return "MapperAssertTemplate[" + name + "]";
+    }
+}
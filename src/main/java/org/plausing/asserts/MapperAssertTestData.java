@@ -1,25 +1,441 @@
 package org.plausing.asserts;
 
-import java.awt.peer.ChoicePeer;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 /**
  * Created by Florian on 15.02.2015.
+ * <p>
+ * A frozen instance can't be modified and can be shared between assertions and threads.
+ * Use {@link #copy()} to get a modifiable overlay.
  */
 public class MapperAssertTestData {
-        public HashMap<Class, Object> LEARN_VALUES_BY_TYPE = new HashMap<Class, Object>();
-        public HashMap<Class, List> TEST_VALUES_BY_TYPE = new HashMap<Class, List>();
-        public HashMap<String, Class> COLUMN_LABELS_TO_TYPES = new HashMap<String, Class>();
-        public HashMap<TypePair, Function> mappers = new HashMap<TypePair, Function>();
-        public HashMap<String, Object> LEARN_VALUES_BY_FIELDNAME = new HashMap<String, Object>();
-        public HashMap<String, List> TEST_VALUES_BY_FIELDNAME = new HashMap<String, List>();
-        public HashSet<String> ENUM_NAMES_TO_IGNORE = new HashSet<String>();
-        public List<OverrideMapping> overrideMappingValues = new ArrayList<OverrideMapping>();
+        public Map<Class, Object> LEARN_VALUES_BY_TYPE = new HashMap<Class, Object>();
+        public Map<Class, List> TEST_VALUES_BY_TYPE = new HashMap<Class, List>();
+        public Map<String, Class> COLUMN_LABELS_TO_TYPES = new HashMap<String, Class>();
+        // registered mappers, changed with putMapper so that the graph of the mappers is rebuilt.
+        public Map<TypePair, Function> mappers = new HashMap<TypePair, Function>();
+        public Map<String, Object> LEARN_VALUES_BY_FIELDNAME = new HashMap<String, Object>();
+        public Map<String, List> TEST_VALUES_BY_FIELDNAME = new HashMap<String, List>();
+        public Set<String> ENUM_NAMES_TO_IGNORE = new HashSet<String>();
+        // override mappings indexed by source field name and target field name.
+        public Map<String, Map<String, OverrideMapping>> overrideMappingValues = new HashMap<String, Map<String, OverrideMapping>>();
 
         // fields that don't use null values.
-        public HashSet<String> NON_NULL_FIELDS = new HashSet<String>();
+        public Set<String> NON_NULL_FIELDS = new HashSet<String>();
+
+        // target fields that should not be mapped.
+        public Set<String> IGNORED_TARGET_FIELDS = new HashSet<String>();
+
+        // types of the elements of collection fields by field name.
+        public Map<String, Class> COLLECTION_ELEMENT_TYPES = new HashMap<String, Class>();
+
+        // fields and types whose whole value domain is tested, see ValueDomain.
+        public Set<String> EXHAUSTIVE_FIELDS = new HashSet<String>();
+        public Set<Class> EXHAUSTIVE_TYPES = new HashSet<Class>();
+
+        // learn the mapping with sentinel values first.
+        private boolean sentinelLearning = false;
+
+        // propose the mapping from the bytecode of the mapper first.
+        private boolean bytecodeLearning = false;
+
+        // learn from the field writes recorded by the write tracking agent.
+        private boolean writeTracking = false;
+
+        // factor above the median latency that makes a test value a latency outlier, or 0.
+        private double latencyOutlierFactor = 0;
+
+        // maximum duration of a single mapper invocation, or null.
+        private Duration invocationTimeout = null;
+
+        // maximum number of invocations of an asynchronous mapper in flight.
+        private int maxInFlightInvocations = 64;
+
+        // production values sampled as test values, or null.
+        private TestValueCorpus testValueCorpus = null;
+
+        private boolean frozen = false;
+
+        /** The graph of the registered mappers, or null if the mappers have been changed since it was built. */
+        private volatile ConverterGraph converterGraph;
+
+        /** The default test values. Built once, frozen and shared by all assertions. */
+        public static final MapperAssertTestData DEFAULTS = createDefaults();
+
+        /** Enum test values (all constants plus null) by enum class. */
+        private static final Map<Class, List> ENUM_TEST_VALUES = new ConcurrentHashMap<Class, List>();
+
+        /** Enum name test values (all names plus null) by enum class. */
+        private static final Map<Class, List> ENUM_NAME_TEST_VALUES = new ConcurrentHashMap<Class, List>();
+
+        private static MapperAssertTestData createDefaults() {
+                MapperAssertTestData defaults = new MapperAssertTestData();
+
+                Date testDate = Date.from(LocalDate.of(1977, 4, 1).atStartOfDay().atZone(ZoneId.systemDefault()).toInstant());
+                java.sql.Date testSqlDate = new java.sql.Date(testDate.getTime());
+                String aTestString = "A test string.";
+
+                defaults.putTestAndTrainingValuesForType(String.class, Arrays.asList(aTestString, null), aTestString);
+                defaults.putTestAndTrainingValuesForType(int.class, Arrays.asList(Integer.MIN_VALUE, Integer.MAX_VALUE, 1, -1, 0), 1);
+                defaults.putTestAndTrainingValuesForType(Integer.class, Arrays.asList(Integer.MIN_VALUE, Integer.MAX_VALUE, 1, -1, 0, null), 1);
+                defaults.putTestAndTrainingValuesForType(long.class, Arrays.asList(Long.MIN_VALUE, Long.MAX_VALUE, 1L, -1L, 0L), 1L);
+                defaults.putTestAndTrainingValuesForType(Long.class, Arrays.asList(Long.MIN_VALUE, Long.MAX_VALUE, 1L, -1L, 0L, null), 1L);
+                defaults.putTestAndTrainingValuesForType(double.class, Arrays.asList(Double.MIN_VALUE, Double.MAX_VALUE, 1.0, -1.0, 0.0), 1.0);
+                defaults.putTestAndTrainingValuesForType(Double.class, Arrays.asList(Double.MIN_VALUE, Double.MAX_VALUE, 1.0, -1.0, 0.0, null), 1.0);
+                defaults.putTestAndTrainingValuesForType(java.util.Date.class, Arrays.asList(testDate, null), testDate);
+                defaults.putTestAndTrainingValuesForType(java.sql.Date.class, Arrays.asList(testSqlDate, null), testSqlDate);
+
+                addPrimitiveArrayTestValues(defaults);
+
+                return defaults.freeze();
+        }
+
+        /** Size of the large test arrays in bytes. */
+        static final int LARGE_ARRAY_BYTES = 1 << 20;
+
+        /**
+         * Adds test values for all primitive array types, see {@link PrimitiveArrayTestValues}.
+         *
+         * @param defaults the default test data
+         */
+        private static void addPrimitiveArrayTestValues(MapperAssertTestData defaults) {
+                addPrimitiveArrayTestValues(defaults, new byte[]{Byte.MIN_VALUE, Byte.MAX_VALUE, 1, -1, 0});
+                addPrimitiveArrayTestValues(defaults, new short[]{Short.MIN_VALUE, Short.MAX_VALUE, 1, -1, 0});
+                addPrimitiveArrayTestValues(defaults, new char[]{Character.MIN_VALUE, Character.MAX_VALUE, 'a', (char) 0xD800, (char) 0xDFFF});
+                addPrimitiveArrayTestValues(defaults, new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE, 1, -1, 0});
+                addPrimitiveArrayTestValues(defaults, new float[]{Float.MIN_VALUE, Float.MAX_VALUE, 1.0f, -1.0f, 0.0f, -0.0f, Float.NaN, Float.NEGATIVE_INFINITY});
+                addPrimitiveArrayTestValues(defaults, new long[]{Long.MIN_VALUE, Long.MAX_VALUE, 1L, -1L, 0L});
+                addPrimitiveArrayTestValues(defaults, new double[]{Double.MIN_VALUE, Double.MAX_VALUE, 1.0, -1.0, 0.0, -0.0, Double.NaN, Double.NEGATIVE_INFINITY});
+                addPrimitiveArrayTestValues(defaults, new boolean[]{true, false});
+        }
+
+        private static void addPrimitiveArrayTestValues(MapperAssertTestData defaults, Object boundaryValues) {
+                PrimitiveArrayTestValues testValues = new PrimitiveArrayTestValues(boundaryValues);
+                defaults.putTestAndTrainingValuesForType(boundaryValues.getClass(), testValues, testValues.get(0));
+        }
+
+        /**
+         * Test values of a primitive array type: an array with the boundary values of the element type, an empty array,
+         * a large array of {@link #LARGE_ARRAY_BYTES} bytes and null.
+         * <p>
+         * The large array is created on first use. Every call of {@link #get(int)} returns a new copy of the array, so
+         * that a mapper can't change the arrays of the shared defaults.
+         */
+        static final class PrimitiveArrayTestValues extends AbstractList<Object> {
+                private final Object boundaryValues;
+                private volatile Object largeArray;
+
+                PrimitiveArrayTestValues(Object boundaryValues) {
+                        this.boundaryValues = boundaryValues;
+                }
+
+                @Override
+                public Object get(int index) {
+                        switch (index) {
+                                case 0:
+                                        return copy(boundaryValues);
+                                case 1:
+                                        return java.lang.reflect.Array.newInstance(boundaryValues.getClass().getComponentType(), 0);
+                                case 2:
+                                        return copy(largeArray());
+                                case 3:
+                                        return null;
+                                default:
+                                        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                        }
+                }
+
+                @Override
+                public int size() {
+                        return 4;
+                }
+
+                private Object largeArray() {
+                        Object array = largeArray;
+                        if (array == null) {
+                                // a race creates equal arrays
+                                array = createLargeArray(boundaryValues.getClass().getComponentType());
+                                largeArray = array;
+                        }
+                        return array;
+                }
+
+                private static Object copy(Object array) {
+                        int length = java.lang.reflect.Array.getLength(array);
+                        Object copy = java.lang.reflect.Array.newInstance(array.getClass().getComponentType(), length);
+                        System.arraycopy(array, 0, copy, 0, length);
+                        return copy;
+                }
+
+                private static Object createLargeArray(Class<?> elementType) {
+                        if (elementType == byte.class) {
+                                byte[] array = new byte[LARGE_ARRAY_BYTES];
+                                for (int i = 0; i < array.length; i++) array[i] = (byte) largeArrayValue(i);
+                                return array;
+                        }
+                        if (elementType == short.class) {
+                                short[] array = new short[LARGE_ARRAY_BYTES / 2];
+                                for (int i = 0; i < array.length; i++) array[i] = (short) largeArrayValue(i);
+                                return array;
+                        }
+                        if (elementType == char.class) {
+                                char[] array = new char[LARGE_ARRAY_BYTES / 2];
+                                for (int i = 0; i < array.length; i++) array[i] = (char) largeArrayValue(i);
+                                return array;
+                        }
+                        if (elementType == int.class) {
+                                int[] array = new int[LARGE_ARRAY_BYTES / 4];
+                                for (int i = 0; i < array.length; i++) array[i] = largeArrayValue(i);
+                                return array;
+                        }
+                        if (elementType == float.class) {
+                                float[] array = new float[LARGE_ARRAY_BYTES / 4];
+                                for (int i = 0; i < array.length; i++) array[i] = largeArrayValue(i) / 3.0f;
+                                return array;
+                        }
+                        if (elementType == long.class) {
+                                long[] array = new long[LARGE_ARRAY_BYTES / 8];
+                                for (int i = 0; i < array.length; i++) array[i] = largeArrayValue(i) * 1_000_003L;
+                                return array;
+                        }
+                        if (elementType == double.class) {
+                                double[] array = new double[LARGE_ARRAY_BYTES / 8];
+                                for (int i = 0; i < array.length; i++) array[i] = largeArrayValue(i) / 7.0;
+                                return array;
+                        }
+                        boolean[] array = new boolean[LARGE_ARRAY_BYTES];
+                        for (int i = 0; i < array.length; i++) array[i] = (largeArrayValue(i) & 1) == 1;
+                        return array;
+                }
+
+                private static int largeArrayValue(int index) {
+                        return index * 31 + 7;
+                }
+        }
+
+        /**
+         * Sets the test values and the training value for a type.
+         *
+         * @param type          the type
+         * @param testValues    list of test values
+         * @param trainingValue training value
+         */
+        void putTestAndTrainingValuesForType(Class type, List testValues, Object trainingValue) {
+                TEST_VALUES_BY_TYPE.put(type, testValues);
+                LEARN_VALUES_BY_TYPE.put(type, trainingValue);
+        }
+
+        // settings of the assertion, set with writableTestData(). The setters of a frozen instance throw an
+        // UnsupportedOperationException, like its collections.
+
+        boolean isSentinelLearning() {
+                return sentinelLearning;
+        }
+
+        void setSentinelLearning(boolean sentinelLearning) {
+                checkModifiable();
+                this.sentinelLearning = sentinelLearning;
+        }
+
+        boolean isBytecodeLearning() {
+                return bytecodeLearning;
+        }
+
+        void setBytecodeLearning(boolean bytecodeLearning) {
+                checkModifiable();
+                this.bytecodeLearning = bytecodeLearning;
+        }
+
+        boolean isWriteTracking() {
+                return writeTracking;
+        }
+
+        void setWriteTracking(boolean writeTracking) {
+                checkModifiable();
+                this.writeTracking = writeTracking;
+        }
+
+        double getLatencyOutlierFactor() {
+                return latencyOutlierFactor;
+        }
+
+        void setLatencyOutlierFactor(double latencyOutlierFactor) {
+                checkModifiable();
+                this.latencyOutlierFactor = latencyOutlierFactor;
+        }
+
+        Duration getInvocationTimeout() {
+                return invocationTimeout;
+        }
+
+        void setInvocationTimeout(Duration invocationTimeout) {
+                checkModifiable();
+                this.invocationTimeout = invocationTimeout;
+        }
+
+        int getMaxInFlightInvocations() {
+                return maxInFlightInvocations;
+        }
+
+        void setMaxInFlightInvocations(int maxInFlightInvocations) {
+                checkModifiable();
+                this.maxInFlightInvocations = maxInFlightInvocations;
+        }
+
+        TestValueCorpus getTestValueCorpus() {
+                return testValueCorpus;
+        }
+
+        void setTestValueCorpus(TestValueCorpus testValueCorpus) {
+                checkModifiable();
+                this.testValueCorpus = testValueCorpus;
+        }
+
+        private void checkModifiable() {
+                if (frozen) throw new UnsupportedOperationException("Frozen test data can't be modified, use copy()");
+        }
+
+        /**
+         * Registers a mapper for a pair of types and drops the graph of the previous mappers.
+         *
+         * @param typePair the source and the target type
+         * @param mapper   the mapper
+         */
+        void putMapper(TypePair typePair, Function<?, ?> mapper) {
+                mappers.put(typePair, mapper);
+                converterGraph = null;
+        }
+
+        /**
+         * Returns the registered mappers as a graph that resolves chains of mappers, see {@link ConverterGraph}.
+         *
+         * @return the graph of the current mappers
+         */
+        ConverterGraph converters() {
+                ConverterGraph graph = converterGraph;
+                if (graph == null) {
+                        graph = new ConverterGraph(mappers);
+                        converterGraph = graph;
+                }
+                return graph;
+        }
+
+        /**
+         * @return true, if this instance can't be modified.
+         */
+        public boolean isFrozen() {
+                return frozen;
+        }
+
+        /**
+         * Creates a modifiable copy of this instance. The test value lists and the mapping functions are shared.
+         *
+         * @return a modifiable copy.
+         */
+        public MapperAssertTestData copy() {
+                MapperAssertTestData copy = new MapperAssertTestData();
+                copy.LEARN_VALUES_BY_TYPE.putAll(LEARN_VALUES_BY_TYPE);
+                copy.TEST_VALUES_BY_TYPE.putAll(TEST_VALUES_BY_TYPE);
+                copy.COLUMN_LABELS_TO_TYPES.putAll(COLUMN_LABELS_TO_TYPES);
+                copy.mappers.putAll(mappers);
+                copy.LEARN_VALUES_BY_FIELDNAME.putAll(LEARN_VALUES_BY_FIELDNAME);
+                copy.TEST_VALUES_BY_FIELDNAME.putAll(TEST_VALUES_BY_FIELDNAME);
+                copy.ENUM_NAMES_TO_IGNORE.addAll(ENUM_NAMES_TO_IGNORE);
+                overrideMappingValues.forEach((sourceFieldName, overrides) ->
+                        copy.overrideMappingValues.put(sourceFieldName, new HashMap<String, OverrideMapping>(overrides)));
+                copy.NON_NULL_FIELDS.addAll(NON_NULL_FIELDS);
+                copy.IGNORED_TARGET_FIELDS.addAll(IGNORED_TARGET_FIELDS);
+                copy.COLLECTION_ELEMENT_TYPES.putAll(COLLECTION_ELEMENT_TYPES);
+                copy.EXHAUSTIVE_FIELDS.addAll(EXHAUSTIVE_FIELDS);
+                copy.EXHAUSTIVE_TYPES.addAll(EXHAUSTIVE_TYPES);
+                copy.sentinelLearning = sentinelLearning;
+                copy.bytecodeLearning = bytecodeLearning;
+                copy.writeTracking = writeTracking;
+                copy.latencyOutlierFactor = latencyOutlierFactor;
+                copy.invocationTimeout = invocationTimeout;
+                copy.maxInFlightInvocations = maxInFlightInvocations;
+                copy.testValueCorpus = testValueCorpus;
+                return copy;
+        }
+
+        /**
+         * Creates a frozen copy of this instance.
+         *
+         * @return an unmodifiable copy, or this if this instance is already frozen.
+         */
+        public MapperAssertTestData freeze() {
+                if (frozen) return this;
+                MapperAssertTestData copy = copy();
+                copy.LEARN_VALUES_BY_TYPE = Collections.unmodifiableMap(copy.LEARN_VALUES_BY_TYPE);
+                copy.TEST_VALUES_BY_TYPE = Collections.unmodifiableMap(copy.TEST_VALUES_BY_TYPE);
+                copy.COLUMN_LABELS_TO_TYPES = Collections.unmodifiableMap(copy.COLUMN_LABELS_TO_TYPES);
+                copy.mappers = Collections.unmodifiableMap(copy.mappers);
+                copy.LEARN_VALUES_BY_FIELDNAME = Collections.unmodifiableMap(copy.LEARN_VALUES_BY_FIELDNAME);
+                copy.TEST_VALUES_BY_FIELDNAME = Collections.unmodifiableMap(copy.TEST_VALUES_BY_FIELDNAME);
+                copy.ENUM_NAMES_TO_IGNORE = Collections.unmodifiableSet(copy.ENUM_NAMES_TO_IGNORE);
+                copy.overrideMappingValues.replaceAll((sourceFieldName, overrides) -> Collections.unmodifiableMap(overrides));
+                copy.overrideMappingValues = Collections.unmodifiableMap(copy.overrideMappingValues);
+                copy.NON_NULL_FIELDS = Collections.unmodifiableSet(copy.NON_NULL_FIELDS);
+                copy.IGNORED_TARGET_FIELDS = Collections.unmodifiableSet(copy.IGNORED_TARGET_FIELDS);
+                copy.COLLECTION_ELEMENT_TYPES = Collections.unmodifiableMap(copy.COLLECTION_ELEMENT_TYPES);
+                copy.EXHAUSTIVE_FIELDS = Collections.unmodifiableSet(copy.EXHAUSTIVE_FIELDS);
+                copy.EXHAUSTIVE_TYPES = Collections.unmodifiableSet(copy.EXHAUSTIVE_TYPES);
+                copy.frozen = true;
+                return copy;
+        }
+
+        /**
+         * Generates a sentinel value for learning the mapping. Sentinels with different numbers are different,
+         * even after a conversion between the numeric types.
+         *
+         * @param type           type of the field
+         * @param sentinelNumber number of the sentinel
+         * @return the sentinel, or null if no sentinel can be generated for the type.
+         */
+        static Object sentinelValue(Class<?> type, int sentinelNumber) {
+                int value = 100_000 + sentinelNumber;
+                if (type == String.class) return "Plausing sentinel " + sentinelNumber;
+                if (type == int.class || type == Integer.class) return value;
+                if (type == long.class || type == Long.class) return (long) value;
+                if (type == double.class || type == Double.class) return value + 0.5;
+                return null;
+        }
+
+        /**
+         * Returns all constants of an enum plus null. The list is computed once per enum class.
+         *
+         * @param enumClass the enum
+         * @return unmodifiable list of test values
+         */
+        @SuppressWarnings("unchecked")
+        static <T extends Enum> List<T> enumTestValues(Class<T> enumClass) {
+                return ENUM_TEST_VALUES.computeIfAbsent(enumClass, c -> {
+                        List<T> result = new ArrayList<T>(Arrays.asList(enumClass.getEnumConstants()));
+                        result.add(null);
+                        return Collections.unmodifiableList(result);
+                });
+        }
+
+        /**
+         * Returns the names of all constants of an enum plus null. The list is computed once per enum class.
+         *
+         * @param enumClass the enum
+         * @return unmodifiable list of test values
+         */
+        @SuppressWarnings("unchecked")
+        static List<String> enumNameTestValues(Class<? extends Enum> enumClass) {
+                return ENUM_NAME_TEST_VALUES.computeIfAbsent(enumClass, c -> {
+                        List<String> result = new ArrayList<String>();
+                        for (Enum e : enumClass.getEnumConstants()) {
+                                result.add(e.name());
+                        }
+                        result.add(null);
+                        return Collections.unmodifiableList(result);
+                });
+        }
 }
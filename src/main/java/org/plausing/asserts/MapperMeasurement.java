@@ -0,0 +1,139 @@
+package org.plausing.asserts;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Time and allocation of a mapper, measured over a list of inputs.
+ */
+public class MapperMeasurement {
+
+    /** Number of measured invocations. */
+    public final long invocations;
+
+    /** Elapsed time of all measured invocations in nanoseconds. */
+    public final long nanos;
+
+    /** Bytes allocated by the measuring thread during all measured invocations, or -1 if it can't be measured. */
+    public final long allocatedBytes;
+
+    MapperMeasurement(long invocations, long nanos, long allocatedBytes) {
+        this.invocations = invocations;
+        this.nanos = nanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return the mean time of an invocation in nanoseconds.
+     */
+    public double nanosPerInvocation() {
+        return invocations == 0 ? 0.0 : (double) nanos / invocations;
+    }
+
+    /**
+     * @return the mean allocation of an invocation in bytes, or -1 if it can't be measured.
+     */
+    public double bytesPerInvocation() {
+        return allocatedBytes < 0 || invocations == 0 ? -1.0 : (double) allocatedBytes / invocations;
+    }
+
+    /**
+     * Applies the mapper to every input in a number of warm up rounds and then measures a number of rounds.
+     * Exceptions of the mapper are ignored.
+     *
+     * @param mapper         the mapper
+     * @param inputs         the inputs
+     * @param warmUpRounds   rounds that are not measured
+     * @param measuredRounds rounds that are measured
+     * @param <SOURCE>       source type of the mapper
+     * @return the measurement
+     */
+    public static <SOURCE> MapperMeasurement measure(Function<SOURCE, ?> mapper, List<SOURCE> inputs, int warmUpRounds, int measuredRounds) {
+        for (int round = 0; round < warmUpRounds; round++) {
+            applyToAll(mapper, inputs);
+        }
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < measuredRounds; round++) {
+            applyToAll(mapper, inputs);
+        }
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        long allocated = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+        return new MapperMeasurement((long) inputs.size() * measuredRounds, nanos, allocated);
+    }
+
+    /**
+     * Measures two mappers in alternating rounds: after the warm up rounds of both, every round applies both mappers to
+     * their inputs, and the mapper that runs first alternates between the rounds. So JIT compilation, garbage collection
+     * and other noise of the measuring phase affect both mappers alike, instead of the mapper that is measured second.
+     * Exceptions of the mappers are ignored.
+     *
+     * @param first          the first mapper
+     * @param firstInputs    the inputs of the first mapper
+     * @param second         the second mapper
+     * @param secondInputs   the inputs of the second mapper, not shared with the first one
+     * @param warmUpRounds   rounds that are not measured
+     * @param measuredRounds rounds that are measured
+     * @param <SOURCE>       source type of the mappers
+     * @return the measurements of the first and the second mapper
+     */
+    public static <SOURCE> List<MapperMeasurement> measureAlternating(Function<SOURCE, ?> first, List<SOURCE> firstInputs,
+                                                                      Function<SOURCE, ?> second, List<SOURCE> secondInputs,
+                                                                      int warmUpRounds, int measuredRounds) {
+        for (int round = 0; round < warmUpRounds; round++) {
+            applyToAll(round % 2 == 0 ? first : second, round % 2 == 0 ? firstInputs : secondInputs);
+            applyToAll(round % 2 == 0 ? second : first, round % 2 == 0 ? secondInputs : firstInputs);
+        }
+        long[] nanos = new long[2];
+        long[] allocated = new long[2];
+        for (int round = 0; round < measuredRounds; round++) {
+            for (int turn = 0; turn < 2; turn++) {
+                int mapper = (round + turn) % 2;
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                applyToAll(mapper == 0 ? first : second, mapper == 0 ? firstInputs : secondInputs);
+                nanos[mapper] += System.nanoTime() - start;
+                long allocatedAfter = allocatedBytes();
+                allocated[mapper] = allocated[mapper] < 0 || allocatedBefore < 0 || allocatedAfter < 0
+                        ? -1 : allocated[mapper] + allocatedAfter - allocatedBefore;
+            }
+        }
+        return Arrays.asList(
+                new MapperMeasurement((long) firstInputs.size() * measuredRounds, nanos[0], allocated[0]),
+                new MapperMeasurement((long) secondInputs.size() * measuredRounds, nanos[1], allocated[1]));
+    }
+
+    private static <SOURCE> void applyToAll(Function<SOURCE, ?> mapper, List<SOURCE> inputs) {
+        for (SOURCE input : inputs) {
+            try {
+                mapper.apply(input);
+            } catch (RuntimeException e) {
+                // exceptions are part of the measured behaviour.
+            }
+        }
+    }
+
+    /**
+     * @return the bytes allocated by the current thread, or -1 if the JVM doesn't support it.
+     */
+    static long allocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreadMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (sunThreadMXBean.isThreadAllocatedMemorySupported() && sunThreadMXBean.isThreadAllocatedMemoryEnabled()) {
+                return sunThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d invocations, %.1f ns/invocation, %s", invocations, nanosPerInvocation(),
+                allocatedBytes < 0 ? "allocation unknown" : String.format("%.1f bytes/invocation", bytesPerInvocation()));
+    }
+}
@@ -0,0 +1,209 @@
+package org.plausing.asserts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * The durations and results of the registered mappers in a run of {@link PlausibleMapperRunner}.
+ * <p>
+ * The report is a UTF-8 text file with one line per mapper and the tab separated columns name, duration in nanoseconds
+ * and result (PASSED or FAILED). Lines starting with # are comments, except for the line {@code # Shard <index> of
+ * <count>} of the partial report of a shard (see {@link MapperShards}). The partial reports of the shards are merged
+ * into one, which is the cost model of the next run:
+ * <pre>
+ * java -cp ... org.plausing.asserts.MapperRunReport merged.tsv shard-0.tsv shard-1.tsv
+ * </pre>
+ */
+public class MapperRunReport {
+
+    private static final String SHARD_PREFIX = "# Shard ";
+
+    /** Results by mapper name, sorted to get a reproducible report. */
+    private final SortedMap<String, Result> results = new TreeMap<String, Result>();
+
+    /** Index of the shard, and number of shards, or 1 if the report covers all mappers. */
+    private int shardIndex = 0;
+    private int shardCount = 1;
+
+    /**
+     * The duration and the result of a mapper.
+     */
+    public static class Result {
+
+        /** Duration of the assertion in nanoseconds. */
+        public final long nanos;
+
+        /** True, if the mapper is plausible. */
+        public final boolean passed;
+
+        Result(long nanos, boolean passed) {
+            this.nanos = nanos;
+            this.passed = passed;
+        }
+    }
+
+    /**
+     * Records the result of a mapper.
+     *
+     * @param name   name of the mapper, see {@link PlausibleMapperIndex.Entry#getName()}
+     * @param nanos  duration of the assertion in nanoseconds
+     * @param passed true, if the mapper is plausible
+     */
+    public synchronized void record(String name, long nanos, boolean passed) {
+        results.put(name, new Result(nanos, passed));
+    }
+
+    /**
+     * Marks the report as the partial report of a shard.
+     *
+     * @param index index of the shard, from 0 to count - 1
+     * @param count number of shards
+     */
+    public synchronized void setShard(int index, int count) {
+        this.shardIndex = index;
+        this.shardCount = count;
+    }
+
+    /**
+     * @return the index of the shard, 0 if the report covers all mappers.
+     */
+    public synchronized int getShardIndex() {
+        return shardIndex;
+    }
+
+    /**
+     * @return the number of shards, 1 if the report covers all mappers.
+     */
+    public synchronized int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return the results by mapper name.
+     */
+    public synchronized SortedMap<String, Result> getResults() {
+        return Collections.unmodifiableSortedMap(new TreeMap<String, Result>(results));
+    }
+
+    /**
+     * @return the durations in nanoseconds by mapper name, the costs of {@link MapperShards#select}.
+     */
+    public synchronized Map<String, Long> costs() {
+        Map<String, Long> costs = new HashMap<String, Long>();
+        results.forEach((name, result) -> costs.put(name, result.nanos));
+        return costs;
+    }
+
+    /**
+     * @return the number of mappers that failed.
+     */
+    public synchronized long failures() {
+        return results.values().stream().filter(result -> !result.passed).count();
+    }
+
+    /**
+     * Merges reports, e.g. the partial reports of the shards, into a report of all mappers. A mapper that is in
+     * several reports gets the result of the last one.
+     *
+     * @param reports the reports
+     * @return the merged report
+     */
+    public static MapperRunReport merge(List<MapperRunReport> reports) {
+        MapperRunReport merged = new MapperRunReport();
+        for (MapperRunReport report : reports) {
+            merged.results.putAll(report.getResults());
+        }
+        return merged;
+    }
+
+    /**
+     * Writes the report.
+     *
+     * @param file the file, its directory is created if necessary
+     * @throws IOException if the file can't be written.
+     */
+    public synchronized void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        if (directory != null) Files.createDirectories(directory);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# Generated by " + PlausibleMapperRunner.class.getName() + "\n");
+            if (shardCount > 1) {
+                writer.write(SHARD_PREFIX + shardIndex + " of " + shardCount + "\n");
+            }
+            for (Map.Entry<String, Result> entry : results.entrySet()) {
+                writer.write(entry.getKey() + "\t" + entry.getValue().nanos + "\t" + (entry.getValue().passed ? "PASSED" : "FAILED") + "\n");
+            }
+        }
+    }
+
+    /**
+     * Reads a report.
+     *
+     * @param file the file
+     * @return the report
+     * @throws IOException              if the file can't be read.
+     * @throws IllegalArgumentException if a line can't be parsed.
+     */
+    public static MapperRunReport read(Path file) throws IOException {
+        MapperRunReport report = new MapperRunReport();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SHARD_PREFIX)) {
+                    String[] shard = line.substring(SHARD_PREFIX.length()).split(" of ", -1);
+                    try {
+                        if (shard.length != 2) throw new NumberFormatException();
+                        report.setShard(Integer.parseInt(shard[0]), Integer.parseInt(shard[1]));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid line in plausing run report " + file + ": " + line, e);
+                    }
+                    continue;
+                }
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] columns = line.split("\t", -1);
+                if (columns.length != 3) {
+                    throw new IllegalArgumentException("Invalid line in plausing run report " + file + ": " + line);
+                }
+                report.record(columns[0], Long.parseLong(columns[1]), "PASSED".equals(columns[2]));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Reads a report, or returns an empty report if the file doesn't exist, e.g. in the first run.
+     *
+     * @param file the file
+     * @return the report
+     * @throws IOException if the file can't be read.
+     */
+    static MapperRunReport readIfExists(Path file) throws IOException {
+        return Files.exists(file) ? read(file) : new MapperRunReport();
+    }
+
+    /**
+     * Merges partial reports into one.
+     *
+     * @param args the merged report, followed by the partial reports
+     * @throws IOException if a report can't be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: MapperRunReport <merged report> <partial report>...");
+            System.exit(2);
+        }
+        List<MapperRunReport> reports = new ArrayList<MapperRunReport>();
+        for (String partial : Arrays.asList(args).subList(1, args.length)) {
+            reports.add(read(Paths.get(partial)));
+        }
+        MapperRunReport merged = merge(reports);
+        merged.write(Paths.get(args[0]));
+        System.out.println("Merged " + merged.results.size() + " mappers, " + merged.failures() + " failed");
+    }
+}
@@ -0,0 +1,105 @@
+package org.plausing.asserts;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Splits the registered mappers into shards that run on different JVMs or CI nodes, see {@link PlausibleMapperRunner}.
+ * <p>
+ * The shards are balanced by the cost of the mappers, their durations in an earlier run (see {@link MapperRunReport}).
+ * The mappers are assigned longest first to the shard with the least total cost, so every shard gets about the same
+ * wall time. A mapper without a known duration costs the average of the known durations.
+ * <p>
+ * The assignment only depends on the registered mappers and the costs, so every node picks a disjoint subset and all
+ * shards together run every mapper, as long as the nodes read the same report. That's the merged report of all shards,
+ * the partial report of a single shard is rejected, because the nodes of the other shards would read other costs.
+ */
+public final class MapperShards {
+
+    /** System property with the index of the shard to be run, from 0 to the count - 1. */
+    public static final String SHARD_INDEX_PROPERTY = "plausing.shard.index";
+
+    /** System property with the number of shards. */
+    public static final String SHARD_COUNT_PROPERTY = "plausing.shard.count";
+
+    /** System property with the path of the report of an earlier run, used as cost model. */
+    public static final String TIMINGS_PROPERTY = "plausing.timings";
+
+    /** System property with the path the report of this run is written to. */
+    public static final String REPORT_PROPERTY = "plausing.report";
+
+    private MapperShards() {
+    }
+
+    /**
+     * Selects the mappers of a shard.
+     *
+     * @param entries the registered mappers
+     * @param costs   the costs of the mappers by name, e.g. durations in nanoseconds
+     * @param index   index of the shard, from 0 to count - 1
+     * @param count   number of shards
+     * @return the mappers of the shard, sorted by name
+     */
+    public static List<PlausibleMapperIndex.Entry> select(List<PlausibleMapperIndex.Entry> entries, Map<String, Long> costs, int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Shard index " + index + " must be between 0 and the shard count " + count + " - 1");
+        }
+        long defaultCost = Math.max(1, Math.round(costs.values().stream().mapToLong(Long::longValue).average().orElse(1)));
+        List<PlausibleMapperIndex.Entry> byCost = new ArrayList<PlausibleMapperIndex.Entry>(entries);
+        byCost.sort(Comparator.comparingLong((PlausibleMapperIndex.Entry entry) -> costs.getOrDefault(entry.getName(), defaultCost))
+                .reversed()
+                .thenComparing(PlausibleMapperIndex.Entry::getName));
+
+        long[] loads = new long[count];
+        List<PlausibleMapperIndex.Entry> selected = new ArrayList<PlausibleMapperIndex.Entry>();
+        for (PlausibleMapperIndex.Entry entry : byCost) {
+            int shard = 0;
+            for (int candidate = 1; candidate < count; candidate++) {
+                if (loads[candidate] < loads[shard]) shard = candidate;
+            }
+            loads[shard] += costs.getOrDefault(entry.getName(), defaultCost);
+            if (shard == index) selected.add(entry);
+        }
+        selected.sort(Comparator.comparing(PlausibleMapperIndex.Entry::getName));
+        return selected;
+    }
+
+    /**
+     * Selects the mappers of the shard that is configured by {@link #SHARD_INDEX_PROPERTY} and
+     * {@link #SHARD_COUNT_PROPERTY}, with the costs of the report at {@link #TIMINGS_PROPERTY}.
+     *
+     * @param entries the registered mappers
+     * @return the mappers of the shard, or all mappers if no shard is configured.
+     * @throws IOException              if the report can't be read.
+     * @throws IllegalArgumentException if the report is the partial report of a shard.
+     */
+    static List<PlausibleMapperIndex.Entry> selectConfigured(List<PlausibleMapperIndex.Entry> entries) throws IOException {
+        if (System.getProperty(SHARD_COUNT_PROPERTY) == null) return entries;
+        String timings = System.getProperty(TIMINGS_PROPERTY);
+        Map<String, Long> costs = Collections.emptyMap();
+        if (timings != null) {
+            MapperRunReport report = MapperRunReport.readIfExists(Paths.get(timings));
+            if (report.getShardCount() > 1) {
+                throw new IllegalArgumentException("Timings " + timings + " are the partial report of shard " + report.getShardIndex()
+                        + " of " + report.getShardCount() + ", every node has to read the merged report of all shards, see " + MapperRunReport.class.getName());
+            }
+            costs = report.costs();
+        }
+        return select(entries, costs, configuredIndex(), configuredCount());
+    }
+
+    /**
+     * @return the index of the configured shard, 0 if no shard is configured.
+     */
+    static int configuredIndex() {
+        return Integer.parseInt(System.getProperty(SHARD_INDEX_PROPERTY, "0"));
+    }
+
+    /**
+     * @return the configured number of shards, 1 if no shard is configured.
+     */
+    static int configuredCount() {
+        return Integer.parseInt(System.getProperty(SHARD_COUNT_PROPERTY, "1"));
+    }
+}
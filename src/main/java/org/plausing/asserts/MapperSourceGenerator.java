@@ -0,0 +1,321 @@
+package org.plausing.asserts;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Generates the Java source of a mapper from a learned field mapping.
+ * <p>
+ * Every field pair is converted the way the {@link MappingOracle} expects it: declared overrides and registered mappers,
+ * collections element by element, assignment, boxing and unboxing, enums by name, a constructor of the target type or
+ * a getter of the source type. The generated mapper accesses the fields directly or by their public getters and setters,
+ * so it doesn't use reflection. Overrides and registered mappers can't be written as source; they are passed to the
+ * constructor of the generated mapper in the order of their declaration in the generated class.
+ */
+class MapperSourceGenerator {
+
+    private final Class<?> sourceClass;
+    private final Class<?> targetClass;
+    private final String packageName;
+    private final String simpleName;
+    private final MapperAssertTestData testData;
+
+    /** Functions passed to the constructor, by their field name in the generated class. */
+    private final Map<String, String> injectedFunctions = new LinkedHashMap<String, String>();
+
+    /** Field names of the injected registered mappers. */
+    private final Map<TypePair, String> registeredMapperNames = new HashMap<TypePair, String>();
+
+    /**
+     * @param sourceClass         class of the source
+     * @param targetClass         class of the target
+     * @param qualifiedClassName  qualified name of the generated mapper
+     * @param testData            configuration with the overrides, registered mappers and collection element types
+     */
+    MapperSourceGenerator(Class<?> sourceClass, Class<?> targetClass, String qualifiedClassName, MapperAssertTestData testData) {
+        this.sourceClass = sourceClass;
+        this.targetClass = targetClass;
+        int packageEnd = qualifiedClassName.lastIndexOf('.');
+        this.packageName = packageEnd < 0 ? "" : qualifiedClassName.substring(0, packageEnd);
+        this.simpleName = qualifiedClassName.substring(packageEnd + 1);
+        this.testData = testData;
+    }
+
+    /**
+     * Generates the mapper.
+     *
+     * @param sourceFields the source fields in the order of their mapping
+     * @param mapping      the learned mapping
+     * @return the source of the mapper
+     * @throws IllegalStateException if a field can't be accessed or a conversion can't be generated.
+     */
+    String generate(List<Field> sourceFields, Map<Field, Field> mapping) {
+        if (!isAccessible(targetClass) || !isAccessible(sourceClass)) {
+            throw new IllegalStateException("Source and target class must be public or in package " + packageName);
+        }
+        try {
+            Constructor<?> constructor = targetClass.getDeclaredConstructor();
+            if (!isAccessible(constructor.getModifiers(), targetClass)) throw new NoSuchMethodException();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Target class " + targetClass.getCanonicalName() + " has no accessible constructor without parameters");
+        }
+
+        List<String> body = new ArrayList<String>();
+        int valueNumber = 0;
+        for (Field sourceField : sourceFields) {
+            Field targetField = mapping.get(sourceField);
+            if (targetField == null) continue;
+            String value = "value" + valueNumber++;
+            body.add("");
+            body.add("        // " + sourceField.getName() + " --> " + targetField.getName());
+            body.add("        " + typeName(sourceField.getType()) + " " + value + " = " + readField(sourceField) + ";");
+            generateFieldMapping(body, sourceField, targetField, value);
+        }
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("/**\n");
+        out.append(" * Maps {@link ").append(sourceClass.getCanonicalName()).append("} to {@link ").append(targetClass.getCanonicalName()).append("}.\n");
+        out.append(" * Generated by ").append(MapperSourceGenerator.class.getName()).append(" from the learned mapping.\n");
+        out.append(" */\n");
+        out.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        out.append("public final class ").append(simpleName).append(" implements java.util.function.Function<")
+                .append(typeName(sourceClass)).append(", ").append(typeName(targetClass)).append("> {\n");
+
+        if (!injectedFunctions.isEmpty()) {
+            out.append('\n');
+            for (Map.Entry<String, String> function : injectedFunctions.entrySet()) {
+                out.append("    /** ").append(function.getValue()).append(" */\n");
+                out.append("    private final java.util.function.Function ").append(function.getKey()).append(";\n");
+            }
+            out.append('\n');
+            out.append("    public ").append(simpleName).append("(");
+            int parameterNumber = 0;
+            for (String name : injectedFunctions.keySet()) {
+                out.append(parameterNumber++ == 0 ? "" : ", ").append("java.util.function.Function ").append(name);
+            }
+            out.append(") {\n");
+            for (String name : injectedFunctions.keySet()) {
+                out.append("        this.").append(name).append(" = ").append(name).append(";\n");
+            }
+            out.append("    }\n");
+        }
+
+        out.append('\n');
+        out.append("    @Override\n");
+        out.append("    public ").append(typeName(targetClass)).append(" apply(").append(typeName(sourceClass)).append(" source) {\n");
+        out.append("        ").append(typeName(targetClass)).append(" target = new ").append(typeName(targetClass)).append("();\n");
+        for (String line : body) {
+            out.append(line).append('\n');
+        }
+        out.append('\n');
+        out.append("        return target;\n");
+        out.append("    }\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    /**
+     * Generates the statements that convert the value of the source field and write it to the target field.
+     */
+    private void generateFieldMapping(List<String> body, Field sourceField, Field targetField, String value) {
+        Class<?> sourceType = sourceField.getType();
+        Class<?> targetType = targetField.getType();
+
+        OverrideMapping override = getOverride(sourceField, targetField);
+        if (override != null) {
+            String name = "override" + injectedFunctions.size();
+            injectedFunctions.put(name, "Property mapping " + sourceField.getName() + " --> " + targetField.getName());
+            body.add("        " + writeField(targetField, cast(targetType, name + ".apply(" + value + ")")) + ";");
+            return;
+        }
+
+        boolean collectionMapping = Collection.class.isAssignableFrom(sourceType) && Collection.class.isAssignableFrom(targetType)
+                && testData.converters().converterFor(sourceType, targetType) == null;
+        if (!collectionMapping) {
+            body.add("        " + writeField(targetField, convert(value, sourceType, targetType, sourceField, targetField)) + ";");
+            return;
+        }
+
+        Class<?> sourceElementType = elementType(sourceField, sourceClass);
+        Class<?> targetElementType = elementType(targetField, targetClass);
+        String collection = value + "Target";
+        String element = value + "Element";
+        String elementConversion = sourceElementType == null || targetElementType == null
+                ? element
+                : convert("((" + typeName(sourceElementType) + ") " + element + ")", sourceElementType, targetElementType, sourceField, targetField);
+        body.add("        if (" + value + " == null) {");
+        body.add("            " + writeField(targetField, "null") + ";");
+        body.add("        } else {");
+        body.add("            " + typeName(targetType) + " " + collection + " = new " + typeName(collectionImplementation(targetField)) + "();");
+        body.add("            for (Object " + element + " : " + value + ") {");
+        body.add("                " + collection + ".add(" + elementConversion + ");");
+        body.add("            }");
+        body.add("            " + writeField(targetField, collection) + ";");
+        body.add("        }");
+    }
+
+    /**
+     * Returns the expression that converts a single value, following the strategy of
+     * {@link MappingOracle#guessTargetValue}.
+     */
+    private String convert(String value, Class<?> sourceType, Class<?> targetType, Field sourceField, Field targetField) {
+        // a primitive target gets its default value for null, like in the oracle
+        String nullValue = targetType.isPrimitive() ? defaultValue(targetType) : "null";
+        String nullCheck = sourceType.isPrimitive() ? "" : value + " == null ? " + nullValue + " : ";
+
+        List<TypePair> registeredMappers = testData.converters().chainOf(sourceType, targetType);
+        if (registeredMappers != null) {
+            // a chain of registered mappers is applied one after the other
+            String conversion = value;
+            for (TypePair typePair : registeredMappers) {
+                String name = registeredMapperNames.get(typePair);
+                if (name == null) {
+                    name = "mapper" + injectedFunctions.size();
+                    registeredMapperNames.put(typePair, name);
+                    injectedFunctions.put(name, "Registered mapper " + typePair.sourceType.getCanonicalName() + " --> " + typePair.targetType.getCanonicalName());
+                }
+                conversion = name + ".apply(" + conversion + ")";
+            }
+            return cast(targetType, conversion);
+        }
+        if (targetType.isAssignableFrom(sourceType)) {
+            return value;
+        }
+        if (ReflectionUtil.boxed(sourceType) == ReflectionUtil.boxed(targetType)) {
+            return targetType.isPrimitive() ? nullCheck + value : value;
+        }
+
+        boolean sourceIsEnum = Enum.class.isAssignableFrom(sourceType);
+        boolean targetIsEnum = Enum.class.isAssignableFrom(targetType);
+        if (sourceIsEnum && targetIsEnum) {
+            return nullCheck + typeName(targetType) + ".valueOf(" + value + ".name())";
+        }
+        if (sourceType == String.class && targetIsEnum) {
+            return nullCheck + typeName(targetType) + ".valueOf(" + value + ")";
+        }
+        if (sourceIsEnum && targetType == String.class) {
+            return nullCheck + value + ".name()";
+        }
+
+        try {
+            targetType.getConstructor(sourceType);
+            if (isAccessible(targetType)) {
+                return nullCheck + "new " + typeName(targetType) + "(" + value + ")";
+            }
+        } catch (NoSuchMethodException e) {
+            // constructor mapping isn't possible.
+        }
+
+        Method getter = findConversionGetter(sourceType, targetType);
+        if (getter == null && MappingOracle.PRIMITVES_OF_BOXED_TYPES.containsKey(targetType)) {
+            getter = findConversionGetter(sourceType, MappingOracle.PRIMITVES_OF_BOXED_TYPES.get(targetType));
+        }
+        if (getter != null) {
+            return nullCheck + value + "." + getter.getName() + "()";
+        }
+
+        throw new IllegalStateException(String.format("Can't generate the conversion of %s --> %s from %s to %s",
+                sourceField.getName(), targetField.getName(), sourceType.getCanonicalName(), targetType.getCanonicalName()));
+    }
+
+    /**
+     * Finds a getter of the source type that returns the target type, like {@link MappingOracle#guessGetterMapping}.
+     */
+    private Method findConversionGetter(Class<?> sourceType, Class<?> targetType) {
+        for (Method method : sourceType.getMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && !ReflectionUtil.isStatic(method) && method.getParameterCount() == 0
+                    && method.getReturnType().isAssignableFrom(targetType) && method.getName().matches("get.*|.*value.*|.*Value.*")) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the implementation of a target collection, the one {@link MappingOracle#guessCollectionMapping} instantiates.
+     */
+    private Class<?> collectionImplementation(Field targetField) {
+        try {
+            return TypeModel.collectionImplementation(targetField.getType());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Can't generate the collection of " + targetField.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the literal of the default value of a primitive type.
+     */
+    private static String defaultValue(Class<?> type) {
+        if (type == boolean.class) return "false";
+        if (type == char.class) return "'\\0'";
+        return "(" + type.getName() + ") 0";
+    }
+
+    private OverrideMapping getOverride(Field sourceField, Field targetField) {
+        Map<String, OverrideMapping> overrides = testData.overrideMappingValues.get(sourceField.getName());
+        return overrides == null ? null : overrides.get(targetField.getName());
+    }
+
+    /**
+     * Returns the element type of a collection field from the configuration or from its declaration.
+     *
+     * @return the element type, or null if it isn't known.
+     */
+    private Class<?> elementType(Field field, Class<?> owner) {
+        Class<?> elementType = testData.COLLECTION_ELEMENT_TYPES.get(field.getName());
+        return elementType != null ? elementType : TypeModel.elementTypeOf(owner, field);
+    }
+
+    private String readField(Field field) {
+        if (isAccessible(field.getModifiers(), field.getDeclaringClass())) {
+            return "source." + field.getName();
+        }
+        String capitalizedName = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        for (String prefix : new String[]{"get", "is"}) {
+            try {
+                Method getter = field.getDeclaringClass().getMethod(prefix + capitalizedName);
+                if (getter.getReturnType() == field.getType()) {
+                    return "source." + getter.getName() + "()";
+                }
+            } catch (NoSuchMethodException e) {
+                // try the next prefix
+            }
+        }
+        throw new IllegalStateException("Field " + field.getName() + " can't be read by the generated mapper");
+    }
+
+    private String writeField(Field field, String value) {
+        if (isAccessible(field.getModifiers(), field.getDeclaringClass()) && !Modifier.isFinal(field.getModifiers())) {
+            return "target." + field.getName() + " = " + value;
+        }
+        String capitalizedName = Character.toUpperCase(field.getName().charAt(0)) + field.getName().substring(1);
+        try {
+            return "target." + field.getDeclaringClass().getMethod("set" + capitalizedName, field.getType()).getName() + "(" + value + ")";
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Field " + field.getName() + " can't be written by the generated mapper");
+        }
+    }
+
+    private boolean isAccessible(Class<?> type) {
+        return isAccessible(type.getModifiers(), type) && (type.getEnclosingClass() == null || isAccessible(type.getEnclosingClass()));
+    }
+
+    private boolean isAccessible(int modifiers, Class<?> declaringClass) {
+        if (Modifier.isPublic(modifiers)) return true;
+        return !Modifier.isPrivate(modifiers) && declaringClass.getPackage() != null && declaringClass.getPackage().getName().equals(packageName);
+    }
+
+    private String cast(Class<?> type, String value) {
+        return "(" + typeName(ReflectionUtil.boxed(type)) + ") " + value;
+    }
+
+    private static String typeName(Class<?> type) {
+        return type.getCanonicalName();
+    }
+}
@@ -0,0 +1,660 @@
+package org.plausing.asserts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Golden traces of a mapper: the (source, target) pairs of a plausing run, stored in a binary file.
+ * <p>
+ * A trace is recorded with {@link MapperAssert#whenRecordingTrace(Path)} and replayed with
+ * {@link MapperAssert#matchesTrace(Path, Supplier)}. The replay rebuilds every recorded source, applies the mapper
+ * and compares the target with the recorded target, without the oracle.
+ * <p>
+ * File format: a header with the magic number, the format version and the names of the source and target fields,
+ * followed by blocks of records. Every block starts with its record count and its length in bytes, so that the
+ * blocks can be mapped and replayed in parallel. A record holds the value of every source field and every target field
+ * in the order of the header, each value with a type tag. Values without a tag of their own are stored with Java
+ * serialization.
+ */
+public final class MapperTrace {
+
+    private static final int MAGIC = 0x504C5452;
+    private static final short VERSION = 1;
+
+    /** Size of a block after which it is written. */
+    private static final int BLOCK_BYTES = 1 << 20;
+
+    /** Number of examples kept per differing target field. */
+    private static final int MAX_EXAMPLES = 3;
+
+    /** Size of the first window that is mapped to read the header, doubled until the header fits. */
+    private static final int HEADER_WINDOW_BYTES = 1 << 12;
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+    private static final byte ENUM = 10;
+    private static final byte DATE = 11;
+    private static final byte SQL_DATE = 12;
+    private static final byte BOOLEAN_ARRAY = 20;
+    private static final byte BYTE_ARRAY = 21;
+    private static final byte SHORT_ARRAY = 22;
+    private static final byte CHAR_ARRAY = 23;
+    private static final byte INT_ARRAY = 24;
+    private static final byte LONG_ARRAY = 25;
+    private static final byte FLOAT_ARRAY = 26;
+    private static final byte DOUBLE_ARRAY = 27;
+    private static final byte SERIALIZED = 30;
+
+    private MapperTrace() {
+    }
+
+    /**
+     * Writes records sequentially. Records are buffered per block; the writer is safe for use by many threads.
+     * The header is written with the first record, when the classes of source and target are known.
+     *
+     * @param <SOURCE> the source class
+     * @param <TARGET> the target class
+     */
+    public static final class Writer<SOURCE, TARGET> implements Closeable {
+
+        private final FileChannel channel;
+        private FieldAccessor<SOURCE> sourceAccessor;
+        private FieldAccessor<TARGET> targetAccessor;
+        private ByteBuffer block = ByteBuffer.allocate(BLOCK_BYTES + (BLOCK_BYTES >> 2));
+        private int blockRecords;
+        private long records;
+
+        /**
+         * Creates the trace file.
+         *
+         * @param file the trace file, replaced if it exists
+         * @throws IOException if the file can't be written.
+         */
+        public Writer(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Records a pair of source and target.
+         *
+         * @param source the source
+         * @param target the target the mapper produced for the source
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized void record(SOURCE source, TARGET target) {
+            if (sourceAccessor == null) {
+                sourceAccessor = FieldAccessors.forClass((Class<SOURCE>) source.getClass());
+                targetAccessor = FieldAccessors.forClass((Class<TARGET>) target.getClass());
+                ByteBuffer header = ByteBuffer.allocate(1024);
+                header.putInt(MAGIC).putShort(VERSION);
+                header = putFieldNames(header, sourceAccessor);
+                header = putFieldNames(header, targetAccessor);
+                header.flip();
+                try {
+                    writeFully(header);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            for (int index = 0; index < sourceAccessor.fieldCount(); index++) {
+                block = putValue(block, sourceAccessor.get(source, index), sourceAccessor.fieldType(index));
+            }
+            for (int index = 0; index < targetAccessor.fieldCount(); index++) {
+                block = putValue(block, targetAccessor.get(target, index), targetAccessor.fieldType(index));
+            }
+            blockRecords++;
+            records++;
+            if (block.position() >= BLOCK_BYTES) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * @return the number of recorded pairs.
+         */
+        public synchronized long getRecords() {
+            return records;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                flushBlock();
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void flushBlock() {
+            if (blockRecords == 0) return;
+            block.flip();
+            ByteBuffer blockHeader = ByteBuffer.allocate(8).putInt(blockRecords).putInt(block.remaining());
+            blockHeader.flip();
+            try {
+                writeFully(blockHeader);
+                writeFully(block);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            block.clear();
+            blockRecords = 0;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private static ByteBuffer putFieldNames(ByteBuffer buffer, FieldAccessor<?> accessor) {
+            buffer = ensureCapacity(buffer, 4);
+            buffer.putInt(accessor.fieldCount());
+            for (int index = 0; index < accessor.fieldCount(); index++) {
+                buffer = putString(buffer, accessor.fieldName(index));
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Replays a trace: rebuilds every recorded source, applies the mapper and compares the target fields
+     * with the recorded values. The blocks of the trace are mapped into memory and replayed in parallel.
+     *
+     * @param file           the trace file
+     * @param mapper         the mapper
+     * @param sourceSupplier creates the sources whose fields are overwritten with the recorded values
+     * @param <SOURCE>       the source class
+     * @param <TARGET>       the target class
+     * @return the result of the replay
+     * @throws IOException if the trace can't be read.
+     * @throws IllegalArgumentException if the trace is invalid or its fields don't exist in the classes.
+     */
+    @SuppressWarnings("unchecked")
+    public static <SOURCE, TARGET> ReplayResult replay(Path file, Function<SOURCE, TARGET> mapper, Supplier<SOURCE> sourceSupplier) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer headerBuffer = mapHeader(channel, file);
+            List<String> sourceFieldNames = getFieldNames(headerBuffer);
+            List<String> targetFieldNames = getFieldNames(headerBuffer);
+
+            // find the blocks
+            List<long[]> blocks = new ArrayList<long[]>();
+            ByteBuffer blockHeader = ByteBuffer.allocate(8);
+            long position = headerBuffer.position();
+            while (position < size) {
+                blockHeader.clear();
+                while (blockHeader.hasRemaining() && channel.read(blockHeader, position + blockHeader.position()) >= 0) {
+                    // read the complete header
+                }
+                if (blockHeader.hasRemaining()) {
+                    throw new IllegalArgumentException("Truncated trace " + file);
+                }
+                int blockLength = blockHeader.getInt(4);
+                blocks.add(new long[]{position + 8, blockLength, blockHeader.getInt(0)});
+                position += 8 + blockLength;
+            }
+
+            SOURCE sample = sourceSupplier.get();
+            FieldAccessor<SOURCE> sourceAccessor = FieldAccessors.forClass((Class<SOURCE>) sample.getClass());
+            int[] sourceIndexes = indexesOf(sourceFieldNames, sourceAccessor);
+            ReplayResult result = new ReplayResult(targetFieldNames);
+
+            blocks.parallelStream().forEach(blockInfo -> {
+                MappedByteBuffer buffer;
+                try {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, blockInfo[0], blockInfo[1]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                Class<?>[] targetTypes = null;
+                int[] targetIndexes = null;
+                FieldAccessor<TARGET> targetAccessor = null;
+                Object[] recordedTargetValues = new Object[targetFieldNames.size()];
+                for (long record = 0; record < blockInfo[2]; record++) {
+                    SOURCE source = sourceSupplier.get();
+                    for (int index = 0; index < sourceIndexes.length; index++) {
+                        Object value = getValue(buffer, sourceAccessor.fieldType(sourceIndexes[index]));
+                        sourceAccessor.set(source, sourceIndexes[index], value);
+                    }
+                    for (int index = 0; index < recordedTargetValues.length; index++) {
+                        recordedTargetValues[index] = getValue(buffer, targetTypes == null ? null : targetTypes[index]);
+                    }
+
+                    TARGET target;
+                    try {
+                        target = mapper.apply(source);
+                    } catch (RuntimeException e) {
+                        result.addDifference("(exception)", describeSource(source, sourceAccessor, sourceIndexes) + ": " + e);
+                        continue;
+                    }
+                    if (target == null) {
+                        result.addDifference("(null target)", describeSource(source, sourceAccessor, sourceIndexes));
+                        continue;
+                    }
+                    if (targetAccessor == null) {
+                        targetAccessor = FieldAccessors.forClass((Class<TARGET>) target.getClass());
+                        targetIndexes = indexesOf(targetFieldNames, targetAccessor);
+                        targetTypes = new Class<?>[targetIndexes.length];
+                        for (int index = 0; index < targetIndexes.length; index++) {
+                            targetTypes[index] = targetAccessor.fieldType(targetIndexes[index]);
+                        }
+                    }
+                    for (int index = 0; index < targetIndexes.length; index++) {
+                        Object actualValue = targetAccessor.get(target, targetIndexes[index]);
+                        if (!ReflectionUtil.valuesEqual(normalize(recordedTargetValues[index], targetTypes[index]), actualValue)) {
+                            result.addDifference(targetFieldNames.get(index), String.format("%s: recorded <%s> but was <%s>",
+                                    describeSource(source, sourceAccessor, sourceIndexes), describeValue(recordedTargetValues[index]), describeValue(actualValue)));
+                        }
+                    }
+                    result.records.incrementAndGet();
+                }
+            });
+            return result;
+        }
+    }
+
+    /**
+     * Maps the header of a trace, in windows that grow until the header fits.
+     *
+     * @return the header, positioned at the field names
+     */
+    private static MappedByteBuffer mapHeader(FileChannel channel, Path file) throws IOException {
+        long size = channel.size();
+        if (size < 6) {
+            throw new IllegalArgumentException(file + " isn't a plausing trace");
+        }
+        for (long window = Math.min(size, HEADER_WINDOW_BYTES); ; window = Math.min(size, window * 2)) {
+            MappedByteBuffer headerBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, window);
+            if (headerBuffer.getInt() != MAGIC) {
+                throw new IllegalArgumentException(file + " isn't a plausing trace");
+            }
+            short version = headerBuffer.getShort();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported trace version " + version);
+            }
+            try {
+                ByteBuffer fieldNames = headerBuffer.duplicate();
+                getFieldNames(fieldNames);
+                getFieldNames(fieldNames);
+                return headerBuffer;
+            } catch (BufferUnderflowException e) {
+                if (window == size || window >= Integer.MAX_VALUE / 2) {
+                    throw new IllegalArgumentException("Truncated trace " + file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Result of a replay.
+     */
+    public static final class ReplayResult {
+
+        private final List<String> targetFieldNames;
+
+        /** Number of replayed records without exception. */
+        private final AtomicLong records = new AtomicLong();
+
+        private final Map<String, LongAdder> differenceCounts = new ConcurrentHashMap<String, LongAdder>();
+        private final Map<String, List<String>> examples = new ConcurrentHashMap<String, List<String>>();
+
+        private ReplayResult(List<String> targetFieldNames) {
+            this.targetFieldNames = targetFieldNames;
+        }
+
+        private void addDifference(String fieldName, String example) {
+            differenceCounts.computeIfAbsent(fieldName, k -> new LongAdder()).increment();
+            List<String> fieldExamples = examples.computeIfAbsent(fieldName, k -> Collections.synchronizedList(new ArrayList<String>()));
+            synchronized (fieldExamples) {
+                if (fieldExamples.size() < MAX_EXAMPLES) fieldExamples.add(example);
+            }
+        }
+
+        /**
+         * @return the number of records that were mapped without exception.
+         */
+        public long getRecords() {
+            return records.get();
+        }
+
+        /**
+         * @return the number of differences per target field, "(exception)" for records that couldn't be mapped.
+         */
+        public Map<String, Long> getDifferenceCounts() {
+            Map<String, Long> counts = new TreeMap<String, Long>();
+            differenceCounts.forEach((fieldName, count) -> counts.put(fieldName, count.sum()));
+            return counts;
+        }
+
+        public boolean isEquivalent() {
+            return differenceCounts.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(String.format("Replayed %d records of %d target fields", records.get(), targetFieldNames.size()));
+            getDifferenceCounts().forEach((fieldName, count) -> {
+                result.append(String.format("%n  %s differs in %d records", fieldName, count));
+                for (String example : examples.get(fieldName)) {
+                    result.append(String.format("%n    %s", example));
+                }
+            });
+            return result.toString();
+        }
+    }
+
+    private static int[] indexesOf(List<String> fieldNames, FieldAccessor<?> accessor) {
+        int[] indexes = new int[fieldNames.size()];
+        for (int index = 0; index < indexes.length; index++) {
+            indexes[index] = accessor.indexOf(fieldNames.get(index));
+            if (indexes[index] < 0) {
+                throw new IllegalArgumentException("Recorded field " + fieldNames.get(index) + " doesn't exist any more");
+            }
+        }
+        return indexes;
+    }
+
+    private static List<String> getFieldNames(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<String> names = new ArrayList<String>(count);
+        for (int index = 0; index < count; index++) {
+            names.add(getString(buffer));
+        }
+        return names;
+    }
+
+    private static <SOURCE> String describeSource(SOURCE source, FieldAccessor<SOURCE> accessor, int[] indexes) {
+        StringBuilder description = new StringBuilder("{");
+        for (int index = 0; index < indexes.length; index++) {
+            description.append(index == 0 ? "" : ", ").append(accessor.fieldName(indexes[index])).append('=')
+                    .append(describeValue(accessor.get(source, indexes[index])));
+        }
+        return description.append('}').toString();
+    }
+
+    private static String describeValue(Object value) {
+        if (value != null && value.getClass().isArray()) {
+            return value.getClass().getComponentType().getSimpleName() + "[" + java.lang.reflect.Array.getLength(value) + "]";
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Decodes an enum that was recorded before the target type was known.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object normalize(Object recordedValue, Class<?> type) {
+        if (recordedValue instanceof EnumName && type != null && type.isEnum()) {
+            return Enum.valueOf((Class<Enum>) type, ((EnumName) recordedValue).name);
+        }
+        return recordedValue;
+    }
+
+    /** Name of an enum constant whose type isn't known yet. */
+    private static final class EnumName {
+        final String name;
+
+        EnumName(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /*---------------------------------------------------------------------------------------------------------------
+      Encoding
+      ---------------------------------------------------------------------------------------------------------------*/
+
+    private static ByteBuffer putValue(ByteBuffer buffer, Object value, Class<?> fieldType) {
+        if (value == null) {
+            buffer = ensureCapacity(buffer, 1);
+            return buffer.put(NULL);
+        }
+        Class<?> type = value.getClass();
+        if (type == Boolean.class) return ensureCapacity(buffer, 2).put(BOOLEAN).put((byte) ((Boolean) value ? 1 : 0));
+        if (type == Byte.class) return ensureCapacity(buffer, 2).put(BYTE).put((Byte) value);
+        if (type == Short.class) return ensureCapacity(buffer, 3).put(SHORT).putShort((Short) value);
+        if (type == Character.class) return ensureCapacity(buffer, 3).put(CHAR).putChar((Character) value);
+        if (type == Integer.class) return ensureCapacity(buffer, 5).put(INT).putInt((Integer) value);
+        if (type == Long.class) return ensureCapacity(buffer, 9).put(LONG).putLong((Long) value);
+        if (type == Float.class) return ensureCapacity(buffer, 5).put(FLOAT).putFloat((Float) value);
+        if (type == Double.class) return ensureCapacity(buffer, 9).put(DOUBLE).putDouble((Double) value);
+        if (type == String.class) return putString(ensureCapacity(buffer, 1).put(STRING), (String) value);
+        if (value instanceof Enum && ((Enum<?>) value).getDeclaringClass() == fieldType) {
+            return putString(ensureCapacity(buffer, 1).put(ENUM), ((Enum<?>) value).name());
+        }
+        if (type == Date.class) return ensureCapacity(buffer, 9).put(DATE).putLong(((Date) value).getTime());
+        if (type == java.sql.Date.class) return ensureCapacity(buffer, 9).put(SQL_DATE).putLong(((Date) value).getTime());
+        if (type.isArray() && type.getComponentType().isPrimitive()) return putPrimitiveArray(buffer, value);
+        if (value instanceof Serializable) {
+            byte[] bytes = serialize(value);
+            return ensureCapacity(buffer, 5 + bytes.length).put(SERIALIZED).putInt(bytes.length).put(bytes);
+        }
+        throw new IllegalArgumentException("Can't record value of type " + type.getCanonicalName());
+    }
+
+    private static ByteBuffer putPrimitiveArray(ByteBuffer buffer, Object array) {
+        int length = java.lang.reflect.Array.getLength(array);
+        Class<?> componentType = array.getClass().getComponentType();
+        int elementBytes = componentType == boolean.class || componentType == byte.class ? 1
+                : componentType == short.class || componentType == char.class ? 2
+                : componentType == long.class || componentType == double.class ? 8 : 4;
+        buffer = ensureCapacity(buffer, 5 + length * elementBytes);
+        if (componentType == boolean.class) {
+            buffer.put(BOOLEAN_ARRAY).putInt(length);
+            for (boolean element : (boolean[]) array) buffer.put((byte) (element ? 1 : 0));
+        } else if (componentType == byte.class) {
+            buffer.put(BYTE_ARRAY).putInt(length).put((byte[]) array);
+        } else if (componentType == short.class) {
+            buffer.put(SHORT_ARRAY).putInt(length);
+            buffer.asShortBuffer().put((short[]) array);
+        } else if (componentType == char.class) {
+            buffer.put(CHAR_ARRAY).putInt(length);
+            buffer.asCharBuffer().put((char[]) array);
+        } else if (componentType == int.class) {
+            buffer.put(INT_ARRAY).putInt(length);
+            buffer.asIntBuffer().put((int[]) array);
+        } else if (componentType == long.class) {
+            buffer.put(LONG_ARRAY).putInt(length);
+            buffer.asLongBuffer().put((long[]) array);
+        } else if (componentType == float.class) {
+            buffer.put(FLOAT_ARRAY).putInt(length);
+            buffer.asFloatBuffer().put((float[]) array);
+        } else {
+            buffer.put(DOUBLE_ARRAY).putInt(length);
+            buffer.asDoubleBuffer().put((double[]) array);
+        }
+        if (componentType != boolean.class && componentType != byte.class) {
+            buffer.position(buffer.position() + length * elementBytes);
+        }
+        return buffer;
+    }
+
+    /**
+     * Decodes a value. Strings and primitive arrays are copied from the buffer with bulk operations, serialized values
+     * are read from a slice of the buffer.
+     *
+     * @param buffer    the buffer
+     * @param fieldType type of the field, or null if it isn't known yet
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    private static Object getValue(ByteBuffer buffer, Class<?> fieldType) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case BYTE:
+                return buffer.get();
+            case SHORT:
+                return buffer.getShort();
+            case CHAR:
+                return buffer.getChar();
+            case INT:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case FLOAT:
+                return buffer.getFloat();
+            case DOUBLE:
+                return buffer.getDouble();
+            case STRING:
+                return getString(buffer);
+            case ENUM:
+                String name = getString(buffer);
+                return fieldType != null && fieldType.isEnum() ? Enum.valueOf((Class<Enum>) fieldType, name) : new EnumName(name);
+            case DATE:
+                return new Date(buffer.getLong());
+            case SQL_DATE:
+                return new java.sql.Date(buffer.getLong());
+            case BOOLEAN_ARRAY: {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                boolean[] array = new boolean[bytes.length];
+                for (int index = 0; index < array.length; index++) array[index] = bytes[index] != 0;
+                return array;
+            }
+            case BYTE_ARRAY: {
+                byte[] array = new byte[buffer.getInt()];
+                buffer.get(array);
+                return array;
+            }
+            case SHORT_ARRAY: {
+                short[] array = new short[buffer.getInt()];
+                buffer.asShortBuffer().get(array);
+                buffer.position(buffer.position() + array.length * 2);
+                return array;
+            }
+            case CHAR_ARRAY: {
+                char[] array = new char[buffer.getInt()];
+                buffer.asCharBuffer().get(array);
+                buffer.position(buffer.position() + array.length * 2);
+                return array;
+            }
+            case INT_ARRAY: {
+                int[] array = new int[buffer.getInt()];
+                buffer.asIntBuffer().get(array);
+                buffer.position(buffer.position() + array.length * 4);
+                return array;
+            }
+            case LONG_ARRAY: {
+                long[] array = new long[buffer.getInt()];
+                buffer.asLongBuffer().get(array);
+                buffer.position(buffer.position() + array.length * 8);
+                return array;
+            }
+            case FLOAT_ARRAY: {
+                float[] array = new float[buffer.getInt()];
+                buffer.asFloatBuffer().get(array);
+                buffer.position(buffer.position() + array.length * 4);
+                return array;
+            }
+            case DOUBLE_ARRAY: {
+                double[] array = new double[buffer.getInt()];
+                buffer.asDoubleBuffer().get(array);
+                buffer.position(buffer.position() + array.length * 8);
+                return array;
+            }
+            case SERIALIZED: {
+                int length = buffer.getInt();
+                ByteBuffer bytes = buffer.slice();
+                bytes.limit(length);
+                buffer.position(buffer.position() + length);
+                return deserialize(bytes);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown type tag " + tag + " in trace");
+        }
+    }
+
+    private static ByteBuffer putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return ensureCapacity(buffer, 4 + bytes.length).putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) return buffer;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        return grown.put(buffer);
+    }
+
+    private static byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Can't record value " + value, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializes a value directly from the buffer, without copying it first.
+     */
+    private static Object deserialize(ByteBuffer bytes) {
+        InputStream stream = new InputStream() {
+            @Override
+            public int read() {
+                return bytes.hasRemaining() ? bytes.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] target, int offset, int length) {
+                if (!bytes.hasRemaining()) return length == 0 ? 0 : -1;
+                int read = Math.min(length, bytes.remaining());
+                bytes.get(target, offset, read);
+                return read;
+            }
+        };
+        try (ObjectInputStream in = new ObjectInputStream(stream)) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalArgumentException("Can't read recorded value", e);
+        }
+    }
+}
@@ -146,7 +146,7 @@ public class MappingOracle {
      * @param targetType
      * @param sourceElementType
      * @param targetElementType
-     * @param registeredMappers
+     * @param registeredMappers the registered mappers, including chains of them
      * @return
      */
     @SuppressWarnings("unchecked")
@@ -154,15 +154,20 @@ public class MappingOracle {
            TARGET_FIELD_TYPE guessTargetValue(SOURCE_FIELD_TYPE sourceValue,
                                               Class<SOURCE_FIELD_TYPE> sourceType, Class<TARGET_FIELD_TYPE> targetType,
                                               Class<SOURCE_ELEMENT_TYPE> sourceElementType, Class<TARGET_ELEMENT_TYPE> targetElementType,
-                                              HashMap<TypePair, Function> registeredMappers, boolean nonNullField) {
+                                              ConverterGraph registeredMappers, boolean nonNullField) {
 
-        // Use the registered mapper when there is one.
-        Function registeredValueMapper = registeredMappers.get(new TypePair(sourceType, targetType));
+        // Use the registered mapper or chain of mappers when there is one.
+        Function registeredValueMapper = registeredMappers.converterFor(sourceType, targetType);
         boolean hasRegisteredValueMapper = registeredValueMapper != null;
         if (hasRegisteredValueMapper) {
             return (TARGET_FIELD_TYPE) registeredValueMapper.apply(sourceValue);
         }
 
+        // A primitive target can't be null, so null is mapped to the default value.
+        if (sourceValue == null && targetType.isPrimitive()) {
+            return (TARGET_FIELD_TYPE) ReflectionUtil.defaultValue(targetType);
+        }
+
         // Gather information about the source and target types.
         boolean sourceIsEnum = Enum.class.isAssignableFrom(sourceType);
         boolean targetIsEnum = Enum.class.isAssignableFrom(targetType);
@@ -214,12 +219,22 @@ public class MappingOracle {
 
 
     static <SOURCE_ELEMENT_TYPE, TARGET_ELEMENT_TYPE> Collection guessCollectionMapping(Collection<SOURCE_ELEMENT_TYPE> sourceValue, Class<Collection<SOURCE_ELEMENT_TYPE>> sourceType, Class<Collection<TARGET_ELEMENT_TYPE>> targetType, Class<SOURCE_ELEMENT_TYPE> sourceElementType, Class<TARGET_ELEMENT_TYPE> targetElementType,
-                                                                                       HashMap<TypePair, Function> registeredMappers) {
+                                                                                       ConverterGraph registeredMappers) {
+
+        if (sourceValue == null) return null;
 
-        Supplier<Collection> targetCollectionSupplier = UtilException.rethrowSupplier(() -> sourceValue.getClass().newInstance());
+        // The standard implementation of the target type, like the generated mapper, or the type of the source if there's none.
+        Class<?> implementation;
+        try {
+            implementation = TypeModel.collectionImplementation(targetType);
+        } catch (IllegalArgumentException e) {
+            implementation = sourceValue.getClass();
+        }
+        Class<?> targetCollectionClass = implementation;
+        Supplier<Collection> targetCollectionSupplier = UtilException.rethrowSupplier(() -> (Collection) targetCollectionClass.newInstance());
 
         try {
-            return sourceValue.stream()
+            return (Collection) sourceValue.stream()
                     .map(collectionElement -> guessTargetValue(collectionElement, sourceElementType, targetElementType, null, null, registeredMappers, false))
                     .collect(Collectors.toCollection(targetCollectionSupplier));
         } catch (Exception e) {
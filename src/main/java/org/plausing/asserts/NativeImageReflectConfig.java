@@ -0,0 +1,176 @@
+package org.plausing.asserts;
+
+import java.util.*;
+
+/**
+ * The reflection configuration of GraalVM native-image for the registered mappers, see {@link PlausibleMapperProcessor}.
+ * <p>
+ * The configuration is a JSON array with one entry per class, written to {@link #RESOURCE}. native-image reads it from
+ * the class path without further options. An entry registers exactly what plausing accesses by reflection:
+ * <ul>
+ * <li>the annotated member of a mapper, and the default constructor of its declaring class for instance methods,</li>
+ * <li>the declared fields of the source and target classes and their superclasses ({@link ReflectionUtil#getFields(Class)}),
+ * their default constructors ({@link ReflectionUtil#createSupplierFromClass(Class)}), and their generated field accessors,</li>
+ * <li>the public methods and constructors of the field types, for the getters of {@link MappingOracle#guessGetterMapping}
+ * and the constructors of {@link ReflectionUtil#instantiateType}, only the methods for interfaces,</li>
+ * <li>the default constructors of the collection implementations that plausing instantiates for collection fields
+ * ({@link TypeModel#collectionImplementation(Class)}).</li>
+ * </ul>
+ * The index of the mappers is a resource, it is included by the resource configuration at {@link #RESOURCE_CONFIG}.
+ */
+final class NativeImageReflectConfig {
+
+    /** Location of the configuration in the class output. */
+    static final String RESOURCE = "META-INF/native-image/plausing/mappers/reflect-config.json";
+
+    /** Location of the resource configuration in the class output. */
+    static final String RESOURCE_CONFIG = "META-INF/native-image/plausing/mappers/resource-config.json";
+
+    private static final String CONSTRUCTOR = "<init>";
+
+    /** Entries by class name, sorted to get a reproducible configuration. */
+    private final SortedMap<String, ClassEntry> classes = new TreeMap<String, ClassEntry>();
+
+    /**
+     * Registers the declared fields, the default constructor and the public methods of a class that is mapped.
+     *
+     * @param className binary name of the class
+     */
+    void addMappedClass(String className) {
+        ClassEntry entry = entry(className);
+        entry.allDeclaredFields = true;
+        entry.allPublicMethods = true;
+        entry.methods.add(CONSTRUCTOR + "()");
+    }
+
+    /**
+     * Registers the public methods and constructors of the type of a mapped field. Interfaces have no constructors.
+     *
+     * @param className   binary name of the class
+     * @param isInterface true, if the type is an interface
+     */
+    void addFieldType(String className, boolean isInterface) {
+        ClassEntry entry = entry(className);
+        entry.allPublicMethods = true;
+        entry.allPublicConstructors |= !isInterface;
+    }
+
+    /**
+     * Registers the default constructor of a class.
+     *
+     * @param className binary name of the class
+     */
+    void addDefaultConstructor(String className) {
+        entry(className).methods.add(CONSTRUCTOR + "()");
+    }
+
+    /**
+     * Registers a field.
+     *
+     * @param className binary name of the declaring class
+     * @param fieldName name of the field
+     */
+    void addField(String className, String fieldName) {
+        entry(className).fields.add(fieldName);
+    }
+
+    /**
+     * Registers a method.
+     *
+     * @param className      binary name of the declaring class
+     * @param methodName     name of the method
+     * @param parameterTypes binary names of the parameter types
+     */
+    void addMethod(String className, String methodName, String... parameterTypes) {
+        entry(className).methods.add(methodName + "(" + String.join(",", parameterTypes) + ")");
+    }
+
+    private ClassEntry entry(String className) {
+        return classes.computeIfAbsent(className, name -> new ClassEntry());
+    }
+
+    /**
+     * @return the configuration as JSON.
+     */
+    String toJson() {
+        StringBuilder json = new StringBuilder("[\n");
+        Iterator<Map.Entry<String, ClassEntry>> iterator = classes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ClassEntry> entry = iterator.next();
+            json.append("  {\n    \"name\": ").append(quote(entry.getKey()));
+            entry.getValue().appendTo(json);
+            json.append("\n  }").append(iterator.hasNext() ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    /**
+     * Returns the resource configuration that includes resources of plausing, e.g. the index of the mappers.
+     *
+     * @param resources the names of the resources
+     * @return the configuration as JSON.
+     */
+    static String resourceConfigJson(String... resources) {
+        StringBuilder json = new StringBuilder("{\n  \"resources\": {\n    \"includes\": [");
+        String separator = "";
+        for (String resource : resources) {
+            json.append(separator).append("\n      { \"pattern\": ").append(quote("\\Q" + resource + "\\E")).append(" }");
+            separator = ",";
+        }
+        return json.append("\n    ]\n  }\n}\n").toString();
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * The reflective access to a class.
+     */
+    private static final class ClassEntry {
+
+        private boolean allDeclaredFields;
+
+        private boolean allPublicMethods;
+
+        private boolean allPublicConstructors;
+
+        private final SortedSet<String> fields = new TreeSet<String>();
+
+        /** Methods as name(parameter types). */
+        private final SortedSet<String> methods = new TreeSet<String>();
+
+        void appendTo(StringBuilder json) {
+            if (allDeclaredFields) json.append(",\n    \"allDeclaredFields\": true");
+            if (allPublicMethods) json.append(",\n    \"allPublicMethods\": true");
+            if (allPublicConstructors) json.append(",\n    \"allPublicConstructors\": true");
+            if (!fields.isEmpty()) {
+                json.append(",\n    \"fields\": [");
+                String separator = "";
+                for (String field : fields) {
+                    json.append(separator).append("\n      { \"name\": ").append(quote(field)).append(" }");
+                    separator = ",";
+                }
+                json.append("\n    ]");
+            }
+            if (!methods.isEmpty()) {
+                json.append(",\n    \"methods\": [");
+                String separator = "";
+                for (String method : methods) {
+                    int parametersStart = method.indexOf('(');
+                    String parameters = method.substring(parametersStart + 1, method.length() - 1);
+                    json.append(separator).append("\n      { \"name\": ").append(quote(method.substring(0, parametersStart)))
+                            .append(", \"parameterTypes\": [");
+                    String parameterSeparator = "";
+                    for (String parameter : parameters.isEmpty() ? new String[0] : parameters.split(",")) {
+                        json.append(parameterSeparator).append(quote(parameter));
+                        parameterSeparator = ", ";
+                    }
+                    json.append("] }");
+                    separator = ",";
+                }
+                json.append("\n    ]");
+            }
+        }
+    }
+}
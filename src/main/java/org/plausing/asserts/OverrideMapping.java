@@ -1,5 +1,6 @@
 package org.plausing.asserts;
 
+import java.lang.reflect.Field;
 import java.util.function.Function;
 
 /**
@@ -11,14 +12,54 @@ public class OverrideMapping<SOURCE_VALUE, TARGET_VALUE> {
     public String sourceFieldName;
     public String targetFieldName;
 
+    /** Declared type of the source property, or null if the mapping is untyped. */
+    public Class<SOURCE_VALUE> sourceType;
+
+    /** Declared type of the target property, or null if the mapping is untyped. */
+    public Class<TARGET_VALUE> targetType;
+
 
     public OverrideMapping(String sourceFieldName, String targetFieldName, Function<SOURCE_VALUE, TARGET_VALUE> mapping) {
+        this(sourceFieldName, null, targetFieldName, null, mapping);
+    }
+
+    /**
+     * Creates a typed override. The types are checked against the learned source and target fields
+     * before the override is used.
+     *
+     * @param sourceFieldName name of the source field
+     * @param sourceType      type of the values passed to the mapping
+     * @param targetFieldName name of the target field
+     * @param targetType      type of the values returned by the mapping
+     * @param mapping         the expected mapping of a single value
+     */
+    public OverrideMapping(String sourceFieldName, Class<SOURCE_VALUE> sourceType, String targetFieldName, Class<TARGET_VALUE> targetType, Function<SOURCE_VALUE, TARGET_VALUE> mapping) {
         this.sourceFieldName = sourceFieldName;
+        this.sourceType = sourceType;
         this.targetFieldName = targetFieldName;
+        this.targetType = targetType;
         this.mapping = mapping;
     }
 
     public TARGET_VALUE map(SOURCE_VALUE sourceValue) {
         return mapping.apply(sourceValue);
     }
+
+    /**
+     * Checks that the declared types of this override fit the fields it is applied to.
+     *
+     * @param sourceField the learned source field
+     * @param targetField the learned target field
+     * @throws IllegalArgumentException if a declared type doesn't fit the field type.
+     */
+    public void checkTypes(Field sourceField, Field targetField) {
+        if (sourceType != null && !ReflectionUtil.boxed(sourceType).isAssignableFrom(ReflectionUtil.boxed(sourceField.getType()))) {
+            throw new IllegalArgumentException(String.format("Property mapping %s --> %s takes %s, but source field has type %s",
+                    sourceFieldName, targetFieldName, sourceType.getCanonicalName(), sourceField.getType().getCanonicalName()));
+        }
+        if (targetType != null && !ReflectionUtil.boxed(targetField.getType()).isAssignableFrom(ReflectionUtil.boxed(targetType))) {
+            throw new IllegalArgumentException(String.format("Property mapping %s --> %s returns %s, but target field has type %s",
+                    sourceFieldName, targetFieldName, targetType.getCanonicalName(), targetField.getType().getCanonicalName()));
+        }
+    }
 }
@@ -0,0 +1,18 @@
+package org.plausing.asserts;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a {@link FieldAccessor} for the annotated source or target class at compile time.
+ * <p>
+ * The {@link FieldAccessorProcessor} writes the class <code>&lt;Class&gt;_PlausingAccessor</code> into the package of the
+ * annotated class. {@link FieldAccessors} picks it up automatically, so {@link MapperAssert} reads and writes the fields
+ * without reflection. The annotated class and its fields must not be private.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface PlausibleAccessor {
+}
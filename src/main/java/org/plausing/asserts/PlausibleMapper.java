@@ -0,0 +1,33 @@
+package org.plausing.asserts;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Registers a mapper for plausibility testing.
+ * <p>
+ * The annotation can be put on
+ * - a static field of type {@link java.util.function.Function},
+ * - a static method without parameters that returns a {@link java.util.function.Function},
+ * - a method with a single parameter of type source that returns target. Instance methods require a public
+ * no-arg constructor of the declaring class.
+ * <p>
+ * The {@link PlausibleMapperProcessor} writes all registered mappers to the index {@link PlausibleMapperIndex#RESOURCE}
+ * at compile time. The {@link PlausibleMapperRunner} reads the index and tests every registered mapper without
+ * scanning the classpath.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface PlausibleMapper {
+
+    /** Source class of the mapper. Must have a public no-arg constructor. */
+    Class<?> source();
+
+    /** Target class of the mapper. */
+    Class<?> target();
+
+    /** Fields in the target class that should not be tested. */
+    String[] ignoredTargetFields() default {};
+}
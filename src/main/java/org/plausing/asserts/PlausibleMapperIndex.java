@@ -0,0 +1,171 @@
+package org.plausing.asserts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * The compile-time index of the mappers that are annotated with {@link PlausibleMapper}.
+ * <p>
+ * The index is a UTF-8 text resource with one line per mapper. Each line has the tab separated columns
+ * kind, declaring class, member name, source class, target class and a comma separated list of ignored target fields.
+ * Lines starting with # are comments.
+ */
+public class PlausibleMapperIndex {
+
+    /** Location of the index in the class output. */
+    public static final String RESOURCE = "META-INF/plausing/mappers.idx";
+
+    /**
+     * How the mapper is obtained from the annotated member.
+     */
+    public enum Kind {
+        /** A static field that holds the mapper function. */
+        FIELD,
+        /** A static method without parameters that returns the mapper function. */
+        FACTORY,
+        /** A method that maps a source object to a target object. */
+        METHOD
+    }
+
+    /**
+     * An entry of the index.
+     */
+    public static class Entry {
+        public final Kind kind;
+        public final String declaringClassName;
+        public final String memberName;
+        public final String sourceClassName;
+        public final String targetClassName;
+        public final List<String> ignoredTargetFields;
+
+        public Entry(Kind kind, String declaringClassName, String memberName, String sourceClassName, String targetClassName, List<String> ignoredTargetFields) {
+            this.kind = kind;
+            this.declaringClassName = declaringClassName;
+            this.memberName = memberName;
+            this.sourceClassName = sourceClassName;
+            this.targetClassName = targetClassName;
+            this.ignoredTargetFields = Collections.unmodifiableList(new ArrayList<String>(ignoredTargetFields));
+        }
+
+        /**
+         * @return a unique name of the mapper, e.g. com.example.Mappers#personMapper
+         */
+        public String getName() {
+            return declaringClassName + "#" + memberName;
+        }
+
+        /**
+         * Formats the entry as a line of the index.
+         *
+         * @return the line without line separator.
+         */
+        public String format() {
+            return String.join("\t", kind.name(), declaringClassName, memberName, sourceClassName, targetClassName, String.join(",", ignoredTargetFields));
+        }
+
+        /**
+         * Parses a line of the index.
+         *
+         * @param line the line
+         * @return the entry
+         * @throws IllegalArgumentException if the line can't be parsed.
+         */
+        public static Entry parse(String line) {
+            String[] columns = line.split("\t", -1);
+            if (columns.length != 6) {
+                throw new IllegalArgumentException("Invalid line in plausing mapper index: " + line);
+            }
+            List<String> ignoredTargetFields = columns[5].isEmpty()
+                    ? Collections.<String>emptyList()
+                    : Arrays.asList(columns[5].split(","));
+            return new Entry(Kind.valueOf(columns[0]), columns[1], columns[2], columns[3], columns[4], ignoredTargetFields);
+        }
+
+        /**
+         * Loads the source class.
+         *
+         * @param classLoader class loader to be used
+         * @return the source class
+         * @throws ClassNotFoundException
+         */
+        public Class<?> loadSourceClass(ClassLoader classLoader) throws ClassNotFoundException {
+            return Class.forName(sourceClassName, false, classLoader);
+        }
+
+        /**
+         * Resolves the mapper function of the annotated member.
+         *
+         * @param classLoader class loader to be used
+         * @return the mapper
+         * @throws ReflectiveOperationException if the member can't be accessed.
+         */
+        @SuppressWarnings("unchecked")
+        public Function<Object, Object> resolveMapper(ClassLoader classLoader) throws ReflectiveOperationException {
+            Class<?> declaringClass = Class.forName(declaringClassName, true, classLoader);
+            switch (kind) {
+                case FIELD: {
+                    Field field = declaringClass.getDeclaredField(memberName);
+                    field.setAccessible(true);
+                    return (Function<Object, Object>) field.get(null);
+                }
+                case FACTORY: {
+                    Method method = declaringClass.getDeclaredMethod(memberName);
+                    method.setAccessible(true);
+                    return (Function<Object, Object>) method.invoke(null);
+                }
+                case METHOD: {
+                    Method method = declaringClass.getDeclaredMethod(memberName, loadSourceClass(classLoader));
+                    method.setAccessible(true);
+                    Object instance = Modifier.isStatic(method.getModifiers()) ? null : declaringClass.newInstance();
+                    return UtilException.rethrowFunction(source -> {
+                        try {
+                            return method.invoke(instance, source);
+                        } catch (InvocationTargetException e) {
+                            // rethrow the exception of the mapper itself
+                            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                        }
+                    });
+                }
+                default:
+                    throw new IllegalStateException("Unknown kind " + kind);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName() + " (" + sourceClassName + " --> " + targetClassName + ")";
+        }
+    }
+
+    /**
+     * Loads all indexes that are visible to the class loader.
+     *
+     * @param classLoader class loader to be used
+     * @return the entries of all indexes, in classpath order.
+     * @throws IOException if an index can't be read.
+     */
+    public static List<Entry> load(ClassLoader classLoader) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        Enumeration<URL> resources = classLoader.getResources(RESOURCE);
+        while (resources.hasMoreElements()) {
+            URL resource = resources.nextElement();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.openStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    entries.add(Entry.parse(line));
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,274 @@
+package org.plausing.asserts;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Annotation processor that writes the index of all members annotated with {@link PlausibleMapper}
+ * to {@link PlausibleMapperIndex#RESOURCE}, and the reflection configuration that GraalVM native-image needs to assert
+ * these mappers to {@link NativeImageReflectConfig#RESOURCE}, with a resource configuration that includes the index.
+ * <p>
+ * The index is written once, when the last round is over. Misplaced annotations are reported as compile errors.
+ */
+@SupportedAnnotationTypes("org.plausing.asserts.PlausibleMapper")
+public class PlausibleMapperProcessor extends AbstractProcessor {
+
+    /** Entries collected in all rounds, sorted by name to get a reproducible index. */
+    private final SortedMap<String, PlausibleMapperIndex.Entry> entries = new TreeMap<String, PlausibleMapperIndex.Entry>();
+
+    /** Reflection configuration of the entries. */
+    private final NativeImageReflectConfig reflectConfig = new NativeImageReflectConfig();
+
+    /** Classes whose fields have been registered in the reflection configuration. */
+    private final Set<String> registeredClasses = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!entries.isEmpty()) {
+                writeIndex();
+                writeReflectConfig();
+            }
+            return false;
+        }
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(PlausibleMapper.class)) {
+            PlausibleMapperIndex.Entry entry = toEntry(element);
+            if (entry != null) {
+                entries.put(entry.getName(), entry);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the index entry of an annotated element.
+     *
+     * @param element field or method annotated with {@link PlausibleMapper}
+     * @return the entry, or null if the element can't be used as a mapper.
+     */
+    private PlausibleMapperIndex.Entry toEntry(Element element) {
+        AnnotationMirror annotation = getPlausibleMapperAnnotation(element);
+        TypeMirror sourceType = (TypeMirror) getAnnotationValue(annotation, "source");
+        TypeMirror targetType = (TypeMirror) getAnnotationValue(annotation, "target");
+        List<String> ignoredTargetFields = new ArrayList<String>();
+        Object ignored = getAnnotationValue(annotation, "ignoredTargetFields");
+        if (ignored instanceof List) {
+            for (Object value : (List<?>) ignored) {
+                ignoredTargetFields.add((String) ((AnnotationValue) value).getValue());
+            }
+        }
+
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror functionType = types.erasure(processingEnv.getElementUtils().getTypeElement("java.util.function.Function").asType());
+        boolean isStatic = element.getModifiers().contains(Modifier.STATIC);
+        String declaringClassName = binaryName(element.getEnclosingElement().asType());
+        String memberName = element.getSimpleName().toString();
+
+        PlausibleMapperIndex.Kind kind;
+        if (element.getKind() == ElementKind.FIELD) {
+            if (!isStatic || !types.isAssignable(types.erasure(element.asType()), functionType)) {
+                return error(element, "@PlausibleMapper fields must be static and of type java.util.function.Function");
+            }
+            kind = PlausibleMapperIndex.Kind.FIELD;
+        } else if (element.getKind() == ElementKind.METHOD) {
+            ExecutableElement method = (ExecutableElement) element;
+            if (method.getParameters().isEmpty()) {
+                if (!isStatic || !types.isAssignable(types.erasure(method.getReturnType()), functionType)) {
+                    return error(element, "@PlausibleMapper methods without parameters must be static and return a java.util.function.Function");
+                }
+                kind = PlausibleMapperIndex.Kind.FACTORY;
+            } else if (method.getParameters().size() == 1
+                    && types.isSameType(types.erasure(method.getParameters().get(0).asType()), types.erasure(sourceType))
+                    && types.isAssignable(method.getReturnType(), targetType)) {
+                kind = PlausibleMapperIndex.Kind.METHOD;
+            } else {
+                return error(element, "@PlausibleMapper methods must take a single parameter of the source type and return the target type");
+            }
+        } else {
+            return error(element, "@PlausibleMapper can only be used on fields and methods");
+        }
+
+        PlausibleMapperIndex.Entry entry = new PlausibleMapperIndex.Entry(kind, declaringClassName, memberName, binaryName(sourceType), binaryName(targetType), ignoredTargetFields);
+        registerReflection(entry, isStatic, sourceType, targetType);
+        return entry;
+    }
+
+    /**
+     * Registers the reflective access to the mapper and its source and target classes.
+     */
+    private void registerReflection(PlausibleMapperIndex.Entry entry, boolean isStatic, TypeMirror sourceType, TypeMirror targetType) {
+        switch (entry.kind) {
+            case FIELD:
+                reflectConfig.addField(entry.declaringClassName, entry.memberName);
+                break;
+            case FACTORY:
+                reflectConfig.addMethod(entry.declaringClassName, entry.memberName);
+                break;
+            case METHOD:
+                reflectConfig.addMethod(entry.declaringClassName, entry.memberName, entry.sourceClassName);
+                if (!isStatic) {
+                    reflectConfig.addDefaultConstructor(entry.declaringClassName);
+                }
+                break;
+        }
+        registerMappedClass(sourceType);
+        registerMappedClass(targetType);
+    }
+
+    /**
+     * Registers a mapped class, its superclasses and the types of their fields. Fields of other classes outside the
+     * JDK are registered as mapped classes, too, because plausing compares them field by field.
+     */
+    private void registerMappedClass(TypeMirror type) {
+        for (TypeMirror current = type; current.getKind() == TypeKind.DECLARED; current = ((TypeElement) ((DeclaredType) current).asElement()).getSuperclass()) {
+            TypeElement typeElement = (TypeElement) ((DeclaredType) current).asElement();
+            String className = binaryName(current);
+            if (isJdkClass(className) || !registeredClasses.add(className)) {
+                return;
+            }
+            reflectConfig.addMappedClass(className);
+            if (typeElement.getAnnotation(PlausibleAccessor.class) != null) {
+                reflectConfig.addDefaultConstructor(FieldAccessors.generatedAccessorName(className));
+            }
+            for (VariableElement field : ElementFilter.fieldsIn(typeElement.getEnclosedElements())) {
+                if (!field.getModifiers().contains(Modifier.STATIC)) {
+                    registerFieldType(field.asType());
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the type of a field, the component type of an array and the type arguments of a generic type.
+     */
+    private void registerFieldType(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            registerFieldType(((ArrayType) type).getComponentType());
+        } else if (type.getKind() == TypeKind.DECLARED) {
+            String className = binaryName(type);
+            reflectConfig.addFieldType(className, ((DeclaredType) type).asElement().getKind() == ElementKind.INTERFACE);
+            registerCollectionImplementation(type, className);
+            for (TypeMirror typeArgument : ((DeclaredType) type).getTypeArguments()) {
+                registerFieldType(typeArgument);
+            }
+            if (((DeclaredType) type).asElement().getKind() == ElementKind.CLASS && !isJdkClass(className)) {
+                registerMappedClass(type);
+            }
+        } else if (type.getKind() == TypeKind.WILDCARD && ((WildcardType) type).getExtendsBound() != null) {
+            registerFieldType(((WildcardType) type).getExtendsBound());
+        }
+    }
+
+    /**
+     * Registers the default constructor of the class that plausing instantiates for a collection field, see
+     * {@link TypeModel#collectionImplementation(Class)}. Other classes register their default constructor as mapped classes.
+     */
+    private void registerCollectionImplementation(TypeMirror type, String className) {
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror collectionType = types.erasure(processingEnv.getElementUtils().getTypeElement("java.util.Collection").asType());
+        if (!isJdkClass(className) || !types.isAssignable(types.erasure(type), collectionType)) {
+            return;
+        }
+        try {
+            reflectConfig.addDefaultConstructor(TypeModel.collectionImplementation(Class.forName(className)).getName());
+        } catch (ClassNotFoundException | IllegalArgumentException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "No collection implementation for " + className + " in the reflection configuration");
+        }
+    }
+
+    private static boolean isJdkClass(String className) {
+        return className.startsWith("java.") || className.startsWith("javax.") || className.startsWith("jdk.") || className.startsWith("sun.");
+    }
+
+    private AnnotationMirror getPlausibleMapperAnnotation(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(PlausibleMapper.class.getCanonicalName())) {
+                return annotation;
+            }
+        }
+        throw new IllegalStateException("Element " + element + " isn't annotated with @PlausibleMapper");
+    }
+
+    private Object getAnnotationValue(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals(name)) {
+                return value.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the name of a type as expected by {@link Class#forName(String)}.
+     *
+     * @param type the type
+     * @return the binary name
+     */
+    private String binaryName(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.toString();
+        }
+        TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+        return processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+    }
+
+    private PlausibleMapperIndex.Entry error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        return null;
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", PlausibleMapperIndex.RESOURCE);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write("# Generated by " + PlausibleMapperProcessor.class.getName() + "\n");
+                for (PlausibleMapperIndex.Entry entry : entries.values()) {
+                    writer.write(entry.format());
+                    writer.write("\n");
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Can't write " + PlausibleMapperIndex.RESOURCE + ": " + e.getMessage());
+        }
+    }
+
+    private void writeReflectConfig() {
+        try {
+            FileObject config = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", NativeImageReflectConfig.RESOURCE);
+            try (Writer writer = new OutputStreamWriter(config.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write(reflectConfig.toJson());
+            }
+            FileObject resourceConfig = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", NativeImageReflectConfig.RESOURCE_CONFIG);
+            try (Writer writer = new OutputStreamWriter(resourceConfig.openOutputStream(), StandardCharsets.UTF_8)) {
+                writer.write(NativeImageReflectConfig.resourceConfigJson(PlausibleMapperIndex.RESOURCE));
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Can't write the native-image configuration: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.plausing.asserts;
+
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * JUnit runner that tests every mapper registered in the {@link PlausibleMapperIndex}.
+ * <p>
+ * The mappers are read from the compile-time index, so the startup time doesn't depend on the size of the classpath.
+ * Every mapper is reported as a test of its own.
+ * <p>
+ * The mappers can be split into shards that run on several JVMs or CI nodes, see {@link MapperShards}. The shard is
+ * configured by system properties, e.g. {@code -Dplausing.shard.index=1 -Dplausing.shard.count=4
+ * -Dplausing.timings=plausing-timings.tsv -Dplausing.report=target/plausing-shard-1.tsv}. The durations of the
+ * mappers are written to the report, see {@link MapperRunReport}.
+ * <p>
+ * Example:
+ * <pre>
+ * &#64;RunWith(PlausibleMapperRunner.class)
+ * public class AllMappersTest {
+ * }
+ * </pre>
+ */
+public class PlausibleMapperRunner extends ParentRunner<PlausibleMapperIndex.Entry> {
+
+    /** The registered mappers. */
+    private final List<PlausibleMapperIndex.Entry> entries;
+
+    /** Durations and results of the mappers that have been run. */
+    private final MapperRunReport report = new MapperRunReport();
+
+    /**
+     * Creates a runner for the test class.
+     *
+     * @param testClass the test class
+     * @throws InitializationError if the index can't be read.
+     */
+    public PlausibleMapperRunner(Class<?> testClass) throws InitializationError {
+        super(testClass);
+        try {
+            this.entries = Collections.unmodifiableList(MapperShards.selectConfigured(PlausibleMapperIndex.load(getClassLoader())));
+            report.setShard(MapperShards.configuredIndex(), MapperShards.configuredCount());
+        } catch (IOException | IllegalArgumentException e) {
+            throw new InitializationError(e);
+        }
+    }
+
+    @Override
+    protected List<PlausibleMapperIndex.Entry> getChildren() {
+        return entries;
+    }
+
+    @Override
+    protected Description describeChild(PlausibleMapperIndex.Entry entry) {
+        return Description.createTestDescription(entry.declaringClassName, entry.memberName);
+    }
+
+    @Override
+    protected void runChild(PlausibleMapperIndex.Entry entry, RunNotifier notifier) {
+        runLeaf(new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                long start = System.nanoTime();
+                boolean passed = false;
+                try {
+                    assertPlausibleMapping(entry, getClassLoader());
+                    passed = true;
+                } finally {
+                    report.record(entry.getName(), System.nanoTime() - start, passed);
+                }
+            }
+        }, describeChild(entry), notifier);
+    }
+
+    @Override
+    public void run(RunNotifier notifier) {
+        super.run(notifier);
+        String reportFile = System.getProperty(MapperShards.REPORT_PROPERTY);
+        if (reportFile != null) {
+            try {
+                report.write(Paths.get(reportFile));
+            } catch (IOException e) {
+                notifier.fireTestFailure(new Failure(getDescription(), e));
+            }
+        }
+    }
+
+    /**
+     * Asserts that the registered mapper has a plausible mapping.
+     *
+     * @param entry       the registered mapper
+     * @param classLoader class loader to be used
+     * @throws ReflectiveOperationException if the mapper or the source class can't be loaded.
+     */
+    @SuppressWarnings("unchecked")
+    static void assertPlausibleMapping(PlausibleMapperIndex.Entry entry, ClassLoader classLoader) throws ReflectiveOperationException {
+        Function<Object, Object> mapper = entry.resolveMapper(classLoader);
+        Class<Object> sourceClass = (Class<Object>) entry.loadSourceClass(classLoader);
+        PlausingAssertions.assertThat(mapper)
+                .whenIgnoringTargetFields(entry.ignoredTargetFields.toArray(new String[0]))
+                .hasPlausibleMappingFor(sourceClass);
+    }
+
+    private ClassLoader getClassLoader() {
+        Class<?> testClass = getTestClass().getJavaClass();
+        return testClass.getClassLoader();
+    }
+}
@@ -1,5 +1,7 @@
 package org.plausing.asserts;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 /**
@@ -20,4 +22,41 @@ public class PlausingAssertions {
     public static <SOURCE, TARGET> MapperAssert<SOURCE, TARGET> assertThat(Function<SOURCE, TARGET> mapperFunction) {
         return new MapperAssert<SOURCE, TARGET>(mapperFunction, MapperAssert.class);
     }
+
+    /**
+     * Creates a new instance of <code>{@link org.plausing.asserts.MapperAssert}</code> for a batch mapper that maps a list of
+     * sources to the list of their targets, in the same order. The test values are mapped in a few large batches.
+     * @param batchMapper the batch mapper to test
+     * @param <SOURCE> source type of the batch mapper
+     * @param <TARGET> target type of the batch mapper
+     * @return new instance of <code>{@link org.plausing.asserts.MapperAssert}</code>.
+     */
+    public static <SOURCE, TARGET> MapperAssert<SOURCE, TARGET> assertThatBatchMapper(Function<List<SOURCE>, List<TARGET>> batchMapper) {
+        return MapperAssert.forBatchMapper(batchMapper);
+    }
+
+    /**
+     * Creates a new instance of <code>{@link org.plausing.asserts.MapperAssert}</code> for an asynchronous mapper.
+     * The mapper is invoked for all test values at once, see {@link MapperAssert#withMaxInFlightInvocations(int)},
+     * and an exceptional completion fails like an exception thrown by the mapper.
+     * @param asyncMapper the asynchronous mapper to test
+     * @param <SOURCE> source type of the asynchronous mapper
+     * @param <TARGET> target type of the asynchronous mapper
+     * @return new instance of <code>{@link org.plausing.asserts.MapperAssert}</code>.
+     */
+    public static <SOURCE, TARGET> MapperAssert<SOURCE, TARGET> assertThatAsyncMapper(Function<SOURCE, CompletableFuture<TARGET>> asyncMapper) {
+        return MapperAssert.forAsyncMapper(asyncMapper);
+    }
+
+    /**
+     * Creates a new instance of <code>{@link org.plausing.asserts.MapperAssert}</code> that uses the configuration of a template.
+     * @param mapperFunction the mapper function to test
+     * @param template the shared configuration
+     * @param <SOURCE> source type of the mapper function
+     * @param <TARGET> target type of the mapper function
+     * @return new instance of <code>{@link org.plausing.asserts.MapperAssert}</code>.
+     */
+    public static <SOURCE, TARGET> MapperAssert<SOURCE, TARGET> assertThat(Function<SOURCE, TARGET> mapperFunction, MapperAssertTemplate template) {
+        return new MapperAssert<SOURCE, TARGET>(mapperFunction, MapperAssert.class).usingTemplate(template);
+    }
 }
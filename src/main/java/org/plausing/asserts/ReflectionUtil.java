@@ -1,7 +1,6 @@
 package org.plausing.asserts;
 
 import junit.framework.AssertionFailedError;
-import org.apache.log4j.Logger;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -18,8 +17,6 @@ import java.util.function.Supplier;
  */
 public class ReflectionUtil {
 
-    private static Logger LOG = Logger.getLogger(ReflectionUtil.class);
-
     /**
      * Ermittelt alle Felder eines Objekts.
      *
@@ -27,25 +24,44 @@ public class ReflectionUtil {
      * @return
      */
     static ArrayList<Field> getFields(Object sourceReference) {
+        return getFields(sourceReference.getClass());
+    }
+
+    /**
+     * Ermittelt alle Felder einer Klasse und ihrer Oberklassen.
+     *
+     * @param type
+     * @return
+     */
+    static ArrayList<Field> getFields(Class<?> type) {
         List<Field> fields = new ArrayList<Field>();
-        Class c = sourceReference.getClass();
+        Class c = type;
         do {
             fields.addAll(Arrays.asList(c.getDeclaredFields()));
         } while (null != (c = c.getSuperclass()));
 
         ArrayList<Field> filteredFields = new ArrayList<Field>();
         for (Field field : fields) {
-            if (!(field.getName().startsWith("COL_")
-                    || field.getName().startsWith("ATT_")
-                    || field.getName().startsWith("ENTITY_")
-                    || field.getName().startsWith("TABLE_")
-            ) && !isStatic(field)) {
+            if (!isExcludedFieldName(field.getName()) && !isStatic(field)) {
                 filteredFields.add(field);
             }
         }
         return filteredFields;
     }
 
+    /**
+     * Constants of entity classes are not tested.
+     *
+     * @param fieldName name of the field
+     * @return true, if the field is excluded.
+     */
+    static boolean isExcludedFieldName(String fieldName) {
+        return fieldName.startsWith("COL_")
+                || fieldName.startsWith("ATT_")
+                || fieldName.startsWith("ENTITY_")
+                || fieldName.startsWith("TABLE_");
+    }
+
     private static boolean isStatic(Field field) {
         return java.lang.reflect.Modifier.isStatic(field.getModifiers());
     }
@@ -54,6 +70,35 @@ public class ReflectionUtil {
         return java.lang.reflect.Modifier.isStatic(method.getModifiers());
     }
 
+    /**
+     * Returns the wrapper class of a primitive type, or the type itself if it isn't primitive.
+     *
+     * @param type the type
+     * @return the boxed type
+     */
+    static Class<?> boxed(Class<?> type) {
+        if (!type.isPrimitive()) return type;
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == char.class) return Character.class;
+        if (type == byte.class) return Byte.class;
+        if (type == short.class) return Short.class;
+        return Void.class;
+    }
+
+    /**
+     * Returns the default value of a type, the value of a field that hasn't been assigned.
+     *
+     * @param type the type
+     * @return zero or false for primitive types, null otherwise
+     */
+    static Object defaultValue(Class<?> type) {
+        return type.isPrimitive() && type != void.class ? java.lang.reflect.Array.get(java.lang.reflect.Array.newInstance(type, 1), 0) : null;
+    }
+
     /**
      * Creates a new instance of type targetClass with the constructor that has type generatingType as its only parameter.
      *
@@ -97,24 +142,6 @@ public class ReflectionUtil {
         };
     }
 
-    /**
-     * Sets the value of a field in an object.
-     *
-     * @param object     object to be used
-     * @param field      field to be used
-     * @param fieldValue value to be set
-     * @throws IllegalAccessException
-     */
-    public static void setFieldValue(Object object, Field field, Object fieldValue) throws IllegalAccessException {
-        field.setAccessible(true);
-        field.set(object, fieldValue);
-    }
-
-    public static Object getFieldValue(Field targetField, Object object) throws IllegalAccessException {
-        targetField.setAccessible(true);
-        return targetField.get(object);
-    }
-
     public static <T> T instantiateType(T collection) {
         try {
             T newInstance = (T) collection.getClass().newInstance();
@@ -128,37 +155,105 @@ public class ReflectionUtil {
     }
 
     /**
-     * Examines the target and collects all the fields that have changed.
+     * Examines the target and collects all the fields that have changed, using a field accessor.
      *
-     * @param target
-     * @param <TARGET>
-     * @return
+     * @param accessor        accessor of the target class
+     * @param fieldsByIndex   fields by accessor index; fields without an entry are not examined
+     * @param target          the target
+     * @param targetReference the reference target
+     * @param <TARGET>        the target class
+     * @return the changed fields
      */
-    public static <TARGET> Set<Field> getChangedFields(TARGET target, TARGET targetReference) {
+    public static <TARGET> Set<Field> getChangedFields(FieldAccessor<TARGET> accessor, Field[] fieldsByIndex, TARGET target, TARGET targetReference) {
         Set<Field> result = new HashSet<Field>();
-        ArrayList<Field> fields = getFields(targetReference);
-        for (Field field : fields) {
-            field.setAccessible(true);
+        for (int index = 0; index < fieldsByIndex.length; index++) {
+            Field field = fieldsByIndex[index];
+            if (field == null) continue;
             Object vReference;
             Object vTarget;
 
             try {
-                vReference = field.get(targetReference);
-                vTarget = field.get(target);
+                vReference = accessor.get(targetReference, index);
+                vTarget = accessor.get(target, index);
             } catch (Throwable e) {
                 AssertionFailedError assertionFailedError = new AssertionFailedError("Exception while collecting changed fields: " + field.getName());
                 assertionFailedError.initCause(e);
                 throw assertionFailedError;
             }
 
-            if (vReference == null && vTarget == null) {
-                continue;
-            } else if (vReference == null && vTarget != null) {
-                result.add(field);
-            } else if (!vReference.equals(vTarget)) {
+            if (!valuesEqual(vReference, vTarget)) {
                 result.add(field);
             }
         }
         return result;
     }
+
+    /**
+     * Compares two field values. Arrays are compared by their elements with the bulk comparisons of
+     * {@link Arrays}, without copying or boxing the elements.
+     *
+     * @param a first value
+     * @param b second value
+     * @return true, if the values are equal.
+     */
+    public static boolean valuesEqual(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        if (!a.getClass().isArray()) return a.equals(b);
+        if (a.getClass() != b.getClass()) return false;
+        if (a instanceof byte[]) return Arrays.equals((byte[]) a, (byte[]) b);
+        if (a instanceof short[]) return Arrays.equals((short[]) a, (short[]) b);
+        if (a instanceof int[]) return Arrays.equals((int[]) a, (int[]) b);
+        if (a instanceof long[]) return Arrays.equals((long[]) a, (long[]) b);
+        if (a instanceof float[]) return Arrays.equals((float[]) a, (float[]) b);
+        if (a instanceof double[]) return Arrays.equals((double[]) a, (double[]) b);
+        if (a instanceof char[]) return Arrays.equals((char[]) a, (char[]) b);
+        if (a instanceof boolean[]) return Arrays.equals((boolean[]) a, (boolean[]) b);
+        return Arrays.deepEquals((Object[]) a, (Object[]) b);
+    }
+
+    /**
+     * Finds the first index where two arrays of the same type differ.
+     *
+     * @param a first array
+     * @param b second array
+     * @return the index of the first mismatch, the length of the shorter array if one array is a prefix of the other,
+     * or -1 if the arrays are equal.
+     */
+    public static int arrayMismatch(Object a, Object b) {
+        int lengthA = java.lang.reflect.Array.getLength(a);
+        int lengthB = java.lang.reflect.Array.getLength(b);
+        int length = Math.min(lengthA, lengthB);
+        int index = 0;
+        if (a instanceof byte[]) {
+            byte[] x = (byte[]) a, y = (byte[]) b;
+            while (index < length && x[index] == y[index]) index++;
+        } else if (a instanceof short[]) {
+            short[] x = (short[]) a, y = (short[]) b;
+            while (index < length && x[index] == y[index]) index++;
+        } else if (a instanceof int[]) {
+            int[] x = (int[]) a, y = (int[]) b;
+            while (index < length && x[index] == y[index]) index++;
+        } else if (a instanceof long[]) {
+            long[] x = (long[]) a, y = (long[]) b;
+            while (index < length && x[index] == y[index]) index++;
+        } else if (a instanceof float[]) {
+            float[] x = (float[]) a, y = (float[]) b;
+            while (index < length && Float.floatToIntBits(x[index]) == Float.floatToIntBits(y[index])) index++;
+        } else if (a instanceof double[]) {
+            double[] x = (double[]) a, y = (double[]) b;
+            while (index < length && Double.doubleToLongBits(x[index]) == Double.doubleToLongBits(y[index])) index++;
+        } else if (a instanceof char[]) {
+            char[] x = (char[]) a, y = (char[]) b;
+            while (index < length && x[index] == y[index]) index++;
+        } else if (a instanceof boolean[]) {
+            boolean[] x = (boolean[]) a, y = (boolean[]) b;
+            while (index < length && x[index] == y[index]) index++;
+        } else {
+            Object[] x = (Object[]) a, y = (Object[]) b;
+            while (index < length && Objects.deepEquals(x[index], y[index])) index++;
+        }
+        if (index < length) return index;
+        return lengthA == lengthB ? -1 : length;
+    }
 }
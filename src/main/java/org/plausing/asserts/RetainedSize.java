@@ -0,0 +1,245 @@
+package org.plausing.asserts;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Estimates the deep size of an object graph from the field layout of the classes, the lengths of arrays and the
+ * object headers of a 64 bit JVM with compressed references: 12 bytes per object header, 16 bytes per array header,
+ * 4 bytes per reference, and objects aligned to 8 bytes.
+ * <p>
+ * An object counts only once. Enum constants, classes and the cached instances of the wrapper classes don't count.
+ * Objects that are reachable from the given shared roots (e.g. the source of a mapper) count, because the target keeps
+ * them alive as long as it lives, but their size is also reported separately as shared. The internal storage of JDK
+ * collections, maps and strings is estimated from their size, other JDK objects are counted with their own fields only.
+ */
+final class RetainedSize {
+
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    static final int ALIGNMENT = 8;
+
+    /** Size of a HashMap node: header, hash, key, value and next. */
+    private static final long MAP_ENTRY = align(OBJECT_HEADER + 4 + 3 * REFERENCE);
+
+    private static final ClassValue<Long> SHALLOW_SIZES = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            long size = OBJECT_HEADER;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        size += sizeOf(field.getType());
+                    }
+                }
+            }
+            return align(size);
+        }
+    };
+
+    /**
+     * Deep size of a field: the size of all counted objects and the size of the objects among them that are shared.
+     */
+    static final class FieldSize {
+        final long bytes;
+        final long sharedBytes;
+
+        FieldSize(long bytes, long sharedBytes) {
+            this.bytes = bytes;
+            this.sharedBytes = sharedBytes;
+        }
+
+        FieldSize plus(FieldSize other) {
+            return new FieldSize(bytes + other.bytes, sharedBytes + other.sharedBytes);
+        }
+
+        @Override
+        public String toString() {
+            return sharedBytes == 0 ? bytes + " bytes" : bytes + " bytes (" + sharedBytes + " shared with the source)";
+        }
+    }
+
+    /** Objects that are reachable from the shared roots. */
+    private final Set<Object> shared = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    /**
+     * @param sharedRoots roots of objects whose size is reported as shared, e.g. the source of a mapper
+     */
+    RetainedSize(Object... sharedRoots) {
+        Deque<Object> objects = new ArrayDeque<Object>();
+        for (Object root : sharedRoots) {
+            if (root != null && shared.add(root)) objects.push(root);
+        }
+        while (!objects.isEmpty()) {
+            for (Object referenced : referencesOf(objects.pop())) {
+                if (referenced != null && shared.add(referenced)) objects.push(referenced);
+            }
+        }
+    }
+
+    /**
+     * Estimates the deep size of an object per field: the objects reachable from a field that are not reachable from a
+     * previous field. The shallow size of the object itself is the entry with the name of its class.
+     *
+     * @param object the object
+     * @return the sizes by field name, in the order of the fields
+     */
+    Map<String, FieldSize> sizesByField(Object object) {
+        Map<String, FieldSize> sizes = new LinkedHashMap<String, FieldSize>();
+        Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        counted.add(object);
+        long shallowSize = shallowSize(object);
+        sizes.put("<" + object.getClass().getSimpleName() + ">", new FieldSize(shallowSize, shared.contains(object) ? shallowSize : 0));
+        for (Class<?> c = object.getClass(); c != null && !isJdkClass(c); c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+                sizes.merge(field.getName(), deepSize(read(field, object), counted), FieldSize::plus);
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Estimates the size of the objects reachable from a root that aren't counted yet.
+     */
+    private FieldSize deepSize(Object root, Set<Object> counted) {
+        if (!isCounted(root) || !counted.add(root)) return new FieldSize(0, 0);
+        long size = 0;
+        long sharedSize = 0;
+        Deque<Object> objects = new ArrayDeque<Object>();
+        objects.push(root);
+        while (!objects.isEmpty()) {
+            Object object = objects.pop();
+            long shallowSize = shallowSize(object);
+            size += shallowSize;
+            if (shared.contains(object)) sharedSize += shallowSize;
+            for (Object referenced : referencesOf(object)) {
+                if (isCounted(referenced) && counted.add(referenced)) objects.push(referenced);
+            }
+        }
+        return new FieldSize(size, sharedSize);
+    }
+
+    private static boolean isCounted(Object object) {
+        return object != null && !(object instanceof Enum) && !(object instanceof Class) && !isCachedBox(object);
+    }
+
+    /**
+     * @return true, if the object is the instance that the wrapper class caches for its value.
+     */
+    private static boolean isCachedBox(Object object) {
+        if (object instanceof Boolean) return object == Boolean.valueOf((Boolean) object);
+        if (object instanceof Byte) return object == Byte.valueOf((Byte) object);
+        if (object instanceof Short) return object == Short.valueOf((Short) object);
+        if (object instanceof Character) return object == Character.valueOf((Character) object);
+        if (object instanceof Integer) return object == Integer.valueOf((Integer) object);
+        if (object instanceof Long) return object == Long.valueOf((Long) object);
+        return false;
+    }
+
+    /**
+     * Estimates the size of an object without the objects it references, but with the internal storage of strings,
+     * collections and maps.
+     */
+    static long shallowSize(Object object) {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            return align(ARRAY_HEADER + (long) Array.getLength(object) * sizeOf(type.getComponentType()));
+        }
+        long size = SHALLOW_SIZES.get(type);
+        if (object instanceof String) {
+            String string = (String) object;
+            boolean latin1 = string.chars().allMatch(c -> c <= 0xFF);
+            size += align(ARRAY_HEADER + (long) string.length() * (latin1 ? 1 : 2));
+        } else if (object instanceof Map && isJdkClass(type)) {
+            size += mapStorage(((Map<?, ?>) object).size());
+        } else if (object instanceof Set && isJdkClass(type)) {
+            // hash sets are backed by a map
+            size += SHALLOW_SIZES.get(HashMap.class) + mapStorage(((Set<?>) object).size());
+        } else if (object instanceof Collection && isJdkClass(type)) {
+            size += align(ARRAY_HEADER + (long) ((Collection<?>) object).size() * REFERENCE);
+        }
+        return size;
+    }
+
+    private static long mapStorage(int entries) {
+        int tableLength = Integer.highestOneBit(Math.max(1, entries * 4 / 3)) * 2;
+        return align(ARRAY_HEADER + (long) tableLength * REFERENCE) + (long) entries * MAP_ENTRY;
+    }
+
+    /**
+     * @return the size of a field or an array element of the type.
+     */
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        if (type == byte.class || type == boolean.class) return 1;
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Returns the objects referenced by an object: the fields of classes outside the JDK, and the elements of arrays,
+     * collections and maps.
+     */
+    private static List<Object> referencesOf(Object object) {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            if (type.getComponentType().isPrimitive()) return Collections.emptyList();
+            List<Object> elements = new ArrayList<Object>();
+            for (int index = 0; index < Array.getLength(object); index++) {
+                elements.add(Array.get(object, index));
+            }
+            return elements;
+        }
+        try {
+            if (object instanceof Map) {
+                List<Object> entries = new ArrayList<Object>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                    entries.add(entry.getKey());
+                    entries.add(entry.getValue());
+                }
+                return entries;
+            }
+            if (object instanceof Collection) {
+                return new ArrayList<Object>((Collection<?>) object);
+            }
+        } catch (RuntimeException e) {
+            // the collection has been changed concurrently
+            return Collections.emptyList();
+        }
+        if (isJdkClass(type)) return Collections.emptyList();
+        List<Object> references = new ArrayList<Object>();
+        for (Class<?> c = type; c != null && !isJdkClass(c); c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+                references.add(read(field, object));
+            }
+        }
+        return references;
+    }
+
+    private static boolean isJdkClass(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.");
+    }
+
+    /**
+     * Reads a field, or returns null if the field isn't accessible.
+     */
+    private static Object read(Field field, Object object) {
+        try {
+            field.setAccessible(true);
+            return field.get(object);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+}
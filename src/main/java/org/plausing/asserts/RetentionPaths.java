@@ -0,0 +1,133 @@
+package org.plausing.asserts;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Finds the reference path from a root object to an object that should be unreachable, e.g. a source that is
+ * retained by a mapper.
+ * <p>
+ * The object graph is searched breadth first through the fields of the objects, the elements of arrays, collections and
+ * maps. Objects of JDK classes other than arrays, collections and maps aren't searched, so a path through their internal
+ * fields isn't found. The search stops after {@link #MAX_VISITED_OBJECTS} objects.
+ */
+final class RetentionPaths {
+
+    /** Maximum number of objects searched per root. */
+    static final int MAX_VISITED_OBJECTS = 100_000;
+
+    private RetentionPaths() {
+    }
+
+    /**
+     * Finds the shortest reference path from a root to an object.
+     *
+     * @param root     the root
+     * @param rootName name of the root, the beginning of the path
+     * @param retained the object that is searched, compared by identity
+     * @return the path, e.g. {@code target.parent.items[2]}, or null if the object can't be reached.
+     */
+    static String find(Object root, String rootName, Object retained) {
+        Map<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+        Deque<Object> objects = new ArrayDeque<Object>();
+        Deque<String> paths = new ArrayDeque<String>();
+        objects.add(root);
+        paths.add(rootName);
+        visited.put(root, Boolean.TRUE);
+
+        while (!objects.isEmpty() && visited.size() < MAX_VISITED_OBJECTS) {
+            Object object = objects.poll();
+            String path = paths.poll();
+            if (object == retained) return path;
+
+            Map<String, Object> references = referencesOf(object, path);
+            for (Map.Entry<String, Object> reference : references.entrySet()) {
+                Object referenced = reference.getValue();
+                if (referenced == null || visited.containsKey(referenced)) continue;
+                visited.put(referenced, Boolean.TRUE);
+                objects.add(referenced);
+                paths.add(reference.getKey());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the shortest reference path from a static field of a class to an object.
+     *
+     * @param type     the class
+     * @param retained the object that is searched, compared by identity
+     * @return the path, e.g. {@code Mapper.CACHE[0]}, or null if the object can't be reached.
+     */
+    static String findFromStaticFields(Class<?> type, Object retained) {
+        for (Field field : type.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+            Object value = read(field, null);
+            if (value == null) continue;
+            String path = find(value, type.getSimpleName() + "." + field.getName(), retained);
+            if (path != null) return path;
+        }
+        return null;
+    }
+
+    /**
+     * Collects the references of an object by their paths.
+     */
+    private static Map<String, Object> referencesOf(Object object, String path) {
+        Map<String, Object> references = new LinkedHashMap<String, Object>();
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            if (type.getComponentType().isPrimitive()) return references;
+            for (int index = 0; index < Array.getLength(object); index++) {
+                references.put(path + "[" + index + "]", Array.get(object, index));
+            }
+        } else if (object instanceof Map) {
+            try {
+                int index = 0;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                    references.put(path + ".<key " + index + ">", entry.getKey());
+                    references.put(path + "[" + entry.getKey() + "]", entry.getValue());
+                    index++;
+                }
+            } catch (RuntimeException e) {
+                // the map has been changed concurrently, or its keys can't be printed
+            }
+        } else if (object instanceof Collection) {
+            try {
+                int index = 0;
+                for (Object element : (Collection<?>) object) {
+                    references.put(path + "[" + index++ + "]", element);
+                }
+            } catch (RuntimeException e) {
+                // the collection has been changed concurrently
+            }
+        } else if (!isJdkClass(type)) {
+            for (Class<?> c = type; c != null && !isJdkClass(c); c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+                    references.put(path + "." + field.getName(), read(field, object));
+                }
+            }
+        }
+        return references;
+    }
+
+    private static boolean isJdkClass(Class<?> type) {
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.");
+    }
+
+    /**
+     * Reads a field, or returns null if the field isn't accessible.
+     */
+    private static Object read(Field field, Object object) {
+        try {
+            field.setAccessible(true);
+            return field.get(object);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+}
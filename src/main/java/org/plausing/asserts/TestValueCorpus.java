@@ -0,0 +1,296 @@
+package org.plausing.asserts;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Test values sampled from a corpus of production values, see {@link MapperAssert#withTestValueCorpus(Path, int)}.
+ * <p>
+ * File format: UTF-8 text with one value per line and the tab separated columns key, value and an optional weight.
+ * The key is the name of a field or the name of a type, e.g. {@code java.math.BigDecimal}. In the value, backslash, tab,
+ * newline and carriage return are escaped as {@code \\}, {@code \t}, {@code \n} and {@code \r}, and {@code \N} is null.
+ * Lines starting with # are comments.
+ * <pre>
+ * customerName	Mueller-Luedenscheidt	120
+ * java.math.BigDecimal	0.01	3.5
+ * street	\N
+ * </pre>
+ * The corpus is read once through memory mapped windows, so its size isn't limited by the heap. Only a sample of
+ * values per key is kept: a line is sampled with a probability proportional to its weight, lines without a weight have
+ * the weight 1 (weighted reservoir sampling). The sample is reproducible, it only depends on the corpus and the seed.
+ * The values are converted to the type of the field when they are used, see {@link #getValues(String, Class)}.
+ */
+public final class TestValueCorpus {
+
+    /** Seed of the sampling of {@link MapperAssert#withTestValueCorpus(Path, int)}. */
+    static final long DEFAULT_SEED = 0x504C5456L;
+
+    /** Size of the mapped windows. A line must not be longer. */
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    private static final String NULL = "\\N";
+
+    private final Path file;
+    private final int valuesPerKey;
+    private final long seed;
+
+    /** Sampled values by key, in the order of the corpus, or null if the corpus hasn't been read yet. */
+    private Map<String, List<String>> samples;
+
+    /** Converted values by key and type. */
+    private final Map<String, List<Object>> convertedValues = new HashMap<String, List<Object>>();
+
+    /**
+     * A sampled line, ordered by its priority.
+     */
+    private static final class Sample {
+        final double priority;
+        final long offset;
+        final String value;
+
+        Sample(double priority, long offset, String value) {
+            this.priority = priority;
+            this.offset = offset;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Creates a corpus, the file is read on first use.
+     *
+     * @param file         the corpus file
+     * @param valuesPerKey maximum number of values sampled per key
+     * @param seed         seed of the sampling
+     */
+    public TestValueCorpus(Path file, int valuesPerKey, long seed) {
+        if (valuesPerKey < 1) {
+            throw new IllegalArgumentException("The number of values per key must be positive: " + valuesPerKey);
+        }
+        this.file = file;
+        this.valuesPerKey = valuesPerKey;
+        this.seed = seed;
+    }
+
+    /**
+     * @return the corpus file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the sampled values of a key, converted to a type. Duplicates are removed, null is removed for
+     * primitive types.
+     *
+     * @param key  name of a field or of a type
+     * @param type the type of the values
+     * @return the values, or null if the corpus has no values of the key
+     * @throws UncheckedIOException     if the corpus can't be read.
+     * @throws IllegalArgumentException if a value can't be converted to the type.
+     */
+    public synchronized List<Object> getValues(String key, Class<?> type) {
+        String cacheKey = key + "\t" + type.getName();
+        if (convertedValues.containsKey(cacheKey)) return convertedValues.get(cacheKey);
+
+        List<String> texts = getSamples().get(key);
+        List<Object> values = null;
+        if (texts != null) {
+            Set<Object> distinct = new LinkedHashSet<Object>();
+            for (String text : texts) {
+                if (text == null && type.isPrimitive()) continue;
+                distinct.add(text == null ? null : convert(key, text, type));
+            }
+            if (!distinct.isEmpty()) values = Collections.unmodifiableList(new ArrayList<Object>(distinct));
+        }
+        convertedValues.put(cacheKey, values);
+        return values;
+    }
+
+    private Map<String, List<String>> getSamples() {
+        if (samples == null) {
+            try {
+                samples = sample();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Test value corpus " + file + " can't be read", e);
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Reads the corpus once and keeps the lines with the highest priorities per key. The priority of a line is
+     * log(u) / weight with a uniform random u (algorithm A-Res of Efraimidis and Spirakis).
+     */
+    private Map<String, List<String>> sample() throws IOException {
+        Random random = new Random(seed);
+        Map<String, PriorityQueue<Sample>> reservoirs = new HashMap<String, PriorityQueue<Sample>>();
+        byte[] lastKeyBytes = new byte[0];
+        String lastKey = null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                int length = (int) Math.min(WINDOW_SIZE, size - position);
+                boolean last = position + length == size;
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                int lineStart = 0;
+                int firstTab = -1;
+                int secondTab = -1;
+                for (int i = 0; i <= length; i++) {
+                    byte b = i < length ? window.get(i) : (byte) '\n';
+                    if (b == '\t') {
+                        if (firstTab < 0) firstTab = i;
+                        else if (secondTab < 0) secondTab = i;
+                        continue;
+                    }
+                    if (b != '\n') continue;
+                    if (i == length && !last) break;
+
+                    int lineEnd = i > lineStart && window.get(i - 1) == '\r' ? i - 1 : i;
+                    if (lineEnd > lineStart && window.get(lineStart) != '#') {
+                        if (firstTab < 0) {
+                            throw new IllegalArgumentException("Invalid line in test value corpus " + file + " at offset "
+                                    + (position + lineStart) + ": no value");
+                        }
+                        int valueEnd = secondTab < 0 ? lineEnd : secondTab;
+                        double weight = secondTab < 0 ? 1 : parseWeight(decode(window, secondTab + 1, lineEnd), position + lineStart);
+                        double priority = Math.log(random.nextDouble()) / weight;
+
+                        byte[] keyBytes = bytes(window, lineStart, firstTab);
+                        if (!Arrays.equals(keyBytes, lastKeyBytes)) {
+                            lastKeyBytes = keyBytes;
+                            lastKey = new String(keyBytes, StandardCharsets.UTF_8);
+                        }
+                        PriorityQueue<Sample> reservoir = reservoirs.computeIfAbsent(lastKey,
+                                key -> new PriorityQueue<Sample>(Comparator.comparingDouble((Sample sample) -> sample.priority)));
+                        if (weight > 0 && (reservoir.size() < valuesPerKey || priority > reservoir.peek().priority)) {
+                            if (reservoir.size() == valuesPerKey) reservoir.poll();
+                            reservoir.add(new Sample(priority, position + lineStart, unescape(decode(window, firstTab + 1, valueEnd))));
+                        }
+                    }
+                    lineStart = i + 1;
+                    firstTab = -1;
+                    secondTab = -1;
+                }
+
+                if (lineStart == 0 && !last) {
+                    throw new IllegalArgumentException("Line in test value corpus " + file + " at offset " + position
+                            + " is longer than " + WINDOW_SIZE + " bytes");
+                }
+                position += last ? length : lineStart;
+            }
+        }
+
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        reservoirs.forEach((key, reservoir) -> {
+            List<Sample> sorted = new ArrayList<Sample>(reservoir);
+            sorted.sort(Comparator.comparingLong((Sample sample) -> sample.offset));
+            List<String> values = new ArrayList<String>();
+            for (Sample sample : sorted) {
+                values.add(sample.value);
+            }
+            result.put(key, values);
+        });
+        return result;
+    }
+
+    private double parseWeight(String text, long offset) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid line in test value corpus " + file + " at offset " + offset
+                    + ": weight '" + text + "' isn't a number", e);
+        }
+    }
+
+    private static byte[] bytes(MappedByteBuffer window, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = window.get(i);
+        }
+        return bytes;
+    }
+
+    private static String decode(MappedByteBuffer window, int start, int end) {
+        return new String(bytes(window, start, end), StandardCharsets.UTF_8);
+    }
+
+    private static String unescape(String text) {
+        if (NULL.equals(text)) return null;
+        if (text.indexOf('\\') < 0) return text;
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char escaped = text.charAt(++i);
+                switch (escaped) {
+                    case 't':
+                        result.append('\t');
+                        break;
+                    case 'n':
+                        result.append('\n');
+                        break;
+                    case 'r':
+                        result.append('\r');
+                        break;
+                    default:
+                        result.append(escaped);
+                }
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Converts a value of the corpus to a type: strings, primitives and their wrappers, enums by name, big numbers,
+     * dates as yyyy-mm-dd, and every type with a static valueOf(String), a static parse(CharSequence) like the
+     * java.time types, or a constructor with a string.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object convert(String key, String text, Class<?> type) {
+        try {
+            Class<?> boxed = ReflectionUtil.boxed(type);
+            if (boxed == String.class || boxed == Object.class) return text;
+            if (boxed == Character.class) {
+                if (text.length() != 1) throw new IllegalArgumentException("not a single character");
+                return text.charAt(0);
+            }
+            if (boxed == Boolean.class) return Boolean.valueOf(text);
+            if (boxed.isEnum()) return Enum.valueOf((Class) boxed, text);
+            if (boxed == BigDecimal.class) return new BigDecimal(text);
+            if (boxed == BigInteger.class) return new BigInteger(text);
+            if (boxed == java.sql.Date.class) return java.sql.Date.valueOf(text);
+            if (boxed == Date.class) return new Date(java.sql.Date.valueOf(text).getTime());
+
+            for (Method method : boxed.getMethods()) {
+                if (!Modifier.isStatic(method.getModifiers()) || !boxed.isAssignableFrom(method.getReturnType())
+                        || method.getParameterCount() != 1) continue;
+                Class<?> parameterType = method.getParameterTypes()[0];
+                if (method.getName().equals("valueOf") && parameterType == String.class
+                        || method.getName().equals("parse") && parameterType == CharSequence.class) {
+                    return method.invoke(null, text);
+                }
+            }
+            Constructor<?> constructor = boxed.getConstructor(String.class);
+            return constructor.newInstance(text);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Value '" + text + "' of " + key + " in test value corpus " + file
+                    + " can't be converted to " + type.getName(), e);
+        }
+    }
+}
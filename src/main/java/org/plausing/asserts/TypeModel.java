@@ -0,0 +1,239 @@
+package org.plausing.asserts;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generic types of fields, resolved from {@link Field#getGenericType()}.
+ * <p>
+ * Type variables are resolved with the type arguments of the superclasses of the class that owns the field, so
+ * a field {@code List<T> items} of {@code Base<T>} has the element type String in {@code Sub extends Base<String>}.
+ * Element types are resolved for collections and other iterables, maps (the value type), {@link Optional} and arrays.
+ * The resolved types are cached per class.
+ */
+final class TypeModel {
+
+    private static final ClassValue<Map<Field, GenericType>> FIELD_TYPES = new ClassValue<Map<Field, GenericType>>() {
+        @Override
+        protected Map<Field, GenericType> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<Field, GenericType>();
+        }
+    };
+
+    private TypeModel() {
+    }
+
+    /**
+     * Returns the resolved type of a field.
+     *
+     * @param owner class of the object that holds the field, i.e. the declaring class or one of its subclasses
+     * @param field the field
+     * @return the resolved type, or null if the type is an unbound type variable.
+     */
+    static GenericType typeOf(Class<?> owner, Field field) {
+        return FIELD_TYPES.get(owner).computeIfAbsent(field, f -> resolve(f.getGenericType(), typeVariableBindings(owner)));
+    }
+
+    /**
+     * Returns the element type of a field.
+     *
+     * @param owner class of the object that holds the field
+     * @param field the field
+     * @return the raw element type, or null if the field has no element type or it can't be resolved beyond Object.
+     * @see GenericType#getElementType()
+     */
+    static Class<?> elementTypeOf(Class<?> owner, Field field) {
+        GenericType type = typeOf(owner, field);
+        GenericType elementType = type == null ? null : type.getElementType();
+        return elementType == null || elementType.getRawType() == Object.class ? null : elementType.getRawType();
+    }
+
+    /**
+     * Returns a class that can be instantiated for a collection type, e.g. ArrayList for List.
+     *
+     * @param collectionType the declared collection type
+     * @return the type itself if it is a concrete class, otherwise a standard implementation.
+     * @throws IllegalArgumentException if there is no standard implementation.
+     */
+    static Class<?> collectionImplementation(Class<?> collectionType) {
+        if (!collectionType.isInterface() && !Modifier.isAbstract(collectionType.getModifiers())) return collectionType;
+        if (SortedSet.class.isAssignableFrom(collectionType)) return TreeSet.class;
+        if (Set.class.isAssignableFrom(collectionType)) return HashSet.class;
+        if (collectionType.isAssignableFrom(ArrayList.class)) return ArrayList.class;
+        if (collectionType.isAssignableFrom(ArrayDeque.class)) return ArrayDeque.class;
+        throw new IllegalArgumentException("No implementation for collection type " + collectionType.getCanonicalName());
+    }
+
+    /**
+     * Collects the type arguments that the class and its superclasses bind to the type variables of their superclasses.
+     */
+    private static Map<TypeVariable<?>, GenericType> typeVariableBindings(Class<?> owner) {
+        Map<TypeVariable<?>, GenericType> bindings = new HashMap<TypeVariable<?>, GenericType>();
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> c = owner; c != null; c = c.getSuperclass()) {
+            hierarchy.add(c);
+        }
+        for (Class<?> c : hierarchy) {
+            Type superclass = c.getGenericSuperclass();
+            if (superclass instanceof ParameterizedType) {
+                bind((ParameterizedType) superclass, bindings);
+            }
+        }
+        return bindings;
+    }
+
+    private static void bind(ParameterizedType type, Map<TypeVariable<?>, GenericType> bindings) {
+        TypeVariable<?>[] typeVariables = ((Class<?>) type.getRawType()).getTypeParameters();
+        Type[] typeArguments = type.getActualTypeArguments();
+        for (int index = 0; index < typeVariables.length; index++) {
+            bindings.put(typeVariables[index], resolve(typeArguments[index], bindings));
+        }
+    }
+
+    private static GenericType resolve(Type type, Map<TypeVariable<?>, GenericType> bindings) {
+        if (type instanceof Class) {
+            Class<?> rawType = (Class<?>) type;
+            if (rawType.isArray()) {
+                return new GenericType(rawType, Collections.singletonList(resolve(rawType.getComponentType(), bindings)));
+            }
+            return new GenericType(rawType, Collections.<GenericType>emptyList());
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            List<GenericType> typeArguments = new ArrayList<GenericType>();
+            for (Type typeArgument : parameterizedType.getActualTypeArguments()) {
+                typeArguments.add(resolve(typeArgument, bindings));
+            }
+            return new GenericType((Class<?>) parameterizedType.getRawType(), typeArguments);
+        }
+        if (type instanceof GenericArrayType) {
+            GenericType componentType = resolve(((GenericArrayType) type).getGenericComponentType(), bindings);
+            if (componentType == null) return new GenericType(Object[].class, Collections.<GenericType>singletonList(null));
+            Class<?> arrayType = Array.newInstance(componentType.getRawType(), 0).getClass();
+            return new GenericType(arrayType, Collections.singletonList(componentType));
+        }
+        if (type instanceof TypeVariable) {
+            GenericType boundType = bindings.get(type);
+            if (boundType != null) return boundType;
+            Type[] bounds = ((TypeVariable<?>) type).getBounds();
+            return bounds.length == 0 ? null : resolveUnbound(bounds[0]);
+        }
+        if (type instanceof WildcardType) {
+            WildcardType wildcardType = (WildcardType) type;
+            Type[] lowerBounds = wildcardType.getLowerBounds();
+            return resolve(lowerBounds.length > 0 ? lowerBounds[0] : wildcardType.getUpperBounds()[0], bindings);
+        }
+        throw new IllegalArgumentException("Unknown type " + type);
+    }
+
+    /**
+     * Resolves the bound of an unbound type variable to its raw type, so that recursive bounds like
+     * {@code T extends Comparable<T>} terminate. Object as bound means that the type isn't known.
+     */
+    private static GenericType resolveUnbound(Type bound) {
+        if (bound == Object.class) return null;
+        Type rawBound = bound instanceof ParameterizedType ? ((ParameterizedType) bound).getRawType() : bound;
+        return rawBound instanceof Class ? new GenericType((Class<?>) rawBound, Collections.<GenericType>emptyList()) : null;
+    }
+
+    /**
+     * A resolved type: a raw class and its resolved type arguments.
+     */
+    static final class GenericType {
+
+        private final Class<?> rawType;
+
+        /** Resolved type arguments. An element is null if the argument can't be resolved. For arrays, the component type. */
+        private final List<GenericType> typeArguments;
+
+        GenericType(Class<?> rawType, List<GenericType> typeArguments) {
+            this.rawType = rawType;
+            this.typeArguments = typeArguments;
+        }
+
+        Class<?> getRawType() {
+            return rawType;
+        }
+
+        List<GenericType> getTypeArguments() {
+            return typeArguments;
+        }
+
+        /**
+         * Returns the element type: the component type of arrays, the element type of iterables,
+         * the value type of maps and the type of Optionals.
+         *
+         * @return the element type, or null if it can't be resolved.
+         */
+        GenericType getElementType() {
+            if (rawType.isArray()) return typeArguments.get(0);
+            if (Map.class.isAssignableFrom(rawType)) return typeArgumentOf(Map.class, 1);
+            if (Iterable.class.isAssignableFrom(rawType)) return typeArgumentOf(Iterable.class, 0);
+            if (rawType == Optional.class) return typeArgumentOf(Optional.class, 0);
+            return null;
+        }
+
+        /**
+         * Returns the key type of maps.
+         *
+         * @return the key type, or null if it can't be resolved.
+         */
+        GenericType getKeyType() {
+            return Map.class.isAssignableFrom(rawType) ? typeArgumentOf(Map.class, 0) : null;
+        }
+
+        /**
+         * Returns a type argument of a supertype, e.g. the type argument of Iterable for {@code ArrayList<String>}.
+         *
+         * @param supertype the generic supertype
+         * @param index     index of the type argument
+         * @return the resolved type argument, or null if it can't be resolved.
+         */
+        GenericType typeArgumentOf(Class<?> supertype, int index) {
+            Map<TypeVariable<?>, GenericType> bindings = new HashMap<TypeVariable<?>, GenericType>();
+            TypeVariable<?>[] typeVariables = rawType.getTypeParameters();
+            if (typeVariables.length != typeArguments.size()) return null;
+            for (int i = 0; i < typeVariables.length; i++) {
+                if (typeArguments.get(i) != null) bindings.put(typeVariables[i], typeArguments.get(i));
+            }
+            Type supertypeArgument = findTypeArgument(rawType, supertype, index, bindings);
+            return supertypeArgument == null ? null : resolve(supertypeArgument, bindings);
+        }
+
+        private static Type findTypeArgument(Class<?> type, Class<?> supertype, int index, Map<TypeVariable<?>, GenericType> bindings) {
+            if (type == supertype) {
+                return supertype.getTypeParameters()[index];
+            }
+            List<Type> directSupertypes = new ArrayList<Type>(Arrays.asList(type.getGenericInterfaces()));
+            if (type.getGenericSuperclass() != null) directSupertypes.add(type.getGenericSuperclass());
+            for (Type directSupertype : directSupertypes) {
+                Class<?> rawSupertype = directSupertype instanceof ParameterizedType
+                        ? (Class<?>) ((ParameterizedType) directSupertype).getRawType() : (Class<?>) directSupertype;
+                if (!supertype.isAssignableFrom(rawSupertype)) continue;
+                if (directSupertype instanceof ParameterizedType) {
+                    bind((ParameterizedType) directSupertype, bindings);
+                }
+                return findTypeArgument(rawSupertype, supertype, index, bindings);
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            if (typeArguments.isEmpty() || rawType.isArray()) return rawType.getSimpleName();
+            StringBuilder result = new StringBuilder(rawType.getSimpleName()).append('<');
+            for (int index = 0; index < typeArguments.size(); index++) {
+                result.append(index == 0 ? "" : ", ").append(typeArguments.get(index) == null ? "?" : typeArguments.get(index));
+            }
+            return result.append('>').toString();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.plausing.asserts;
 
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 /**
@@ -12,6 +13,11 @@ public class UtilException {
         T get() throws Exception;
     }
 
+    @FunctionalInterface
+    public interface Function_WithExceptions<T, R> {
+        R apply(T t) throws Exception;
+    }
+
     /**
      * rethrowSupplier(() -> new StringJoiner(new String(new byte[]{77, 97, 114, 107}, "UTF-8"))),
      */
@@ -25,4 +31,23 @@ public class UtilException {
         };
     }
 
+    /**
+     * .map(rethrowFunction(name -> Class.forName(name)))
+     */
+    public static <T, R> Function<T, R> rethrowFunction(Function_WithExceptions<T, R> function) {
+        return t -> {
+            try {
+                return function.apply(t);
+            } catch (Exception exception) {
+                throwAsUnchecked(exception);
+                return null;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> void throwAsUnchecked(Exception exception) throws E {
+        throw (E) exception;
+    }
+
 }
@@ -0,0 +1,117 @@
+package org.plausing.asserts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The complete value domains of the types that are small enough to be tested exhaustively:
+ * byte, short, char, boolean, their wrappers, and enums.
+ * <p>
+ * The values are generated lazily from an index range, so a domain is never held in memory as a list, and its stream
+ * splits evenly when it is processed in parallel.
+ */
+final class ValueDomain {
+
+    private ValueDomain() {
+    }
+
+    /**
+     * @param type a type
+     * @return true, if the values of the type can be tested exhaustively.
+     */
+    static boolean isExhaustible(Class<?> type) {
+        return type == byte.class || type == Byte.class
+                || type == short.class || type == Short.class
+                || type == char.class || type == Character.class
+                || type == boolean.class || type == Boolean.class
+                || type.isEnum();
+    }
+
+    /**
+     * @param type a type
+     * @return true, if fields of the type can be null.
+     */
+    static boolean isNullable(Class<?> type) {
+        return !type.isPrimitive();
+    }
+
+    /**
+     * Returns the number of values of a type, without null.
+     *
+     * @param type an exhaustible type
+     * @return the number of values
+     */
+    static int size(Class<?> type) {
+        if (type == byte.class || type == Byte.class) return 1 << 8;
+        if (type == short.class || type == Short.class || type == char.class || type == Character.class) return 1 << 16;
+        if (type == boolean.class || type == Boolean.class) return 2;
+        if (type.isEnum()) return type.getEnumConstants().length;
+        throw new IllegalArgumentException("No exhaustible value domain for type " + type.getCanonicalName());
+    }
+
+    /**
+     * Streams all values of a type in ascending order, preceded by null if requested.
+     *
+     * @param type     an exhaustible type
+     * @param withNull true, if the stream starts with null
+     * @return a lazily generated, ordered stream of the values
+     */
+    static Stream<Object> values(Class<?> type, boolean withNull) {
+        return indexes(type, withNull).mapToObj(index -> valueAt(type, index));
+    }
+
+    /**
+     * Streams the indexes of all values of a type in ascending order, preceded by -1 for null if requested.
+     *
+     * @param type     an exhaustible type
+     * @param withNull true, if the stream starts with -1
+     * @return the ordered stream of the indexes, see {@link #valueAt(Class, int)}
+     */
+    static IntStream indexes(Class<?> type, boolean withNull) {
+        return IntStream.range(withNull ? -1 : 0, size(type));
+    }
+
+    /**
+     * Returns a few boundary values of a type, for learning the mapping: the extreme values, 0 and 1, and for char the
+     * surrogate boundaries.
+     *
+     * @param type     an exhaustible type
+     * @param withNull true, if null is one of the values
+     * @return the values
+     */
+    static List<Object> sample(Class<?> type, boolean withNull) {
+        List<Object> sample = new ArrayList<Object>();
+        if (type == byte.class || type == Byte.class) {
+            sample.addAll(Arrays.<Object>asList(Byte.MIN_VALUE, Byte.MAX_VALUE, (byte) 1, (byte) -1, (byte) 0));
+        } else if (type == short.class || type == Short.class) {
+            sample.addAll(Arrays.<Object>asList(Short.MIN_VALUE, Short.MAX_VALUE, (short) 1, (short) -1, (short) 0));
+        } else if (type == char.class || type == Character.class) {
+            sample.addAll(Arrays.<Object>asList(Character.MIN_VALUE, Character.MAX_VALUE, 'a', (char) 0xD800, (char) 0xDFFF));
+        } else if (type == boolean.class || type == Boolean.class) {
+            sample.addAll(Arrays.<Object>asList(true, false));
+        } else {
+            sample.addAll(Arrays.asList(type.getEnumConstants()));
+        }
+        if (withNull) sample.add(null);
+        return sample;
+    }
+
+    /**
+     * Returns the value with an index, counted from the smallest value.
+     *
+     * @param type  an exhaustible type
+     * @param index the index, or -1 for null
+     * @return the value
+     */
+    static Object valueAt(Class<?> type, int index) {
+        if (index < 0) return null;
+        if (type.isEnum()) return type.getEnumConstants()[index];
+        if (type == byte.class || type == Byte.class) return (byte) (Byte.MIN_VALUE + index);
+        if (type == short.class || type == Short.class) return (short) (Short.MIN_VALUE + index);
+        if (type == char.class || type == Character.class) return (char) index;
+        return index == 1;
+    }
+}
@@ -0,0 +1,140 @@
+package org.plausing.asserts;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the field writes of the classes instrumented by the {@link WriteTrackingAgent}, see
+ * {@link MapperAssert#whenTrackingWrites()}.
+ * <p>
+ * Only writes to instances of the tracked classes are recorded, by object identity, and only while at least one class
+ * is tracked. The instrumented code calls {@link #write(Object, String)} after every write of an instance field.
+ */
+public final class WriteTracker {
+
+    private static volatile boolean installed = false;
+
+    /** True, if any class is tracked. Checked first, so that untracked writes cost a volatile read. */
+    private static volatile boolean tracking = false;
+
+    /** Tracked classes with the number of assertions that track them. */
+    private static final Map<Class<?>, Integer> TRACKED_CLASSES = new ConcurrentHashMap<Class<?>, Integer>();
+
+    /**
+     * Names of the written fields by object identity. The objects are weakly referenced, so that objects whose writes
+     * are never taken, e.g. intermediate objects of the mapper, can be collected while the class is tracked.
+     */
+    private static final Map<IdentityKey, Set<String>> WRITES = new HashMap<IdentityKey, Set<String>>();
+
+    /** The keys of the collected objects, removed from WRITES on the next access. */
+    private static final ReferenceQueue<Object> COLLECTED = new ReferenceQueue<Object>();
+
+    /**
+     * Weak reference to an object that is equal to the references to the same object.
+     */
+    private static final class IdentityKey extends WeakReference<Object> {
+        private final int hashCode;
+
+        IdentityKey(Object object, ReferenceQueue<Object> queue) {
+            super(object, queue);
+            hashCode = System.identityHashCode(object);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof IdentityKey)) return false;
+            Object object = get();
+            return object != null && object == ((IdentityKey) other).get();
+        }
+    }
+
+    private WriteTracker() {
+    }
+
+    /**
+     * Records the write of a field. Called by the instrumented code, not meant to be called directly.
+     *
+     * @param object    the object whose field has been written
+     * @param fieldName name of the field
+     */
+    public static void write(Object object, String fieldName) {
+        if (!tracking || !TRACKED_CLASSES.containsKey(object.getClass())) return;
+        synchronized (WRITES) {
+            expungeCollected();
+            WRITES.computeIfAbsent(new IdentityKey(object, COLLECTED), key -> new HashSet<String>()).add(fieldName);
+        }
+    }
+
+    /**
+     * @return true, if the classes are instrumented by the {@link WriteTrackingAgent}.
+     */
+    static boolean isInstalled() {
+        return installed;
+    }
+
+    /**
+     * @param installed true, if the classes are instrumented by the {@link WriteTrackingAgent}
+     */
+    static void setInstalled(boolean installed) {
+        WriteTracker.installed = installed;
+    }
+
+    /**
+     * Starts recording the writes to the instances of a class.
+     *
+     * @param type the class
+     */
+    static void start(Class<?> type) {
+        TRACKED_CLASSES.merge(type, 1, Integer::sum);
+        tracking = true;
+    }
+
+    /**
+     * Stops recording the writes to the instances of a class, and forgets the writes that haven't been taken.
+     *
+     * @param type the class
+     */
+    static void stop(Class<?> type) {
+        Integer count = TRACKED_CLASSES.computeIfPresent(type, (key, trackers) -> trackers == 1 ? null : trackers - 1);
+        tracking = !TRACKED_CLASSES.isEmpty();
+        if (count == null) {
+            synchronized (WRITES) {
+                expungeCollected();
+                WRITES.keySet().removeIf(key -> {
+                    Object object = key.get();
+                    return object == null || object.getClass() == type;
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns and forgets the fields that have been written to an object.
+     *
+     * @param object the object
+     * @return the names of the written fields
+     */
+    static Set<String> takeWrites(Object object) {
+        synchronized (WRITES) {
+            expungeCollected();
+            Set<String> written = WRITES.remove(new IdentityKey(object, null));
+            return written == null ? Collections.<String>emptySet() : written;
+        }
+    }
+
+    private static void expungeCollected() {
+        Reference<?> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            WRITES.remove(collected);
+        }
+    }
+}
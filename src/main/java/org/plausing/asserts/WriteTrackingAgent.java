@@ -0,0 +1,38 @@
+package org.plausing.asserts;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Java agent that instruments the field writes of the loaded classes for {@link MapperAssert#whenTrackingWrites()}.
+ * <p>
+ * The agent has to be started with the JVM, because it adds methods to the instrumented classes, which isn't possible
+ * for classes that are already loaded. Its argument is a comma separated list of the packages to be instrumented;
+ * all classes outside the JDK and plausing are instrumented without an argument:
+ * <pre>
+ * -javaagent:plausing-assert.jar=com.example.mappers,com.example.dto
+ * </pre>
+ */
+public final class WriteTrackingAgent {
+
+    private WriteTrackingAgent() {
+    }
+
+    /**
+     * Installs the agent when the JVM starts.
+     *
+     * @param arguments       comma separated list of the packages to be instrumented, or null
+     * @param instrumentation the instrumentation of the JVM
+     */
+    public static void premain(String arguments, Instrumentation instrumentation) {
+        List<String> packages = new ArrayList<String>();
+        if (arguments != null) {
+            for (String packageName : arguments.split(",")) {
+                if (!packageName.trim().isEmpty()) packages.add(packageName.trim());
+            }
+        }
+        instrumentation.addTransformer(new WriteTrackingTransformer(packages));
+        WriteTracker.setInstalled(true);
+    }
+}
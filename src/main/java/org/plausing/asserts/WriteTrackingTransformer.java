@@ -0,0 +1,618 @@
+package org.plausing.asserts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.*;
+
+/**
+ * Instruments the field writes of a class for the {@link WriteTracker}.
+ * <p>
+ * Every PUTFIELD of a method is replaced by an INVOKESTATIC of a synthetic method of the same class that writes the field
+ * and reports the write. Both instructions have the same length and take the object and the value from the stack, so the
+ * offsets and the stack map frames of the code stay valid. Writes of final fields are left in place, because the JVM
+ * only accepts them in a constructor of the class.
+ * <p>
+ * The PUTFIELDs of constructors are left in place, too. Instead, the constructor calls a synthetic method before every
+ * return that reports the fields of the class that the constructor writes on any path, so writes in immutable objects
+ * are recorded after the object has been constructed. The code of the constructor is relocated for the call. Constructors
+ * without parameters aren't instrumented at all: they initialize the object independently of a source. Setters are
+ * instrumented like any other method, so writes through them are recorded, too.
+ */
+final class WriteTrackingTransformer implements ClassFileTransformer {
+
+    private static final int RETURN = 0xb1;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int NEW = 0xbb;
+
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final String TRACKER = WriteTracker.class.getName().replace('.', '/');
+
+    /** Length of the call of the constructor hook, aload_0 and invokestatic. A multiple of 4 keeps switches aligned. */
+    private static final int HOOK_LENGTH = 4;
+
+    /** Internal names of the instrumented packages, or empty for all packages. */
+    private final List<String> packagePrefixes = new ArrayList<String>();
+
+    /**
+     * @param packages names of the packages to be instrumented with their subpackages, or empty for all packages
+     *                 outside the JDK and plausing
+     */
+    WriteTrackingTransformer(List<String> packages) {
+        for (String packageName : packages) {
+            packagePrefixes.add(packageName.replace('.', '/') + "/");
+        }
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classFile) {
+        if (className == null || classBeingRedefined != null || !isInstrumented(className, protectionDomain)) {
+            return null;
+        }
+        try {
+            return instrument(classFile);
+        } catch (IOException | RuntimeException e) {
+            // leave the class as it is
+            return null;
+        }
+    }
+
+    private boolean isInstrumented(String className, ProtectionDomain protectionDomain) {
+        if (className.startsWith("java/") || className.startsWith("javax/") || className.startsWith("jdk/")
+                || className.startsWith("sun/") || className.startsWith("com/sun/")) {
+            return false;
+        }
+        CodeSource codeSource = protectionDomain == null ? null : protectionDomain.getCodeSource();
+        CodeSource plausingCodeSource = WriteTrackingTransformer.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null && plausingCodeSource != null && Objects.equals(codeSource.getLocation(), plausingCodeSource.getLocation())) {
+            return false;
+        }
+        if (packagePrefixes.isEmpty()) return true;
+        for (String prefix : packagePrefixes) {
+            if (className.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Instruments the field writes of a class file.
+     *
+     * @param bytes the class file
+     * @return the instrumented class file, or null if the class doesn't write fields.
+     * @throws IOException if the class file can't be read.
+     */
+    static byte[] instrument(byte[] bytes) throws IOException {
+        ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != 0xCAFEBABE) throw new IOException("Not a class file");
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+
+        int constantPoolCount = in.readUnsignedShort();
+        int[] firstReferences = new int[constantPoolCount];
+        int[] secondReferences = new int[constantPoolCount];
+        String[] utf8 = new String[constantPoolCount];
+        for (int index = 1; index < constantPoolCount; index++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1:
+                    utf8[index] = in.readUTF();
+                    break;
+                case 3:
+                case 4:
+                    in.readInt();
+                    break;
+                case 5:
+                case 6:
+                    in.readLong();
+                    index++;
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    firstReferences[index] = in.readUnsignedShort();
+                    break;
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    firstReferences[index] = in.readUnsignedShort();
+                    secondReferences[index] = in.readUnsignedShort();
+                    break;
+                case 15:
+                    in.readUnsignedByte();
+                    firstReferences[index] = in.readUnsignedShort();
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        int constantPoolEnd = bytes.length - stream.available();
+
+        int access = in.readUnsignedShort();
+        int thisClass = in.readUnsignedShort();
+        if ((access & ACC_INTERFACE) != 0) return null;
+        String className = utf8[firstReferences[thisClass]];
+        in.readUnsignedShort();
+        in.skipBytes(in.readUnsignedShort() * 2);
+        Set<String> finalFields = new HashSet<String>();
+        int fieldCount = in.readUnsignedShort();
+        for (int index = 0; index < fieldCount; index++) {
+            int fieldAccess = in.readUnsignedShort();
+            String fieldName = utf8[in.readUnsignedShort()];
+            in.readUnsignedShort();
+            skipAttributes(in);
+            if ((fieldAccess & ACC_FINAL) != 0) finalFields.add(fieldName);
+        }
+
+        int methodCountPosition = bytes.length - stream.available();
+        int methodCount = in.readUnsignedShort();
+        byte[] instrumented = bytes.clone();
+        ConstantPool constantPool = new ConstantPool(constantPoolCount);
+        // the method reference, name and descriptor of the write method of every written field
+        Map<Integer, int[]> writeMethodsByFieldReference = new LinkedHashMap<Integer, int[]>();
+        // the name, descriptor and written fields of the hook of every constructor
+        List<Object[]> constructorHooks = new ArrayList<Object[]>();
+        // the instrumented Code attributes of the constructors by their position and length in the class file
+        SortedMap<Integer, byte[]> replacedAttributes = new TreeMap<Integer, byte[]>();
+        Map<Integer, Integer> replacedAttributeLengths = new HashMap<Integer, Integer>();
+        for (int method = 0; method < methodCount; method++) {
+            in.readUnsignedShort();
+            boolean constructor = "<init>".equals(utf8[in.readUnsignedShort()]);
+            String methodDescriptor = utf8[in.readUnsignedShort()];
+            boolean defaultConstructor = constructor && "()V".equals(methodDescriptor);
+            int attributeCount = in.readUnsignedShort();
+            for (int attribute = 0; attribute < attributeCount; attribute++) {
+                int attributeStart = bytes.length - stream.available();
+                String attributeName = utf8[in.readUnsignedShort()];
+                int length = in.readInt();
+                if (!"Code".equals(attributeName) || defaultConstructor) {
+                    in.skipBytes(length);
+                    continue;
+                }
+                in.readUnsignedShort();
+                in.readUnsignedShort();
+                int codeLength = in.readInt();
+                int codeStart = bytes.length - stream.available();
+                byte[] code = Arrays.copyOfRange(bytes, codeStart, codeStart + codeLength);
+                in.skipBytes(length - 8);
+
+                // in a constructor, the object is initialized by the first constructor call without a pending NEW
+                boolean initialized = !constructor;
+                int pendingNews = 0;
+                Set<String> constructorWrites = new LinkedHashSet<String>();
+                for (int pc = 0; pc < code.length; pc += BytecodeMappingLearner.instructionLength(code, pc)) {
+                    int opcode = code[pc] & 0xff;
+                    if (opcode == NEW) {
+                        pendingNews++;
+                    } else if (opcode == INVOKESPECIAL && !initialized
+                            && "<init>".equals(utf8[firstReferences[secondReferences[u2(code, pc + 1)]]])) {
+                        if (pendingNews > 0) pendingNews--;
+                        else initialized = true;
+                    } else if (opcode == PUTFIELD && initialized) {
+                        int fieldReference = u2(code, pc + 1);
+                        boolean ownField = className.equals(utf8[firstReferences[firstReferences[fieldReference]]]);
+                        String fieldName = utf8[firstReferences[secondReferences[fieldReference]]];
+                        if (constructor) {
+                            if (ownField) constructorWrites.add(fieldName);
+                            continue;
+                        }
+                        if (ownField && finalFields.contains(fieldName)) continue;
+                        int[] writeMethod = writeMethodsByFieldReference.get(fieldReference);
+                        if (writeMethod == null) {
+                            String owner = utf8[firstReferences[firstReferences[fieldReference]]];
+                            String descriptor = utf8[secondReferences[secondReferences[fieldReference]]];
+                            int name = constantPool.utf8("plausing$write$" + writeMethodsByFieldReference.size());
+                            int writeDescriptor = constantPool.utf8("(L" + owner + ";" + descriptor + ")V");
+                            writeMethod = new int[]{constantPool.methodReference(thisClass, name, writeDescriptor), name, writeDescriptor};
+                            writeMethodsByFieldReference.put(fieldReference, writeMethod);
+                        }
+                        instrumented[codeStart + pc] = (byte) INVOKESTATIC;
+                        instrumented[codeStart + pc + 1] = (byte) (writeMethod[0] >> 8);
+                        instrumented[codeStart + pc + 2] = (byte) writeMethod[0];
+                    }
+                }
+
+                if (!constructorWrites.isEmpty()) {
+                    int name = constantPool.utf8("plausing$init$" + constructorHooks.size());
+                    int hookDescriptor = constantPool.utf8("(L" + className + ";)V");
+                    int hookMethod = constantPool.methodReference(thisClass, name, hookDescriptor);
+                    constructorHooks.add(new Object[]{name, hookDescriptor, constructorWrites});
+                    replacedAttributes.put(attributeStart, addConstructorHook(bytes, attributeStart, utf8, hookMethod));
+                    replacedAttributeLengths.put(attributeStart, 6 + length);
+                }
+            }
+        }
+        int methodsEnd = bytes.length - stream.available();
+        if (writeMethodsByFieldReference.isEmpty() && constructorHooks.isEmpty()) return null;
+
+        // the synthetic write methods
+        ByteArrayOutputStream writeMethods = new ByteArrayOutputStream();
+        DataOutputStream methods = new DataOutputStream(writeMethods);
+        int codeName = constantPool.utf8("Code");
+        int trackerMethod = constantPool.methodReference(constantPool.classReference(TRACKER),
+                constantPool.utf8("write"), constantPool.utf8("(Ljava/lang/Object;Ljava/lang/String;)V"));
+        for (Map.Entry<Integer, int[]> writeMethod : writeMethodsByFieldReference.entrySet()) {
+            int nameAndType = secondReferences[writeMethod.getKey()];
+            String descriptor = utf8[secondReferences[nameAndType]];
+            int valueSize = descriptor.equals("J") || descriptor.equals("D") ? 2 : 1;
+            int fieldName = constantPool.string(firstReferences[nameAndType]);
+
+            methods.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC);
+            methods.writeShort(writeMethod.getValue()[1]);
+            methods.writeShort(writeMethod.getValue()[2]);
+            methods.writeShort(1);
+            methods.writeShort(codeName);
+            methods.writeInt(12 + 13);
+            methods.writeShort(Math.max(1 + valueSize, 2));
+            methods.writeShort(1 + valueSize);
+            methods.writeInt(13);
+            methods.writeByte(0x2a); // aload_0
+            methods.writeByte(loadOpcode(descriptor.charAt(0)));
+            methods.writeByte(PUTFIELD);
+            methods.writeShort(writeMethod.getKey());
+            methods.writeByte(0x2a); // aload_0
+            methods.writeByte(0x13); // ldc_w
+            methods.writeShort(fieldName);
+            methods.writeByte(INVOKESTATIC);
+            methods.writeShort(trackerMethod);
+            methods.writeByte(0xb1); // return
+            methods.writeShort(0);
+            methods.writeShort(0);
+        }
+
+        // the synthetic constructor hooks, they report the writes of a constructor
+        for (Object[] constructorHook : constructorHooks) {
+            @SuppressWarnings("unchecked")
+            Set<String> fieldNames = (Set<String>) constructorHook[2];
+            int codeLength = fieldNames.size() * 7 + 1;
+            methods.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC);
+            methods.writeShort((Integer) constructorHook[0]);
+            methods.writeShort((Integer) constructorHook[1]);
+            methods.writeShort(1);
+            methods.writeShort(codeName);
+            methods.writeInt(12 + codeLength);
+            methods.writeShort(2);
+            methods.writeShort(1);
+            methods.writeInt(codeLength);
+            for (String fieldName : fieldNames) {
+                methods.writeByte(0x2a); // aload_0
+                methods.writeByte(0x13); // ldc_w
+                methods.writeShort(constantPool.string(constantPool.utf8(fieldName)));
+                methods.writeByte(INVOKESTATIC);
+                methods.writeShort(trackerMethod);
+            }
+            methods.writeByte(RETURN);
+            methods.writeShort(0);
+            methods.writeShort(0);
+        }
+        if (constantPool.count() > 0xffff) return null;
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length + constantPool.bytes.size() + writeMethods.size());
+        DataOutputStream out = new DataOutputStream(result);
+        out.write(bytes, 0, 8);
+        out.writeShort(constantPool.count());
+        out.write(bytes, 10, constantPoolEnd - 10);
+        constantPool.bytes.writeTo(out);
+        out.write(instrumented, constantPoolEnd, methodCountPosition - constantPoolEnd);
+        out.writeShort(methodCount + writeMethodsByFieldReference.size() + constructorHooks.size());
+        int position = methodCountPosition + 2;
+        for (Map.Entry<Integer, byte[]> replacedAttribute : replacedAttributes.entrySet()) {
+            out.write(instrumented, position, replacedAttribute.getKey() - position);
+            out.write(replacedAttribute.getValue());
+            position = replacedAttribute.getKey() + replacedAttributeLengths.get(replacedAttribute.getKey());
+        }
+        out.write(instrumented, position, methodsEnd - position);
+        writeMethods.writeTo(out);
+        out.write(instrumented, methodsEnd, bytes.length - methodsEnd);
+        return result.toByteArray();
+    }
+
+    /**
+     * Inserts a call of the constructor hook before every return of a constructor, and relocates the offsets of the
+     * code, the exception table, the stack map frames and the debug tables. Other attributes of the code, e.g. type
+     * annotations, are dropped.
+     *
+     * @param bytes          the class file
+     * @param attributeStart position of the Code attribute of the constructor
+     * @param utf8           the UTF8 constants of the class
+     * @param hookMethod     the method reference of the hook
+     * @return the new Code attribute
+     * @throws IOException if the code can't be relocated.
+     */
+    private static byte[] addConstructorHook(byte[] bytes, int attributeStart, String[] utf8, int hookMethod) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, attributeStart, bytes.length - attributeStart));
+        int attributeName = in.readUnsignedShort();
+        in.readInt();
+        int maxStack = in.readUnsignedShort();
+        int maxLocals = in.readUnsignedShort();
+        byte[] code = new byte[in.readInt()];
+        in.readFully(code);
+
+        List<Integer> returnList = new ArrayList<Integer>();
+        for (int pc = 0; pc < code.length; pc += BytecodeMappingLearner.instructionLength(code, pc)) {
+            if ((code[pc] & 0xff) == RETURN) returnList.add(pc);
+        }
+        int[] returns = returnList.stream().mapToInt(Integer::intValue).toArray();
+        if (code.length + returns.length * HOOK_LENGTH > 0xffff) throw new IOException("Constructor too large");
+
+        ByteArrayOutputStream attribute = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(attribute);
+        out.writeShort(maxStack + 1);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length + returns.length * HOOK_LENGTH);
+        for (int pc = 0, length; pc < code.length; pc += length) {
+            length = BytecodeMappingLearner.instructionLength(code, pc);
+            int opcode = code[pc] & 0xff;
+            byte[] instruction = Arrays.copyOfRange(code, pc, pc + length);
+            if (opcode == RETURN) {
+                out.writeByte(0x2a); // aload_0
+                out.writeByte(INVOKESTATIC);
+                out.writeShort(hookMethod);
+            } else if (opcode >= 0x99 && opcode <= 0xa8 || opcode == 0xc6 || opcode == 0xc7) {
+                int offset = relocate(returns, pc + (short) u2(code, pc + 1)) - relocate(returns, pc);
+                if (offset != (short) offset) throw new IOException("Branch offset too large");
+                putU2(instruction, 1, offset);
+            } else if (opcode == 0xc8 || opcode == 0xc9) {
+                putS4(instruction, 1, relocate(returns, pc + s4(code, pc + 1)) - relocate(returns, pc));
+            } else if (opcode == 0xaa || opcode == 0xab) {
+                int padding = (4 - (pc + 1) % 4) % 4;
+                List<Integer> offsetPositions = new ArrayList<Integer>();
+                offsetPositions.add(1 + padding);
+                if (opcode == 0xaa) {
+                    for (int index = 1 + padding + 12; index < length; index += 4) offsetPositions.add(index);
+                } else {
+                    for (int index = 1 + padding + 12; index < length; index += 8) offsetPositions.add(index);
+                }
+                for (int index : offsetPositions) {
+                    putS4(instruction, index, relocate(returns, pc + s4(instruction, index)) - relocate(returns, pc));
+                }
+            }
+            out.write(instruction);
+        }
+
+        int exceptionCount = in.readUnsignedShort();
+        out.writeShort(exceptionCount);
+        for (int index = 0; index < exceptionCount; index++) {
+            out.writeShort(relocate(returns, in.readUnsignedShort()));
+            out.writeShort(relocate(returns, in.readUnsignedShort()));
+            out.writeShort(relocate(returns, in.readUnsignedShort()));
+            out.writeShort(in.readUnsignedShort());
+        }
+
+        ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+        DataOutputStream attributesOut = new DataOutputStream(attributes);
+        int keptAttributes = 0;
+        int attributeCount = in.readUnsignedShort();
+        for (int index = 0; index < attributeCount; index++) {
+            int name = in.readUnsignedShort();
+            byte[] content = new byte[in.readInt()];
+            in.readFully(content);
+            byte[] relocated = relocateCodeAttribute(utf8[name], content, returns);
+            if (relocated == null) continue;
+            attributesOut.writeShort(name);
+            attributesOut.writeInt(relocated.length);
+            attributesOut.write(relocated);
+            keptAttributes++;
+        }
+        out.writeShort(keptAttributes);
+        attributes.writeTo(out);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream resultOut = new DataOutputStream(result);
+        resultOut.writeShort(attributeName);
+        resultOut.writeInt(attribute.size());
+        attribute.writeTo(resultOut);
+        return result.toByteArray();
+    }
+
+    /**
+     * Relocates the offsets of an attribute of the code.
+     *
+     * @return the relocated attribute, or null if the attribute is dropped.
+     */
+    private static byte[] relocateCodeAttribute(String name, byte[] content, int[] returns) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+        ByteArrayOutputStream relocated = new ByteArrayOutputStream(content.length + 16);
+        DataOutputStream out = new DataOutputStream(relocated);
+        int count;
+        switch (name) {
+            case "LineNumberTable":
+                count = in.readUnsignedShort();
+                out.writeShort(count);
+                for (int index = 0; index < count; index++) {
+                    out.writeShort(relocate(returns, in.readUnsignedShort()));
+                    out.writeShort(in.readUnsignedShort());
+                }
+                break;
+            case "LocalVariableTable":
+            case "LocalVariableTypeTable":
+                count = in.readUnsignedShort();
+                out.writeShort(count);
+                for (int index = 0; index < count; index++) {
+                    int start = in.readUnsignedShort();
+                    int end = start + in.readUnsignedShort();
+                    out.writeShort(relocate(returns, start));
+                    out.writeShort(relocate(returns, end) - relocate(returns, start));
+                    out.writeShort(in.readUnsignedShort());
+                    out.writeShort(in.readUnsignedShort());
+                    out.writeShort(in.readUnsignedShort());
+                }
+                break;
+            case "StackMapTable":
+                count = in.readUnsignedShort();
+                out.writeShort(count);
+                int offset = -1;
+                int relocatedOffset = -1;
+                for (int index = 0; index < count; index++) {
+                    int type = in.readUnsignedByte();
+                    int delta = type < 64 ? type : type < 128 ? type - 64 : in.readUnsignedShort();
+                    offset += delta + 1;
+                    int relocatedDelta = relocate(returns, offset) - relocatedOffset - 1;
+                    relocatedOffset += relocatedDelta + 1;
+                    if (type < 64 || type == 251) {
+                        if (relocatedDelta < 64) {
+                            out.writeByte(relocatedDelta);
+                        } else {
+                            out.writeByte(251);
+                            out.writeShort(relocatedDelta);
+                        }
+                    } else if (type < 128 || type == 247) {
+                        if (relocatedDelta < 64) {
+                            out.writeByte(64 + relocatedDelta);
+                        } else {
+                            out.writeByte(247);
+                            out.writeShort(relocatedDelta);
+                        }
+                        relocateVerificationType(in, out, returns);
+                    } else {
+                        out.writeByte(type);
+                        out.writeShort(relocatedDelta);
+                        if (type >= 252 && type <= 254) {
+                            for (int local = 0; local < type - 251; local++) relocateVerificationType(in, out, returns);
+                        } else if (type == 255) {
+                            for (int list = 0; list < 2; list++) {
+                                int types = in.readUnsignedShort();
+                                out.writeShort(types);
+                                for (int local = 0; local < types; local++) relocateVerificationType(in, out, returns);
+                            }
+                        }
+                    }
+                }
+                break;
+            default:
+                return null;
+        }
+        return relocated.toByteArray();
+    }
+
+    private static void relocateVerificationType(DataInputStream in, DataOutputStream out, int[] returns) throws IOException {
+        int tag = in.readUnsignedByte();
+        out.writeByte(tag);
+        if (tag == 7) {
+            out.writeShort(in.readUnsignedShort());
+        } else if (tag == 8) {
+            // the offset of the NEW of an uninitialized object
+            out.writeShort(relocate(returns, in.readUnsignedShort()));
+        }
+    }
+
+    /**
+     * @param returns the offsets of the returns, sorted
+     * @param offset  an offset in the original code
+     * @return the offset in the code with the hooks. An offset of a return is relocated to its hook.
+     */
+    private static int relocate(int[] returns, int offset) {
+        int insertion = Arrays.binarySearch(returns, offset);
+        int hooksBefore = insertion >= 0 ? insertion : -insertion - 1;
+        return offset + hooksBefore * HOOK_LENGTH;
+    }
+
+    private static int loadOpcode(char type) {
+        switch (type) {
+            case 'J':
+                return 0x1f; // lload_1
+            case 'F':
+                return 0x23; // fload_1
+            case 'D':
+                return 0x27; // dload_1
+            case 'L':
+            case '[':
+                return 0x2b; // aload_1
+            default:
+                return 0x1b; // iload_1
+        }
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributeCount = in.readUnsignedShort();
+        for (int attribute = 0; attribute < attributeCount; attribute++) {
+            in.readUnsignedShort();
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    private static int u2(byte[] code, int index) {
+        return ((code[index] & 0xff) << 8) | (code[index + 1] & 0xff);
+    }
+
+    private static int s4(byte[] code, int index) {
+        return (u2(code, index) << 16) | u2(code, index + 2);
+    }
+
+    private static void putU2(byte[] code, int index, int value) {
+        code[index] = (byte) (value >> 8);
+        code[index + 1] = (byte) value;
+    }
+
+    private static void putS4(byte[] code, int index, int value) {
+        putU2(code, index, value >> 16);
+        putU2(code, index + 2, value);
+    }
+
+    /**
+     * The constants that are appended to the constant pool of the class.
+     */
+    private static final class ConstantPool {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private int count;
+
+        ConstantPool(int count) {
+            this.count = count;
+        }
+
+        int count() {
+            return count;
+        }
+
+        int utf8(String value) throws IOException {
+            out.writeByte(1);
+            out.writeUTF(value);
+            return count++;
+        }
+
+        int string(int utf8) throws IOException {
+            out.writeByte(8);
+            out.writeShort(utf8);
+            return count++;
+        }
+
+        int classReference(String internalName) throws IOException {
+            int name = utf8(internalName);
+            out.writeByte(7);
+            out.writeShort(name);
+            return count++;
+        }
+
+        int methodReference(int classReference, int name, int descriptor) throws IOException {
+            out.writeByte(12);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            int nameAndType = count++;
+            out.writeByte(10);
+            out.writeShort(classReference);
+            out.writeShort(nameAndType);
+            return count++;
+        }
+    }
+}
@@ -2,18 +2,48 @@ package org.plausing.asserts;
 
 import com.google.common.collect.ImmutableMap;
 import junit.framework.AssertionFailedError;
+import org.junit.AssumptionViolatedException;
 import org.junit.ComparisonFailure;
+import org.junit.Rule;
 import org.junit.Test;
-
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Fail.fail;
 import static org.plausing.asserts.PlausingAssertions.assertThat;
+import static org.plausing.asserts.PlausingAssertions.assertThatAsyncMapper;
+import static org.plausing.asserts.PlausingAssertions.assertThatBatchMapper;
 
 /**
  * Tests for {@link MapperAssert}.
@@ -22,6 +52,9 @@ import static org.plausing.asserts.PlausingAssertions.assertThat;
  */
 public class MapperAssertTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void should_pass_if_string_field_is_mapped_to_string_field() {
         // given a mapper that maps from String to String
@@ -314,7 +347,21 @@ public class MapperAssertTest {
 
 
     @Test
-    public void should_fail_if_reference_collection_is_empty_no_hint() {
+    public void should_pass_with_chain_of_registered_mappers() {
+        Function<CInteger, CBigDecimal> mapper = source -> {
+            CBigDecimal target = new CBigDecimal();
+            target.integerValue = source.integerValue == null ? null : BigDecimal.valueOf(source.integerValue);
+            return target;
+        };
+
+        assertThat(mapper)
+                .withMapper(Mappers.IntegerToLongMapper)
+                .withMapper(new Mappers.Mapper(new TypePair(Long.class, BigDecimal.class), (Function<Long, BigDecimal>) l -> l == null ? null : BigDecimal.valueOf(l)))
+                .hasPlausibleMappingFor(CInteger::new);
+    }
+
+    @Test
+    public void should_pass_if_reference_collection_is_empty_with_generic_element_type() {
         Function<IntList, LongList> collectionsMapper = source -> {
             LongList target = new LongList();
 
@@ -329,14 +376,26 @@ public class MapperAssertTest {
             return target;
         };
 
+        assertThat(collectionsMapper)
+                .withMapper(Mappers.IntegerToLongMapper)
+                .hasPlausibleMappingFor(() -> new IntList());
+    }
+
+    @Test
+    public void should_fail_if_reference_collection_is_empty_no_hint() {
+        Function<RawList, RawList> collectionsMapper = source -> {
+            RawList target = new RawList();
+            target.rawList = source.rawList;
+            return target;
+        };
+
         try {
             assertThat(collectionsMapper)
-                    .withMapper(Mappers.IntegerToLongMapper)
-                    .hasPlausibleMappingFor(() -> new IntList());
+                    .hasPlausibleMappingFor(() -> new RawList());
             fail("Should throw exception");
         } catch (Exception e) {
             assertThat(e)
-                    .hasMessage("Can't infer type parameter because collection intList is empty.");
+                    .hasMessage("Can't infer type parameter because collection rawList is empty.");
         }
 
     }
@@ -387,93 +446,1521 @@ public class MapperAssertTest {
     }
 
     @Test
-    public void should_pass_if_ignores_static_fields() {
+    public void should_pass_if_uses_property_mapping() {
+        Function<CInteger, SE> integerToStringMapper = source -> {
+            SE target = new SE();
+            target.stringValue = source.integerValue == null ? null : source.integerValue.toString();
+            return target;
+        };
 
-        Function<CStatic, CStatic> staticClassMapper = source -> {
-            CStatic target = new CStatic();
-            target.stringValue = source.stringValue;
+        assertThat(integerToStringMapper)
+                .withPropertyMapping("integerValue", Integer.class, "stringValue", String.class,
+                        i -> i == null ? null : i.toString())
+                .hasPlausibleMappingFor(CInteger::new);
+    }
+
+    @Test
+    public void should_fail_if_property_mapping_has_wrong_type() {
+        Function<CInteger, SE> integerToStringMapper = source -> {
+            SE target = new SE();
+            target.stringValue = source.integerValue == null ? null : source.integerValue.toString();
             return target;
         };
 
-        assertThat(staticClassMapper)
-                .hasPlausibleMappingFor(CStatic::new);
+        try {
+            assertThat(integerToStringMapper)
+                    .withPropertyMapping("integerValue", Long.class, "stringValue", String.class,
+                            l -> l == null ? null : l.toString())
+                    .hasPlausibleMappingFor(CInteger::new);
+            fail("Wrong property mapping type hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessage("Property mapping integerValue --> stringValue takes java.lang.Long, but source field has type java.lang.Integer");
+        }
+    }
+
+    @Test
+    public void should_pass_if_uses_template() {
+        MapperAssertTemplate template = MapperAssertTemplate.named("ignoring att2")
+                .whenIgnoringTargetFields("att2");
+
+        Function<B, A> mapper = (b) -> {
+            A a = new A();
+            a.att1 = b.att1;
+            return a;
+        };
 
+        assertThat(mapper, template)
+                .hasPlausibleMappingFor(B::new);
     }
 
-    /*---------------------------------------------------------------------------------------------------------------
-        TEST DATA
-      ---------------------------------------------------------------------------------------------------------------*/
+    @Test
+    public void should_not_change_template_when_configuring_assertion() {
+        MapperAssertTemplate template = MapperAssertTemplate.named("strict");
 
-    /**
-     * Class with two String fields.
-     */
-    public static class A {
-        public String att1;
-        public String att2;
+        Function<B, A> mapper = (b) -> {
+            A a = new A();
+            a.att1 = b.att1;
+            return a;
+        };
+
+        assertThat(mapper, template)
+                .whenIgnoringTargetFields("att2")
+                .hasPlausibleMappingFor(B::new);
+
+        try {
+            assertThat(mapper, template)
+                    .hasPlausibleMappingFor(B::new);
+            fail("Template has been changed by an assertion.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessage("Unchanged target fields: att2");
+        }
     }
 
-    /**
-     * Class with one String field.
-     */
-    public static class B {
-        public String att1;
+    @Test
+    public void should_learn_mapping_with_sentinels_in_few_invocations() {
+        AtomicInteger invocations = new AtomicInteger();
+        Function<Multi, Multi> mapper = source -> {
+            invocations.incrementAndGet();
+            Multi target = new Multi();
+            target.s1 = source.s2;
+            target.s2 = source.s1;
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        };
+
+        assertThat(mapper)
+                .whenLearningWithSentinels()
+                .hasPlausibleMappingFor(Multi::new);
+
+        // the source reference and a single invocation with all sentinels, then one per test value
+        assertThat(invocations.get()).isEqualTo(2 + MULTI_TEST_VALUES);
     }
 
-    public static class SE {
-        private String stringValue;
+    @Test
+    public void should_fail_with_sentinels_if_one_source_field_maps_to_two_target_fields() {
+        Function<B, A> mapper = (b) -> {
+            A a = new A();
+            a.att1 = b.att1;
+            a.att2 = b.att1;
+            return a;
+        };
+        try {
+            assertThat(mapper)
+                    .whenLearningWithSentinels()
+                    .hasPlausibleMappingFor(B::new);
+            fail("Wrong mapping hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessageContaining("Source field maps to more than one target fields. Mapping error: att1 --> [att2, att1]");
+        }
     }
 
-    public static class TE {
-        private E enumValue;
+    @Test
+    public void should_learn_mapping_from_bytecode_in_few_invocations() {
+        CountingMultiMapper mapper = new CountingMultiMapper();
+
+        assertThat(mapper)
+                .whenLearningFromBytecode()
+                .hasPlausibleMappingFor(Multi::new);
+
+        // the source reference, one invocation that confirms the proposal, and one per test value
+        assertThat(mapper.invocations.get()).isEqualTo(2 + MULTI_TEST_VALUES);
     }
 
-    @SuppressWarnings("unused")
-    public static class TE2 {
-        private E2 enumValue;
+    @Test
+    public void should_learn_mapping_from_bytecode_through_getters_and_setters() {
+        CrossedGettersMapper gettersMapper = new CrossedGettersMapper();
+        CrossedSettersMapper settersMapper = new CrossedSettersMapper();
+
+        assertThat(gettersMapper)
+                .whenLearningFromBytecode()
+                .hasPlausibleMappingFor(CrossedAccessors::new);
+        assertThat(settersMapper)
+                .whenLearningFromBytecode()
+                .hasPlausibleMappingFor(A::new);
+
+        // the names of the accessors suggest another mapping, which wouldn't be confirmed
+        assertThat(gettersMapper.invocations.get()).isEqualTo(2 + 2 * 2);
+        assertThat(settersMapper.invocations.get()).isEqualTo(2 + 2 * 2);
     }
 
-    @SuppressWarnings("unused")
-    public static enum E {
-        ec1, ec2
+    @Test
+    public void should_learn_mapping_of_method_reference_from_bytecode() {
+        MethodReferenceMappers.INVOCATIONS.set(0);
+
+        assertThat(MethodReferenceMappers.mapper())
+                .whenLearningFromBytecode()
+                .hasPlausibleMappingFor(Multi::new);
+
+        // the swapping lambda of the same class isn't taken for the implementation
+        assertThat(MethodReferenceMappers.INVOCATIONS.get()).isEqualTo(2 + MULTI_TEST_VALUES);
     }
 
-    @SuppressWarnings("unused")
-    public static enum E2 {
-        ec1, ec2
+    @Test
+    public void should_fall_back_to_invocations_if_bytecode_proposal_isnt_confirmed() {
+        // the bytecode attributes the constant to s1, the last source field read before it
+        assertThat(new ConstantBetweenMapper())
+                .whenLearningFromBytecode()
+                .whenIgnoringTargetFields("e")
+                .hasPlausibleMappingFor(Multi::new);
     }
 
-    public static class CInteger {
-        Integer integerValue = 0;
+    @Test
+    public void should_verify_mapping_learned_from_bytecode() {
+        try {
+            assertThat(new TruncatingMultiMapper())
+                    .whenLearningFromBytecode()
+                    .hasPlausibleMappingFor(Multi::new);
+            fail("Wrong mapping hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e.getMessage()).contains("s2");
+        }
     }
 
-    public static class CInt {
-        int intValue;
+    @Test
+    public void should_fall_back_to_invocations_if_bytecode_isnt_conclusive() {
+        // several lambdas of this class map Multi to Multi, so the implementation can't be found
+        Function<Multi, Multi> mapper = source -> {
+            Multi target = new Multi();
+            target.s1 = source.s2;
+            target.s2 = source.s1;
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        };
+
+        assertThat(mapper)
+                .whenLearningFromBytecode()
+                .hasPlausibleMappingFor(Multi::new);
     }
 
-    public static class IntList {
-        public IntList() {
-            this.intList = new ArrayList();
+    @Test
+    public void should_pass_round_trip_with_inverse_mapper() {
+        Function<Multi, Multi> mapper = new CountingMultiMapper();
+        Function<Multi, Multi> inverseMapper = new CountingMultiMapper();
+
+        assertThat(mapper)
+                .hasPlausibleRoundTripWith(inverseMapper, Multi::new);
+    }
+
+    @Test
+    public void should_fail_round_trip_if_inverse_mapper_is_asymmetric() {
+        Function<Multi, Multi> mapper = new CountingMultiMapper();
+        Function<Multi, Multi> inverseMapper = target -> {
+            Multi source = new Multi();
+            source.s1 = target.s1;
+            source.s2 = target.s2;
+            source.i = target.i;
+            source.l = target.l;
+            source.e = target.e;
+            return source;
+        };
+
+        try {
+            assertThat(mapper)
+                    .hasPlausibleRoundTripWith(inverseMapper, Multi::new);
+            fail("Asymmetric inverse mapper hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e.getMessage()).contains("Error in round trip s1 --> s2 --> s1 for field s1 with value A test string.");
         }
-        public IntList(int value) {
-            this.intList = new ArrayList();
-            this.intList.add(value);
+    }
+
+    @Test
+    public void should_pass_if_all_values_of_small_types_are_mapped() {
+        Function<Small, Small> mapper = source -> {
+            Small target = new Small();
+            target.b = source.b;
+            target.s = source.s;
+            target.c = source.c;
+            target.z = source.z;
+            target.character = source.character;
+            return target;
+        };
+
+        assertThat(mapper)
+                .whenTestingAllValuesOfType(byte.class)
+                .whenTestingAllValuesOfType(short.class)
+                .whenTestingAllValuesOfType(char.class)
+                .whenTestingAllValuesOfType(boolean.class)
+                .whenTestingAllValuesOfField("character")
+                .hasPlausibleMappingFor(Small::new);
+    }
+
+    @Test
+    public void should_fail_with_smallest_wrong_value_of_all_values() {
+        Function<Small, Small> mapper = source -> {
+            Small target = new Small();
+            target.b = source.b;
+            target.s = source.s;
+            target.c = Character.isSurrogate(source.c) ? '?' : source.c;
+            target.z = source.z;
+            target.character = source.character;
+            return target;
+        };
+
+        try {
+            assertThat(mapper)
+                    .whenTestingAllValuesOfField("b")
+                    .whenTestingAllValuesOfField("s")
+                    .whenTestingAllValuesOfField("c")
+                    .whenTestingAllValuesOfField("z")
+                    .whenTestingAllValuesOfField("character")
+                    .hasPlausibleMappingFor(Small::new);
+            fail("Wrong mapping hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessageContaining("[Error in mapping c --> c] expected:<'[\uD800]'> but was:<'[?]'>");
         }
+    }
 
-        List<Integer> intList;
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_all_values_of_large_types() {
+        assertThat((Function<Small, Small>) source -> source)
+                .whenTestingAllValuesOfType(int.class);
     }
 
-    public static class CStatic {
-        public static final String constant = "constant";
-        String stringValue;
+    @Test
+    public void should_pass_if_mapper_does_not_retain_source() {
+        Function<Multi, Multi> mapper = new CountingMultiMapper();
+
+        assertThat(mapper)
+                .hasPlausibleMappingFor(Multi::new)
+                .doesNotRetainSource();
     }
 
+    @Test
+    public void should_fail_if_target_retains_source() {
+        Function<Multi, RetainingView> mapper = source -> {
+            RetainingView target = new RetainingView();
+            target.s1 = source.s1;
+            target.origin = new ArrayList<Object>(Collections.singletonList(source));
+            return target;
+        };
 
-    private static class LongList {
-        public LongList() {
-            this.longList
-                    = new ArrayList<Long>();
+        try {
+            assertThat(mapper)
+                    .doesNotRetainSource(Multi::new);
+            fail("Retained source hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessage("Mapper retains the source of a new source through target.origin[0]");
         }
+    }
 
-        List<Long> longList;
+    @Test
+    public void should_fail_if_static_state_retains_source() {
+        Function<Multi, Multi> mapper = source -> {
+            RETAINED_SOURCES.add(source);
+            return new CountingMultiMapper().apply(source);
+        };
+
+        try {
+            assertThat(mapper)
+                    .doesNotRetainSource(Multi::new);
+            fail("Retained source hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessage("Mapper retains the source of a new source through MapperAssertTest.RETAINED_SOURCES[1]");
+        } finally {
+            RETAINED_SOURCES.clear();
+        }
     }
-}
+
+    @Test
+    public void should_be_inconclusive_if_retaining_reference_is_unknown() {
+        Function<Multi, Multi> mapper = source -> {
+            Hideout.SOURCES.add(source);
+            return new CountingMultiMapper().apply(source);
+        };
+
+        try {
+            assertThat(mapper)
+                    .doesNotRetainSource(Multi::new);
+            fail("Retained source hasn't been reported.");
+        } catch (AssumptionViolatedException e) {
+            assertThat(e).hasMessageContaining("Retention of the source of a new source is inconclusive");
+        } finally {
+            Hideout.SOURCES.clear();
+        }
+    }
+
+    @Test
+    public void should_report_test_values_with_slow_path() {
+        Function<Multi, Multi> mapper = source -> {
+            if ("A test string.".equals(source.s2)) {
+                long end = System.nanoTime() + 2_000_000;
+                while (System.nanoTime() < end) {
+                    Thread.yield();
+                }
+            }
+            return new CountingMultiMapper().apply(source);
+        };
+
+        MapperAssert<Multi, Multi> mapperAssert = assertThat(mapper)
+                .whenDetectingLatencyOutliers(20)
+                .hasPlausibleMappingFor(Multi::new);
+
+        LatencyReport report = mapperAssert.getLatencyReport();
+        assertThat(report.hasOutliers()).isTrue();
+        assertThat(report.outliers.get(0).sourceFieldName).isEqualTo("s2");
+        assertThat(report.outliers.get(0).value).isEqualTo("A test string.");
+        assertThat(report.outliers.get(0).factor).isGreaterThan(20);
+    }
+
+    @Test
+    public void should_keep_latencies_of_test_values_with_the_same_description() {
+        LatencyReport.Recorder recorder = new LatencyReport.Recorder();
+        for (int valueIndex = 0; valueIndex < 4; valueIndex++) {
+            recorder.record("bytes", valueIndex, "byte[4]", new long[]{1_000, 1_000, 1_000});
+        }
+        recorder.record("bytes", 4, "byte[4]", new long[]{100_000, 100_000, 100_000});
+
+        LatencyReport report = recorder.report(20);
+        assertThat(report.invocations).isEqualTo(15);
+        assertThat(report.outliers).hasSize(1);
+        assertThat(report.outliers.get(0).value).isEqualTo("byte[4]");
+    }
+
+    @Test(timeout = 10000)
+    public void should_apply_invocation_timeout_to_latency_samples() {
+        CountDownLatch release = new CountDownLatch(1);
+        Set<Multi> mappedSources = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Multi, Boolean>()));
+        Function<Multi, Multi> mapper = source -> {
+            // the latency samples map the verified source again
+            if (!mappedSources.add(source) && "A test string.".equals(source.s2)) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new CountingMultiMapper().apply(source);
+        };
+
+        try {
+            assertThat(mapper)
+                    .whenDetectingLatencyOutliers(20)
+                    .withInvocationTimeout(Duration.ofMillis(200))
+                    .hasPlausibleMappingFor(Multi::new);
+            fail("Timeout of a latency sample hasn't been detected.");
+        } catch (AssertionFailedError e) {
+            assertThat(e).hasMessageStartingWith("Mapper didn't return within PT0.2S for field s2 with value A test string.");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void should_map_test_values_of_batch_mapper_in_few_invocations() {
+        AtomicInteger invocations = new AtomicInteger();
+        Function<List<Multi>, List<Multi>> batchMapper = sources -> {
+            invocations.incrementAndGet();
+            return sources.stream().map(new CountingMultiMapper()).collect(Collectors.toList());
+        };
+
+        assertThatBatchMapper(batchMapper)
+                .hasPlausibleMappingFor(Multi::new);
+
+        // the source reference, a batch with all test values, and two batches with half of them
+        assertThat(invocations.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void should_fail_if_batch_mapper_depends_on_other_sources() {
+        // a lookup that is shared by the batch, but keyed by the wrong field
+        Function<List<Multi>, List<Multi>> batchMapper = sources -> {
+            Map<Integer, String> s2ByI = new HashMap<Integer, String>();
+            return sources.stream().map(source -> {
+                Multi target = new CountingMultiMapper().apply(source);
+                target.s1 = s2ByI.computeIfAbsent(source.i, i -> source.s2);
+                return target;
+            }).collect(Collectors.toList());
+        };
+
+        try {
+            assertThatBatchMapper(batchMapper)
+                    .hasPlausibleMappingFor(Multi::new);
+            fail("Batch dependent mapping hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessageContaining("depending on its position or the other sources in the batch: target field s1");
+        }
+    }
+
+    @Test
+    public void should_fail_if_batch_mapper_depends_on_batch_members() {
+        // the same for every order, but a total of the batch
+        Function<List<Multi>, List<Multi>> batchMapper = sources -> {
+            long negatives = sources.stream().filter(source -> Long.valueOf(-1).equals(source.l)).count();
+            return sources.stream().map(source -> {
+                Multi target = new CountingMultiMapper().apply(source);
+                target.i = source.i + (int) negatives;
+                return target;
+            }).collect(Collectors.toList());
+        };
+
+        try {
+            assertThatBatchMapper(batchMapper)
+                    .hasPlausibleMappingFor(Multi::new);
+            fail("Batch dependent mapping hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessageContaining("depending on its position or the other sources in the batch: target field i");
+        }
+    }
+
+    @Test
+    public void should_fail_if_batch_mapper_throws_only_for_batches() {
+        Function<List<Multi>, List<Multi>> batchMapper = sources -> {
+            if (sources.size() > 1) throw new IllegalStateException("Batch insert failed");
+            return sources.stream().map(new CountingMultiMapper()).collect(Collectors.toList());
+        };
+
+        try {
+            assertThatBatchMapper(batchMapper)
+                    .hasPlausibleMappingFor(Multi::new);
+            fail("Batch dependent exception hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e)
+                    .hasMessageStartingWith("Batch mapper throws java.lang.IllegalStateException: Batch insert failed for a batch of "
+                            + MULTI_TEST_VALUES + " sources, but maps each of them on its own: [s1=")
+                    .hasMessageContaining("l=-1")
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void should_fail_if_batch_mapper_returns_null_target() {
+        Function<List<Multi>, List<Multi>> batchMapper = sources -> sources.stream()
+                .map(source -> Long.valueOf(-1).equals(source.l) ? null : new CountingMultiMapper().apply(source))
+                .collect(Collectors.toList());
+
+        try {
+            assertThatBatchMapper(batchMapper)
+                    .hasPlausibleMappingFor(Multi::new);
+            fail("Null target hasn't been reported.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessage("Mapping error: batch mapper returned null for field l with value -1");
+        }
+    }
+
+    @Test
+    public void should_map_test_values_of_async_mapper_concurrently() {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Function<Multi, CompletableFuture<Multi>> asyncMapper = source -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inFlight.decrementAndGet();
+                return new CountingMultiMapper().apply(source);
+            }, executor);
+        };
+
+        try {
+            assertThatAsyncMapper(asyncMapper)
+                    .withMaxInFlightInvocations(4)
+                    .hasPlausibleMappingFor(Multi::new);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(maxInFlight.get()).isBetween(2, 4);
+    }
+
+    @Test
+    public void should_fail_if_async_mapper_completes_exceptionally() {
+        Function<Multi, CompletableFuture<Multi>> asyncMapper = source -> Long.valueOf(-1).equals(source.l)
+                ? CompletableFuture.supplyAsync(() -> {
+                    throw new IllegalStateException("Negative l");
+                })
+                : CompletableFuture.completedFuture(new CountingMultiMapper().apply(source));
+
+        try {
+            assertThatAsyncMapper(asyncMapper)
+                    .hasPlausibleMappingFor(Multi::new);
+            fail("Exceptional completion hasn't been reported.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessage("Exception while training the mapping using field l with value -1");
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class).hasMessage("Negative l");
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void should_fail_if_async_mapper_doesnt_complete_within_timeout() {
+        Function<Multi, CompletableFuture<Multi>> asyncMapper = source -> Long.valueOf(-1).equals(source.l)
+                ? new CompletableFuture<Multi>()
+                : CompletableFuture.completedFuture(new CountingMultiMapper().apply(source));
+
+        try {
+            assertThatAsyncMapper(asyncMapper)
+                    .withMaxInFlightInvocations(4)
+                    .withInvocationTimeout(Duration.ofMillis(200))
+                    .hasPlausibleMappingFor(Multi::new);
+            fail("Stuck invocation hasn't been detected.");
+        } catch (AssertionFailedError e) {
+            assertThat(e).hasMessage("Asynchronous mapper didn't complete within PT0.2S for field l with value -1");
+        }
+    }
+
+    @Test
+    public void should_fail_if_untouched_target_field_differs_without_write_tracking() {
+        try {
+            assertThat(new StampedMapper())
+                    .whenIgnoringTargetFields("created", "note")
+                    .hasPlausibleMappingFor(Plain::new);
+            fail("Untouched target field hasn't been mistaken for a mapped field.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessageContaining("created");
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_learn_mapping_from_tracked_writes() throws Exception {
+        ClassLoader classLoader = new WriteTrackingClassLoader(getClass().getClassLoader(),
+                MapperAssertTest.class.getName(), Stamped.class.getName(), StampedMapper.class.getName());
+        Function<Plain, Object> mapper = (Function<Plain, Object>) classLoader.loadClass(StampedMapper.class.getName()).newInstance();
+        WriteTracker.setInstalled(true);
+        try {
+            // writes of unchanged values are recorded, too
+            Object target;
+            Class<?> targetClass = classLoader.loadClass(Stamped.class.getName());
+            WriteTracker.start(targetClass);
+            try {
+                target = mapper.apply(new Plain());
+                assertThat(WriteTracker.takeWrites(target)).containsOnly("s1", "s2");
+            } finally {
+                WriteTracker.stop(targetClass);
+            }
+
+            assertThat(mapper)
+                    .whenTrackingWrites()
+                    .whenIgnoringTargetFields("created", "note")
+                    .hasPlausibleMappingFor(Plain::new);
+        } finally {
+            WriteTracker.setInstalled(false);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_detect_writes_of_unchanged_values_with_write_tracking() throws Exception {
+        ClassLoader classLoader = new WriteTrackingClassLoader(getClass().getClassLoader(),
+                MapperAssertTest.class.getName(), Stamped.class.getName(), NoteClearingMapper.class.getName());
+        Function<Plain, Object> mapper = (Function<Plain, Object>) classLoader.loadClass(NoteClearingMapper.class.getName()).newInstance();
+
+        // the note keeps its default value, so only its write reveals that it depends on s1
+        WriteTracker.setInstalled(true);
+        try {
+            assertThat(mapper)
+                    .whenTrackingWrites()
+                    .whenIgnoringTargetFields("created", "note")
+                    .hasPlausibleMappingFor(Plain::new);
+            fail("Write of the default value hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessageContaining("Mapping error: s1 --> [").hasMessageContaining("note");
+        } finally {
+            WriteTracker.setInstalled(false);
+        }
+    }
+
+    @Test
+    public void should_track_writes_of_final_fields_in_constructors() throws Exception {
+        String source = "package org.plausing.generated;\n"
+                + "public class ImmutableDto {\n"
+                + "    private final String name;\n"
+                + "    private final long id;\n"
+                + "    private String note;\n"
+                + "    public ImmutableDto(String name, long id) {\n"
+                + "        this.name = name;\n"
+                + "        this.id = id;\n"
+                + "        if (name == null) return;\n"
+                + "        switch ((int) id) {\n"
+                + "            case 1: note = \"one\"; break;\n"
+                + "            case 2: note = \"two\"; break;\n"
+                + "            default: break;\n"
+                + "        }\n"
+                + "    }\n"
+                + "    public void setNote(String note) {\n"
+                + "        this.note = note;\n"
+                + "    }\n"
+                + "}\n";
+        // class files of Java 9 and later only accept writes of final fields in the constructor
+        Class<?> compiled = compile("org.plausing.generated.ImmutableDto", source, "--release", "11");
+        ClassLoader classLoader = new WriteTrackingClassLoader(compiled.getClassLoader(), compiled.getName());
+        Class<?> dtoClass = classLoader.loadClass(compiled.getName());
+        Constructor<?> constructor = dtoClass.getConstructor(String.class, long.class);
+
+        WriteTracker.start(dtoClass);
+        try {
+            Object dto = constructor.newInstance("name", 2L);
+            assertThat(WriteTracker.takeWrites(dto)).containsOnly("name", "id", "note");
+            assertThat(dtoClass.getDeclaredField("note").getModifiers() & java.lang.reflect.Modifier.FINAL).isZero();
+
+            Object nameless = constructor.newInstance(null, 1L);
+            assertThat(WriteTracker.takeWrites(nameless)).containsOnly("name", "id", "note");
+
+            dtoClass.getMethod("setNote", String.class).invoke(nameless, "note");
+            assertThat(WriteTracker.takeWrites(nameless)).containsOnly("note");
+        } finally {
+            WriteTracker.stop(dtoClass);
+        }
+    }
+
+    @Test
+    public void should_pass_if_target_shares_values_with_source() {
+        assertThat(new CountingMultiMapper())
+                .hasPlausibleMappingFor(Multi::new)
+                .targetRetainedSizeAtMost(88);
+    }
+
+    @Test
+    public void should_report_values_shared_with_source() {
+        try {
+            assertThat(new CountingMultiMapper())
+                    .targetRetainedSizeAtMost(32, Multi::new);
+            fail("Shared string hasn't been counted.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessageStartingWith("Target of field s1 with value A test string. retains 88 bytes, more than 32: s2 56 bytes (56 shared with the source), <Multi> 32 bytes");
+        }
+    }
+
+    @Test
+    public void should_fail_if_target_duplicates_strings() {
+        Function<Multi, Multi> mapper = source -> {
+            Multi target = new CountingMultiMapper().apply(source);
+            target.s1 = source.s1 == null ? null : new String(source.s1);
+            return target;
+        };
+
+        try {
+            assertThat(mapper)
+                    .targetRetainedSizeAtMost(88, Multi::new);
+            fail("Duplicated string hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessageStartingWith("Target of field s1 with value A test string. retains 144 bytes, more than 88: s1 56 bytes, s2 56 bytes (56 shared with the source), <Multi> 32 bytes");
+        }
+    }
+
+    @Test
+    public void should_pass_if_arrays_are_copied() {
+        Function<Blob, Blob> mapper = source -> {
+            Blob target = new Blob();
+            target.bytes = source.bytes == null ? null : source.bytes.clone();
+            target.chars = source.chars == null ? null : Arrays.copyOf(source.chars, source.chars.length);
+            return target;
+        };
+
+        assertThat(mapper)
+                .hasPlausibleMappingFor(Blob::new);
+    }
+
+    @Test
+    public void should_not_change_default_arrays_if_mapper_changes_source() {
+        Function<Blob, Blob> mapper = source -> {
+            Blob target = new Blob();
+            target.bytes = source.bytes == null ? null : source.bytes.clone();
+            target.chars = source.chars == null ? null : source.chars.clone();
+            if (source.bytes != null) Arrays.fill(source.bytes, (byte) 0);
+            return target;
+        };
+
+        assertThat(mapper)
+                .hasPlausibleMappingFor(Blob::new);
+
+        List<?> defaultBytes = MapperAssertTestData.DEFAULTS.TEST_VALUES_BY_TYPE.get(byte[].class);
+        assertThat((byte[]) defaultBytes.get(0)).containsExactly(Byte.MIN_VALUE, Byte.MAX_VALUE, (byte) 1, (byte) -1, (byte) 0);
+        assertThat(defaultBytes.get(2)).isNotSameAs(defaultBytes.get(2));
+    }
+
+    @Test
+    public void should_fail_if_large_array_is_truncated() {
+        Function<Blob, Blob> mapper = source -> {
+            Blob target = new Blob();
+            target.bytes = source.bytes == null ? null : Arrays.copyOf(source.bytes, Math.min(source.bytes.length, 1024));
+            target.chars = source.chars;
+            return target;
+        };
+
+        try {
+            assertThat(mapper)
+                    .hasPlausibleMappingFor(Blob::new);
+            fail("Truncated array hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e).hasMessage("[Error in mapping bytes --> bytes] arrays differ at index 1024, expected length 1048576 but was length 1024");
+        }
+    }
+
+    @Test
+    public void should_pass_if_mapper_is_equivalent_to_reference_mapper() {
+        Function<Multi, Multi> referenceMapper = source -> {
+            Multi target = new Multi();
+            for (java.lang.reflect.Field field : Multi.class.getDeclaredFields()) {
+                try {
+                    field.set(target, field.get(source));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return target;
+        };
+        Function<Multi, Multi> fastMapper = source -> {
+            Multi target = new Multi();
+            target.s1 = source.s1;
+            target.s2 = source.s2;
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        };
+
+        MapperAssert<Multi, Multi> mapperAssert = assertThat(fastMapper)
+                .isEquivalentTo(referenceMapper, Multi::new);
+
+        assertThat(mapperAssert.getEquivalenceReport().isEquivalent()).isTrue();
+        assertThat(mapperAssert.getEquivalenceReport().mapperUnderTest.invocations).isGreaterThan(0);
+    }
+
+    @Test
+    public void should_give_each_mapper_its_own_sources() {
+        Function<Multi, Multi> consumingMapper = source -> {
+            Multi target = new CountingMultiMapper().apply(source);
+            source.s1 = null;
+            source.s2 = null;
+            return target;
+        };
+
+        MapperAssert<Multi, Multi> mapperAssert = assertThat(new CountingMultiMapper())
+                .isEquivalentTo(consumingMapper, Multi::new);
+
+        EquivalenceReport report = mapperAssert.getEquivalenceReport();
+        assertThat(report.mapperUnderTest.invocations).isEqualTo(report.referenceMapper.invocations).isGreaterThan(0);
+    }
+
+    @Test
+    public void should_report_every_difference_to_reference_mapper() {
+        Function<Multi, Multi> referenceMapper = source -> {
+            Multi target = new Multi();
+            target.s1 = source.s1;
+            target.s2 = source.s2;
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        };
+        Function<Multi, Multi> wrongMapper = source -> {
+            Multi target = referenceMapper.apply(source);
+            target.s2 = source.s1;
+            target.i = Math.abs(source.i);
+            return target;
+        };
+
+        try {
+            assertThat(wrongMapper)
+                    .isEquivalentTo(referenceMapper, Multi::new);
+            fail("Differences haven't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e)
+                    .hasMessageContaining("s2 differs for 2 inputs, e.g. s1=A test string.: expected <null> but was <A test string.>")
+                    .hasMessageContaining("i differs for 1 inputs, e.g. i=-1: expected <-1> but was <1>");
+        }
+    }
+
+    @Test
+    public void should_generate_equivalent_mapper_source() throws Exception {
+        Function<Order, OrderView> orderMapper = source -> {
+            OrderView target = new OrderView();
+            target.status = source.status == null ? null : E.valueOf(source.status);
+            target.amount = source.amount;
+            target.type = source.type == null ? null : source.type.name();
+            target.quantities = source.quantities == null ? null : new ArrayList<Integer>(source.quantities);
+            return target;
+        };
+
+        MapperAssert<Order, OrderView> mapperAssert = assertThat(orderMapper)
+                .whenUsingEnumNamesAsTestValuesForField("status", E.class)
+                .whenExcludingNullValuesInField("amount")
+                .whenSettingCollectionElementType("quantities", Integer.class)
+                .hasPlausibleMappingFor(Order::new);
+        String source = mapperAssert.generateMapperSource("org.plausing.generated.OrderMapper");
+
+        assertThat(source)
+                .contains("target.status = value0 == null ? null : org.plausing.asserts.MapperAssertTest.E.valueOf(value0);")
+                .doesNotContain("java.lang.reflect");
+        Function<Order, OrderView> generatedMapper = (Function<Order, OrderView>) compile("org.plausing.generated.OrderMapper", source).newInstance();
+        mapperAssert.isEquivalentTo(generatedMapper);
+    }
+
+    @Test
+    public void should_pass_overrides_to_generated_mapper() throws Exception {
+        Function<Order, OrderView> orderMapper = source -> {
+            OrderView target = new OrderView();
+            target.status = source.status == null ? null : E.valueOf(source.status);
+            target.amount = source.amount == null ? -1 : source.amount;
+            target.type = source.type == null ? null : source.type.name();
+            target.quantities = source.quantities;
+            return target;
+        };
+        Function<Integer, Integer> amountMapping = amount -> amount == null ? -1 : amount;
+
+        MapperAssert<Order, OrderView> mapperAssert = assertThat(orderMapper)
+                .whenUsingEnumNamesAsTestValuesForField("status", E.class)
+                .withPropertyMapping("amount", "amount", amountMapping)
+                .whenSettingCollectionElementType("quantities", Integer.class)
+                .hasPlausibleMappingFor(Order::new);
+        String source = mapperAssert.generateMapperSource("org.plausing.generated.OverridingOrderMapper");
+
+        Function<Order, OrderView> generatedMapper = (Function<Order, OrderView>) compile("org.plausing.generated.OverridingOrderMapper", source)
+                .getConstructor(Function.class).newInstance(amountMapping);
+        mapperAssert.isEquivalentTo(generatedMapper);
+    }
+
+    @Test
+    public void should_generate_mapper_that_maps_null_to_primitive_default() throws Exception {
+        Function<Order, OrderView> orderMapper = source -> {
+            OrderView target = new OrderView();
+            target.status = source.status == null ? null : E.valueOf(source.status);
+            target.amount = source.amount == null ? 0 : source.amount;
+            target.type = source.type == null ? null : source.type.name();
+            target.quantities = source.quantities == null ? null : new ArrayList<Integer>(source.quantities);
+            return target;
+        };
+
+        MapperAssert<Order, OrderView> mapperAssert = assertThat(orderMapper)
+                .whenUsingEnumNamesAsTestValuesForField("status", E.class)
+                .whenSettingCollectionElementType("quantities", Integer.class)
+                .hasPlausibleMappingFor(Order::new);
+        String source = mapperAssert.generateMapperSource("org.plausing.generated.NullSafeOrderMapper");
+
+        assertThat(source).contains("target.amount = value1 == null ? (int) 0 : value1;");
+        Function<Order, OrderView> generatedMapper = (Function<Order, OrderView>) compile("org.plausing.generated.NullSafeOrderMapper", source).newInstance();
+        mapperAssert.isEquivalentTo(generatedMapper);
+    }
+
+    @Test
+    public void should_map_collections_to_the_implementation_of_the_target_type() throws Exception {
+        Function<Basket, Order> basketMapper = source -> {
+            Order target = new Order();
+            target.quantities = source.quantities == null ? null : new ArrayList<Integer>(source.quantities);
+            return target;
+        };
+
+        MapperAssert<Basket, Order> mapperAssert = assertThat(basketMapper)
+                .whenSettingCollectionElementType("quantities", Integer.class)
+                .whenIgnoringTargetFields("status", "amount", "type")
+                .hasPlausibleMappingFor(Basket::new);
+        String source = mapperAssert.generateMapperSource("org.plausing.generated.BasketMapper");
+
+        assertThat(source).contains("java.util.List value0Target = new java.util.ArrayList();");
+        Function<Basket, Order> generatedMapper = (Function<Basket, Order>) compile("org.plausing.generated.BasketMapper", source).newInstance();
+        mapperAssert.isEquivalentTo(generatedMapper);
+    }
+
+    @Test
+    public void should_provide_a_check_per_field_mapping() {
+        Function<Multi, Multi> mapper = source -> {
+            Multi target = new Multi();
+            target.s1 = source.s1;
+            target.s2 = source.s2 == null ? null : source.s2 + "!";
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        };
+
+        List<FieldMappingCheck> checks = assertThat(mapper)
+                .fieldMappingChecks(Multi::new);
+
+        assertThat(checks).extracting(FieldMappingCheck::getDisplayName)
+                .containsExactly("target fields are mapped", "s1 --> s1", "s2 --> s2", "i --> i", "l --> l", "e --> e");
+        List<String> failedChecks = new ArrayList<String>();
+        checks.parallelStream().forEach(check -> {
+            try {
+                check.check();
+            } catch (AssertionError e) {
+                synchronized (failedChecks) {
+                    failedChecks.add(check.getDisplayName());
+                }
+            }
+        });
+        assertThat(failedChecks).containsExactly("s2 --> s2");
+    }
+
+    @Test
+    public void should_replay_recorded_trace() throws Exception {
+        Function<Multi, Multi> mapper = source -> {
+            Multi target = new Multi();
+            target.s1 = source.s1;
+            target.s2 = source.s2;
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        };
+        Function<Multi, Multi> changedMapper = source -> {
+            Multi target = mapper.apply(source);
+            target.s2 = source.s2 == null ? null : source.s2.toUpperCase();
+            return target;
+        };
+        Path traceFile = temporaryFolder.newFile("mapper.trace").toPath();
+
+        assertThat(mapper)
+                .whenRecordingTrace(traceFile)
+                .hasPlausibleMappingFor(Multi::new);
+
+        assertThat(mapper)
+                .matchesTrace(traceFile, Multi::new);
+        try {
+            assertThat(changedMapper)
+                    .matchesTrace(traceFile, Multi::new);
+            fail("Trace difference hasn't been detected.");
+        } catch (AssertionError e) {
+            assertThat(e)
+                    .hasMessageContaining("s2 differs in")
+                    .hasMessageContaining("recorded <A test string.> but was <A TEST STRING.>");
+            assertThat(e.getMessage()).doesNotContain("s1 differs");
+        }
+    }
+
+    @Test
+    public void should_report_null_targets_in_replay() throws Exception {
+        CountingMultiMapper mapper = new CountingMultiMapper();
+        Function<Multi, Multi> nullMapper = source -> source.i == -1 ? null : mapper.apply(source);
+        Path traceFile = temporaryFolder.newFile("mapper.trace").toPath();
+
+        assertThat(mapper)
+                .whenRecordingTrace(traceFile)
+                .hasPlausibleMappingFor(Multi::new);
+
+        try {
+            assertThat(nullMapper)
+                    .matchesTrace(traceFile, Multi::new);
+            fail("Null target hasn't been reported.");
+        } catch (AssertionError e) {
+            assertThat(e)
+                    .hasMessageContaining("(null target) differs in")
+                    .hasMessageContaining("{s1=null, s2=null, i=-1, l=null, e=null}");
+        }
+    }
+
+    @Test
+    public void should_replay_recorded_arrays() throws Exception {
+        Function<Blob, Blob> blobMapper = source -> {
+            Blob target = new Blob();
+            target.bytes = source.bytes == null ? null : Arrays.copyOf(source.bytes, source.bytes.length);
+            target.chars = source.chars == null ? null : Arrays.copyOf(source.chars, source.chars.length);
+            return target;
+        };
+        Path traceFile = temporaryFolder.newFile("mapper.trace").toPath();
+
+        assertThat(blobMapper)
+                .whenRecordingTrace(traceFile)
+                .hasPlausibleMappingFor(Blob::new);
+
+        assertThat(blobMapper)
+                .matchesTrace(traceFile, Blob::new);
+    }
+
+    @Test(timeout = 10000)
+    public void should_fail_if_mapper_invocation_overruns_timeout() {
+        CountDownLatch release = new CountDownLatch(1);
+        Function<CInt, CInt> blockingMapper = source -> {
+            CInt target = new CInt();
+            // blocks on the largest value until the test is done
+            if (source.intValue == Integer.MAX_VALUE) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            target.intValue = source.intValue;
+            return target;
+        };
+
+        try {
+            assertThat(blockingMapper)
+                    .withInvocationTimeout(Duration.ofMillis(200))
+                    .hasPlausibleMappingFor(CInt::new);
+            fail("Timeout hasn't been detected.");
+        } catch (AssertionFailedError e) {
+            assertThat(e)
+                    .hasMessageStartingWith("Mapper didn't return within PT0.2S for field intValue with value 2147483647")
+                    .hasMessageContaining("org.plausing.asserts.MapperAssertTest.lambda$should_fail_if_mapper_invocation_overruns_timeout");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void should_pass_if_ignores_static_fields() {
+
+        Function<CStatic, CStatic> staticClassMapper = source -> {
+            CStatic target = new CStatic();
+            target.stringValue = source.stringValue;
+            return target;
+        };
+
+        assertThat(staticClassMapper)
+                .hasPlausibleMappingFor(CStatic::new);
+
+    }
+
+    @Test
+    public void should_use_test_values_of_the_corpus() throws Exception {
+        Path corpusFile = temporaryFolder.newFile("values.corpus").toPath();
+        Files.write(corpusFile, asList(
+                "# sampled from production",
+                "att1\tStra\u00dfe 1",
+                "att1\tStra\u00dfe 1",
+                "att1\t\\N",
+                "java.lang.String\tline one\\nline two\t2.5"), StandardCharsets.UTF_8);
+        Function<A, A> mapper = source -> {
+            A target = new A();
+            target.att1 = source.att1;
+            target.att2 = source.att2;
+            return target;
+        };
+        Function<A, A> brokenMapper = source -> {
+            A target = mapper.apply(source);
+            if (source.att1 != null && source.att1.contains("\u00df")) target.att1 = source.att1.replace("\u00df", "ss");
+            return target;
+        };
+
+        assertThat(mapper)
+                .withTestValueCorpus(corpusFile, 10)
+                .hasPlausibleMappingFor(A::new);
+        try {
+            assertThat(brokenMapper)
+                    .withTestValueCorpus(corpusFile, 10)
+                    .hasPlausibleMappingFor(A::new);
+            fail("Mapping of production value hasn't been checked.");
+        } catch (AssertionError e) {
+            assertThat(e)
+                    .hasMessageContaining("Error in mapping att1 --> att1")
+                    .hasMessageContaining("but was:<\"Stra[ss]e 1\">");
+        }
+    }
+
+    @Test
+    public void should_sample_the_corpus_by_weight() throws Exception {
+        Path corpusFile = temporaryFolder.newFile("values.corpus").toPath();
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            lines.add("count\t" + i);
+            lines.add("status\t" + (i == 4711 ? "HEAVY\t1000000" : "light" + i + "\t0.001"));
+        }
+        lines.add("missing\t\\N");
+        Files.write(corpusFile, lines, StandardCharsets.UTF_8);
+        TestValueCorpus corpus = new TestValueCorpus(corpusFile, 20, TestValueCorpus.DEFAULT_SEED);
+
+        List<Object> counts = corpus.getValues("count", int.class);
+        assertThat(counts).hasSize(20);
+        assertThat(counts).hasOnlyElementsOfType(Integer.class);
+        assertThat(corpus.getValues("count", long.class)).hasSize(20);
+        assertThat(corpus.getValues("status", String.class)).contains("HEAVY").hasSize(20);
+        assertThat(new TestValueCorpus(corpusFile, 1, TestValueCorpus.DEFAULT_SEED).getValues("status", String.class)).containsExactly("HEAVY");
+        assertThat(corpus.getValues("missing", String.class)).containsExactly((Object) null);
+        assertThat(corpus.getValues("missing", int.class)).isNull();
+        assertThat(corpus.getValues("unknown", String.class)).isNull();
+    }
+
+    @Test
+    public void should_skip_corpus_values_of_a_field_of_another_type() throws Exception {
+        Path corpusFile = temporaryFolder.newFile("values.corpus").toPath();
+        Files.write(corpusFile, asList("intValue\tnot a number", "att1\tvalue"), StandardCharsets.UTF_8);
+        Function<CInt, CInt> mapper = source -> {
+            CInt target = new CInt();
+            target.intValue = source.intValue;
+            return target;
+        };
+
+        assertThat(mapper)
+                .withTestValueCorpus(corpusFile, 10)
+                .hasPlausibleMappingFor(CInt::new);
+    }
+
+    @Test
+    public void should_report_the_offset_of_an_invalid_corpus_weight() throws Exception {
+        Path corpusFile = temporaryFolder.newFile("values.corpus").toPath();
+        Files.write(corpusFile, asList("att1\tvalue", "att1\tother\theavy"), StandardCharsets.UTF_8);
+
+        try {
+            new TestValueCorpus(corpusFile, 10, TestValueCorpus.DEFAULT_SEED).getValues("att1", String.class);
+            fail("Invalid weight hasn't been reported.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("Invalid line in test value corpus " + corpusFile + " at offset 11: weight 'heavy' isn't a number");
+        }
+    }
+
+    /**
+     * Compiles a generated class and loads it with a new class loader.
+     */
+    private static Class<?> compile(String className, String source, String... options) throws Exception {
+        Path directory = Files.createTempDirectory("plausing");
+        Path sourceFile = directory.resolve(className.replace('.', '/') + ".java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> arguments = new ArrayList<String>(asList(options));
+        arguments.addAll(asList("-proc:none", "-classpath", System.getProperty("java.class.path"),
+                "-d", directory.toString(), sourceFile.toString()));
+        int result = compiler.run(null, null, null, arguments.toArray(new String[0]));
+        assertThat(result).as("compilation of\n" + source).isEqualTo(0);
+
+        URLClassLoader classLoader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, MapperAssertTest.class.getClassLoader());
+        return classLoader.loadClass(className);
+    }
+
+    /*---------------------------------------------------------------------------------------------------------------
+        TEST DATA
+      ---------------------------------------------------------------------------------------------------------------*/
+
+    /**
+     * Class with two String fields.
+     */
+    @PlausibleAccessor
+    public static class A {
+        public String att1;
+        public String att2;
+    }
+
+    /**
+     * Class with one String field.
+     */
+    @PlausibleAccessor
+    public static class B {
+        public String att1;
+    }
+
+    public static class SE {
+        private String stringValue;
+    }
+
+    public static class TE {
+        private E enumValue;
+    }
+
+    @SuppressWarnings("unused")
+    public static class TE2 {
+        private E2 enumValue;
+    }
+
+    @SuppressWarnings("unused")
+    public static enum E {
+        ec1, ec2
+    }
+
+    @SuppressWarnings("unused")
+    public static enum E2 {
+        ec1, ec2
+    }
+
+    @PlausibleAccessor
+    public static class CInteger {
+        Integer integerValue = 0;
+    }
+
+    @PlausibleAccessor
+    public static class CInt {
+        int intValue;
+    }
+
+    public static class IntList {
+        public IntList() {
+            this.intList = new ArrayList();
+        }
+        public IntList(int value) {
+            this.intList = new ArrayList();
+            this.intList.add(value);
+        }
+
+        List<Integer> intList;
+    }
+
+    public static class Multi {
+        String s1;
+        String s2;
+        int i;
+        Long l;
+        E e;
+    }
+
+    public static class CountingMultiMapper implements Function<Multi, Multi> {
+        final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public Multi apply(Multi source) {
+            invocations.incrementAndGet();
+            Multi target = new Multi();
+            target.s1 = source.s2;
+            target.s2 = source.s1;
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        }
+    }
+
+    /** Number of test values of the fields of {@link Multi}: two strings, an int, a Long and an enum. */
+    static final int MULTI_TEST_VALUES = 2 + 2 + 5 + 6 + 3;
+
+    public static class ConstantBetweenMapper implements Function<Multi, Multi> {
+        @Override
+        public Multi apply(Multi source) {
+            Multi target = new Multi();
+            String s1 = source.s1;
+            target.e = E.ec1;
+            target.s1 = s1;
+            target.s2 = source.s2;
+            target.i = source.i;
+            target.l = source.l;
+            return target;
+        }
+    }
+
+    public static class MethodReferenceMappers {
+        static final AtomicInteger INVOCATIONS = new AtomicInteger();
+
+        static Function<Multi, Multi> mapper() {
+            return MethodReferenceMappers::map;
+        }
+
+        static UnaryOperator<Multi> swappingOperator() {
+            return source -> {
+                Multi target = new Multi();
+                target.s1 = source.s2;
+                target.s2 = source.s1;
+                return target;
+            };
+        }
+
+        static Multi map(Multi source) {
+            INVOCATIONS.incrementAndGet();
+            Multi target = new Multi();
+            target.s1 = source.s1;
+            target.s2 = source.s2;
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        }
+    }
+
+    /**
+     * Accessors whose names don't match the fields they read and write.
+     */
+    public static class CrossedAccessors {
+        private String att1;
+        private String att2;
+
+        public String getAtt1() {
+            return att2;
+        }
+
+        public String getAtt2() {
+            return att1;
+        }
+
+        public void setAtt1(String value) {
+            att2 = value;
+        }
+
+        public void setAtt2(String value) {
+            att1 = value;
+        }
+    }
+
+    public static class CrossedGettersMapper implements Function<CrossedAccessors, A> {
+        final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public A apply(CrossedAccessors source) {
+            invocations.incrementAndGet();
+            A target = new A();
+            target.att1 = source.getAtt1();
+            target.att2 = source.getAtt2();
+            return target;
+        }
+    }
+
+    public static class CrossedSettersMapper implements Function<A, CrossedAccessors> {
+        final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public CrossedAccessors apply(A source) {
+            invocations.incrementAndGet();
+            CrossedAccessors target = new CrossedAccessors();
+            target.setAtt1(source.att1);
+            target.setAtt2(source.att2);
+            return target;
+        }
+    }
+
+    public static class TruncatingMultiMapper implements Function<Multi, Multi> {
+        @Override
+        public Multi apply(Multi source) {
+            Multi target = new Multi();
+            target.s1 = source.s1;
+            target.s2 = source.s2 == null || source.s2.isEmpty() ? source.s2 : source.s2.substring(1);
+            target.i = source.i;
+            target.l = source.l;
+            target.e = source.e;
+            return target;
+        }
+    }
+
+    public static class Small {
+        byte b;
+        short s;
+        char c;
+        boolean z;
+        Character character;
+    }
+
+    static final List<Multi> RETAINED_SOURCES = new ArrayList<Multi>();
+
+    /** Holds sources where the retention check doesn't look. */
+    static final class Hideout {
+        static final List<Multi> SOURCES = new ArrayList<Multi>();
+    }
+
+    public static class Plain {
+        // public, because the instrumented mapper is loaded by another class loader
+        public String s1;
+        public String s2;
+    }
+
+    /**
+     * Loads some classes itself, with their field writes instrumented like the {@link WriteTrackingAgent} does.
+     */
+    public static class Stamped {
+        private static final AtomicLong CREATED = new AtomicLong();
+
+        String s1;
+        String s2;
+        String note;
+        long created = CREATED.incrementAndGet();
+
+        void setS2(String s2) {
+            this.s2 = s2;
+        }
+    }
+
+    public static class StampedMapper implements Function<Plain, Stamped> {
+        @Override
+        public Stamped apply(Plain source) {
+            Stamped target = new Stamped();
+            target.s1 = source.s1;
+            target.setS2(source.s2);
+            return target;
+        }
+    }
+
+    /**
+     * Writes the default value of the note when s1 is set.
+     */
+    public static class NoteClearingMapper implements Function<Plain, Stamped> {
+        @Override
+        public Stamped apply(Plain source) {
+            Stamped target = new Stamped();
+            target.s1 = source.s1;
+            target.setS2(source.s2);
+            if (source.s1 != null) target.note = null;
+            return target;
+        }
+    }
+
+    /**
+     * Instruments the given classes. The test class has to be one of them if nested classes are instrumented,
+     * otherwise the instrumented nested classes don't match the nested classes of the test class.
+     */
+    static class WriteTrackingClassLoader extends ClassLoader {
+        private final List<String> instrumentedClasses;
+
+        WriteTrackingClassLoader(ClassLoader parent, String... instrumentedClasses) {
+            super(parent);
+            this.instrumentedClasses = Arrays.asList(instrumentedClasses);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!instrumentedClasses.contains(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded != null) return loaded;
+                try {
+                    byte[] classFile = Files.readAllBytes(Paths.get(getParent().getResource(name.replace('.', '/') + ".class").toURI()));
+                    byte[] instrumented = WriteTrackingTransformer.instrument(classFile);
+                    if (instrumented == null) instrumented = classFile;
+                    return defineClass(name, instrumented, 0, instrumented.length);
+                } catch (Exception e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+    }
+
+    public static class RetainingView {
+        String s1;
+        List<Object> origin;
+    }
+
+    public static class CBigDecimal {
+        BigDecimal integerValue;
+    }
+
+    public static class Order {
+        public String status;
+        public Integer amount = 0;
+        public E type;
+        public List<Integer> quantities = new ArrayList<Integer>(Arrays.asList(1));
+    }
+
+    public static class OrderView {
+        public E status;
+        public int amount;
+        public String type;
+        public List<Integer> quantities;
+    }
+
+    public static class Basket {
+        public Set<Integer> quantities = new HashSet<Integer>(Arrays.asList(1));
+    }
+
+    public static class Blob {
+        byte[] bytes;
+        char[] chars;
+    }
+
+    public static class CStatic {
+        public static final String constant = "constant";
+        String stringValue;
+    }
+
+
+    @SuppressWarnings("rawtypes")
+    public static class RawList {
+        List rawList = new ArrayList();
+    }
+
+    private static class LongList {
+        public LongList() {
+            this.longList
+                    = new ArrayList<Long>();
+        }
+
+        List<Long> longList;
+    }
+}
+
+/*
+ * Top level classes, because the instrumented copies loaded by MapperAssertTest.WriteTrackingClassLoader can't be
+ * nested in the MapperAssertTest of the application class loader.
+ */
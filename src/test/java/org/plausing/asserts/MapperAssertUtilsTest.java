@@ -3,7 +3,13 @@ package org.plausing.asserts;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
 
 public class MapperAssertUtilsTest {
 
@@ -23,6 +29,88 @@ public class MapperAssertUtilsTest {
         }
     }
 
+    public static class Base<T> {
+        List<T> items;
+        Map<String, T> itemsByName;
+        Optional<T> firstItem;
+        T[] itemArray;
+        List<List<Integer>> nested;
+        List rawItems;
+        StringList stringList;
+    }
+
+    public static class Sub extends Base<Long> {
+    }
+
+    public static class StringList extends ArrayList<String> {
+    }
+
+    @Test
+    public void testTypeModelResolvesElementTypes() throws Exception {
+        Assertions.assertThat(TypeModel.elementTypeOf(Sub.class, Base.class.getDeclaredField("items"))).isEqualTo(Long.class);
+        Assertions.assertThat(TypeModel.elementTypeOf(Sub.class, Base.class.getDeclaredField("itemsByName"))).isEqualTo(Long.class);
+        Assertions.assertThat(TypeModel.elementTypeOf(Sub.class, Base.class.getDeclaredField("firstItem"))).isEqualTo(Long.class);
+        Assertions.assertThat(TypeModel.elementTypeOf(Sub.class, Base.class.getDeclaredField("itemArray"))).isEqualTo(Long.class);
+        Assertions.assertThat(TypeModel.typeOf(Sub.class, Base.class.getDeclaredField("itemArray")).getRawType()).isEqualTo(Long[].class);
+        Assertions.assertThat(TypeModel.typeOf(Sub.class, Base.class.getDeclaredField("nested")).getElementType().toString()).isEqualTo("List<Integer>");
+        Assertions.assertThat(TypeModel.elementTypeOf(Sub.class, Base.class.getDeclaredField("stringList"))).isEqualTo(String.class);
+
+        // unknown element types
+        Assertions.assertThat(TypeModel.elementTypeOf(Base.class, Base.class.getDeclaredField("items"))).isNull();
+        Assertions.assertThat(TypeModel.elementTypeOf(Sub.class, Base.class.getDeclaredField("rawItems"))).isNull();
+    }
+
+    @Test
+    public void testConverterGraphResolvesChains() throws Exception {
+        // given
+        Map<TypePair, Function> mappers = new HashMap<TypePair, Function>();
+        mappers.put(new TypePair(Integer.class, Long.class), (Function<Integer, Long>) i -> i == null ? null : i.longValue());
+        mappers.put(new TypePair(Long.class, BigDecimal.class), (Function<Long, BigDecimal>) l -> l == null ? null : BigDecimal.valueOf(l));
+        mappers.put(new TypePair(Number.class, String.class), (Function<Number, String>) n -> "n" + n);
+        ConverterGraph converters = new ConverterGraph(mappers);
+
+        // then: chains, subtype matches and the cache
+        Assertions.assertThat(converters.converterFor(Integer.class, BigDecimal.class).apply(5)).isEqualTo(BigDecimal.valueOf(5));
+        Assertions.assertThat(converters.chainOf(Integer.class, BigDecimal.class)).hasSize(2);
+        Assertions.assertThat(converters.converterFor(Integer.class, BigDecimal.class)).isSameAs(converters.converterFor(Integer.class, BigDecimal.class));
+        Assertions.assertThat(converters.converterFor(Integer.class, String.class).apply(5)).isEqualTo("n5");
+        Assertions.assertThat(converters.converterFor(Long.class, CharSequence.class).apply(5L)).isEqualTo("n5");
+
+        // no chain, and no chain for assignable types
+        Assertions.assertThat(converters.converterFor(String.class, Long.class)).isNull();
+        Assertions.assertThat(converters.converterFor(Integer.class, Number.class)).isNull();
+    }
+
+    @Test
+    public void testFrozenDefaultsRejectSettings() throws Exception {
+        try {
+            MapperAssertTestData.DEFAULTS.setWriteTracking(true);
+            Assertions.fail("Frozen defaults have been changed.");
+        } catch (UnsupportedOperationException e) {
+            Assertions.assertThat(MapperAssertTestData.DEFAULTS.isWriteTracking()).isFalse();
+        }
+
+        // a copy can be changed
+        MapperAssertTestData copy = MapperAssertTestData.DEFAULTS.copy();
+        copy.setWriteTracking(true);
+        Assertions.assertThat(copy.isWriteTracking()).isTrue();
+        Assertions.assertThat(copy.freeze().isWriteTracking()).isTrue();
+    }
+
+    @Test
+    public void testConverterGraphIsRebuiltWhenMapperIsRegistered() throws Exception {
+        // given
+        MapperAssertTestData testData = MapperAssertTestData.DEFAULTS.copy();
+        testData.putMapper(new TypePair(Integer.class, Long.class), (Function<Integer, Long>) i -> i == null ? null : i.longValue());
+        ConverterGraph converters = testData.converters();
+
+        // then: the graph is kept until a mapper is registered
+        Assertions.assertThat(testData.converters()).isSameAs(converters);
+        testData.putMapper(new TypePair(Long.class, BigDecimal.class), (Function<Long, BigDecimal>) l -> l == null ? null : BigDecimal.valueOf(l));
+        Assertions.assertThat(testData.converters()).isNotSameAs(converters);
+        Assertions.assertThat(testData.converters().converterFor(Integer.class, BigDecimal.class).apply(5)).isEqualTo(BigDecimal.valueOf(5));
+    }
+
     @Test
     public void testGenerateTestValuesFromSpawningType() throws Exception {
         // given
@@ -36,4 +124,35 @@ public class MapperAssertUtilsTest {
                 .containsExactly(Integer.MIN_VALUE, Integer.MAX_VALUE, 1, -1, 0, null);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGeneratedFieldAccessor() throws Exception {
+        // given a class annotated with @PlausibleAccessor
+        FieldAccessor<MapperAssertTest.CInt> accessor = FieldAccessors.forClass(MapperAssertTest.CInt.class);
+        MapperAssertTest.CInt cInt = new MapperAssertTest.CInt();
+
+        // when
+        accessor.set(cInt, accessor.indexOf("intValue"), 42);
+
+        // then
+        Assertions.assertThat(accessor.getClass().getName()).isEqualTo("org.plausing.asserts.MapperAssertTest_CInt_PlausingAccessor");
+        Assertions.assertThat(accessor.fieldCount()).isEqualTo(1);
+        Assertions.assertThat(accessor.fieldType(0)).isEqualTo(int.class);
+        Assertions.assertThat(accessor.getInt(cInt, 0)).isEqualTo(42);
+    }
+
+    @Test
+    public void testReflectiveFieldAccessor() throws Exception {
+        // given a class without generated accessor
+        FieldAccessor<A> accessor = FieldAccessors.forClass(A.class);
+        A a = new A();
+
+        // when
+        accessor.set(a, accessor.indexOf("att2"), "value");
+
+        // then
+        Assertions.assertThat(accessor).isInstanceOf(FieldAccessors.ReflectiveFieldAccessor.class);
+        Assertions.assertThat(a.att2).isEqualTo("value");
+        Assertions.assertThat(accessor.get(a, accessor.indexOf("att2"))).isEqualTo("value");
+    }
+}
@@ -0,0 +1,290 @@
+package org.plausing.asserts;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Fail.fail;
+
+/**
+ * Tests for {@link PlausibleMapperProcessor}, {@link PlausibleMapperIndex}, {@link NativeImageReflectConfig}, {@link PlausibleMapperRunner}
+ * and {@link MapperShards}.
+ */
+public class PlausibleMapperIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @PlausibleMapper(source = MapperAssertTest.A.class, target = MapperAssertTest.B.class)
+    static final Function<MapperAssertTest.A, MapperAssertTest.B> FIELD_MAPPER = a -> {
+        MapperAssertTest.B b = new MapperAssertTest.B();
+        b.att1 = a.att1;
+        return b;
+    };
+
+    @PlausibleMapper(source = MapperAssertTest.B.class, target = MapperAssertTest.A.class, ignoredTargetFields = "att2")
+    static Function<MapperAssertTest.B, MapperAssertTest.A> factoryMapper() {
+        return b -> {
+            MapperAssertTest.A a = new MapperAssertTest.A();
+            a.att1 = b.att1;
+            return a;
+        };
+    }
+
+    @PlausibleMapper(source = MapperAssertTest.IntList.class, target = MapperAssertTest.IntList.class)
+    static final Function<MapperAssertTest.IntList, MapperAssertTest.IntList> COLLECTION_MAPPER = source -> {
+        MapperAssertTest.IntList target = new MapperAssertTest.IntList();
+        target.intList = source.intList == null ? null : new ArrayList<Integer>(source.intList);
+        return target;
+    };
+
+    @PlausibleMapper(source = MapperAssertTest.TE.class, target = MapperAssertTest.SE.class)
+    public MapperAssertTest.SE methodMapper(MapperAssertTest.TE source) {
+        return new MapperAssertTest.SE();
+    }
+
+    @Test
+    public void should_index_annotated_members() throws Exception {
+        List<String> names = PlausibleMapperIndex.load(getClass().getClassLoader()).stream()
+                .map(PlausibleMapperIndex.Entry::format)
+                .collect(Collectors.toList());
+
+        assertThat(names).contains(
+                "FIELD\torg.plausing.asserts.PlausibleMapperIndexTest\tFIELD_MAPPER\torg.plausing.asserts.MapperAssertTest$A\torg.plausing.asserts.MapperAssertTest$B\t",
+                "FACTORY\torg.plausing.asserts.PlausibleMapperIndexTest\tfactoryMapper\torg.plausing.asserts.MapperAssertTest$B\torg.plausing.asserts.MapperAssertTest$A\tatt2",
+                "METHOD\torg.plausing.asserts.PlausibleMapperIndexTest\tmethodMapper\torg.plausing.asserts.MapperAssertTest$TE\torg.plausing.asserts.MapperAssertTest$SE\t");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void should_write_the_reflection_configuration_of_native_image() throws Exception {
+        Map<String, Map<String, Object>> entries = new HashMap<String, Map<String, Object>>();
+        for (Object entry : (List<Object>) new Json(readResource(NativeImageReflectConfig.RESOURCE)).parse()) {
+            entries.put((String) ((Map<String, Object>) entry).get("name"), (Map<String, Object>) entry);
+        }
+
+        Map<String, Object> mappedClass = entries.get("org.plausing.asserts.MapperAssertTest$A");
+        assertThat(mappedClass.get("allDeclaredFields")).isEqualTo(true);
+        assertThat(mappedClass.get("allPublicMethods")).isEqualTo(true);
+        assertThat(mappedClass.get("methods")).isEqualTo(asList(method("<init>")));
+
+        Map<String, Object> mappers = entries.get("org.plausing.asserts.PlausibleMapperIndexTest");
+        assertThat(mappers.get("fields")).isEqualTo(asList(field("COLLECTION_MAPPER"), field("FIELD_MAPPER")));
+        assertThat(mappers.get("methods")).isEqualTo(asList(method("<init>"), method("factoryMapper"),
+                method("methodMapper", "org.plausing.asserts.MapperAssertTest$TE")));
+
+        assertThat(entries.get("java.lang.String").get("allPublicConstructors")).isEqualTo(true);
+        // interfaces have no constructors, the instantiated implementation has
+        assertThat(entries.get("java.util.List")).containsEntry("allPublicMethods", true).doesNotContainKey("allPublicConstructors");
+        assertThat(entries.get("java.util.ArrayList").get("methods")).isEqualTo(asList(method("<init>")));
+
+        Map<String, Object> resourceConfig = (Map<String, Object>) new Json(readResource(NativeImageReflectConfig.RESOURCE_CONFIG)).parse();
+        assertThat(((Map<String, Object>) resourceConfig.get("resources")).get("includes"))
+                .isEqualTo(asList(Collections.singletonMap("pattern", "\\QMETA-INF/plausing/mappers.idx\\E")));
+    }
+
+    @Test
+    public void should_run_every_registered_mapper() {
+        Result result = JUnitCore.runClasses(AllMappers.class);
+
+        // methodMapper doesn't map anything and fails
+        assertThat(result.getRunCount()).isGreaterThanOrEqualTo(3);
+        assertThat(result.getFailures())
+                .extracting(failure -> failure.getDescription().getMethodName())
+                .containsExactly("methodMapper");
+    }
+
+    @Test
+    public void should_balance_the_shards_by_cost() {
+        List<PlausibleMapperIndex.Entry> entries = new ArrayList<PlausibleMapperIndex.Entry>();
+        Map<String, Long> costs = new HashMap<String, Long>();
+        for (int cost = 4; cost <= 8; cost++) {
+            entries.add(new PlausibleMapperIndex.Entry(PlausibleMapperIndex.Kind.FIELD, "Mappers", "m" + cost, "S", "T", Collections.<String>emptyList()));
+            costs.put("Mappers#m" + cost, (long) cost);
+        }
+
+        // longest first to the shard with the least cost: 8 | 7, 6 | 8, 5 | 13, 4 | 13
+        assertThat(MapperShards.select(entries, costs, 0, 2)).extracting(entry -> entry.memberName).containsExactly("m4", "m5", "m8");
+        assertThat(MapperShards.select(entries, costs, 1, 2)).extracting(entry -> entry.memberName).containsExactly("m6", "m7");
+    }
+
+    @Test
+    public void should_reject_the_partial_report_of_a_shard_as_timings() throws Exception {
+        List<PlausibleMapperIndex.Entry> entries = new ArrayList<PlausibleMapperIndex.Entry>();
+        MapperRunReport merged = new MapperRunReport();
+        MapperRunReport partial = new MapperRunReport();
+        partial.setShard(1, 2);
+        for (int cost = 4; cost <= 8; cost++) {
+            entries.add(new PlausibleMapperIndex.Entry(PlausibleMapperIndex.Kind.FIELD, "Mappers", "m" + cost, "S", "T", Collections.<String>emptyList()));
+            // m8 has been added since the last run
+            if (cost < 8) merged.record("Mappers#m" + cost, cost, true);
+            if (cost % 2 == 1) partial.record("Mappers#m" + cost, cost, true);
+        }
+        File mergedFile = temporaryFolder.newFile();
+        File partialFile = temporaryFolder.newFile();
+        merged.write(mergedFile.toPath());
+        partial.write(partialFile.toPath());
+
+        try {
+            System.setProperty(MapperShards.SHARD_COUNT_PROPERTY, "2");
+            System.setProperty(MapperShards.SHARD_INDEX_PROPERTY, "0");
+            System.setProperty(MapperShards.TIMINGS_PROPERTY, mergedFile.getPath());
+            // m8 costs the average of the known costs
+            assertThat(MapperShards.selectConfigured(entries)).isEqualTo(MapperShards.select(entries, merged.costs(), 0, 2));
+
+            System.setProperty(MapperShards.TIMINGS_PROPERTY, partialFile.getPath());
+            try {
+                MapperShards.selectConfigured(entries);
+                fail("Partial report hasn't been rejected.");
+            } catch (IllegalArgumentException e) {
+                assertThat(e).hasMessageStartingWith("Timings " + partialFile.getPath() + " are the partial report of shard 1 of 2");
+            }
+        } finally {
+            System.clearProperty(MapperShards.SHARD_COUNT_PROPERTY);
+            System.clearProperty(MapperShards.SHARD_INDEX_PROPERTY);
+            System.clearProperty(MapperShards.TIMINGS_PROPERTY);
+        }
+    }
+
+    @Test
+    public void should_merge_the_reports_of_the_shards() throws Exception {
+        List<MapperRunReport> reports = new ArrayList<MapperRunReport>();
+        try {
+            System.setProperty(MapperShards.SHARD_COUNT_PROPERTY, "2");
+            for (int index = 0; index < 2; index++) {
+                File report = temporaryFolder.newFile();
+                System.setProperty(MapperShards.SHARD_INDEX_PROPERTY, String.valueOf(index));
+                System.setProperty(MapperShards.REPORT_PROPERTY, report.getPath());
+                JUnitCore.runClasses(AllMappers.class);
+                reports.add(MapperRunReport.read(report.toPath()));
+            }
+        } finally {
+            System.clearProperty(MapperShards.SHARD_COUNT_PROPERTY);
+            System.clearProperty(MapperShards.SHARD_INDEX_PROPERTY);
+            System.clearProperty(MapperShards.REPORT_PROPERTY);
+        }
+
+        assertThat(reports.get(0).getResults().keySet()).doesNotContainAnyElementsOf(reports.get(1).getResults().keySet());
+        assertThat(reports.get(1).getShardIndex()).isEqualTo(1);
+        assertThat(reports.get(1).getShardCount()).isEqualTo(2);
+        MapperRunReport merged = MapperRunReport.merge(reports);
+        assertThat(merged.getShardCount()).isEqualTo(1);
+        assertThat(merged.getResults().keySet()).contains(
+                "org.plausing.asserts.PlausibleMapperIndexTest#FIELD_MAPPER",
+                "org.plausing.asserts.PlausibleMapperIndexTest#factoryMapper",
+                "org.plausing.asserts.PlausibleMapperIndexTest#methodMapper");
+        assertThat(merged.failures()).isEqualTo(1);
+    }
+
+    @RunWith(PlausibleMapperRunner.class)
+    public static class AllMappers {
+    }
+
+    private String readResource(String resource) throws Exception {
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream(resource)) {
+            return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)).lines().collect(Collectors.joining("\n"));
+        }
+    }
+
+    private static Map<String, Object> field(String name) {
+        return Collections.<String, Object>singletonMap("name", name);
+    }
+
+    private static Map<String, Object> method(String name, String... parameterTypes) {
+        Map<String, Object> method = new HashMap<String, Object>();
+        method.put("name", name);
+        method.put("parameterTypes", asList((Object[]) parameterTypes));
+        return method;
+    }
+
+    /**
+     * Parses the JSON of the native-image configuration into maps, lists, strings and booleans.
+     */
+    private static final class Json {
+        private final String json;
+        private int position;
+
+        Json(String json) {
+            this.json = json;
+        }
+
+        Object parse() {
+            skipWhitespace();
+            char next = json.charAt(position);
+            if (next == '{') {
+                Map<String, Object> object = new LinkedHashMap<String, Object>();
+                position++;
+                while (!consume('}')) {
+                    consume(',');
+                    skipWhitespace();
+                    String key = (String) parse();
+                    skipWhitespace();
+                    expect(':');
+                    object.put(key, parse());
+                }
+                return object;
+            }
+            if (next == '[') {
+                List<Object> array = new ArrayList<Object>();
+                position++;
+                while (!consume(']')) {
+                    consume(',');
+                    array.add(parse());
+                }
+                return array;
+            }
+            if (next == '"') {
+                StringBuilder string = new StringBuilder();
+                for (position++; json.charAt(position) != '"'; position++) {
+                    if (json.charAt(position) == '\\') position++;
+                    string.append(json.charAt(position));
+                }
+                position++;
+                return string.toString();
+            }
+            if (json.startsWith("true", position)) {
+                position += 4;
+                return true;
+            }
+            if (json.startsWith("false", position)) {
+                position += 5;
+                return false;
+            }
+            throw new IllegalArgumentException("Unexpected JSON at " + position + ": " + json.substring(position));
+        }
+
+        private boolean consume(char expected) {
+            skipWhitespace();
+            if (json.charAt(position) != expected) return false;
+            position++;
+            return true;
+        }
+
+        private void expect(char expected) {
+            if (!consume(expected)) throw new IllegalArgumentException("Expected " + expected + " at " + position);
+        }
+
+        private void skipWhitespace() {
+            while (Character.isWhitespace(json.charAt(position))) position++;
+        }
+    }
+}